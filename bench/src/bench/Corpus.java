@@ -0,0 +1,279 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ast.Program;
+import codegenjvm.JVMCodeGenerator;
+import parser.MappedTokenManager;
+import parser.Parser;
+import semant.SemanticAnalyzer;
+import util.ClassTreeNode;
+import util.ErrorHandler;
+import util.PhaseTimer;
+import util.Trace;
+
+/**
+ * The programs the benchmarks compile. Each program is a test program (a
+ * .btm file of the corpus directory that declares a Main class) together
+ * with the library sources it uses (the .btm files without a Main class,
+ * such as Vector.btm).
+ *
+ * A program can be scaled up: scaled by n, it is n copies of itself in one
+ * program. In every copy but the first, each class the program declares is
+ * renamed (C becomes C_2, C_3, ...), so the copies are separate classes
+ * and there is still one Main class.
+ *
+ * Programs that the compiler cannot compile are left out, so every
+ * benchmark runs over the same programs. The corpus directory is
+ * ../tests, or the one given by the system property bench.corpus.
+ */
+public class Corpus {
+    private static final Pattern CLASS = Pattern.compile(
+            "^\\s*class\\s+(\\w+)", Pattern.MULTILINE);
+
+    /**
+     * The sources of one program
+     */
+    public static class Sources {
+        private String name;
+        private String[] filenames;
+        private String[] texts;
+        // the texts encoded, for MappedTokenManager
+        private byte[][] bytes;
+
+        Sources(String name, String[] filenames, String[] texts) {
+            this.name = name;
+            this.filenames = filenames;
+            this.texts = texts;
+        }
+
+        /**
+         * @return The name of the program (its main source, without .btm)
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The number of characters of the sources
+         */
+        public int length() {
+            int length = 0;
+            for (String text : texts)
+                length += text.length();
+            return length;
+        }
+
+        /**
+         * @return A new parser over the sources
+         */
+        public Parser newParser() {
+            return new Parser(filenames, readers(), false,
+                    ErrorHandler.collector());
+        }
+
+        /**
+         * @return A new parser over each source, scanned by a
+         *         MappedTokenManager (over the bytes of the source, as if
+         *         mapped from its file)
+         */
+        public Parser[] newMappedParsers() {
+            Parser[] parsers = new Parser[texts.length];
+            for (int i = 0; i < texts.length; i++)
+                parsers[i] = new Parser(filenames[i], new MappedTokenManager(
+                        ByteBuffer.wrap(getBytes()[i])), false,
+                        ErrorHandler.collector());
+            return parsers;
+        }
+
+        /**
+         * @return The sources parsed
+         * @throws util.CompilationException
+         *         if the sources have errors
+         */
+        public Program parse() {
+            return Parser.parse(filenames, readers(),
+                    ErrorHandler.collector());
+        }
+
+        private byte[][] getBytes() {
+            if (bytes == null) {
+                bytes = new byte[texts.length][];
+                for (int i = 0; i < texts.length; i++)
+                    bytes[i] = texts[i].getBytes(StandardCharsets.UTF_8);
+            }
+            return bytes;
+        }
+
+        private Reader[] readers() {
+            Reader[] readers = new Reader[texts.length];
+            for (int i = 0; i < texts.length; i++)
+                readers[i] = new StringReader(texts[i]);
+            return readers;
+        }
+    }
+
+    /**
+     * @return The corpus directory
+     */
+    public static File getDirectory() {
+        return new File(System.getProperty("bench.corpus", "../tests"));
+    }
+
+    /**
+     * Load the programs of the corpus directory
+     *
+     * @param scale
+     *        The number of copies of each program
+     * @return The programs, in the order of their names
+     * @throws IOException
+     *         if a source cannot be read
+     */
+    public static List<Sources> load(int scale) throws IOException {
+        File dir = getDirectory();
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".btm"));
+        if (files == null || files.length == 0)
+            throw new IOException("no .btm files in " + dir);
+        Arrays.sort(files);
+
+        // the classes of each source
+        Map<String, String> texts = new LinkedHashMap<String, String>();
+        Map<String, List<String>> classes =
+            new LinkedHashMap<String, List<String>>();
+        for (File file : files) {
+            String text = new String(Files.readAllBytes(file.toPath()),
+                    StandardCharsets.UTF_8);
+            texts.put(file.getName(), text);
+            classes.put(file.getName(), getClasses(text));
+        }
+
+        List<Sources> programs = new ArrayList<Sources>();
+        for (String filename : texts.keySet()) {
+            if (!classes.get(filename).contains("Main"))
+                continue;
+            LinkedHashSet<String> sources = new LinkedHashSet<String>();
+            addSources(filename, texts, classes, sources);
+            Sources program = scale(filename.substring(0,
+                    filename.length() - 4), sources, texts, classes, scale);
+            if (compiles(program))
+                programs.add(program);
+            else
+                System.err.println("corpus: leaving out " + program.getName()
+                        + ", which does not compile");
+        }
+        return programs;
+    }
+
+    /**
+     * @return The names of the classes a source declares
+     */
+    private static List<String> getClasses(String text) {
+        List<String> names = new ArrayList<String>();
+        Matcher matcher = CLASS.matcher(text);
+        while (matcher.find())
+            names.add(matcher.group(1));
+        return names;
+    }
+
+    /**
+     * Add a source and the library sources it uses (transitively)
+     */
+    private static void addSources(String filename, Map<String, String> texts,
+            Map<String, List<String>> classes, LinkedHashSet<String> sources) {
+        if (!sources.add(filename))
+            return;
+        for (String library : texts.keySet()) {
+            if (classes.get(library).contains("Main"))
+                continue;
+            for (String name : classes.get(library)) {
+                if (Pattern.compile("\\b" + name + "\\b")
+                        .matcher(texts.get(filename)).find()) {
+                    addSources(library, texts, classes, sources);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return A program made of scale copies of the sources
+     */
+    private static Sources scale(String name, LinkedHashSet<String> sources,
+            Map<String, String> texts, Map<String, List<String>> classes,
+            int scale) {
+        List<String> names = new ArrayList<String>();
+        for (String source : sources)
+            names.addAll(classes.get(source));
+
+        List<String> filenames = new ArrayList<String>();
+        List<String> copies = new ArrayList<String>();
+        for (int copy = 1; copy <= scale; copy++) {
+            for (String source : sources) {
+                String text = texts.get(source);
+                String filename = source;
+                if (copy > 1) {
+                    for (String className : names)
+                        text = text.replaceAll("\\b" + className + "\\b",
+                                className + "_" + copy);
+                    filename = source.replace(".btm", "_" + copy + ".btm");
+                }
+                filenames.add(filename);
+                copies.add(text);
+            }
+        }
+        return new Sources(scale == 1 ? name : name + "x" + scale,
+                filenames.toArray(new String[0]),
+                copies.toArray(new String[0]));
+    }
+
+    /**
+     * @return Whether every phase of the compiler gets through a program
+     */
+    private static boolean compiles(Sources program) {
+        try {
+            ClassTreeNode root = new SemanticAnalyzer(program.parse(), false,
+                    ErrorHandler.collector()).analyze();
+            List<ClassTreeNode> classes = new ArrayList<ClassTreeNode>();
+            addUserClasses(root, classes);
+            for (ClassTreeNode classNode : classes)
+                JVMCodeGenerator.generateClass(classNode, Trace.NONE,
+                        PhaseTimer.NONE);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Add the user classes of a class tree to a list, parents before
+     * children
+     *
+     * @param classNode
+     *        The root of the tree
+     * @param classes
+     *        The list
+     */
+    public static void addUserClasses(ClassTreeNode classNode,
+            List<ClassTreeNode> classes) {
+        if (!classNode.isBuiltIn())
+            classes.add(classNode);
+        Iterator<ClassTreeNode> children = classNode.getChildrenList();
+        while (children.hasNext())
+            addUserClasses(children.next(), classes);
+    }
+}
@@ -0,0 +1,239 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads and writes the JSON result files of the benchmarks (RuntimeBench,
+ * RegressionGate and Scalability), so that all of them use one format.
+ *
+ * A value is a Map (an object, whose members keep their order), a List (an
+ * array), a String, a Number or null. Numbers are read as BigDecimals, and
+ * are written as given, so number(double, int) sets how many decimals a
+ * measurement is written with. An object is written on one line if none of
+ * its members is an object, and with one member per line otherwise, so a
+ * file has one line per measured workload.
+ */
+final class Json {
+    private String text;
+    private int pos;
+
+    private Json(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @return The value rounded to the given number of decimals, or null
+     *         (written as null) if it is NaN
+     */
+    static BigDecimal number(double value, int decimals) {
+        if (Double.isNaN(value))
+            return null;
+        return new BigDecimal(String.format(Locale.ROOT, "%." + decimals
+                + "f", value));
+    }
+
+    /**
+     * @return The member of an object as a double
+     * @throws IOException
+     *         if the object has no such number
+     */
+    static double getDouble(Map<String, Object> object, String name)
+            throws IOException {
+        Object value = object.get(name);
+        if (!(value instanceof Number))
+            throw new IOException("no number \"" + name + "\"");
+        return ((Number) value).doubleValue();
+    }
+
+    /**
+     * Write a value (see the class comment), followed by a newline
+     */
+    static void write(Object value, PrintWriter out) {
+        write(value, "", out);
+        out.println();
+    }
+
+    private static void write(Object value, String indent, PrintWriter out) {
+        if (value instanceof Map) {
+            Map<?, ?> object = (Map<?, ?>) value;
+            boolean oneLine = true;
+            for (Object member : object.values())
+                oneLine &= !(member instanceof Map);
+            out.print(oneLine ? "{" : "{\n");
+            int i = 0;
+            for (Map.Entry<?, ?> member : object.entrySet()) {
+                if (!oneLine)
+                    out.print(indent + "  ");
+                out.print(quote(member.getKey().toString()) + ": ");
+                write(member.getValue(), indent + "  ", out);
+                if (++i < object.size())
+                    out.print(oneLine ? ", " : ",\n");
+            }
+            out.print(oneLine ? "}" : "\n" + indent + "}");
+        } else if (value instanceof List) {
+            out.print("[");
+            List<?> array = (List<?>) value;
+            for (int i = 0; i < array.size(); i++) {
+                write(array.get(i), indent, out);
+                if (i + 1 < array.size())
+                    out.print(", ");
+            }
+            out.print("]");
+        } else if (value instanceof String)
+            out.print(quote((String) value));
+        else if (value instanceof BigDecimal)
+            out.print(((BigDecimal) value).toPlainString());
+        else
+            out.print(value);
+    }
+
+    private static String quote(String string) {
+        return "\"" + string.replace("\\", "\\\\").replace("\"", "\\\"")
+            + "\"";
+    }
+
+    /**
+     * Read a file written by write, or any JSON whose strings have no
+     * escapes but \" and \\
+     *
+     * @return The value (see the class comment)
+     * @throws IOException
+     *         if the file cannot be read or is not JSON
+     */
+    static Object read(File file) throws IOException {
+        Json json = new Json(new String(Files.readAllBytes(file.toPath()),
+                StandardCharsets.UTF_8));
+        Object value = json.readValue();
+        json.skipSpace();
+        if (json.pos < json.text.length())
+            throw json.error("end of file");
+        return value;
+    }
+
+    /**
+     * Read a file of objects of measurements, such as one written by
+     * RuntimeBench or RegressionGate
+     *
+     * @return The objects, by name
+     * @throws IOException
+     *         if the file cannot be read or is not such a file
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Map<String, Object>> readObjects(File file)
+            throws IOException {
+        Object value = read(file);
+        if (!(value instanceof Map))
+            throw new IOException(file + ": not an object");
+        for (Object member : ((Map<String, Object>) value).values())
+            if (!(member instanceof Map))
+                throw new IOException(file + ": not an object of objects");
+        return (Map<String, Map<String, Object>>) value;
+    }
+
+    private Object readValue() throws IOException {
+        skipSpace();
+        if (pos == text.length())
+            throw error("a value");
+        char c = text.charAt(pos);
+        if (c == '{') {
+            Map<String, Object> object = new LinkedHashMap<String, Object>();
+            pos++;
+            if (!skip('}')) {
+                do {
+                    skipSpace();
+                    String name = readString();
+                    expect(':');
+                    object.put(name, readValue());
+                } while (skip(','));
+                expect('}');
+            }
+            return object;
+        }
+        if (c == '[') {
+            List<Object> array = new ArrayList<Object>();
+            pos++;
+            if (!skip(']')) {
+                do
+                    array.add(readValue());
+                while (skip(','));
+                expect(']');
+            }
+            return array;
+        }
+        if (c == '"')
+            return readString();
+        int start = pos;
+        while (pos < text.length() && "{}[],: \t\r\n\"".indexOf(
+                text.charAt(pos)) < 0)
+            pos++;
+        String word = text.substring(start, pos);
+        switch (word) {
+            case "null":
+                return null;
+            case "true":
+                return Boolean.TRUE;
+            case "false":
+                return Boolean.FALSE;
+            default:
+                try {
+                    return new BigDecimal(word);
+                } catch (NumberFormatException e) {
+                    pos = start;
+                    throw error("a value");
+                }
+        }
+    }
+
+    private String readString() throws IOException {
+        if (pos == text.length() || text.charAt(pos) != '"')
+            throw error("a string");
+        StringBuilder string = new StringBuilder();
+        for (pos++; pos < text.length() && text.charAt(pos) != '"'; pos++) {
+            if (text.charAt(pos) == '\\')
+                pos++;
+            if (pos < text.length())
+                string.append(text.charAt(pos));
+        }
+        expect('"');
+        return string.toString();
+    }
+
+    private void skipSpace() {
+        while (pos < text.length()
+                && Character.isWhitespace(text.charAt(pos)))
+            pos++;
+    }
+
+    /**
+     * @return Whether the next character (after any space) is c, which is
+     *         then skipped
+     */
+    private boolean skip(char c) {
+        skipSpace();
+        if (pos < text.length() && text.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) throws IOException {
+        if (!skip(c))
+            throw error("'" + c + "'");
+    }
+
+    private IOException error(String expected) {
+        return new IOException("JSON: expected " + expected + " at offset "
+                + pos);
+    }
+}
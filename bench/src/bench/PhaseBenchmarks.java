@@ -0,0 +1,190 @@
+package bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ast.Program;
+import codegenjvm.ClassModel;
+import codegenjvm.JVMCodeGenerator;
+import parser.Parser;
+import semant.ClassEnvVisitor;
+import semant.SemanticAnalyzer;
+import util.ClassTreeNode;
+import util.ErrorHandler;
+import util.PhaseTimer;
+import util.Trace;
+
+/**
+ * Benchmarks for each phase of the compiler. An operation runs one phase
+ * over every program of the corpus (see Corpus), scaled up by the scale
+ * parameter, so ops/s is the number of passes over the corpus per second.
+ * The input of a phase is prepared by running the phases before it once,
+ * outside of the measurement.
+ *
+ * Run with the gc profiler (-prof gc, as "ant run" does) to get the
+ * allocation rate next to ops/s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhaseBenchmarks {
+
+    /**
+     * The corpus, and the results of the phases before the one measured
+     */
+    @State(Scope.Benchmark)
+    public static class Input {
+        @Param({ "1", "10" })
+        public int scale;
+
+        List<Corpus.Sources> programs;
+        List<Program> asts = new ArrayList<Program>();
+        // analyzers whose environments are built and whose classes are
+        // type checked, and the user classes of each
+        List<SemanticAnalyzer> analyzers = new ArrayList<SemanticAnalyzer>();
+        List<List<ClassTreeNode>> classes = new ArrayList<List<ClassTreeNode>>();
+        List<ClassModel> classModels = new ArrayList<ClassModel>();
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            programs = Corpus.load(scale);
+            for (Corpus.Sources program : programs) {
+                Program ast = program.parse();
+                asts.add(ast);
+                SemanticAnalyzer analyzer = new SemanticAnalyzer(ast, false,
+                        ErrorHandler.collector());
+                ClassTreeNode root = analyzer.analyze();
+                analyzers.add(analyzer);
+                List<ClassTreeNode> userClasses = new ArrayList<ClassTreeNode>();
+                Corpus.addUserClasses(root, userClasses);
+                classes.add(userClasses);
+                for (ClassTreeNode classNode : userClasses)
+                    classModels.add(JVMCodeGenerator.generateClass(classNode,
+                            Trace.NONE, PhaseTimer.NONE));
+            }
+        }
+    }
+
+    /**
+     * Class trees without environments, built again for each operation of
+     * classEnv (a ClassEnvVisitor fills in the tree it visits)
+     */
+    @State(Scope.Thread)
+    public static class ClassTrees {
+        List<ClassTreeNode> roots = new ArrayList<ClassTreeNode>();
+
+        @Setup(Level.Invocation)
+        public void setUp(Input input) {
+            roots.clear();
+            for (Program ast : input.asts)
+                roots.add(new SemanticAnalyzer(ast, false,
+                        ErrorHandler.collector()).buildClassTree());
+        }
+    }
+
+    /** Scanning the sources into tokens */
+    @Benchmark
+    public int lex(Input input) {
+        int numTokens = 0;
+        for (Corpus.Sources program : input.programs)
+            numTokens += program.newParser().lex();
+        return numTokens;
+    }
+
+    /** Scanning the sources into tokens with MappedTokenManager */
+    @Benchmark
+    public int lexMapped(Input input) {
+        int numTokens = 0;
+        for (Corpus.Sources program : input.programs)
+            for (Parser parser : program.newMappedParsers())
+                numTokens += parser.lex();
+        return numTokens;
+    }
+
+    /** Parser.parse (lexing included, since the parser lexes on demand) */
+    @Benchmark
+    public void parse(Input input, Blackhole blackhole) {
+        for (Corpus.Sources program : input.programs)
+            blackhole.consume(program.parse());
+    }
+
+    /**
+     * Parsing the sources with MappedTokenManager, skipping method bodies
+     * (-Xlazy-bodies; the bodies are not parsed)
+     */
+    @Benchmark
+    public void parseLazy(Input input, Blackhole blackhole) {
+        for (Corpus.Sources program : input.programs) {
+            for (Parser parser : program.newMappedParsers()) {
+                parser.setLazyBodies(true);
+                blackhole.consume(parser.parse());
+            }
+        }
+    }
+
+    /** Building and checking the class hierarchy trees */
+    @Benchmark
+    public void classTree(Input input, Blackhole blackhole) {
+        for (Program ast : input.asts)
+            blackhole.consume(new SemanticAnalyzer(ast, false,
+                    ErrorHandler.collector()).buildClassTree());
+    }
+
+    /** Building the class environments (ClassEnvVisitor) */
+    @Benchmark
+    public void classEnv(ClassTrees trees, Blackhole blackhole) {
+        for (ClassTreeNode root : trees.roots) {
+            new ClassEnvVisitor(root, ErrorHandler.collector(),
+                    PhaseTimer.NONE).visit(root);
+            blackhole.consume(root);
+        }
+    }
+
+    /** Type checking each user class (TypeCheckVisitor) */
+    @Benchmark
+    public int typeCheck(Input input) {
+        int numErrors = 0;
+        for (int i = 0; i < input.analyzers.size(); i++) {
+            ErrorHandler errors = ErrorHandler.collector();
+            for (ClassTreeNode classNode : input.classes.get(i))
+                input.analyzers.get(i).typeCheck(classNode, errors);
+            numErrors += errors.getNumErrors();
+        }
+        return numErrors;
+    }
+
+    /** Generating the code of each user class (CodeGenVisitor) */
+    @Benchmark
+    public void codeGen(Input input, Blackhole blackhole) {
+        for (List<ClassTreeNode> userClasses : input.classes) {
+            for (ClassTreeNode classNode : userClasses)
+                blackhole.consume(JVMCodeGenerator.generateClass(classNode,
+                        Trace.NONE, PhaseTimer.NONE));
+        }
+    }
+
+    /** Writing the generated classes in the class file format */
+    @Benchmark
+    public void classFile(Input input, Blackhole blackhole) {
+        for (ClassModel classModel : input.classModels)
+            blackhole.consume(classModel.toClassFile());
+    }
+}
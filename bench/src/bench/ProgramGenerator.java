@@ -0,0 +1,564 @@
+package bench;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates large Bantam programs for scalability testing. The shape of a
+ * program is set by parameters (number of classes, depth and fan-out of
+ * the class hierarchy, fields and methods per class, statements per
+ * method, statement nesting depth and expression length), and everything
+ * else is chosen by a random generator with a fixed seed, so the same
+ * parameters and seed always give the same program.
+ *
+ * The programs compile and terminate: loops run a few times, and a method
+ * only calls methods that make no calls themselves (the first method of
+ * its class or of an ancestor), so the work done at run time grows
+ * linearly with the size of the program. Main calls every method of every
+ * class once and prints the sum of the results.
+ *
+ * Run from the command line to write a program to a file (or stdout):
+ *
+ *     java bench.ProgramGenerator [-seed n] [-classes n] [-depth n]
+ *         [-fanout n] [-rootodds n] [-fields n] [-methods n]
+ *         [-statements n] [-nesting n] [-exprlen n] [-o file.btm]
+ */
+public class ProgramGenerator {
+    /**
+     * Most fields a class can see. The field symbol table of a class holds
+     * each field it declares or inherits twice (f and this.f), and
+     * ClassEnvVisitor allows at most 1500 entries.
+     */
+    public static final int MAX_VISIBLE_FIELDS = 750;
+
+    // calls in each method of Main, which are split up so that no method
+    // gets near the 64K limit on the size of a method's code
+    private static final int CALLS_PER_PART = 200;
+
+    private long seed = 0;
+    private int numClasses = 10;
+    private int depth = 3;
+    private int fanOut = 3;
+    private int rootOdds = 4;
+    private int numFields = 5;
+    private int numMethods = 5;
+    private int numStatements = 10;
+    private int nesting = 3;
+    private int exprLength = 4;
+
+    private Random random;
+    private StringBuilder out;
+
+    /**
+     * A class of the generated program
+     */
+    private static class GenClass {
+        String name;
+        GenClass parent;
+        int depth;
+        int numChildren;
+        // names of the int and boolean fields the class declares
+        List<String> intFields = new ArrayList<String>();
+        List<String> booleanFields = new ArrayList<String>();
+
+        GenClass(String name, GenClass parent) {
+            this.name = name;
+            this.parent = parent;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+        }
+    }
+
+    /**
+     * The variables visible while generating a method body
+     */
+    private static class Scope {
+        GenClass genClass;
+        // whether the method may call the leaf methods of its class and
+        // its ancestors
+        boolean calls;
+        // int variables that may be assigned, int variables that may only
+        // be read (loop counters) and boolean variables
+        List<String> ints = new ArrayList<String>();
+        List<String> counters = new ArrayList<String>();
+        List<String> booleans = new ArrayList<String>();
+        int numLocals;
+        int numLoops;
+    }
+
+    /**
+     * @param seed
+     *        Seed of the random generator
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param numClasses
+     *        Number of classes, besides Main
+     */
+    public void setClasses(int numClasses) {
+        this.numClasses = numClasses;
+    }
+
+    /**
+     * @param depth
+     *        Most classes between a class and Object (0 for every class to
+     *        extend Object)
+     */
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * @param fanOut
+     *        Most subclasses of a class (other than Object)
+     */
+    public void setFanOut(int fanOut) {
+        this.fanOut = fanOut;
+    }
+
+    /**
+     * @param rootOdds
+     *        One class in rootOdds extends Object even if it could extend
+     *        another class (0 for a class to extend Object only if no other
+     *        class can be its parent, so fan-out 1 gives one long chain)
+     */
+    public void setRootOdds(int rootOdds) {
+        this.rootOdds = rootOdds;
+    }
+
+    /**
+     * @param numFields
+     *        Fields each class declares
+     */
+    public void setFields(int numFields) {
+        this.numFields = numFields;
+    }
+
+    /**
+     * @param numMethods
+     *        Methods each class declares
+     */
+    public void setMethods(int numMethods) {
+        this.numMethods = numMethods;
+    }
+
+    /**
+     * @param numStatements
+     *        Statements in the body of each method (not counting nested
+     *        statements and the return statement)
+     */
+    public void setStatements(int numStatements) {
+        this.numStatements = numStatements;
+    }
+
+    /**
+     * @param nesting
+     *        Most levels of nested statements (if, while, for and blocks)
+     */
+    public void setNesting(int nesting) {
+        this.nesting = nesting;
+    }
+
+    /**
+     * @param exprLength
+     *        Most operands of an arithmetic expression
+     */
+    public void setExprLength(int exprLength) {
+        this.exprLength = exprLength;
+    }
+
+    /**
+     * Generate a program
+     *
+     * @return The source of the program
+     * @throws IllegalArgumentException
+     *         if the parameters are out of range
+     */
+    public String generate() {
+        check();
+        random = new Random(seed);
+        out = new StringBuilder();
+        out.append("/* generated by bench.ProgramGenerator: -seed " + seed
+                + " -classes " + numClasses + " -depth " + depth
+                + " -fanout " + fanOut + " -rootodds " + rootOdds
+                + " -fields " + numFields
+                + " -methods " + numMethods + " -statements "
+                + numStatements + " -nesting " + nesting + " -exprlen "
+                + exprLength + " */\n\n");
+
+        List<GenClass> classes = buildHierarchy();
+        for (GenClass genClass : classes)
+            writeClass(genClass);
+        writeMain(classes);
+
+        String program = out.toString();
+        out = null;
+        return program;
+    }
+
+    private void check() {
+        if (numClasses < 0 || depth < 0 || fanOut < 1 || rootOdds < 0
+                || numFields < 0
+                || numMethods < 1 || numStatements < 0 || nesting < 0
+                || exprLength < 1)
+            throw new IllegalArgumentException("bad program shape: classes, "
+                    + "depth, fields, statements and nesting must be at "
+                    + "least 0, rootodds at least 0, and fanout, methods "
+                    + "and exprlen at least 1");
+        if (numFields * (depth + 1) > MAX_VISIBLE_FIELDS)
+            throw new IllegalArgumentException("fields * (depth + 1) must be "
+                    + "at most " + MAX_VISIBLE_FIELDS + " (fields a class "
+                    + "can see, including inherited ones)");
+    }
+
+    /**
+     * Choose the parent of each class: usually a random class that is not
+     * at the deepest level and has fewer than fanOut children, but Object
+     * if there is none and one time in rootOdds (so there are several
+     * trees)
+     *
+     * @return The classes, parents before children
+     */
+    private List<GenClass> buildHierarchy() {
+        List<GenClass> classes = new ArrayList<GenClass>();
+        List<GenClass> open = new ArrayList<GenClass>();
+        for (int i = 0; i < numClasses; i++) {
+            GenClass parent = null;
+            if (!open.isEmpty()
+                    && (rootOdds == 0 || random.nextInt(rootOdds) != 0)) {
+                int index = random.nextInt(open.size());
+                parent = open.get(index);
+                if (++parent.numChildren == fanOut)
+                    open.remove(index);
+            }
+            GenClass genClass = new GenClass("C" + i, parent);
+            if (genClass.depth < depth)
+                open.add(genClass);
+            classes.add(genClass);
+        }
+        return classes;
+    }
+
+    private void writeClass(GenClass genClass) {
+        out.append("class " + genClass.name);
+        if (genClass.parent != null)
+            out.append(" extends " + genClass.parent.name);
+        out.append(" {\n");
+
+        for (int i = 0; i < numFields; i++) {
+            String name = "f" + genClass.name + "_" + i;
+            if (random.nextInt(4) == 0) {
+                genClass.booleanFields.add(name);
+                out.append("    boolean " + name + " = "
+                        + random.nextBoolean() + ";\n");
+            } else {
+                genClass.intFields.add(name);
+                out.append("    int " + name + " = " + random.nextInt(100)
+                        + ";\n");
+            }
+        }
+
+        for (int i = 0; i < numMethods; i++) {
+            out.append("\n    int m" + genClass.name + "_" + i
+                    + "(int a, int b) {\n");
+            Scope scope = new Scope();
+            scope.genClass = genClass;
+            scope.calls = i > 0;
+            scope.ints.add("a");
+            scope.ints.add("b");
+            for (GenClass c = genClass; c != null; c = c.parent) {
+                scope.ints.addAll(c.intFields);
+                scope.booleans.addAll(c.booleanFields);
+            }
+            for (int j = 0; j < numStatements; j++)
+                writeStatement(scope, 0, "        ");
+            out.append("        return " + intExpr(scope) + ";\n");
+            out.append("    }\n");
+        }
+        out.append("}\n\n");
+    }
+
+    private void writeMain(List<GenClass> classes) {
+        out.append("class Main {\n");
+        int numParts = 0;
+        for (int first = 0; first < classes.size(); first += CALLS_PER_PART) {
+            out.append("    int part" + numParts++ + "() {\n");
+            out.append("        int sum = 0;\n");
+            int last = Math.min(first + CALLS_PER_PART, classes.size());
+            for (int i = first; i < last; i++) {
+                GenClass genClass = classes.get(i);
+                String var = "o" + genClass.name;
+                out.append("        " + genClass.name + " " + var + " = new "
+                        + genClass.name + "();\n");
+                for (int j = 0; j < numMethods; j++)
+                    out.append("        sum = sum + " + var + ".m" + genClass.name
+                            + "_" + j + "(" + i + ", " + j + ");\n");
+            }
+            out.append("        return sum;\n");
+            out.append("    }\n\n");
+        }
+
+        out.append("    void main() {\n");
+        out.append("        int sum = 0;\n");
+        for (int i = 0; i < numParts; i++)
+            out.append("        sum = sum + part" + i + "();\n");
+        out.append("        (new TextIO()).putInt(sum).putString(\"\\n\");\n");
+        out.append("    }\n");
+        out.append("}\n");
+    }
+
+    /**
+     * Write a statement, and any statements nested in it
+     *
+     * @param level
+     *        Number of statements it is nested in
+     */
+    private void writeStatement(Scope scope, int level, String indent) {
+        int kind = random.nextInt(level < nesting ? 9 : 5);
+        switch (kind) {
+            case 0:
+            case 1: {
+                // declaration
+                String name = "v" + scope.numLocals++;
+                if (random.nextInt(4) == 0) {
+                    out.append(indent + "boolean " + name + " = "
+                            + booleanExpr(scope) + ";\n");
+                    scope.booleans.add(name);
+                } else {
+                    out.append(indent + "int " + name + " = "
+                            + intExpr(scope) + ";\n");
+                    scope.ints.add(name);
+                }
+                break;
+            }
+            case 2:
+                out.append(indent + pick(scope.ints) + " = " + intExpr(scope)
+                        + ";\n");
+                break;
+            case 3:
+                if (scope.booleans.isEmpty())
+                    out.append(indent + pick(scope.ints) + "++;\n");
+                else
+                    out.append(indent + pick(scope.booleans) + " = "
+                            + booleanExpr(scope) + ";\n");
+                break;
+            case 4:
+                out.append(indent + pick(scope.ints) + " = "
+                        + pick(scope.ints) + " + 1;\n");
+                break;
+            case 5: {
+                out.append(indent + "if (" + booleanExpr(scope) + ") {\n");
+                writeBlockBody(scope, level, indent);
+                if (random.nextBoolean()) {
+                    out.append(indent + "}\n" + indent + "else {\n");
+                    writeBlockBody(scope, level, indent);
+                }
+                out.append(indent + "}\n");
+                break;
+            }
+            case 6: {
+                // the counter is declared outside of the loop, and the loop
+                // runs at most 3 times
+                String counter = "w" + scope.numLoops++;
+                out.append(indent + "int " + counter + " = 0;\n");
+                out.append(indent + "while (" + counter + " < "
+                        + (1 + random.nextInt(3)) + ") {\n");
+                out.append(indent + "        " + counter + " = " + counter
+                        + " + 1;\n");
+                writeLoopBody(scope, level, indent, counter);
+                out.append(indent + "}\n");
+                break;
+            }
+            case 7: {
+                String counter = "w" + scope.numLoops++;
+                out.append(indent + "int " + counter + " = 0;\n");
+                out.append(indent + "for (" + counter + " = 0; " + counter
+                        + " < " + (1 + random.nextInt(3)) + "; " + counter
+                        + "++) {\n");
+                writeLoopBody(scope, level, indent, counter);
+                out.append(indent + "}\n");
+                break;
+            }
+            default:
+                out.append(indent + "{\n");
+                writeBlockBody(scope, level, indent);
+                out.append(indent + "}\n");
+        }
+    }
+
+    /**
+     * Write the statements of a block; variables declared in it are not
+     * visible after it
+     */
+    private void writeBlockBody(Scope scope, int level, String indent) {
+        int numInts = scope.ints.size();
+        int numBooleans = scope.booleans.size();
+        int numStatements = 1 + random.nextInt(3);
+        for (int i = 0; i < numStatements; i++)
+            writeStatement(scope, level + 1, indent + "    ");
+        scope.ints.subList(numInts, scope.ints.size()).clear();
+        scope.booleans.subList(numBooleans, scope.booleans.size()).clear();
+    }
+
+    private void writeLoopBody(Scope scope, int level, String indent,
+            String counter) {
+        scope.counters.add(counter);
+        writeBlockBody(scope, level, indent);
+        if (random.nextInt(4) == 0)
+            out.append(indent + "    if (" + booleanExpr(scope) + ")\n"
+                    + indent + "        break;\n");
+        scope.counters.remove(scope.counters.size() - 1);
+    }
+
+    /**
+     * @return An arithmetic expression of up to exprLength operands
+     */
+    private String intExpr(Scope scope) {
+        int numOperands = 1 + random.nextInt(exprLength);
+        StringBuilder expr = new StringBuilder(intOperand(scope));
+        for (int i = 1; i < numOperands; i++) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    expr.append(" + ");
+                    break;
+                case 1:
+                    expr.append(" - ");
+                    break;
+                default:
+                    expr.append(" * ");
+            }
+            expr.append(intOperand(scope));
+        }
+        return expr.toString();
+    }
+
+    private String intOperand(Scope scope) {
+        int kind = random.nextInt(scope.calls ? 6 : 5);
+        if (kind == 0)
+            return Integer.toString(random.nextInt(100));
+        if (kind == 1 && !scope.counters.isEmpty())
+            return pick(scope.counters);
+        if (kind == 5) {
+            // a method that makes no calls: the first of this class or of
+            // an ancestor
+            GenClass target = scope.genClass;
+            for (int up = random.nextInt(target.depth + 1); up > 0; up--)
+                target = target.parent;
+            return "m" + target.name + "_0(" + pick(scope.ints) + ", "
+                    + random.nextInt(100) + ")";
+        }
+        if (kind == 4 && exprLength > 1)
+            return "(" + pick(scope.ints) + " % 7)";
+        return pick(scope.ints);
+    }
+
+    /**
+     * @return A comparison, possibly negated or combined with another
+     */
+    private String booleanExpr(Scope scope) {
+        String expr;
+        if (!scope.booleans.isEmpty() && random.nextInt(3) == 0)
+            expr = pick(scope.booleans);
+        else {
+            String[] operators = { " < ", " <= ", " > ", " >= ", " == ",
+                " != " };
+            expr = intOperand(scope)
+                    + operators[random.nextInt(operators.length)]
+                    + intOperand(scope);
+        }
+        switch (random.nextInt(4)) {
+            case 0:
+                return "!(" + expr + ")";
+            case 1:
+                return expr + (random.nextBoolean() ? " && " : " || ")
+                        + pick(scope.ints) + " < " + random.nextInt(100);
+            default:
+                return expr;
+        }
+    }
+
+    private String pick(List<String> names) {
+        return names.get(random.nextInt(names.size()));
+    }
+
+    /**
+     * Generate a program, with the shape given by the command line
+     *
+     * @param args
+     *        The command line (see the class comment)
+     * @throws IOException
+     *         if the program cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        ProgramGenerator generator = new ProgramGenerator();
+        String outFile = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-o") && i + 1 < args.length) {
+                    outFile = args[++i];
+                    continue;
+                }
+                if (i + 1 == args.length)
+                    throw new IllegalArgumentException("bad argument: "
+                            + args[i]);
+                int value;
+                try {
+                    value = Integer.parseInt(args[i + 1]);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(args[i]
+                            + " requires a number");
+                }
+                switch (args[i++]) {
+                    case "-seed":
+                        generator.setSeed(value);
+                        break;
+                    case "-classes":
+                        generator.setClasses(value);
+                        break;
+                    case "-depth":
+                        generator.setDepth(value);
+                        break;
+                    case "-fanout":
+                        generator.setFanOut(value);
+                        break;
+                    case "-rootodds":
+                        generator.setRootOdds(value);
+                        break;
+                    case "-fields":
+                        generator.setFields(value);
+                        break;
+                    case "-methods":
+                        generator.setMethods(value);
+                        break;
+                    case "-statements":
+                        generator.setStatements(value);
+                        break;
+                    case "-nesting":
+                        generator.setNesting(value);
+                        break;
+                    case "-exprlen":
+                        generator.setExprLength(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("bad argument: "
+                                + args[i - 1]);
+                }
+            }
+            String program = generator.generate();
+            try (Writer out = outFile == null ? new PrintWriter(System.out)
+                    : new FileWriter(outFile)) {
+                out.write(program);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
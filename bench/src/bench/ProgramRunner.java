@@ -0,0 +1,80 @@
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Runs a compiled Bantam program over and over in one JVM, for
+ * RuntimeBench. The program (class Main) must be on the classpath, and its
+ * input is read from standard input once and given to it again on every
+ * run. What the program writes is kept from standard output; every run
+ * must write the same, or the program is not deterministic enough to
+ * measure.
+ *
+ * For each run a line is printed:
+ *
+ *     warmup|measure nanoseconds bytes-allocated
+ *
+ * This class is run in a JVM of its own, with none of the compiler's
+ * classes (the compiler has a class Main too), so it must not use them.
+ *
+ *     java -cp program.jar:classes bench.ProgramRunner warmups measures
+ */
+public class ProgramRunner {
+    /**
+     * @param args
+     *        The number of warmup runs and the number of measured runs
+     * @throws Exception
+     *         if the program cannot be run, or fails
+     */
+    public static void main(String[] args) throws Exception {
+        int warmups = Integer.parseInt(args[0]);
+        int measures = Integer.parseInt(args[1]);
+        byte[] input = System.in.readAllBytes();
+        Method main = Class.forName("Main").getMethod("main", String[].class);
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long thread = Thread.currentThread().threadId();
+
+        PrintStream out = System.out;
+        InputStream in = System.in;
+        byte[] expected = null;
+        try {
+            for (int run = 0; run < warmups + measures; run++) {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                System.setIn(new ByteArrayInputStream(input));
+                System.setOut(new PrintStream(output));
+
+                long bytes = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                try {
+                    main.invoke(null, (Object) new String[0]);
+                } catch (InvocationTargetException e) {
+                    throw new Exception("run " + run + " failed", e.getCause());
+                }
+                long time = System.nanoTime() - start;
+                bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+
+                System.out.flush();
+                System.setOut(out);
+                if (expected == null)
+                    expected = output.toByteArray();
+                else if (!Arrays.equals(expected, output.toByteArray()))
+                    throw new Exception("run " + run + " wrote something "
+                            + "different from the first run");
+                out.println((run < warmups ? "warmup " : "measure ") + time
+                        + " " + bytes);
+            }
+        } finally {
+            System.setOut(out);
+            System.setIn(in);
+        }
+    }
+}
@@ -0,0 +1,583 @@
+package bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import ast.Program;
+import codegenjvm.ClassModel;
+import codegenjvm.JVMCodeGenerator;
+import semant.ClassEnvVisitor;
+import semant.SemanticAnalyzer;
+import util.ClassTreeNode;
+import util.ErrorHandler;
+import util.PhaseTimer;
+import util.Trace;
+
+/**
+ * Fails when the compiler, or the code it generates, has become slower
+ * than a stored baseline. Two kinds of benchmarks are measured:
+ *
+ *     phase.name     one pass of a phase of the compiler over every program
+ *                    of the corpus (see Corpus), -samples times after
+ *                    -warmups passes, in each of -forks new JVMs (so the
+ *                    samples vary as much as the JIT's choices do)
+ *     program.name   one run of a compiled program in a warmed up JVM (see
+ *                    RuntimeBench), -measures times after -warmups runs
+ *
+ * For each benchmark the mean time and the mean heap allocated are
+ * compared with the baseline's. The change is given as a confidence
+ * interval (-confidence, 95% by default) of the relative difference of the
+ * means (Welch's t interval, from the means, standard deviations and
+ * numbers of samples of both), so a noisy benchmark needs a bigger change
+ * to be flagged than a quiet one. A benchmark has regressed if all of the
+ * interval is above the threshold: -time-threshold (10% by default) for
+ * time, -alloc-threshold (2%) for allocation. The allocation of a phase
+ * hardly varies, so it can be held to a small threshold; the time
+ * threshold should be over the drift of the machine's speed from one run
+ * to the next (which no number of samples in one run shows), so a busy
+ * machine needs a bigger one.
+ *
+ * The results are printed as a table of changes and written as JSON (-o);
+ * the run fails (exit status 1) if anything regressed. Baselines are only
+ * comparable on the machine (and JVM) that measured them, so the baseline
+ * (-baseline, baseline.json by default) should be measured again, with
+ * "ant gate-baseline", when the machine changes or a slowdown is accepted.
+ *
+ * Run with
+ *
+ *     java bench.RegressionGate [-compiler dir] [-work dir] [-program name]...
+ *         [-forks n] [-samples n] [-warmups n] [-measures n]
+ *         [-confidence percent]
+ *         [-time-threshold percent] [-alloc-threshold percent]
+ *         [-phases-only] [-o results.json] [-baseline baseline.json]
+ */
+public class RegressionGate {
+    private static final String[] PHASES = { "lex", "parse", "classtree",
+        "classenv", "typecheck", "codegen", "classfile" };
+
+    private int forks = 3;
+    private int samples = 30;
+    private int warmups = 20;
+    private int measures = 20;
+    private double confidence = 95;
+    private double timeThreshold = 10;
+    private double allocThreshold = 2;
+    private boolean phasesOnly;
+    private RuntimeBench runtime = new RuntimeBench();
+
+    /**
+     * The samples of one benchmark, summarized
+     */
+    static class Result {
+        double ms;
+        double msStd;
+        double allocKB;
+        double allocKBStd;
+        int n;
+
+        /**
+         * @param times
+         *        The time of each sample (ms)
+         * @param allocs
+         *        The heap allocated by each sample (KB)
+         */
+        Result(double[] times, double[] allocs) {
+            n = times.length;
+            ms = mean(times);
+            msStd = std(times, ms);
+            allocKB = mean(allocs);
+            allocKBStd = std(allocs, allocKB);
+        }
+
+        Result() {
+        }
+    }
+
+    /**
+     * A confidence interval of a relative change, in percent
+     */
+    static class Change {
+        double percent;
+        double low;
+        double high;
+    }
+
+    /**
+     * Measure each phase over the corpus in -forks new JVMs (running
+     * samplePhases)
+     *
+     * @return The results by benchmark name (phase.name), of the samples of
+     *         every JVM
+     * @throws IOException
+     *         if the corpus cannot be read
+     */
+    Map<String, Result> measurePhases() throws IOException,
+            InterruptedException {
+        List<List<double[]>> phaseSamples = new ArrayList<List<double[]>>();
+        for (int phase = 0; phase < PHASES.length; phase++)
+            phaseSamples.add(new ArrayList<double[]>());
+        for (int fork = 0; fork < forks; fork++) {
+            Process process = new ProcessBuilder(new File(System.getProperty(
+                    "java.home"), "bin/java").getPath(), "-Dbench.corpus="
+                    + Corpus.getDirectory(), "-cp", System.getProperty(
+                    "java.class.path"), "bench.RegressionGate",
+                    "-sample-phases", "-samples", "" + samples, "-warmups",
+                    "" + warmups).redirectError(ProcessBuilder.Redirect
+                        .INHERIT).start();
+            for (String line : new String(process.getInputStream()
+                    .readAllBytes(), StandardCharsets.UTF_8).split("\n")) {
+                String[] fields = line.trim().split(" ");
+                if (fields.length == 3)
+                    phaseSamples.get(Arrays.asList(PHASES).indexOf(fields[0]))
+                        .add(new double[] { Double.parseDouble(fields[1]),
+                            Double.parseDouble(fields[2]) });
+            }
+            if (process.waitFor() != 0)
+                throw new IOException("measuring the phases failed");
+        }
+
+        Map<String, Result> results = new LinkedHashMap<String, Result>();
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            List<double[]> measured = phaseSamples.get(phase);
+            double[] times = new double[measured.size()];
+            double[] allocs = new double[measured.size()];
+            for (int i = 0; i < measured.size(); i++) {
+                times[i] = measured.get(i)[0];
+                allocs[i] = measured.get(i)[1];
+            }
+            results.put("phase." + PHASES[phase], new Result(times, allocs));
+        }
+        return results;
+    }
+
+    /**
+     * Run each phase over the corpus -warmups times, then -samples times,
+     * printing a line for each of these samples:
+     *
+     *     phase ms allocated-KB
+     *
+     * @throws IOException
+     *         if the corpus cannot be read
+     */
+    void samplePhases(PrintStream out) throws IOException {
+        List<Corpus.Sources> programs = Corpus.load(1);
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long thread = Thread.currentThread().threadId();
+
+        for (int sample = -warmups; sample < samples; sample++) {
+            System.gc();
+            List<Program> asts = new ArrayList<Program>();
+            List<SemanticAnalyzer> analyzers = new ArrayList<SemanticAnalyzer>();
+            List<ClassTreeNode> roots = new ArrayList<ClassTreeNode>();
+            List<List<ClassTreeNode>> classes = new ArrayList<List<ClassTreeNode>>();
+            List<ClassModel> classModels = new ArrayList<ClassModel>();
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                long bytes = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                switch (PHASES[phase]) {
+                    case "lex":
+                        for (Corpus.Sources program : programs)
+                            program.newParser().lex();
+                        break;
+                    case "parse":
+                        for (Corpus.Sources program : programs)
+                            asts.add(program.parse());
+                        break;
+                    case "classtree":
+                        for (Program ast : asts) {
+                            SemanticAnalyzer analyzer = new SemanticAnalyzer(
+                                    ast, false, ErrorHandler.collector());
+                            analyzers.add(analyzer);
+                            roots.add(analyzer.buildClassTree());
+                        }
+                        break;
+                    case "classenv":
+                        for (ClassTreeNode root : roots) {
+                            new ClassEnvVisitor(root, ErrorHandler.collector(),
+                                    PhaseTimer.NONE).visit(root);
+                            List<ClassTreeNode> userClasses =
+                                new ArrayList<ClassTreeNode>();
+                            Corpus.addUserClasses(root, userClasses);
+                            classes.add(userClasses);
+                        }
+                        break;
+                    case "typecheck":
+                        for (int i = 0; i < analyzers.size(); i++) {
+                            ErrorHandler errors = ErrorHandler.collector();
+                            for (ClassTreeNode classNode : classes.get(i))
+                                analyzers.get(i).typeCheck(classNode, errors);
+                        }
+                        break;
+                    case "codegen":
+                        for (List<ClassTreeNode> userClasses : classes)
+                            for (ClassTreeNode classNode : userClasses)
+                                classModels.add(JVMCodeGenerator.generateClass(
+                                        classNode, Trace.NONE,
+                                        PhaseTimer.NONE));
+                        break;
+                    case "classfile":
+                        for (ClassModel classModel : classModels)
+                            classModel.toClassFile();
+                        break;
+                }
+                long time = System.nanoTime() - start;
+                bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+                if (sample >= 0)
+                    out.printf(Locale.ROOT, "%s %.4f %.3f%n", PHASES[phase],
+                            time / 1e6, bytes / 1024.0);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Measure the steady state of each program
+     *
+     * @param names
+     *        The programs (of RuntimeBench's), or all if empty
+     * @return The results by benchmark name (program.name)
+     * @throws IOException
+     *         if a program cannot be compiled or run
+     */
+    Map<String, Result> measurePrograms(List<String> names)
+            throws IOException, InterruptedException {
+        runtime.setWarmups(warmups);
+        runtime.setMeasures(measures);
+        Map<String, Result> results = new LinkedHashMap<String, Result>();
+        for (RuntimeBench.Workload workload : RuntimeBench.WORKLOADS) {
+            if (!names.isEmpty() && !names.contains(workload.name))
+                continue;
+            System.err.println("measuring " + workload.name);
+            List<long[]> runs = runtime.runSteady(workload,
+                    runtime.compile(workload));
+            double[] times = new double[runs.size()];
+            double[] allocs = new double[runs.size()];
+            for (int i = 0; i < runs.size(); i++) {
+                times[i] = runs.get(i)[0] / 1e6;
+                allocs[i] = runs.get(i)[1] / 1024.0;
+            }
+            results.put("program." + workload.name,
+                    new Result(times, allocs));
+        }
+        return results;
+    }
+
+    /**
+     * The confidence interval of the relative change from a baseline mean
+     * to a mean: Welch's t interval of the difference of the means, divided
+     * by the baseline mean
+     *
+     * @return The change, or null if the baseline mean is 0
+     */
+    Change change(double mean, double std, int n, double baseMean,
+            double baseStd, int baseN) {
+        if (baseMean == 0)
+            return null;
+        double varMean = std * std / n;
+        double baseVarMean = baseStd * baseStd / baseN;
+        double error = Math.sqrt(varMean + baseVarMean);
+        double width = 0;
+        if (error > 0) {
+            // Welch-Satterthwaite degrees of freedom
+            double df = (varMean + baseVarMean) * (varMean + baseVarMean)
+                / (varMean * varMean / Math.max(n - 1, 1)
+                    + baseVarMean * baseVarMean / Math.max(baseN - 1, 1));
+            width = tQuantile(1 - (1 - confidence / 100) / 2, df) * error;
+        }
+        Change change = new Change();
+        change.percent = (mean - baseMean) / baseMean * 100;
+        change.low = (mean - baseMean - width) / baseMean * 100;
+        change.high = (mean - baseMean + width) / baseMean * 100;
+        return change;
+    }
+
+    /**
+     * @return The p quantile of Student's t distribution with df degrees of
+     *         freedom (the normal quantile, corrected by the first terms of
+     *         its Cornish-Fisher expansion)
+     */
+    static double tQuantile(double p, double df) {
+        double z = normalQuantile(p);
+        double z3 = z * z * z;
+        double z5 = z3 * z * z;
+        return z + (z3 + z) / (4 * df)
+            + (5 * z5 + 16 * z3 + 3 * z) / (96 * df * df);
+    }
+
+    /**
+     * @return The p quantile (p at least 0.5) of the standard normal
+     *         distribution (Abramowitz and Stegun 26.2.23)
+     */
+    static double normalQuantile(double p) {
+        double t = Math.sqrt(-2 * Math.log(1 - p));
+        return t - (2.515517 + 0.802853 * t + 0.010328 * t * t)
+            / (1 + 1.432788 * t + 0.189269 * t * t + 0.001308 * t * t * t);
+    }
+
+    /**
+     * Print each benchmark's change from the baseline
+     *
+     * @param baseline
+     *        The baseline (empty for none)
+     * @return The number of regressions
+     */
+    int report(Map<String, Result> results, Map<String, Result> baseline,
+            PrintWriter out) {
+        String ci = String.format(Locale.ROOT, "(%.0f%% CI)", confidence);
+        out.printf("%-24s %9s %9s %-22s %10s %10s %-22s %s%n", "benchmark",
+                "base ms", "ms", "change " + ci, "base KB", "KB",
+                "change " + ci, "");
+        int regressions = 0;
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            Result result = entry.getValue();
+            Result base = baseline.get(entry.getKey());
+            if (base == null) {
+                out.printf(Locale.ROOT, "%-24s %9s %9.3f %-22s %10s %10.1f "
+                        + "%-22s %s%n", entry.getKey(), "-", result.ms, "",
+                        "-", result.allocKB, "", "new");
+                continue;
+            }
+            Change time = change(result.ms, result.msStd, result.n, base.ms,
+                    base.msStd, base.n);
+            Change alloc = change(result.allocKB, result.allocKBStd,
+                    result.n, base.allocKB, base.allocKBStd, base.n);
+            List<String> verdicts = new ArrayList<String>();
+            verdicts.add(verdict("time", time, timeThreshold));
+            verdicts.add(verdict("alloc", alloc, allocThreshold));
+            verdicts.removeAll(Collections.singleton(null));
+            for (String verdict : verdicts)
+                if (verdict.endsWith("REGRESSED"))
+                    regressions++;
+            out.printf(Locale.ROOT, "%-24s %9.3f %9.3f %-22s %10.1f %10.1f "
+                    + "%-22s %s%n", entry.getKey(), base.ms, result.ms,
+                    format(time), base.allocKB, result.allocKB,
+                    format(alloc), verdicts.isEmpty() ? "ok"
+                        : String.join(", ", verdicts));
+        }
+        for (String name : baseline.keySet())
+            if (!results.containsKey(name) && (!phasesOnly
+                    || name.startsWith("phase.")))
+                out.printf("%-24s (in the baseline, not measured)%n", name);
+        return regressions;
+    }
+
+    /**
+     * @return "kind REGRESSED" if all of the interval is over the
+     *         threshold, "kind improved" if all of it is under minus the
+     *         threshold, or null
+     */
+    private static String verdict(String kind, Change change,
+            double threshold) {
+        if (change == null)
+            return null;
+        if (change.low > threshold)
+            return kind + " REGRESSED";
+        if (change.high < -threshold)
+            return kind + " improved";
+        return null;
+    }
+
+    private static String format(Change change) {
+        if (change == null)
+            return "-";
+        return String.format(Locale.ROOT, "%+6.1f%% [%+.1f, %+.1f]",
+                change.percent, change.low, change.high);
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values)
+            sum += value;
+        return sum / values.length;
+    }
+
+    /**
+     * @return The sample standard deviation
+     */
+    private static double std(double[] values, double mean) {
+        if (values.length < 2)
+            return 0;
+        double squares = 0;
+        for (double value : values)
+            squares += (value - mean) * (value - mean);
+        return Math.sqrt(squares / (values.length - 1));
+    }
+
+    /**
+     * Write results as JSON (see Json), one line per benchmark
+     */
+    static void writeJson(Map<String, Result> results, PrintWriter out) {
+        Map<String, Object> json = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            Result result = entry.getValue();
+            Map<String, Object> fields = new LinkedHashMap<String, Object>();
+            fields.put("ms", Json.number(result.ms, 4));
+            fields.put("msStd", Json.number(result.msStd, 4));
+            fields.put("allocKB", Json.number(result.allocKB, 3));
+            fields.put("allocKBStd", Json.number(result.allocKBStd, 3));
+            fields.put("n", result.n);
+            json.put(entry.getKey(), fields);
+        }
+        Json.write(json, out);
+    }
+
+    /**
+     * Read results written by writeJson
+     */
+    static Map<String, Result> readJson(File file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<String, Result>();
+        for (Map.Entry<String, Map<String, Object>> entry : Json
+            .readObjects(file).entrySet()) {
+            Map<String, Object> fields = entry.getValue();
+            Result result = new Result();
+            result.ms = Json.getDouble(fields, "ms");
+            result.msStd = Json.getDouble(fields, "msStd");
+            result.allocKB = Json.getDouble(fields, "allocKB");
+            result.allocKBStd = Json.getDouble(fields, "allocKBStd");
+            result.n = (int) Json.getDouble(fields, "n");
+            results.put(entry.getKey(), result);
+        }
+        return results;
+    }
+
+    /**
+     * Measure, compare with the baseline and fail on a regression (see the
+     * class comment)
+     *
+     * @param args
+     *        The command line
+     * @throws Exception
+     *         if the corpus cannot be read, or a program cannot be compiled
+     *         or run
+     */
+    public static void main(String[] args) throws Exception {
+        RegressionGate gate = new RegressionGate();
+        List<String> names = new ArrayList<String>();
+        String outFile = null;
+        String baselineFile = "baseline.json";
+        boolean samplePhases = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-phases-only")) {
+                    gate.phasesOnly = true;
+                    continue;
+                }
+                // (given to the JVMs measurePhases starts)
+                if (args[i].equals("-sample-phases")) {
+                    samplePhases = true;
+                    continue;
+                }
+                if (i + 1 == args.length)
+                    throw new IllegalArgumentException("bad argument: "
+                            + args[i]);
+                String value = args[++i];
+                switch (args[i - 1]) {
+                    case "-compiler":
+                        gate.runtime.setCompiler(new File(value));
+                        break;
+                    case "-work":
+                        gate.runtime.setWork(new File(value));
+                        break;
+                    case "-program":
+                        names.add(value);
+                        break;
+                    case "-forks":
+                        gate.forks = Integer.parseInt(value);
+                        break;
+                    case "-samples":
+                        gate.samples = Integer.parseInt(value);
+                        break;
+                    case "-warmups":
+                        gate.warmups = Integer.parseInt(value);
+                        break;
+                    case "-measures":
+                        gate.measures = Integer.parseInt(value);
+                        break;
+                    case "-confidence":
+                        gate.confidence = Double.parseDouble(value);
+                        break;
+                    case "-time-threshold":
+                        gate.timeThreshold = Double.parseDouble(value);
+                        break;
+                    case "-alloc-threshold":
+                        gate.allocThreshold = Double.parseDouble(value);
+                        break;
+                    case "-o":
+                        outFile = value;
+                        break;
+                    case "-baseline":
+                        baselineFile = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("bad argument: "
+                                + args[i - 1]);
+                }
+            }
+            if (gate.forks < 1 || gate.samples < 2 || gate.measures < 2
+                    || gate.warmups < 0)
+                throw new IllegalArgumentException("forks must be at least "
+                        + "1, samples and measures at least 2, and warmups at "
+                        + "least 0");
+            if (gate.confidence < 50 || gate.confidence >= 100)
+                throw new IllegalArgumentException("the confidence must be "
+                        + "from 50 to 100 (percent)");
+        } catch (NumberFormatException e) {
+            System.err.println("Error: bad number: " + e.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+        if (samplePhases) {
+            gate.samplePhases(System.out);
+            return;
+        }
+        for (String name : names) {
+            boolean known = false;
+            for (RuntimeBench.Workload workload : RuntimeBench.WORKLOADS)
+                known |= workload.name.equals(name);
+            if (!known) {
+                System.err.println("Error: unknown program " + name);
+                System.exit(1);
+            }
+        }
+
+        Map<String, Result> baseline = Collections.emptyMap();
+        if (new File(baselineFile).exists())
+            baseline = readJson(new File(baselineFile));
+        else
+            System.err.println("no baseline " + baselineFile
+                    + ": nothing to compare with");
+
+        System.err.println("measuring the phases");
+        Map<String, Result> results = gate.measurePhases();
+        if (!gate.phasesOnly)
+            results.putAll(gate.measurePrograms(names));
+
+        PrintWriter out = new PrintWriter(System.out, true);
+        int regressions = gate.report(results, baseline, out);
+        if (outFile != null) {
+            try (PrintWriter json = new PrintWriter(new FileWriter(outFile))) {
+                writeJson(results, json);
+            }
+        }
+        if (regressions > 0) {
+            out.println(regressions + " regression(s) from " + baselineFile);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measures how fast the code bantamc generates runs. Each program is
+ * compiled into a runnable jar, then
+ *
+ *     startup        is the time of a whole run in a new JVM
+ *                    (java -jar), the median of -startups runs
+ *     steady state   is the time of a run once the JVM is warmed up: the
+ *                    program is run -warmups times and then -measures
+ *                    times in one JVM (see ProgramRunner), and the mean
+ *                    and standard deviation of the measured runs are
+ *                    reported
+ *     allocation     is the heap allocated by a measured run
+ *
+ * The results are written as JSON (-o). Given a baseline (-baseline, the
+ * results of an earlier run), the change from it is reported too, so the
+ * effect of a change to the code generator can be seen: save the results
+ * before the change as the baseline, then run again after it.
+ *
+ * The programs are test programs (from the corpus directory, see Corpus),
+ * the larger workloads of the programs directory (relative to the current
+ * directory), and a program made by ProgramGenerator. Each is given a
+ * fixed input that makes it run long enough to measure, and must not call
+ * Sys.exit (which would end the JVM).
+ *
+ * Run with
+ *
+ *     java bench.RuntimeBench [-compiler dir] [-work dir] [-program name]...
+ *         [-startups n] [-warmups n] [-measures n] [-jvmargs "args"]
+ *         [-o results.json] [-baseline baseline.json]
+ *
+ * where the compiler directory holds the compiler's classes (../src by
+ * default) and the work directory is where the programs are compiled
+ * (runtime by default).
+ */
+public class RuntimeBench {
+    /**
+     * A program to measure
+     */
+    static class Workload {
+        String name;
+        // the sources: test programs (corpus directory) or workloads
+        // (programs directory); none for the generated program
+        String[] sources;
+        String input;
+
+        Workload(String name, String input, String... sources) {
+            this.name = name;
+            this.input = input;
+            this.sources = sources;
+        }
+    }
+
+    static final Workload[] WORKLOADS = {
+        new Workload("Fib", "27\n", "Fib.btm"),
+        new Workload("Fact", "12\n", "Fact.btm"),
+        new Workload("PrimesSieves", "1499\n", "PrimesSieves.btm"),
+        new Workload("CountDivisors", "3000\n", "CountDivisors.btm"),
+        new Workload("TicTacToe", "5\n7\n3\n2\n1\n4\n6\n8\n9\n",
+                "TicTacToe.btm"),
+        new Workload("VectorTest", "", "VectorTest.btm", "Vector.btm",
+                "Boolean.btm", "Integer.btm"),
+        new Workload("Sort", "200\n", "programs/Sort.btm"),
+        new Workload("Shapes", "500\n", "programs/Shapes.btm"),
+        new Workload("Generated", ""),
+    };
+
+    /**
+     * The measurements of one program
+     */
+    static class Result {
+        double startupMs;
+        double steadyMs;
+        double steadyStdMs;
+        long allocBytes;
+    }
+
+    private File compiler = new File("../src");
+    private File work = new File("runtime");
+    private int startups = 5;
+    private int warmups = 20;
+    private int measures = 20;
+    private List<String> jvmArgs = new ArrayList<String>();
+
+    /**
+     * @param compiler
+     *        The directory of the compiler's classes
+     */
+    public void setCompiler(File compiler) {
+        this.compiler = compiler;
+    }
+
+    /**
+     * @param work
+     *        The directory the programs are compiled in
+     */
+    public void setWork(File work) {
+        this.work = work;
+    }
+
+    /**
+     * @param warmups
+     *        Runs before the steady state is measured
+     */
+    public void setWarmups(int warmups) {
+        this.warmups = warmups;
+    }
+
+    /**
+     * @param measures
+     *        Runs measured in the steady state
+     */
+    public void setMeasures(int measures) {
+        this.measures = measures;
+    }
+
+    /**
+     * Compile a program into a runnable jar
+     *
+     * @return The jar
+     * @throws IOException
+     *         if the program does not compile
+     */
+    File compile(Workload workload) throws IOException, InterruptedException {
+        File dir = new File(work, workload.name);
+        dir.mkdirs();
+        List<String> command = new ArrayList<String>(Arrays.asList(java(),
+                "-cp", compiler.getPath(), "Main", "-o",
+                new File(dir, workload.name + ".jar").getPath()));
+        if (workload.sources.length == 0) {
+            ProgramGenerator generator = new ProgramGenerator();
+            generator.setClasses(300);
+            generator.setDepth(4);
+            File source = new File(dir, "Generated.btm");
+            Files.write(source.toPath(), generator.generate()
+                    .getBytes(StandardCharsets.UTF_8));
+            command.add(source.getPath());
+        }
+        for (String source : workload.sources) {
+            if (source.startsWith("programs/"))
+                command.add(source);
+            else
+                command.add(new File(Corpus.getDirectory(), source).getPath());
+        }
+
+        File log = new File(dir, "compile.log");
+        Process process = new ProcessBuilder(command).redirectErrorStream(true)
+            .redirectOutput(log).start();
+        if (process.waitFor() != 0)
+            throw new IOException(workload.name + " does not compile (see "
+                    + log + ")");
+        return new File(dir, workload.name + ".jar");
+    }
+
+    /**
+     * Measure a compiled program
+     *
+     * @throws IOException
+     *         if the program fails
+     */
+    Result measure(Workload workload, File jar) throws IOException,
+            InterruptedException {
+        Result result = new Result();
+        File dir = jar.getParentFile();
+        File input = writeInput(workload, dir);
+
+        // startup: whole runs in new JVMs
+        double[] times = new double[startups];
+        for (int i = 0; i < startups; i++) {
+            List<String> command = new ArrayList<String>();
+            command.add(java());
+            command.addAll(jvmArgs);
+            command.addAll(Arrays.asList("-jar", jar.getPath()));
+            long start = System.nanoTime();
+            run(command, input, new File(dir, "startup.out"), workload);
+            times[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(times);
+        result.startupMs = times[startups / 2];
+
+        // steady state: repeated runs in one JVM
+        List<Double> steady = new ArrayList<Double>();
+        long bytes = 0;
+        for (long[] run : runSteady(workload, jar)) {
+            steady.add(run[0] / 1e6);
+            bytes += run[1];
+        }
+        double sum = 0;
+        for (double time : steady)
+            sum += time;
+        result.steadyMs = sum / steady.size();
+        double squares = 0;
+        for (double time : steady)
+            squares += (time - result.steadyMs) * (time - result.steadyMs);
+        result.steadyStdMs = Math.sqrt(squares / steady.size());
+        result.allocBytes = bytes / steady.size();
+        return result;
+    }
+
+    /**
+     * Run a compiled program -warmups and then -measures times in one JVM
+     * (see ProgramRunner)
+     *
+     * @return The time (ns) and the heap allocated (bytes) of each measured
+     *         run
+     * @throws IOException
+     *         if the program fails
+     */
+    List<long[]> runSteady(Workload workload, File jar) throws IOException,
+            InterruptedException {
+        File dir = jar.getParentFile();
+        File input = writeInput(workload, dir);
+        List<String> command = new ArrayList<String>();
+        command.add(java());
+        command.addAll(jvmArgs);
+        command.addAll(Arrays.asList("-cp", jar.getPath() + File.pathSeparator
+                + getBenchClasses(), "bench.ProgramRunner", "" + warmups,
+                "" + measures));
+        File out = new File(dir, "steady.out");
+        run(command, input, out, workload);
+
+        List<long[]> runs = new ArrayList<long[]>();
+        for (String line : Files.readAllLines(out.toPath())) {
+            String[] fields = line.split(" ");
+            if (fields[0].equals("measure"))
+                runs.add(new long[] { Long.parseLong(fields[1]),
+                    Long.parseLong(fields[2]) });
+        }
+        return runs;
+    }
+
+    /**
+     * @return The file of the input of a program, written in its directory
+     */
+    private static File writeInput(Workload workload, File dir)
+            throws IOException {
+        File input = new File(dir, "input.txt");
+        Files.write(input.toPath(),
+                workload.input.getBytes(StandardCharsets.UTF_8));
+        return input;
+    }
+
+    private static void run(List<String> command, File input, File output,
+            Workload workload) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectInput(input)
+            .redirectOutput(output).redirectErrorStream(true).start();
+        if (process.waitFor() != 0)
+            throw new IOException(workload.name + " failed (see " + output
+                    + ")");
+    }
+
+    /**
+     * @return Where the benchmark classes are, without the compiler's
+     *         classes (whose Main would hide the program's)
+     */
+    private static String getBenchClasses() throws IOException {
+        try {
+            return new File(ProgramRunner.class.getProtectionDomain()
+                .getCodeSource().getLocation().toURI()).getPath();
+        } catch (Exception e) {
+            throw new IOException("cannot find the benchmark classes", e);
+        }
+    }
+
+    /**
+     * @return The java command of the JVM running the benchmark
+     */
+    private static String java() {
+        return new File(System.getProperty("java.home"), "bin/java")
+            .getPath();
+    }
+
+    /**
+     * Print the results, and their change from a baseline
+     *
+     * @param baseline
+     *        The baseline (empty for none)
+     */
+    static void report(Map<String, Result> results,
+            Map<String, Result> baseline, PrintWriter out) {
+        out.printf("%-14s %11s %17s %14s%n", "program", "startup ms",
+                "steady ms", "alloc KB/run");
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            Result result = entry.getValue();
+            Result base = baseline.get(entry.getKey());
+            out.printf(Locale.ROOT, "%-14s %11.1f %8.3f +-%6.3f %14.1f%n",
+                    entry.getKey(), result.startupMs, result.steadyMs,
+                    result.steadyStdMs, result.allocBytes / 1024.0);
+            if (base != null)
+                out.printf("%-14s %11s %17s %14s%n", "  vs baseline",
+                        change(result.startupMs, base.startupMs),
+                        change(result.steadyMs, base.steadyMs),
+                        change(result.allocBytes, base.allocBytes));
+        }
+    }
+
+    private static String change(double value, double base) {
+        if (base == 0)
+            return "-";
+        return String.format(Locale.ROOT, "%+.1f%%",
+                (value - base) / base * 100);
+    }
+
+    /**
+     * Write results as JSON (see Json), one line per program
+     */
+    static void writeJson(Map<String, Result> results, PrintWriter out) {
+        Map<String, Object> json = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            Result result = entry.getValue();
+            Map<String, Object> fields = new LinkedHashMap<String, Object>();
+            fields.put("startupMs", Json.number(result.startupMs, 3));
+            fields.put("steadyMs", Json.number(result.steadyMs, 4));
+            fields.put("steadyStdMs", Json.number(result.steadyStdMs, 4));
+            fields.put("allocBytes", result.allocBytes);
+            json.put(entry.getKey(), fields);
+        }
+        Json.write(json, out);
+    }
+
+    /**
+     * Read results written by writeJson
+     */
+    static Map<String, Result> readJson(File file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<String, Result>();
+        for (Map.Entry<String, Map<String, Object>> entry : Json
+            .readObjects(file).entrySet()) {
+            Map<String, Object> fields = entry.getValue();
+            Result result = new Result();
+            result.startupMs = Json.getDouble(fields, "startupMs");
+            result.steadyMs = Json.getDouble(fields, "steadyMs");
+            result.steadyStdMs = Json.getDouble(fields, "steadyStdMs");
+            result.allocBytes = (long) Json.getDouble(fields, "allocBytes");
+            results.put(entry.getKey(), result);
+        }
+        return results;
+    }
+
+    /**
+     * Measure the programs given on the command line, or all of them (see
+     * the class comment)
+     *
+     * @param args
+     *        The command line
+     * @throws Exception
+     *         if a program cannot be compiled or run
+     */
+    public static void main(String[] args) throws Exception {
+        RuntimeBench bench = new RuntimeBench();
+        List<String> names = new ArrayList<String>();
+        String outFile = null;
+        String baselineFile = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (i + 1 == args.length)
+                    throw new IllegalArgumentException("bad argument: "
+                            + args[i]);
+                String value = args[++i];
+                switch (args[i - 1]) {
+                    case "-compiler":
+                        bench.compiler = new File(value);
+                        break;
+                    case "-work":
+                        bench.work = new File(value);
+                        break;
+                    case "-program":
+                        names.add(value);
+                        break;
+                    case "-startups":
+                        bench.startups = Integer.parseInt(value);
+                        break;
+                    case "-warmups":
+                        bench.warmups = Integer.parseInt(value);
+                        break;
+                    case "-measures":
+                        bench.measures = Integer.parseInt(value);
+                        break;
+                    case "-jvmargs":
+                        if (!value.trim().isEmpty())
+                            bench.jvmArgs.addAll(Arrays.asList(
+                                    value.trim().split("\\s+")));
+                        break;
+                    case "-o":
+                        outFile = value;
+                        break;
+                    case "-baseline":
+                        baselineFile = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("bad argument: "
+                                + args[i - 1]);
+                }
+            }
+            if (bench.startups < 1 || bench.warmups < 0 || bench.measures < 1)
+                throw new IllegalArgumentException("startups and measures "
+                        + "must be at least 1, and warmups at least 0");
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+
+        List<Workload> workloads = new ArrayList<Workload>();
+        List<String> known = new ArrayList<String>();
+        for (Workload workload : WORKLOADS) {
+            known.add(workload.name);
+            if (names.isEmpty() || names.contains(workload.name))
+                workloads.add(workload);
+        }
+        for (String name : names) {
+            if (!known.contains(name)) {
+                System.err.println("Error: unknown program " + name
+                        + " (the programs are " + known + ")");
+                System.exit(1);
+            }
+        }
+
+        Map<String, Result> baseline = Collections.emptyMap();
+        if (baselineFile != null && new File(baselineFile).exists())
+            baseline = readJson(new File(baselineFile));
+
+        Map<String, Result> results = new LinkedHashMap<String, Result>();
+        for (Workload workload : workloads) {
+            System.err.println("measuring " + workload.name);
+            results.put(workload.name,
+                    bench.measure(workload, bench.compile(workload)));
+        }
+
+        PrintWriter out = new PrintWriter(System.out, true);
+        report(results, baseline, out);
+        if (outFile != null) {
+            try (PrintWriter json = new PrintWriter(new FileWriter(outFile))) {
+                writeJson(results, json);
+            }
+        }
+    }
+}
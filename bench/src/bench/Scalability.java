@@ -0,0 +1,552 @@
+package bench;
+
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ast.Program;
+import codegenjvm.ClassModel;
+import codegenjvm.JVMCodeGenerator;
+import parser.Parser;
+import semant.ClassEnvVisitor;
+import semant.SemanticAnalyzer;
+import util.ClassTreeNode;
+import util.ErrorHandler;
+import util.PhaseTimer;
+import util.Trace;
+
+/**
+ * Checks how the phases of the compiler scale with the size of the
+ * program. Each workload is a family of generated programs (see
+ * ProgramGenerator) whose size grows with a scale: 1, 2, 4, ... up to
+ * -maxscale. At each scale the program is compiled phase by phase, and the
+ * time and peak heap of each phase are measured. The growth exponent of
+ * each phase (k in time = c * scale^k) is then fitted by least squares on
+ * a log-log scale, so 1 is linear growth and 2 is quadratic.
+ *
+ * The workloads are:
+ *
+ *     wide     more classes in shallow trees
+ *     deep     one chain of subclasses that gets longer, with the classes
+ *              declared children first (so parents are seen last)
+ *     errors   more classes in shallow trees, with a type error in each
+ *              (compiled up to type checking only)
+ *
+ * The run fails (exit status 1) if an exponent is over its bound. The
+ * bounds are read from a properties file (-config, scalability.properties
+ * by default), in which the bound of a phase of a workload is the first of
+ *
+ *     time.bound.workload.phase, time.bound.phase, time.bound
+ *
+ * that is set (and likewise heap.bound... for the peak heap). Only the
+ * scales from -fitfrom on are fitted, and phases with fewer than three
+ * measurements there that are big enough to fit (at least -floor ms, or a
+ * megabyte of heap) are not checked.
+ *
+ * Run with
+ *
+ *     java bench.Scalability [-workload name]... [-maxscale n] [-runs n]
+ *         [-fitfrom n] [-floor ms] [-config file] [-o results.json]
+ */
+public class Scalability {
+    private static final String[] PHASES = { "parse", "classtree",
+        "classenv", "typecheck", "codegen", "classfile" };
+    // the phases compiled by the errors workload
+    private static final int ERROR_PHASES = 4;
+    private static final String[] WORKLOADS = { "wide", "deep", "errors" };
+
+    private static final Pattern CLASS = Pattern.compile(
+            "^class (\\w+)[^\\n]*\\{\\n", Pattern.MULTILINE);
+    private static final double MEGABYTE = 1024 * 1024;
+
+    private int maxScale = 64;
+    private int runs = 3;
+    private int fitFrom = 4;
+    private double floorMillis = 1;
+    private Properties bounds = new Properties();
+
+    /**
+     * The measurements of one workload
+     */
+    private static class Result {
+        String workload;
+        int numPhases;
+        List<Integer> scales = new ArrayList<Integer>();
+        List<Integer> sizes = new ArrayList<Integer>();
+        // [scale][phase] in ms and MB
+        List<double[]> times = new ArrayList<double[]>();
+        List<double[]> heaps = new ArrayList<double[]>();
+        // [phase], NaN if there was too little to fit
+        double[] timeExponents;
+        double[] heapExponents;
+    }
+
+    /**
+     * @param maxScale
+     *        The largest scale (the scales are the powers of 2 up to it)
+     */
+    public void setMaxScale(int maxScale) {
+        this.maxScale = maxScale;
+    }
+
+    /**
+     * @param runs
+     *        Compilations at each scale; the smallest measurement of a phase
+     *        is kept
+     */
+    public void setRuns(int runs) {
+        this.runs = runs;
+    }
+
+    /**
+     * @param fitFrom
+     *        The smallest scale fitted (the smaller ones are dominated by
+     *        fixed costs and the JIT)
+     */
+    public void setFitFrom(int fitFrom) {
+        this.fitFrom = fitFrom;
+    }
+
+    /**
+     * @param floorMillis
+     *        Times under this are too noisy to be fitted
+     */
+    public void setFloor(double floorMillis) {
+        this.floorMillis = floorMillis;
+    }
+
+    /**
+     * @param bounds
+     *        The bounds of the exponents (see the class comment)
+     */
+    public void setBounds(Properties bounds) {
+        this.bounds = bounds;
+    }
+
+    /**
+     * @param workload
+     *        A workload
+     * @param scale
+     *        A scale
+     * @return The program of the workload at the scale
+     */
+    static String generate(String workload, int scale) {
+        ProgramGenerator generator = new ProgramGenerator();
+        switch (workload) {
+            case "wide":
+            case "errors":
+                generator.setClasses(100 * scale);
+                generator.setDepth(4);
+                generator.setFanOut(4);
+                generator.setFields(3);
+                generator.setMethods(2);
+                generator.setStatements(3);
+                break;
+            case "deep":
+                generator.setClasses(8 * scale);
+                generator.setDepth(8 * scale);
+                generator.setFanOut(1);
+                generator.setRootOdds(0);
+                generator.setFields(1);
+                generator.setMethods(2);
+                generator.setStatements(4);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown workload: "
+                        + workload);
+        }
+        String program = generator.generate();
+        if (workload.equals("deep"))
+            program = reverseClasses(program);
+        else if (workload.equals("errors"))
+            program = addErrors(program);
+        return program;
+    }
+
+    /**
+     * @return The program with its classes (but Main, which comes last)
+     *         declared in the reverse order
+     */
+    private static String reverseClasses(String program) {
+        List<String> classes = new ArrayList<String>();
+        Matcher matcher = CLASS.matcher(program);
+        int start = -1;
+        String head = null;
+        while (matcher.find()) {
+            if (start < 0)
+                head = program.substring(0, matcher.start());
+            else
+                classes.add(program.substring(start, matcher.start()));
+            start = matcher.start();
+        }
+        String main = program.substring(start);
+        Collections.reverse(classes);
+        return head + String.join("", classes) + main;
+    }
+
+    /**
+     * @return The program with a method that returns the wrong type added
+     *         to each class
+     */
+    private static String addErrors(String program) {
+        return CLASS.matcher(program).replaceAll(
+                "$0    int error$1() {\n        return true;\n    }\n\n");
+    }
+
+    /**
+     * Measure a workload at each scale and fit the exponents
+     *
+     * @param workload
+     *        The workload
+     * @return The measurements
+     */
+    Result measure(String workload) {
+        Result result = new Result();
+        result.workload = workload;
+        result.numPhases = workload.equals("errors") ? ERROR_PHASES
+            : PHASES.length;
+
+        // warm up the JIT on the smaller scales first
+        for (int scale = 1; scale <= Math.min(4, maxScale); scale *= 2)
+            compile(generate(workload, scale), result.numPhases);
+
+        for (int scale = 1; scale <= maxScale; scale *= 2) {
+            String program = generate(workload, scale);
+            double[] times = new double[result.numPhases];
+            double[] heaps = new double[result.numPhases];
+            Arrays.fill(times, Double.MAX_VALUE);
+            Arrays.fill(heaps, Double.MAX_VALUE);
+            for (int run = 0; run < runs; run++) {
+                double[][] measured = compile(program, result.numPhases);
+                for (int i = 0; i < result.numPhases; i++) {
+                    times[i] = Math.min(times[i], measured[0][i]);
+                    heaps[i] = Math.min(heaps[i], measured[1][i]);
+                }
+            }
+            result.scales.add(scale);
+            result.sizes.add(program.length());
+            result.times.add(times);
+            result.heaps.add(heaps);
+        }
+
+        result.timeExponents = new double[result.numPhases];
+        result.heapExponents = new double[result.numPhases];
+        for (int i = 0; i < result.numPhases; i++) {
+            result.timeExponents[i] = fit(result.scales, result.times, i,
+                    fitFrom, floorMillis);
+            result.heapExponents[i] = fit(result.scales, result.heaps, i,
+                    fitFrom, 1);
+        }
+        return result;
+    }
+
+    /**
+     * Compile a program, measuring each phase
+     *
+     * @param program
+     *        The source of the program
+     * @param numPhases
+     *        The number of phases to run (of PHASES)
+     * @return The time (ms) and the peak heap (MB) of each phase
+     */
+    private static double[][] compile(String program, int numPhases) {
+        double[][] measured = new double[2][numPhases];
+        ErrorHandler errors = ErrorHandler.collector();
+        List<ClassModel> classModels = new ArrayList<ClassModel>();
+        Program ast = null;
+        SemanticAnalyzer analyzer = null;
+        ClassTreeNode root = null;
+        List<ClassTreeNode> classes = new ArrayList<ClassTreeNode>();
+
+        for (int phase = 0; phase < numPhases; phase++) {
+            double heapBefore = startHeap();
+            long start = System.nanoTime();
+            switch (PHASES[phase]) {
+                case "parse":
+                    ast = Parser.parse(new String[] { "Generated.btm" },
+                            new Reader[] { new StringReader(program) },
+                            errors);
+                    break;
+                case "classtree":
+                    analyzer = new SemanticAnalyzer(ast, false, errors);
+                    root = analyzer.buildClassTree();
+                    break;
+                case "classenv":
+                    new ClassEnvVisitor(root, errors, PhaseTimer.NONE)
+                        .visit(root);
+                    Corpus.addUserClasses(root, classes);
+                    break;
+                case "typecheck":
+                    for (ClassTreeNode classNode : classes)
+                        analyzer.typeCheck(classNode, errors);
+                    break;
+                case "codegen":
+                    for (ClassTreeNode classNode : classes)
+                        classModels.add(JVMCodeGenerator.generateClass(
+                                classNode, Trace.NONE, PhaseTimer.NONE));
+                    break;
+                case "classfile":
+                    for (ClassModel classModel : classModels)
+                        classModel.toClassFile();
+                    break;
+            }
+            measured[0][phase] = (System.nanoTime() - start) / 1e6;
+            measured[1][phase] = Math.max(0, peakHeap() - heapBefore);
+        }
+        return measured;
+    }
+
+    /**
+     * Collect garbage and reset the peak usage of the heap
+     *
+     * @return The heap in use (MB)
+     */
+    private static double startHeap() {
+        System.gc();
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                used += pool.getUsage().getUsed();
+            }
+        return used / MEGABYTE;
+    }
+
+    /**
+     * @return The peak heap since startHeap() (MB), the sum of the peaks of
+     *         the heap's pools (which may not all have peaked at once)
+     */
+    private static double peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP)
+                peak += pool.getPeakUsage().getUsed();
+        return peak / MEGABYTE;
+    }
+
+    /**
+     * Fit the growth exponent of one phase: the slope of the least squares
+     * line through (log scale, log measurement)
+     *
+     * @return The exponent, or NaN if fewer than three measurements from
+     *         scale fitFrom on are at least floor
+     */
+    private static double fit(List<Integer> scales, List<double[]> values,
+            int phase, int fitFrom, double floor) {
+        int n = 0;
+        double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+        for (int i = 0; i < scales.size(); i++) {
+            double value = values.get(i)[phase];
+            if (scales.get(i) < fitFrom || value < floor)
+                continue;
+            double x = Math.log(scales.get(i));
+            double y = Math.log(value);
+            n++;
+            sumX += x;
+            sumY += y;
+            sumXX += x * x;
+            sumXY += x * y;
+        }
+        if (n < 3)
+            return Double.NaN;
+        return (n * sumXY - sumX * sumY) / (n * sumXX - sumX * sumX);
+    }
+
+    /**
+     * @param kind
+     *        time or heap
+     * @return The bound of the exponent of a phase of a workload
+     */
+    double getBound(String kind, String workload, String phase) {
+        String bound = bounds.getProperty(kind + ".bound." + workload + "."
+                + phase);
+        if (bound == null)
+            bound = bounds.getProperty(kind + ".bound." + phase);
+        if (bound == null)
+            bound = bounds.getProperty(kind + ".bound", "1.5");
+        return Double.parseDouble(bound.trim());
+    }
+
+    /**
+     * Print the measurements of a workload and check its exponents
+     *
+     * @return The number of exponents over their bounds
+     */
+    int report(Result result, PrintWriter out) {
+        out.printf("%s%n%8s %10s", result.workload, "scale", "chars");
+        for (int i = 0; i < result.numPhases; i++)
+            out.printf(" %17s", PHASES[i] + " ms/MB");
+        out.println();
+        for (int s = 0; s < result.scales.size(); s++) {
+            out.printf("%7dx %10d", result.scales.get(s),
+                    result.sizes.get(s));
+            for (int i = 0; i < result.numPhases; i++)
+                out.printf(" %9.2f/%7.1f", result.times.get(s)[i],
+                        result.heaps.get(s)[i]);
+            out.println();
+        }
+
+        int failures = 0;
+        out.printf("%19s", "exponent");
+        for (int i = 0; i < result.numPhases; i++)
+            out.printf(" %9s/%7s", format(result.timeExponents[i]),
+                    format(result.heapExponents[i]));
+        out.println();
+        for (int i = 0; i < result.numPhases; i++) {
+            failures += check(result, "time", result.timeExponents[i], i, out);
+            failures += check(result, "heap", result.heapExponents[i], i, out);
+        }
+        out.println();
+        return failures;
+    }
+
+    private int check(Result result, String kind, double exponent, int phase,
+            PrintWriter out) {
+        double bound = getBound(kind, result.workload, PHASES[phase]);
+        if (Double.isNaN(exponent) || exponent <= bound)
+            return 0;
+        out.printf("FAIL: %s %s %s grows as scale^%.2f (bound %.2f)%n",
+                result.workload, PHASES[phase], kind, exponent, bound);
+        return 1;
+    }
+
+    private static String format(double exponent) {
+        return Double.isNaN(exponent) ? "-"
+            : String.format(Locale.ROOT, "%.2f", exponent);
+    }
+
+    /**
+     * Write the measurements as JSON (see Json)
+     */
+    static void writeJson(List<Result> results, PrintWriter out) {
+        Map<String, Object> json = new LinkedHashMap<String, Object>();
+        for (Result result : results) {
+            Map<String, Object> phases = new LinkedHashMap<String, Object>();
+            for (int i = 0; i < result.numPhases; i++) {
+                List<Object> times = new ArrayList<Object>();
+                List<Object> heaps = new ArrayList<Object>();
+                for (int s = 0; s < result.scales.size(); s++) {
+                    times.add(Json.number(result.times.get(s)[i], 3));
+                    heaps.add(Json.number(result.heaps.get(s)[i], 3));
+                }
+                Map<String, Object> phase =
+                    new LinkedHashMap<String, Object>();
+                phase.put("ms", times);
+                phase.put("heapMB", heaps);
+                phase.put("timeExponent",
+                        Json.number(result.timeExponents[i], 3));
+                phase.put("heapExponent",
+                        Json.number(result.heapExponents[i], 3));
+                phases.put(PHASES[i], phase);
+            }
+            Map<String, Object> workload = new LinkedHashMap<String, Object>();
+            workload.put("scales", result.scales);
+            workload.put("chars", result.sizes);
+            workload.put("phases", phases);
+            json.put(result.workload, workload);
+        }
+        Json.write(json, out);
+    }
+
+    /**
+     * Run the workloads given on the command line (see the class comment)
+     *
+     * @param args
+     *        The command line
+     * @throws IOException
+     *         if the configuration or the results cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        Scalability scalability = new Scalability();
+        List<String> workloads = new ArrayList<String>();
+        String config = "scalability.properties";
+        String outFile = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (i + 1 == args.length)
+                    throw new IllegalArgumentException("bad argument: "
+                            + args[i]);
+                String value = args[++i];
+                switch (args[i - 1]) {
+                    case "-workload":
+                        if (!Arrays.asList(WORKLOADS)
+                                .contains(value))
+                            throw new IllegalArgumentException(
+                                    "unknown workload: " + value);
+                        workloads.add(value);
+                        break;
+                    case "-maxscale":
+                        scalability.setMaxScale(Integer.parseInt(value));
+                        break;
+                    case "-runs":
+                        scalability.setRuns(Integer.parseInt(value));
+                        break;
+                    case "-fitfrom":
+                        scalability.setFitFrom(Integer.parseInt(value));
+                        break;
+                    case "-floor":
+                        scalability.setFloor(Double.parseDouble(value));
+                        break;
+                    case "-config":
+                        config = value;
+                        break;
+                    case "-o":
+                        outFile = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("bad argument: "
+                                + args[i - 1]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Error: bad number: " + e.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+        if (workloads.isEmpty())
+            workloads.addAll(Arrays.asList(WORKLOADS));
+
+        Properties bounds = new Properties();
+        try (InputStream in = new FileInputStream(config)) {
+            bounds.load(in);
+        }
+        scalability.setBounds(bounds);
+
+        PrintWriter out = new PrintWriter(System.out, true);
+        List<Result> results = new ArrayList<Result>();
+        int failures = 0;
+        for (String workload : workloads) {
+            Result result = scalability.measure(workload);
+            results.add(result);
+            failures += scalability.report(result, out);
+        }
+        if (outFile != null) {
+            try (PrintWriter json = new PrintWriter(new FileWriter(outFile))) {
+                writeJson(results, json);
+            }
+        }
+        if (failures > 0) {
+            out.println(failures + " exponent(s) over their bounds");
+            System.exit(1);
+        }
+    }
+}
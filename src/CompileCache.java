@@ -0,0 +1,283 @@
+/* Bantam Java Compiler and Language Toolset.
+
+   Copyright (C) 2007 by Marc Corliss (corliss@hws.edu) and
+                         E Christopher Lewis (lewis@vmware.com).
+   ALL RIGHTS RESERVED.
+
+   The Bantam Java toolset is distributed under the following
+   conditions:
+
+     You may make copies of the toolset for your own use and
+     modify those copies.
+
+     All copies of the toolset must retain the author names and
+     copyright notice.
+
+     You may not sell the toolset or distribute it in
+     conjunction with a commerical product or service without
+     the expressed written consent of the authors.
+
+   THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS
+   OR IMPLIED WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE
+   IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+   PARTICULAR PURPOSE.
+*/
+
+import ast.ASTNode;
+import ast.Field;
+import ast.Formal;
+import ast.Method;
+import util.ClassTreeNode;
+import visitor.PrintVisitor;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** Records what each generated class was compiled from, so that an
+  * incremental compilation (-incremental) only type checks and generates
+  * code for the classes that may have changed.
+  *
+  * For each class the cache holds a hash of the class's source (its AST,
+  * including line numbers and file name, with the source text of method
+  * bodies that are parsed lazily and not parsed yet) and, for each class it depends
+  * on (see semant.DependencyVisitor), a hash of that class's signature.
+  * A signature covers the class's parent chain and the declared types of
+  * its fields and methods, but not method bodies or field initializers.
+  * A class is up to date if its source and the signatures of all of its
+  * dependencies are unchanged and its output files still exist.
+  *
+  * The cache is a text file in the output directory.  Each class is a
+  * line "class &lt;name&gt; &lt;source hash&gt;" followed by a line
+  * "dep &lt;name&gt; &lt;signature hash&gt;" for each dependency.
+  * */
+public class CompileCache {
+    /** The cache file */
+    private File file;
+
+    /** Directory the output files are in (null for the current directory) */
+    private File outDir;
+
+    /** Whether a .j file is part of the output of a class */
+    private boolean jasmin;
+
+    /** Source hash of each class, as recorded */
+    private Map<String, String> sourceHashes = new TreeMap<String, String>();
+
+    /** Signature hash of each dependency of each class, as recorded */
+    private Map<String, Map<String, String>> dependencies =
+	new TreeMap<String, Map<String, String>>();
+
+    /** Classes of the program being compiled, by name */
+    private Map<String, ClassTreeNode> classes =
+	new HashMap<String, ClassTreeNode>();
+
+    /** Source hashes of the classes being compiled */
+    private Map<String, String> currSourceHashes = new HashMap<String, String>();
+
+    /** Signature hashes of the classes being compiled */
+    private Map<String, String> currSignatures = new HashMap<String, String>();
+
+    /** CompileCache constructor
+      * @param outDir directory the output files and the cache are in (null
+      * for the current directory)
+      * @param jasmin whether .j files are written too
+      * */
+    public CompileCache(File outDir, boolean jasmin) {
+	this.outDir = outDir;
+	this.jasmin = jasmin;
+	this.file = new File(outDir, ".bantamc-deps");
+    }
+
+    /** Read the cache file
+      * A missing or unreadable cache is treated as empty, so that every
+      * class is compiled.
+      * */
+    public void load() {
+	sourceHashes.clear();
+	dependencies.clear();
+	if (!file.exists())
+	    return;
+
+	try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+	    Map<String, String> deps = null;
+	    for (String line = in.readLine(); line != null; line = in.readLine()) {
+		String[] fields = line.split(" ");
+		if (fields.length == 3 && fields[0].equals("class")) {
+		    deps = new TreeMap<String, String>();
+		    sourceHashes.put(fields[1], fields[2]);
+		    dependencies.put(fields[1], deps);
+		}
+		else if (fields.length == 3 && fields[0].equals("dep") && deps != null)
+		    deps.put(fields[1], fields[2]);
+		else
+		    throw new IOException("bad line '" + line + "'");
+	    }
+	}
+	catch (IOException e) {
+	    sourceHashes.clear();
+	    dependencies.clear();
+	}
+    }
+
+    /** Write the cache file, keeping only the classes of the program
+      * @throws IOException if the file cannot be written
+      * */
+    public void save() throws IOException {
+	try (PrintWriter out = new PrintWriter(file)) {
+	    for (String name : sourceHashes.keySet()) {
+		if (!classes.containsKey(name))
+		    continue;
+		out.println("class " + name + " " + sourceHashes.get(name));
+		for (Map.Entry<String, String> dep : dependencies.get(name).entrySet())
+		    out.println("dep " + dep.getKey() + " " + dep.getValue());
+	    }
+	}
+    }
+
+    /** Hash the sources and signatures of the classes of a program
+      * Must be called before the classes are type checked, since the
+      * source hash must not include the types of expressions.
+      * @param root root of the class hierarchy tree
+      * */
+    public void prepare(ClassTreeNode root) {
+	classes.put(root.getName(), root);
+	if (!root.isBuiltIn())
+	    currSourceHashes.put(root.getName(), sourceHash(root));
+	signature(root);
+
+	Iterator<ClassTreeNode> children = root.getChildrenList();
+	while (children.hasNext())
+	    prepare(children.next());
+    }
+
+    /** Can the previous output of a class be reused
+      * @param classNode the class
+      * @return true if the class is unchanged, none of its dependencies
+      * changed their signature, and its class file (and .j file, if
+      * those are written) exists
+      * */
+    public boolean isUpToDate(ClassTreeNode classNode) {
+	String name = classNode.getName();
+	if (!currSourceHashes.get(name).equals(sourceHashes.get(name)))
+	    return false;
+	for (Map.Entry<String, String> dep : dependencies.get(name).entrySet()) {
+	    if (!dep.getValue().equals(currSignatures.get(dep.getKey())))
+		return false;
+	}
+	if (jasmin && !new File(outDir, name + ".j").exists())
+	    return false;
+	return new File(outDir, name + ".class").exists();
+    }
+
+    /** Record the dependencies of a class that has just been compiled
+      * @param classNode the class
+      * @param deps the names of the classes it depends on
+      * */
+    public void record(ClassTreeNode classNode, TreeSet<String> deps) {
+	String name = classNode.getName();
+	Map<String, String> signatures = new TreeMap<String, String>();
+	for (String dep : deps) {
+	    // an unknown class can only come from a type that failed to
+	    // check, in which case nothing is written
+	    if (currSignatures.containsKey(dep))
+		signatures.put(dep, currSignatures.get(dep));
+	}
+	sourceHashes.put(name, currSourceHashes.get(name));
+	dependencies.put(name, signatures);
+    }
+
+    /** Compute the source hash of a class
+      * @param classNode the class
+      * @return the hash
+      * */
+    private String sourceHash(ClassTreeNode classNode) {
+	ByteArrayOutputStream text = new ByteArrayOutputStream();
+	PrintStream out = new PrintStream(text);
+	PrintVisitor printer = new PrintVisitor(0, 1, out) {
+		// a lazily parsed body that has not been parsed is hashed by
+		// its source, so the bodies of up to date classes are never
+		// parsed
+		public Object visit(Method node) {
+		    if (node.isBodyParsed())
+			return super.visit(node);
+		    out.print("// Source line: " + node.getLineNum() + "\n" +
+			      node.getReturnType() + " " + node.getName() + "(");
+		    node.getFormalList().accept(this);
+		    out.print(") {\n" + node.getBody().getSource() + "}\n");
+		    return null;
+		}
+	    };
+	classNode.getASTNode().accept(printer);
+	return hash(text.toString());
+    }
+
+    /** Compute (and remember) the signature hash of a class
+      * Classes are visited parents first, so the parent's hash is known.
+      * @param classNode the class
+      * @return the hash
+      * */
+    private String signature(ClassTreeNode classNode) {
+	StringBuilder text = new StringBuilder("class " + classNode.getName());
+	if (classNode.getParent() != null)
+	    text.append(" extends " + currSignatures.get(classNode.getParent().getName()));
+	text.append("\n");
+
+	if (classNode.isBuiltIn())
+	    text.append("built-in\n");
+	else {
+	    Iterator<ASTNode> members =
+		classNode.getASTNode().getMemberList().getIterator();
+	    while (members.hasNext()) {
+		ASTNode member = members.next();
+		if (member instanceof Field) {
+		    Field field = (Field) member;
+		    text.append("field " + field.getName() + " " + field.getType());
+		}
+		else {
+		    Method method = (Method) member;
+		    text.append("method " + method.getName() + " " +
+				method.getReturnType());
+		    Iterator<ASTNode> formals = method.getFormalList().getIterator();
+		    while (formals.hasNext())
+			text.append(" " + ((Formal) formals.next()).getType());
+		}
+		text.append("\n");
+	    }
+	}
+
+	String signature = hash(text.toString());
+	currSignatures.put(classNode.getName(), signature);
+	return signature;
+    }
+
+    /** Hash some text
+      * @param text the text
+      * @return the SHA-256 hash of the text, in hexadecimal
+      * */
+    private static String hash(String text) {
+	try {
+	    byte[] digest = MessageDigest.getInstance("SHA-256")
+		.digest(text.getBytes(StandardCharsets.UTF_8));
+	    StringBuilder hex = new StringBuilder();
+	    for (byte b : digest)
+		hex.append(String.format("%02x", b));
+	    return hex.toString();
+	}
+	catch (NoSuchAlgorithmException e) {
+	    throw new RuntimeException("Internal error: SHA-256 is not available", e);
+	}
+    }
+}
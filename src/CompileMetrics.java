@@ -0,0 +1,220 @@
+/* Bantam Java Compiler and Language Toolset.
+
+   Copyright (C) 2007 by Marc Corliss (corliss@hws.edu) and
+                         E Christopher Lewis (lewis@vmware.com).
+   ALL RIGHTS RESERVED.
+
+   The Bantam Java toolset is distributed under the following
+   conditions:
+
+     You may make copies of the toolset for your own use and
+     modify those copies.
+
+     All copies of the toolset must retain the author names and
+     copyright notice.
+
+     You may not sell the toolset or distribute it in
+     conjunction with a commerical product or service without
+     the expressed written consent of the authors.
+
+   THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS
+   OR IMPLIED WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE
+   IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+   PARTICULAR PURPOSE.
+*/
+
+import ast.Program;
+import codegenjvm.ClassModel;
+import codegenjvm.Instruction;
+import util.ClassTreeNode;
+import visitor.NodeCountVisitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/** Collects metrics about a compilation and writes them as JSON
+  * (-Xmetrics &lt;file&gt;), for tools that track how the compiler
+  * behaves on a program.  The report has:
+  *
+  *   astNodes:  the number of AST nodes of each type, and in total
+  *   classes:   for each class of the class hierarchy tree (built-in
+  *              classes included), its depth, fan-out (number of
+  *              children), number of descendants, and the sizes of its
+  *              field and method symbol tables (members declared by the
+  *              class and members visible in it, i.e. including
+  *              inherited ones)
+  *   hierarchy: the number of classes and the maximum depth and fan-out
+  *   generated: for each generated class, the number of labels created
+  *              and, for each method, the number of instructions (not
+  *              counting labels and comments) and its .limit stack and
+  *              .limit locals
+  *
+  * Generated classes are reported as they are written, possibly from
+  * several threads; classes skipped by an incremental compilation are
+  * not reported.
+  * */
+public class CompileMetrics implements Consumer<ClassModel> {
+    /** Counts of the AST nodes */
+    private NodeCountVisitor nodeCounts = new NodeCountVisitor();
+
+    /** Root of the class hierarchy tree (null if it was not built) */
+    private ClassTreeNode root;
+
+    /** The generated classes, by name */
+    private Map<String, ClassModel> classModels = new TreeMap<String, ClassModel>();
+
+    /** Count the AST nodes of a program
+      * @param program the program
+      * */
+    public void countNodes(Program program) {
+	nodeCounts.visit(program);
+    }
+
+    /** Set the class hierarchy tree, whose classes are reported
+      * @param root root of the class hierarchy tree
+      * */
+    public void setClassTree(ClassTreeNode root) {
+	this.root = root;
+    }
+
+    /** Record a generated class (called by ClassOutput as it is written)
+      * @param classModel the class
+      * */
+    public synchronized void accept(ClassModel classModel) {
+	classModels.put(classModel.getName(), classModel);
+    }
+
+    /** Write the metrics
+      * @param file the JSON file to write
+      * @throws IOException if the file cannot be written
+      * */
+    public synchronized void write(File file) throws IOException {
+	if (file.getParentFile() != null)
+	    file.getParentFile().mkdirs();
+	try (PrintWriter out = new PrintWriter(file)) {
+	    out.println("{");
+
+	    out.println("  \"astNodes\": {");
+	    out.println("    \"total\": " + nodeCounts.getTotal() + ",");
+	    out.print("    \"byType\": {");
+	    String sep = "";
+	    for (Map.Entry<String, Integer> count : nodeCounts.getCounts().entrySet()) {
+		out.print(sep + "\n      " + quote(count.getKey()) + ": " + count.getValue());
+		sep = ",";
+	    }
+	    out.println("\n    }");
+	    out.println("  },");
+
+	    // depth and fan-out of the whole tree: { classes, maxDepth, maxFanOut }
+	    int[] hierarchy = new int[3];
+	    out.print("  \"classes\": [");
+	    if (root != null)
+		writeClass(out, root, 0, hierarchy);
+	    out.println("\n  ],");
+	    out.println("  \"hierarchy\": {");
+	    out.println("    \"classes\": " + hierarchy[0] + ",");
+	    out.println("    \"maxDepth\": " + hierarchy[1] + ",");
+	    out.println("    \"maxFanOut\": " + hierarchy[2]);
+	    out.println("  },");
+
+	    out.print("  \"generated\": [");
+	    sep = "";
+	    for (ClassModel classModel : classModels.values()) {
+		out.print(sep);
+		writeClassModel(out, classModel);
+		sep = ",";
+	    }
+	    out.println("\n  ]");
+
+	    out.println("}");
+	}
+    }
+
+    /** Write a class of the class hierarchy tree and its descendants
+      * (in preorder)
+      * @param out the writer
+      * @param classNode the class
+      * @param depth depth of the class (0 for Object)
+      * @param hierarchy number of classes, maximum depth and maximum
+      * fan-out so far (updated)
+      * */
+    private void writeClass(PrintWriter out, ClassTreeNode classNode, int depth,
+			    int[] hierarchy) {
+	if (hierarchy[0] > 0)
+	    out.print(",");
+	hierarchy[0]++;
+	hierarchy[1] = Math.max(hierarchy[1], depth);
+	hierarchy[2] = Math.max(hierarchy[2], classNode.getNumChildren());
+
+	out.println("\n    {");
+	out.println("      \"name\": " + quote(classNode.getName()) + ",");
+	out.println("      \"builtIn\": " + classNode.isBuiltIn() + ",");
+	out.println("      \"parent\": " + (classNode.getParent() == null ? "null"
+		    : quote(classNode.getParent().getName())) + ",");
+	out.println("      \"depth\": " + depth + ",");
+	out.println("      \"fanOut\": " + classNode.getNumChildren() + ",");
+	out.println("      \"descendants\": " + classNode.getNumDescendants() + ",");
+	out.println("      \"fields\": { \"declared\": "
+		    + classNode.getVarSymbolTable().getCurrScopeSize()
+		    + ", \"visible\": " + classNode.getVarSymbolTable().getSize() + " },");
+	out.println("      \"methods\": { \"declared\": "
+		    + classNode.getMethodSymbolTable().getCurrScopeSize()
+		    + ", \"visible\": " + classNode.getMethodSymbolTable().getSize() + " }");
+	out.print("    }");
+
+	Iterator<ClassTreeNode> children = classNode.getChildrenList();
+	while (children.hasNext())
+	    writeClass(out, children.next(), depth + 1, hierarchy);
+    }
+
+    /** Write a generated class
+      * @param out the writer
+      * @param classModel the class
+      * */
+    private void writeClassModel(PrintWriter out, ClassModel classModel) {
+	out.println("\n    {");
+	out.println("      \"name\": " + quote(classModel.getName()) + ",");
+	out.println("      \"labels\": " + classModel.getNumLabels() + ",");
+	out.print("      \"methods\": [");
+	String sep = "";
+	for (ClassModel.MethodModel method : classModel.getMethods()) {
+	    int instructions = 0;
+	    for (Instruction instruction : method.getCode()) {
+		if (instruction.getKind() != Instruction.Kind.LABEL &&
+		    instruction.getKind() != Instruction.Kind.COMMENT)
+		    instructions++;
+	    }
+	    out.print(sep + "\n        { \"name\": " + quote(method.getName())
+		      + ", \"descriptor\": " + quote(method.getDescriptor())
+		      + ", \"instructions\": " + instructions
+		      + ", \"maxStack\": " + method.getMaxStack()
+		      + ", \"maxLocals\": " + method.getMaxLocals() + " }");
+	    sep = ",";
+	}
+	out.println("\n      ]");
+	out.print("    }");
+    }
+
+    /** Quote a string for JSON
+      * @param s the string
+      * @return s as a JSON string literal
+      * */
+    private static String quote(String s) {
+	StringBuilder quoted = new StringBuilder("\"");
+	for (int i = 0; i < s.length(); i++) {
+	    char c = s.charAt(i);
+	    if (c == '"' || c == '\\')
+		quoted.append('\\').append(c);
+	    else if (c < ' ')
+		quoted.append(String.format("\\u%04x", (int) c));
+	    else
+		quoted.append(c);
+	}
+	return quoted.append('"').toString();
+    }
+}
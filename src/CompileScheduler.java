@@ -0,0 +1,370 @@
+/* Bantam Java Compiler and Language Toolset.
+
+   Copyright (C) 2007 by Marc Corliss (corliss@hws.edu) and
+                         E Christopher Lewis (lewis@vmware.com).
+   ALL RIGHTS RESERVED.
+
+   The Bantam Java toolset is distributed under the following
+   conditions:
+
+     You may make copies of the toolset for your own use and
+     modify those copies.
+
+     All copies of the toolset must retain the author names and
+     copyright notice.
+
+     You may not sell the toolset or distribute it in
+     conjunction with a commerical product or service without
+     the expressed written consent of the authors.
+
+   THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS
+   OR IMPLIED WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE
+   IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+   PARTICULAR PURPOSE.
+*/
+
+import ast.ASTNode;
+import ast.Class_;
+import ast.Method;
+import ast.Program;
+import parser.Parser;
+import semant.DependencyVisitor;
+import semant.SemanticAnalyzer;
+import codegenjvm.ClassModel;
+import codegenjvm.ClassOutput;
+import codegenjvm.CodeTooLargeException;
+import codegenjvm.JVMCodeGenerator;
+import util.ClassTreeNode;
+import util.ErrorHandler;
+import util.PhaseTimer;
+import util.Trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/** Runs semantic analysis and code generation as a pipeline of per-class
+  * tasks, instead of analyzing every class before generating any.
+  *
+  * Building the class tree (including cycle detection), building the
+  * class environments and checking the Main class are global, so they
+  * are done first, as a barrier.  After that each class gets two tasks:
+  * type check the class, then generate its code.  Classes only read the
+  * class tree, so the chains of different classes are independent and
+  * run on the pool at the same time, and code generation of one class
+  * overlaps with type checking of others.
+  *
+  * Generated code and traced debugging output are buffered per class.  Once
+  * every class is type checked, the errors are reported in class tree
+  * order (exactly as the serial analyzer reports them), and only if
+  * there are none are the class files written, so the results are the same
+  * as running the phases one after another.
+  *
+  * With a CompileCache (incremental compilation), classes whose previous
+  * output can be reused are neither type checked nor generated, and the
+  * dependencies of the other classes are recorded in the cache.
+  *
+  * With method bodies parsed lazily (-Xlazy-bodies), the task that type
+  * checks a class parses its bodies first, so bodies are parsed in
+  * parallel and never for classes that are reused; once the code of a
+  * class is generated its bodies are dropped.  Syntax errors in bodies
+  * are reported before type checking errors, as the parser reports them.
+  * */
+public class CompileScheduler {
+    /** Analyzer for the program */
+    private SemanticAnalyzer semanticAnalyzer;
+
+    /** Where the generated classes are written */
+    private ClassOutput output;
+
+    /** Timer generating each class is measured with (type checking is
+      * measured by the analyzer) */
+    private PhaseTimer timer = PhaseTimer.NONE;
+
+    /** Stream errors writing class files are printed to */
+    private PrintStream log;
+
+    /** Where code generation debugging output is traced */
+    private Trace trace = Trace.NONE;
+
+    /** Pool the per-class tasks are run on */
+    private Executor pool;
+
+    /** Cache for incremental compilation (null to compile every class) */
+    private CompileCache cache;
+
+    /** The program, if its method bodies are parsed lazily (else null) */
+    private Program lazyProgram;
+
+    /** The work done for one class */
+    private static class ClassTasks {
+	/** The class */
+	ClassTreeNode classNode;
+	/** Type checking errors of the class */
+	ErrorHandler errors = ErrorHandler.collector();
+	/** The generated class (null if it was not generated) */
+	ClassModel code;
+	/** Debugging output of code generation */
+	Trace trace;
+	/** Whether the previous output of the class is reused */
+	boolean reused;
+	/** Classes the class depends on (only recorded with a cache) */
+	TreeSet<String> dependencies;
+	/** Completes when the class has been type checked */
+	CompletableFuture<Void> typeChecked;
+	/** Completes when code for the class has been generated */
+	CompletableFuture<Void> generated;
+
+	ClassTasks(ClassTreeNode classNode) {
+	    this.classNode = classNode;
+	}
+    }
+
+    /** CompileScheduler constructor
+      * @param semanticAnalyzer analyzer for the program
+      * @param outDir directory the class files are written to (null for the
+      * current directory)
+      * @param log stream errors writing class files are printed to
+      * @param pool pool the per-class tasks are run on
+      * */
+    public CompileScheduler(SemanticAnalyzer semanticAnalyzer, File outDir,
+			    PrintStream log, Executor pool) {
+	this.semanticAnalyzer = semanticAnalyzer;
+	this.output = new ClassOutput(outDir);
+	this.log = log;
+	this.pool = pool;
+    }
+
+    /** Write the classes somewhere else than class files in outDir
+      * @param output where the classes are written
+      * */
+    public void setOutput(ClassOutput output) {
+	this.output = output;
+    }
+
+    /** Measure generating each class
+      * @param timer the timer
+      * */
+    public void setTimer(PhaseTimer timer) {
+	this.timer = timer;
+    }
+
+    /** Trace code generation
+      * @param trace where debugging output is traced
+      * */
+    public void setTrace(Trace trace) {
+	this.trace = trace;
+    }
+
+    /** Compile incrementally
+      * @param cache the cache recording the previous compilation
+      * */
+    public void setCache(CompileCache cache) {
+	this.cache = cache;
+    }
+
+    /** Parse lazily parsed method bodies class by class, in the tasks
+      * @param program the program, whose bodies are parsed lazily
+      * */
+    public void setLazyBodies(Program program) {
+	this.lazyProgram = program;
+    }
+
+    /** Analyze the program and generate a class file for each user class
+      * @throws util.CompilationException if there are semantic errors, or
+      *         a method does not fit in a class file
+      * @throws IOException if the cache cannot be written
+      * */
+    public void compile() throws IOException {
+	// barrier: the class tree and environments are needed by every task
+	ClassTreeNode root = semanticAnalyzer.buildEnvironment();
+
+	ArrayList<ClassTasks> classes = new ArrayList<ClassTasks>();
+	addClasses(root, classes);
+	if (cache != null) {
+	    cache.load();
+	    cache.prepare(root);
+	    for (ClassTasks tasks : classes)
+		tasks.reused = !tasks.classNode.isBuiltIn() &&
+		    cache.isUpToDate(tasks.classNode);
+	}
+	for (ClassTasks tasks : classes)
+	    schedule(tasks);
+
+	// syntax errors of lazily parsed bodies come first, even if type
+	// checking failed (the parser would have stopped before it)
+	ErrorHandler errorHandler = semanticAnalyzer.getErrorHandler();
+	if (lazyProgram != null) {
+	    for (ClassTasks tasks : classes)
+		tasks.typeChecked.handle((result, e) -> null).join();
+	    checkBodies(classes, errorHandler);
+	}
+
+	// report type checking errors in class tree order
+	for (ClassTasks tasks : classes) {
+	    join(tasks.typeChecked);
+	    errorHandler.registerAll(tasks.errors);
+	}
+	errorHandler.checkErrors();
+
+	// write the generated code in class tree order
+	for (ClassTasks tasks : classes) {
+	    boolean generated = false;
+	    try {
+		join(tasks.generated);
+		generated = true;
+	    }
+	    finally {
+		// trace what the class traced, even if generation failed;
+		// nothing is written for a class that failed
+		if (trace.isEnabled(Trace.Category.CODEGEN))
+		    trace.println(Trace.Category.CODEGEN,
+				  "Begin generate " + tasks.classNode.getName());
+		if (generated && tasks.code != null)
+		    write(tasks, errorHandler);
+		if (tasks.trace != null)
+		    trace.append(tasks.trace);
+	    }
+	    // a method that does not fit in a class file stops compilation
+	    errorHandler.checkErrors();
+	}
+
+	if (cache != null) {
+	    for (ClassTasks tasks : classes) {
+		if (tasks.dependencies != null)
+		    cache.record(tasks.classNode, tasks.dependencies);
+	    }
+	    cache.save();
+	}
+    }
+
+    /** Start the type checking and code generation tasks of a class
+      * @param tasks the class
+      * */
+    private void schedule(ClassTasks tasks) {
+	if (tasks.classNode.isBuiltIn() || tasks.reused) {
+	    tasks.typeChecked = CompletableFuture.completedFuture(null);
+	    tasks.generated = tasks.typeChecked;
+	    return;
+	}
+
+	tasks.typeChecked = CompletableFuture.runAsync(() -> {
+		if (lazyProgram != null) {
+		    PhaseTimer.Span span =
+			timer.start("parse", tasks.classNode.getName());
+		    try {
+			Parser.parseBodies(tasks.classNode.getASTNode());
+		    }
+		    finally {
+			span.end();
+		    }
+		}
+		semanticAnalyzer.typeCheck(tasks.classNode, tasks.errors);
+	    }, pool);
+	tasks.generated = tasks.typeChecked.thenRunAsync(() -> {
+		// code for a class with errors would never be written
+		if (tasks.errors.getNumErrors() > 0)
+		    return;
+		tasks.trace = trace.buffer();
+		tasks.code = JVMCodeGenerator.generateClass(tasks.classNode,
+		    tasks.trace, timer);
+		if (cache != null)
+		    tasks.dependencies =
+			new DependencyVisitor().getDependencies(tasks.classNode);
+		if (lazyProgram != null)
+		    discardBodies(tasks.classNode.getASTNode());
+	    }, pool);
+    }
+
+    /** Report the syntax errors of the lazily parsed method bodies (the
+      * bodies of reused classes are not parsed, as they had none)
+      * @param classes the classes
+      * @param errorHandler error handler whose stream the errors are
+      * printed to
+      * @throws util.CompilationException if there are syntax errors
+      * */
+    private void checkBodies(ArrayList<ClassTasks> classes,
+			     ErrorHandler errorHandler) {
+	HashSet<String> reused = new HashSet<String>();
+	for (ClassTasks tasks : classes) {
+	    if (tasks.reused)
+		reused.add(tasks.classNode.getName());
+	}
+	ArrayList<Class_> parsed = new ArrayList<Class_>();
+	Iterator<ASTNode> iter = lazyProgram.getClassList().getIterator();
+	while (iter.hasNext()) {
+	    Class_ class_ = (Class_) iter.next();
+	    if (!reused.contains(class_.getName()))
+		parsed.add(class_);
+	}
+	ErrorHandler syntaxErrors =
+	    new ErrorHandler(errorHandler.getErrorStream());
+	Parser.registerBodyErrors(parsed, syntaxErrors);
+	syntaxErrors.checkErrors();
+    }
+
+    /** Drop the parsed method bodies of a class whose code is generated
+      * @param class_ the class
+      * */
+    private void discardBodies(Class_ class_) {
+	Iterator<ASTNode> members = class_.getMemberList().getIterator();
+	while (members.hasNext()) {
+	    ASTNode member = members.next();
+	    if (member instanceof Method)
+		((Method) member).discardBody();
+	}
+    }
+
+    /** Write the generated class file (and .j file) of a class
+      * @param tasks the class
+      * @param errorHandler error handler a method that does not fit in a
+      *                     class file is registered with
+      * */
+    private void write(ClassTasks tasks, ErrorHandler errorHandler) {
+	try {
+	    output.write(tasks.code);
+	}
+	catch (CodeTooLargeException e) {
+	    errorHandler.register(errorHandler.CODEGEN_ERROR, e.getFilename(),
+				  e.getLineNum(), e.getMessage());
+	}
+	catch (IOException e) {
+	    log.println(e.getMessage());
+	}
+    }
+
+    /** Wait for a task to complete, rethrowing whatever it threw
+      * @param task the task
+      * */
+    private void join(CompletableFuture<Void> task) {
+	try {
+	    task.join();
+	}
+	catch (CompletionException e) {
+	    if (e.getCause() instanceof RuntimeException)
+		throw (RuntimeException) e.getCause();
+	    if (e.getCause() instanceof Error)
+		throw (Error) e.getCause();
+	    throw e;
+	}
+    }
+
+    /** Add a class and its descendants to a list, parents before children
+      * @param classNode the class
+      * @param classes the list
+      * */
+    private void addClasses(ClassTreeNode classNode,
+			    ArrayList<ClassTasks> classes) {
+	classes.add(new ClassTasks(classNode));
+	Iterator<ClassTreeNode> children = classNode.getChildrenList();
+	while (children.hasNext())
+	    addClasses(children.next(), classes);
+    }
+}
@@ -0,0 +1,175 @@
+/* Bantam Java Compiler and Language Toolset.
+
+   Copyright (C) 2007 by Marc Corliss (corliss@hws.edu) and
+                         E Christopher Lewis (lewis@vmware.com).
+   ALL RIGHTS RESERVED.
+
+   The Bantam Java toolset is distributed under the following
+   conditions:
+
+     You may make copies of the toolset for your own use and
+     modify those copies.
+
+     All copies of the toolset must retain the author names and
+     copyright notice.
+
+     You may not sell the toolset or distribute it in
+     conjunction with a commerical product or service without
+     the expressed written consent of the authors.
+
+   THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS
+   OR IMPLIED WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE
+   IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+   PARTICULAR PURPOSE.
+*/
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/** A compile server that keeps the compiler loaded in a warm JVM
+  * Started with <tt>bantamc --daemon &lt;socket&gt;</tt>, it accepts
+  * compile requests on a Unix domain socket, one request per connection.
+  *
+  * A request is a sequence of lines: the absolute working directory
+  * of the client, then each commandline argument on its own line, then
+  * an empty line.  Input files and the -d directory are resolved against
+  * the working directory.  The response is each line of normal output
+  * prefixed by "out ", each line of error output prefixed by "err ",
+  * and finally "exit " followed by the exit status of the compilation.
+  *
+  * Each request is compiled by a fresh Main object, so no state is
+  * shared between requests.  Requests are handled one at a time.  If
+  * compiling a request fails with an exception or error, it is reported
+  * to the client with exit status 1 and the server goes on accepting
+  * requests.
+  * */
+public class CompileServer {
+    /** Path of the socket file */
+    private Path socketPath;
+
+    /** CompileServer constructor
+      * @param socketPath path of the socket file to listen on
+      * */
+    public CompileServer(Path socketPath) {
+	this.socketPath = socketPath;
+    }
+
+    /** Listen for compile requests until the JVM is stopped
+      * @throws IOException if the socket cannot be created
+      * */
+    public void serve() throws IOException {
+	if (Files.exists(socketPath))
+	    throw new IOException("socket file '" + socketPath +
+				  "' already exists");
+
+	ServerSocketChannel server =
+	    ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+	server.bind(UnixDomainSocketAddress.of(socketPath));
+	// remove the socket file when the server is stopped
+	Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+		    try {
+			Files.deleteIfExists(socketPath);
+		    }
+		    catch (IOException e) {
+			// nothing more can be done during shutdown
+		    }
+	}));
+	System.err.println("bantamc: listening on " + socketPath);
+
+	while (true) {
+	    try (SocketChannel client = server.accept()) {
+		handle(client);
+	    }
+	    catch (IOException e) {
+		// a client went away before the response was sent
+		System.err.println("bantamc: request failed: " + e.getMessage());
+	    }
+	    catch (RuntimeException | Error e) {
+		// one failed request does not stop the server
+		System.err.println("bantamc: request failed: " + e);
+	    }
+	}
+    }
+
+    /** Read one compile request from a client, compile it, and send back
+      * the diagnostics and the exit status
+      * @param client the client connection
+      * */
+    private void handle(SocketChannel client) throws IOException {
+	BufferedReader in = new BufferedReader(new InputStreamReader(
+	    Channels.newInputStream(client), StandardCharsets.UTF_8));
+	PrintWriter response = new PrintWriter(new OutputStreamWriter(
+	    Channels.newOutputStream(client), StandardCharsets.UTF_8));
+
+	// read the working directory and the arguments
+	String dir = in.readLine();
+	ArrayList<String> args = new ArrayList<String>();
+	for (String line = in.readLine(); line != null && !line.isEmpty();
+	     line = in.readLine())
+	    args.add(line);
+
+	ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+	ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+	PrintStream out = new PrintStream(outBytes, false, StandardCharsets.UTF_8);
+	PrintStream err = new PrintStream(errBytes, false, StandardCharsets.UTF_8);
+
+	int status;
+	if (dir == null || !new File(dir).isAbsolute()) {
+	    err.println("Error: compile request must start with an absolute " +
+			"working directory");
+	    status = 1;
+	}
+	else {
+	    try {
+		status = new Main(new File(dir), out, err)
+		    .compile(args.toArray(new String[args.size()]));
+	    }
+	    catch (RuntimeException | Error e) {
+		// the compiler failed (e.g., ran out of memory on a huge
+		// request), but later requests are compiled afresh
+		e.printStackTrace(err);
+		err.println("Internal error within compiler: stopping " +
+			    "compilation");
+		status = 1;
+	    }
+	}
+
+	out.flush();
+	err.flush();
+	sendLines(response, "out ", outBytes);
+	sendLines(response, "err ", errBytes);
+	response.println("exit " + status);
+	response.flush();
+    }
+
+    /** Send captured output to a client, one prefixed line at a time
+      * @param response the stream to the client
+      * @param prefix the prefix that identifies the output stream
+      * @param bytes the captured output
+      * */
+    private void sendLines(PrintWriter response, String prefix,
+			   ByteArrayOutputStream bytes) {
+	String text = bytes.toString(StandardCharsets.UTF_8);
+	if (text.isEmpty())
+	    return;
+	if (text.endsWith("\n"))
+	    text = text.substring(0, text.length() - 1);
+	for (String line : text.split("\n", -1))
+	    response.println(prefix + line);
+    }
+}
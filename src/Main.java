@@ -30,25 +30,35 @@ import util.*;
 import ast.*;
 import visitor.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /** Main class that runs the Bantam compiler
   * Constructs and runs each phase of the compiler
   * (lexing, parsing, semantic analysis, and code generation).
+  * Each Main object holds the state of a single compilation, so 
+  * that a compile server can run many compilations in one JVM.
   * */
 public class Main {
     /** Array for holding each input file name */
-    private static String[] inFiles;
+    private String[] inFiles;
 
     /** Boolean flags that indicate whether we should stop after 
       * a particular phase.  If turned on Main prints out an 
       * intermediate representation of the phase before exiting */
-    private static boolean stopAfterLexing, stopAfterParsing, stopAfterSemant;
+    private boolean stopAfterLexing, stopAfterParsing, stopAfterSemant;
 
     /** Debugging flags for each phase of the compiler */
-    private static boolean debugLexer, debugParser, debugSemant, debugCodeGen;
+    private boolean debugLexer, debugParser, debugSemant, debugCodeGen;
 
 
     /** Integer indicating target (2 = jvm by default) */
-    private static int targetType = 2;
+    private int targetType = 2;
 
     /** Constant for MIPS target */
     private static final int TARG_MIPS = 0;
@@ -57,19 +67,90 @@ public class Main {
     /** Constant for JVM target */
     private static final int TARG_JVM = 2;
 
-    /** Prints out a usage message to the screen */
-    private static void showHelp() {
-	System.err.println("Usage: bantamc [-h]");
-	System.err.println("               [-dp] [-ds] [-dc] [-sp] [-ss] <input_files>");
-	System.err.println("man bantamc for more details");
-	System.exit(1);
+    /** Directory that relative file names are resolved against 
+      * (null for the current directory) */
+    private File workDir;
+    /** Directory that output files are written to (set with -d) */
+    private File outDir;
+
+    /** Streams for normal and error output */
+    private PrintStream out, err;
+
+    /** Whether to only recompile classes that changed (set with -incremental) */
+    private boolean incremental;
+
+    /** Whether to also write Jasmin assembly files (set with -jasmin) */
+    private boolean jasmin;
+
+    /** Whether to build class files with Jasmin (set with -assembler jasmin) */
+    private boolean assembleWithJasmin;
+
+    /** Whether the lexer generated from parser.jj reads the source files
+      * (set with -lexer generated), rather than a lexer that maps them
+      * into memory */
+    private boolean generatedLexer;
+
+    /** Whether method bodies are parsed when they are first needed (set
+      * with -Xlazy-bodies), rather than with the rest of the program */
+    private boolean lazyBodies;
+
+    /** Whether to report the time spent in each phase (set with -Xtime) */
+    private boolean time;
+
+    /** File debugging output is traced to (set with -Xtrace; by default
+      * bantamc.trace, when -dp, -ds or -dc is given) */
+    private File traceFile;
+
+    /** File compilation metrics are written to as JSON (set with -Xmetrics;
+      * null for none) */
+    private File metricsFile;
+
+    /** Runnable jar the program is written to (set with -o; null to write
+      * class files) */
+    private File jarFile;
+
+    /** Number of threads used for compiling (set with -j) */
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
+    /** Stack size of the threads that compile, in bytes
+      * Chains of binary operators are checked and generated in loops, but
+      * the phases still recurse on nested expressions and on chains of 
+      * calls, so a long chain of calls in generated code (10,000 calls
+      * need about 8MB) needs a deeper stack than a thread has by default.
+      * An expression nested too deeply for this stack is reported as an
+      * error. */
+    private static final long STACK_SIZE = 16L << 20;
+
+    /** Main constructor
+      * @param workDir directory that relative file names are resolved 
+      *                against (null for the current directory)
+      * @param out stream for normal output
+      * @param err stream for error output
+      * */
+    public Main(File workDir, PrintStream out, PrintStream err) {
+	this.workDir = workDir;
+	this.outDir = workDir;
+	this.out = out;
+	this.err = err;
+    }
+
+    /** Prints out a usage message to the screen and stops compilation */
+    private void showHelp() {
+	err.println("Usage: bantamc [-h] [--daemon <socket>]");
+	err.println("               [-dp] [-ds] [-dc] [-sp] [-ss] [-d <dir>] [-o <jar>] [-j <threads>]");
+	err.println("               [-incremental] [-jasmin] [-assembler direct|jasmin]");
+	err.println("               [-lexer mapped|generated] [-Xtime]");
+	err.println("               [-Xmetrics <file>] [-Xtrace <file>] [-Xlazy-bodies]");
+	err.println("               <input_files>");
+	err.println("man bantamc for more details");
+	throw new CompilationException("usage");
     }
 
     /** Get target name 
       * Converts targetType (global) into the target name
       * @return name of target
       * */
-    private static String getTargName() {
+    private String getTargName() {
 	if (targetType == TARG_MIPS) return "mips";
 	else if (targetType == TARG_X86) return "x86";
 	else if (targetType == TARG_JVM) return "jvm";
@@ -77,22 +158,33 @@ public class Main {
 					targetType + ") in Main.getTargName");
     }
 
+    /** Resolve a file name given on the commandline
+      * @param name the file name
+      * @return the file, relative to workDir if name is not absolute
+      * */
+    private File resolve(String name) {
+	File file = new File(name);
+	if (workDir != null && !file.isAbsolute())
+	    file = new File(workDir, name);
+	return file;
+    }
+
     /** Processes the commandline flags, setting appropriate variables
       * @param args list of commandline arguments
       * */
-    private static void processFlags(String[] args) {
+    private void processFlags(String[] args) {
 	// initialize inFiles to size of args, will probably be smaller, but args length gives upper bound
 	inFiles = new String[args.length];
 	// cnt represents the number of input files found - initialize to 0
 	int cnt = 0;
 
-	// if no arguments then call showHelp (which eventually exits)
+	// if no arguments then call showHelp (which stops compilation)
 	if (args.length == 0)
 	    showHelp();
 
 	// otherwise inspect the arguments
 	for (int i = 0; i < args.length; i++) {
-	    // if '-h' or help then call showHelp (which eventually exits)
+	    // if '-h' or help then call showHelp (which stops compilation)
 	    if (args[i].equals("-h"))
 		showHelp();
 
@@ -110,6 +202,103 @@ public class Main {
 	    else if (args[i].equals("-ss"))
 		stopAfterSemant = true;
 
+	    // if -d then the next argument is the output directory
+	    else if (args[i].equals("-d")) {
+		if (i + 1 == args.length) {
+		    err.println("Usage error: -d requires a directory");
+		    showHelp();
+		}
+		outDir = resolve(args[++i]);
+	    }
+
+	    // if -Xtime then report the time and memory used by each phase
+	    else if (args[i].equals("-Xtime"))
+		time = true;
+
+	    // if -Xlazy-bodies then method bodies are skipped by the parser
+	    // and parsed when they are first needed
+	    else if (args[i].equals("-Xlazy-bodies"))
+		lazyBodies = true;
+
+	    // if -Xtrace then the next argument is the file -dp, -ds and -dc
+	    // trace to
+	    else if (args[i].equals("-Xtrace")) {
+		if (i + 1 == args.length) {
+		    err.println("Usage error: -Xtrace requires a file");
+		    showHelp();
+		}
+		traceFile = resolve(args[++i]);
+	    }
+
+	    // if -Xmetrics then the next argument is the JSON metrics file
+	    else if (args[i].equals("-Xmetrics")) {
+		if (i + 1 == args.length) {
+		    err.println("Usage error: -Xmetrics requires a file");
+		    showHelp();
+		}
+		metricsFile = resolve(args[++i]);
+	    }
+
+	    // if -o then the next argument is the runnable jar to write
+	    else if (args[i].equals("-o")) {
+		if (i + 1 == args.length) {
+		    err.println("Usage error: -o requires a jar file");
+		    showHelp();
+		}
+		jarFile = resolve(args[++i]);
+	    }
+
+	    // if -incremental then reuse the output of unchanged classes
+	    else if (args[i].equals("-incremental"))
+		incremental = true;
+
+	    // if -jasmin then also write each class as Jasmin assembly (.j)
+	    else if (args[i].equals("-jasmin"))
+		jasmin = true;
+
+	    // if -assembler then the next argument says how class files are built:
+	    // written directly (the default) or assembled by Jasmin in-process
+	    else if (args[i].equals("-assembler")) {
+		String assembler = i + 1 < args.length ? args[++i] : "";
+		if (assembler.equals("direct"))
+		    assembleWithJasmin = false;
+		else if (assembler.equals("jasmin"))
+		    assembleWithJasmin = true;
+		else {
+		    err.println("Usage error: -assembler must be direct or jasmin");
+		    showHelp();
+		}
+	    }
+
+	    // if -lexer then the next argument says how source files are
+	    // scanned: mapped into memory (the default) or read by the lexer
+	    // generated from parser.jj
+	    else if (args[i].equals("-lexer")) {
+		String lexer = i + 1 < args.length ? args[++i] : "";
+		if (lexer.equals("mapped"))
+		    generatedLexer = false;
+		else if (lexer.equals("generated"))
+		    generatedLexer = true;
+		else {
+		    err.println("Usage error: -lexer must be mapped or generated");
+		    showHelp();
+		}
+	    }
+
+	    // if -j then the next argument is the number of threads
+	    else if (args[i].equals("-j")) {
+		try {
+		    numThreads = Integer.parseInt(i + 1 < args.length ? args[++i] : "");
+		}
+		catch (NumberFormatException e) {
+		    numThreads = 0;
+		}
+		if (numThreads < 1) {
+		    err.println("Usage error: -j requires a positive number of threads");
+		    showHelp();
+		}
+	    }
+
 
 	    // any other arguments must be input files
 	    
@@ -122,15 +311,21 @@ public class Main {
 	    else {
 		// if we get to here then we have an illegal argument
 		// (we treat this as a bad input file name)
-		System.err.println("Usage error: bad input file name: " + args[i]);
-		System.err.println("             file names must end with '.btm'");
+		err.println("Usage error: bad input file name: " + args[i]);
+		err.println("             file names must end with '.btm'");
 		showHelp();
 	    }
 	}
 
+	// incremental compilation reuses class files, which a jar does not keep
+	if (incremental && jarFile != null) {
+	    err.println("Usage error: -incremental cannot be used with -o");
+	    showHelp();
+	}
+
 	// make sure at least one input file was specified
 	if (cnt == 0) {
-	    System.err.println("Usage error: must specify some input files");
+	    err.println("Usage error: must specify some input files");
 	    showHelp();
 	}
 
@@ -141,54 +336,280 @@ public class Main {
 	    inFiles[i] = tmp[i];
     }
 
-    /** Main method, which drives compilation
-      * builds and runs each phase of the compiler
+    /** Open the trace the debugging flags (-dp, -ds, -dc) ask for
+      * @return the trace (Trace.NONE if no debugging flag is given)
+      * @throws IOException if the trace file cannot be created
+      * */
+    private Trace openTrace() throws IOException {
+	EnumSet<Trace.Category> categories = EnumSet.noneOf(Trace.Category.class);
+	if (debugParser)
+	    categories.add(Trace.Category.PARSER);
+	if (debugSemant)
+	    categories.add(Trace.Category.SEMANT);
+	if (debugCodeGen)
+	    categories.add(Trace.Category.CODEGEN);
+	File file = traceFile != null ? traceFile : resolve("bantamc.trace");
+	return Trace.open(file, categories);
+    }
+
+    /** Write the metrics of a compilation, if requested (-Xmetrics)
+      * @param metrics the metrics (null if not requested)
+      * @throws IOException if the metrics file cannot be written
+      * */
+    private void writeMetrics(CompileMetrics metrics) throws IOException {
+	if (metrics != null)
+	    metrics.write(metricsFile);
+    }
+
+    /** Compile a program, building and running each phase of the compiler
+      * The compiler runs on a thread of its own, with a deep stack (see
+      * STACK_SIZE), and so do its worker threads.
       * @param args list of commandline arguments 
+      * @return exit status (0 on success, 1 if compilation failed)
       * */
-    public static void main(String [] args) {
-	// process flags
-	processFlags(args);
+    public int compile(String[] args) {
+	int[] status = { 1 };
+	Throwable[] failure = { null };
+	Thread compiler = new Thread(null, () -> {
+		try {
+		    status[0] = compileOnThisThread(args);
+		}
+		catch (Throwable e) {
+		    failure[0] = e;
+		}
+	    }, "bantamc", STACK_SIZE);
+	compiler.start();
+	boolean interrupted = false;
+	while (true) {
+	    try {
+		compiler.join();
+		break;
+	    }
+	    catch (InterruptedException e) {
+		// the compilation is not abandoned half way
+		interrupted = true;
+	    }
+	}
+	if (interrupted)
+	    Thread.currentThread().interrupt();
+	if (failure[0] instanceof RuntimeException)
+	    throw (RuntimeException) failure[0];
+	if (failure[0] instanceof Error)
+	    throw (Error) failure[0];
+	return status[0];
+    }
+
+    /** Compile a program on the current thread (see compile)
+      * @param args list of commandline arguments 
+      * @return exit status (0 on success, 1 if compilation failed)
+      * */
+    private int compileOnThisThread(String[] args) {
+	// pool of worker threads (null when compiling with a single thread)
+	ExecutorService pool = null;
+	// where generated classes are written
+	ClassOutput output = null;
+	// measures the phases (and emits their JFR events)
+	PhaseTimer timer = PhaseTimer.NONE;
+	PhaseTimer.Span total = null;
+	// collects compilation metrics (null unless -Xmetrics)
+	CompileMetrics metrics = null;
+	// where debugging output is traced (NONE unless -dp, -ds or -dc)
+	Trace trace = Trace.NONE;
 
 	try {
+	    // process flags
+	    processFlags(args);
+	    timer = new PhaseTimer(time);
+	    total = timer.start("total", null);
+	    if (numThreads > 1)
+		pool = Executors.newFixedThreadPool(numThreads, task -> {
+			Thread worker = new Thread(null, task, "bantamc-worker",
+						   STACK_SIZE);
+			worker.setDaemon(true);
+			return worker;
+		    });
+
+	    // load Jasmin before compiling, so a missing jasmin.jar is
+	    // reported up front
+	    JasminAssembler assembler = null;
+	    if (assembleWithJasmin && !stopAfterParsing && !stopAfterSemant) {
+		try {
+		    assembler = new JasminAssembler();
+		}
+		catch (IOException e) {
+		    err.println("Error: " + e.getMessage());
+		    return 1;
+		}
+	    }
+
+	    trace = openTrace();
+
+	    output = new ClassOutput(outDir);
+	    output.setJar(jarFile);
+	    output.setJasmin(jasmin);
+	    output.setAssembler(assembler);
+	    if (metricsFile != null) {
+		metrics = new CompileMetrics();
+		output.setListener(metrics);
+	    }
 
 	    // parsing
-	    Parser parser = new Parser(inFiles, debugParser);
-	    Program program = parser.parse();
+	    Program program;
+	    PhaseTimer.Span span = timer.start("parse", null);
+	    try {
+		program = Parser.parse(inFiles, workDir, !generatedLexer,
+				       lazyBodies, trace, new ErrorHandler(err),
+				       pool, timer);
+	    }
+	    finally {
+		span.end();
+	    }
+	    // the pipeline parses the lazily parsed bodies of each class in
+	    // the task that type checks it; otherwise all are parsed now
+	    boolean pipelined = (pool != null || incremental) &&
+		!stopAfterParsing && !stopAfterSemant;
+	    if (lazyBodies && !pipelined) {
+		span = timer.start("parse", "bodies");
+		try {
+		    Parser.parseBodies(program, new ErrorHandler(err));
+		}
+		finally {
+		    span.end();
+		}
+	    }
+	    if (metrics != null)
+		metrics.countNodes(program);
 
 	    if (stopAfterParsing) {
-		// if stopAfterParsing==true, then print AST and exit
+		// if stopAfterParsing==true, then print AST and stop
 		PrintVisitor visitor = new PrintVisitor(/*start at indent 0*/0, 
-							/*increment by 4 each indent level*/4);
+							/*increment by 4 each indent level*/4,
+							out);
 		visitor.visit( program );
-		System.exit(0);
+		writeMetrics(metrics);
+		return 0;
 	    }
 	   
 	    // semantic analysis
 	    SemanticAnalyzer semanticAnalyzer = 
-		new SemanticAnalyzer(program, debugSemant);
+		new SemanticAnalyzer(program, debugSemant, new ErrorHandler(err),
+				     pool);
+	    semanticAnalyzer.setTimer(timer);
+	    semanticAnalyzer.setTrace(trace);
+
+	    if (pipelined) {
+		// with several threads, pipeline type checking and code
+		// generation class by class; incremental compilation also
+		// goes class by class, skipping the classes that are
+		// up to date
+		if (outDir != null)
+		    outDir.mkdirs();
+		CompileScheduler scheduler = new CompileScheduler(
+		    semanticAnalyzer, outDir, out,
+		    pool != null ? pool : Runnable::run);
+		scheduler.setOutput(output);
+		scheduler.setTimer(timer);
+		scheduler.setTrace(trace);
+		if (incremental)
+		    scheduler.setCache(new CompileCache(outDir, jasmin));
+		if (lazyBodies)
+		    scheduler.setLazyBodies(program);
+		scheduler.compile();
+		output.close();
+		if (metrics != null)
+		    metrics.setClassTree(semanticAnalyzer.getClassTree());
+		writeMetrics(metrics);
+		return 0;
+	    }
+
 	    ClassTreeNode classTree = semanticAnalyzer.analyze();
+	    if (metrics != null)
+		metrics.setClassTree(classTree);
 
 	    if (stopAfterSemant) {
-		// if stopAfterSemant==true, then print AST (with types) and exit
+		// if stopAfterSemant==true, then print AST (with types) and stop
 		PrintVisitor visitor = new PrintVisitor(/*start at indent 0*/0, 
-							/*increment by 4 each indent level*/4);
+							/*increment by 4 each indent level*/4,
+							out);
 		visitor.visit(program);
-		System.exit(0);
+		writeMetrics(metrics);
+		return 0;
 	    }
 
 	    else // (targetType == TARG_JVM) 
             {
+		if (outDir != null)
+		    outDir.mkdirs();
 		JVMCodeGenerator codeGenerator = 
 		    new JVMCodeGenerator(classTree, 
-					 debugCodeGen);
+					 debugCodeGen, outDir, out, pool);
+		codeGenerator.setOutput(output);
+		codeGenerator.setTimer(timer);
+		codeGenerator.setTrace(trace);
+		codeGenerator.setErrorHandler(new ErrorHandler(err));
 		codeGenerator.generate();
+		output.close();
 	    }
+	    writeMetrics(metrics);
+	    return 0;
 	}
 
-	catch (Exception e) {
-	    e.printStackTrace();
-	    System.err.println("Internal error within compiler: stopping compilation");
-	    System.exit(1);
+	catch (CompilationException e) {
+	    // errors have already been reported
+	    return 1;
 	}
+
+	catch (Exception | StackOverflowError e) {
+	    // a worker's stack overflow reaches here wrapped in an exception
+	    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+		if (cause instanceof StackOverflowError) {
+		    err.println("Error: an expression is nested too deeply " +
+				"to compile: stopping compilation");
+		    return 1;
+		}
+	    }
+	    e.printStackTrace(err);
+	    err.println("Internal error within compiler: stopping compilation");
+	    return 1;
+	}
+
+	finally {
+	    // a jar that was not finished is deleted
+	    if (output != null)
+		output.discard();
+	    trace.close();
+	    if (total != null)
+		total.end();
+	    if (time)
+		timer.report(err);
+	    if (pool != null)
+		pool.shutdown();
+	}
+    }
+
+    /** Main method, which drives compilation
+      * Runs a single compilation, or a compile server if --daemon is given
+      * @param args list of commandline arguments 
+      * */
+    public static void main(String [] args) {
+	if (args.length > 0 && args[0].equals("--daemon")) {
+	    if (args.length != 2) {
+		System.err.println("Usage: bantamc --daemon <socket>");
+		System.exit(1);
+	    }
+	    try {
+		new CompileServer(Path.of(args[1])).serve();
+	    }
+	    catch (IOException e) {
+		System.err.println("Error: compile server failed: " + e.getMessage());
+		System.exit(1);
+	    }
+	    return;
+	}
+
+	int status = new Main(null, System.out, System.err).compile(args);
+	System.out.flush();
+	if (status != 0)
+	    System.exit(status);
     }
 }
@@ -26,6 +26,7 @@
 package ast;
 
 import visitor.*;
+import util.Type;
 
 
 /** The abstract <tt>Expr</tt> class represents an expression that is 
@@ -50,7 +51,7 @@ import visitor.*;
   * */
 public abstract class Expr extends ASTNode {
     /** The expression type */
-    String exprType = null;
+    Type exprType = null;
     
     /** Expr constructor
       * @param lineNum source line number corresponding to this AST node
@@ -62,14 +63,14 @@ public abstract class Expr extends ASTNode {
     /** Get the type of the expression
       * @return the expression type 
       * */
-    public String getExprType() {
+    public Type getExprType() {
 	return exprType;
     }
     
     /** Set the type of the expression
       * @param exprType the type of the expression
       * */
-    public void setExprType(String exprType) {
+    public void setExprType(Type exprType) {
 	this.exprType = exprType;
     }
     
@@ -33,8 +33,11 @@ import java.util.*;
   * a class declaration.  It contains the name of the method (<tt>name</tt>),
   * a list of formal parameters (<tt>formalList</tt>), the return type of the
   * method (<tt>returnType</tt>), and a list of statements from the method body
-  * (<tt>stmtList</tt>).
+  * (<tt>stmtList</tt>).  The body may also be parsed lazily: the method is
+  * then built with a <tt>MethodBody</tt> that is parsed when the statements
+  * are first asked for.
   * @see ASTNode
+  * @see MethodBody
   * */
 public class Method extends Member {
     /** The return type of the method */
@@ -46,8 +49,12 @@ public class Method extends Member {
     /** A list of formal parameters */
     protected FormalList formalList;
     
-    /** A list of statements appearing in the method body */
-    protected StmtList stmtList;
+    /** A list of statements appearing in the method body (null while a
+      * lazily parsed body has not been parsed) */
+    protected volatile StmtList stmtList;
+
+    /** The lazily parsed body (null if the body was parsed with the method) */
+    protected MethodBody body;
     
     /** Method constructor
       * @param lineNum source line number corresponding to this AST node
@@ -64,6 +71,23 @@ public class Method extends Member {
 	this.formalList = formalList;
 	this.stmtList = stmtList;
     }
+
+    /** Method constructor for a method whose body is parsed lazily
+      * @param lineNum source line number corresponding to this AST node
+      * @param returnType the return type of this method
+      * @param name the name of this method
+      * @param formalList a list of formal parameters
+      * @param body the method body, parsed when its statements are first
+      *             asked for
+      * */
+    public Method(int lineNum, String returnType, String name,
+		  FormalList formalList, MethodBody body) {
+	super(lineNum);
+	this.returnType = returnType;
+	this.name = name;
+	this.formalList = formalList;
+	this.body = body;
+    }
     
     /** Get the return type of this method
       * @return return type of method
@@ -80,10 +104,41 @@ public class Method extends Member {
       * */
     public FormalList getFormalList() { return formalList; }
     
-    /** Get list of statements from method body
+    /** Get list of statements from method body, parsing a lazily parsed
+      * body if it has not been parsed (a body is parsed at most once, even
+      * if several threads ask for it)
       * @return list of statements
       * */
-    public StmtList getStmtList() { return stmtList; }
+    public StmtList getStmtList() {
+	StmtList stmts = stmtList;
+	if (stmts == null) {
+	    synchronized (this) {
+		stmts = stmtList;
+		if (stmts == null)
+		    stmtList = stmts = body.parse();
+	    }
+	}
+	return stmts;
+    }
+
+    /** Get the lazily parsed body of this method
+      * @return the body (null if it was parsed with the method)
+      * */
+    public MethodBody getBody() { return body; }
+
+    /** Check whether the statements of the method body have been parsed
+      * @return true if they have (always true unless the body is lazy)
+      * */
+    public boolean isBodyParsed() { return stmtList != null; }
+
+    /** Drop the statements of a lazily parsed body, which is parsed again
+      * if they are asked for (e.g. to free the memory of a method whose code
+      * is generated); does nothing if the body was parsed with the method
+      * */
+    public synchronized void discardBody() {
+	if (body != null)
+	    stmtList = null;
+    }
     
     /** Visitor method
       * @param v visitor object
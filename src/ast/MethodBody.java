@@ -0,0 +1,48 @@
+/* Bantam Java Compiler and Language Toolset.
+
+   Copyright (C) 2007 by Marc Corliss (corliss@hws.edu) and 
+                         E Christopher Lewis (lewis@vmware.com).
+   ALL RIGHTS RESERVED.
+
+   The Bantam Java toolset is distributed under the following 
+   conditions:
+
+     You may make copies of the toolset for your own use and 
+     modify those copies.
+
+     All copies of the toolset must retain the author names and 
+     copyright notice.
+
+     You may not sell the toolset or distribute it in 
+     conjunction with a commerical product or service without 
+     the expressed written consent of the authors.
+
+   THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS 
+   OR IMPLIED WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE 
+   IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A 
+   PARTICULAR PURPOSE. 
+*/
+
+package ast;
+
+
+/** The <tt>MethodBody</tt> interface represents the body of a method that
+  * is parsed when its statements are first needed rather than with the
+  * rest of the program (see <tt>Method</tt>).  It keeps what is needed to
+  * parse the body later, such as the range of its tokens in the source.
+  * @see Method
+  * */
+public interface MethodBody {
+    /** Parse the body (syntax errors are kept by the body itself, the
+      * statements parsed before an error are not returned)
+      * @return list of statements appearing in the body
+      * */
+    public StmtList parse();
+
+    /** Get the source text of the body, without parsing it
+      * @return the source text, preceded by the line it starts on (so
+      * that two bodies have the same text only if they are parsed the
+      * same)
+      * */
+    public String getSource();
+}
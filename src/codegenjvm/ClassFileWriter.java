@@ -0,0 +1,499 @@
+package codegenjvm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Writes a ClassModel in the class file format. The constant pool is built
+ * while the methods are assembled, and branch labels are resolved to
+ * offsets. The class file version is 45.3 (the version Jasmin writes), so
+ * the code needs no stack map frames.
+ */
+public class ClassFileWriter {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int MINOR_VERSION = 3;
+    private static final int MAJOR_VERSION = 45;
+
+    // constant pool tags
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int WIDE = 0xc4;
+    private static final int LDC_W = 0x13;
+    private static final int IFEQ = 0x99;
+    private static final int GOTO_W = 0xc8;
+
+    // newarray element types
+    private static final int T_BOOLEAN = 4;
+    private static final int T_INT = 10;
+
+    // opcodes of the instructions CodeGenVisitor generates
+    private static final HashMap<String, Integer> OPCODES =
+            new HashMap<String, Integer>();
+
+    static {
+        String[] opcodes = { "aconst_null", "0x01", "iconst_m1", "0x02",
+                "iconst_0", "0x03", "iconst_1", "0x04", "iconst_2", "0x05",
+                "iconst_3", "0x06", "iconst_4", "0x07", "iconst_5", "0x08",
+                "bipush", "0x10", "sipush", "0x11", "ldc", "0x12",
+                "iload", "0x15", "aload", "0x19",
+                "iload_0", "0x1a", "iload_1", "0x1b", "iload_2", "0x1c",
+                "iload_3", "0x1d", "aload_0", "0x2a", "aload_1", "0x2b",
+                "aload_2", "0x2c", "aload_3", "0x2d", "iaload", "0x2e",
+                "aaload", "0x32", "baload", "0x33", "istore", "0x36",
+                "astore", "0x3a", "istore_0", "0x3b", "istore_1", "0x3c",
+                "istore_2", "0x3d", "istore_3", "0x3e", "astore_0", "0x4b",
+                "astore_1", "0x4c", "astore_2", "0x4d", "astore_3", "0x4e",
+                "iastore", "0x4f", "aastore", "0x53", "bastore", "0x54",
+                "pop", "0x57", "dup", "0x59", "dup_x1", "0x5a",
+                "dup_x2", "0x5b", "iadd", "0x60", "isub", "0x64",
+                "imul", "0x68", "idiv", "0x6c", "irem", "0x70",
+                "ineg", "0x74", "ifeq", "0x99", "ifne", "0x9a",
+                "if_icmpeq", "0x9f", "if_icmpne", "0xa0", "if_icmplt", "0xa1",
+                "if_icmpge", "0xa2", "if_icmpgt", "0xa3", "if_icmple", "0xa4",
+                "if_acmpeq", "0xa5", "if_acmpne", "0xa6", "goto", "0xa7",
+                "ireturn", "0xac", "areturn", "0xb0", "return", "0xb1",
+                "getfield", "0xb4", "putfield", "0xb5",
+                "invokevirtual", "0xb6", "invokespecial", "0xb7",
+                "new", "0xbb", "newarray", "0xbc", "anewarray", "0xbd",
+                "arraylength", "0xbe", "checkcast", "0xc0",
+                "instanceof", "0xc1" };
+        for (int i = 0; i < opcodes.length; i += 2)
+            OPCODES.put(opcodes[i], Integer.decode(opcodes[i + 1]));
+    }
+
+    private ClassModel classModel;
+    // whether a branch too far for a two-byte offset is written with a
+    // goto_w (otherwise the method is too large)
+    private boolean wideBranches;
+
+    // the constant pool: its entries, and the index of each entry
+    private ByteArrayOutputStream constantPool = new ByteArrayOutputStream();
+    private DataOutputStream constants = new DataOutputStream(constantPool);
+    private HashMap<String, Integer> constantIndexes =
+            new HashMap<String, Integer>();
+    private int constantCount = 1;
+
+    /**
+     * @param classModel
+     *        The class to write
+     */
+    public ClassFileWriter(ClassModel classModel) {
+        this(classModel, true);
+    }
+
+    /**
+     * @param classModel
+     *        The class to write
+     * @param wideBranches
+     *        Whether a branch too far for a two-byte offset is written with
+     *        a goto_w; if not (for Jasmin, which cannot write one), a
+     *        method with such a branch is too large
+     */
+    public ClassFileWriter(ClassModel classModel, boolean wideBranches) {
+        this.classModel = classModel;
+        this.wideBranches = wideBranches;
+    }
+
+    /**
+     * @return The class file
+     * @throws CodeTooLargeException
+     *         if the code of a method does not fit in a class file
+     */
+    public byte[] toByteArray() {
+        try {
+            // the body refers to the constant pool, so it is written first
+            ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+            DataOutputStream body = new DataOutputStream(bodyBytes);
+            writeBody(body);
+
+            ByteArrayOutputStream classFile = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(classFile);
+            out.writeInt(MAGIC);
+            out.writeShort(MINOR_VERSION);
+            out.writeShort(MAJOR_VERSION);
+            if (constantCount > 0xffff)
+                throw new RuntimeException("Error: too many constants in class "
+                        + classModel.name);
+            out.writeShort(constantCount);
+            constantPool.writeTo(out);
+            bodyBytes.writeTo(out);
+            return classFile.toByteArray();
+        } catch (IOException e) {
+            // cannot happen when writing to memory
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeBody(DataOutputStream out) throws IOException {
+        out.writeShort(ClassModel.ACC_PUBLIC | ClassModel.ACC_SUPER);
+        out.writeShort(classConstant(classModel.name));
+        out.writeShort(classModel.superName == null ? 0
+                : classConstant(classModel.superName));
+        out.writeShort(classModel.interfaces.size());
+        for (String name : classModel.interfaces)
+            out.writeShort(classConstant(name));
+
+        out.writeShort(classModel.fields.size());
+        for (ClassModel.FieldModel field : classModel.fields) {
+            out.writeShort(field.access);
+            out.writeShort(utf8Constant(field.name));
+            out.writeShort(utf8Constant(field.descriptor));
+            out.writeShort(0); // no attributes
+        }
+
+        out.writeShort(classModel.methods.size());
+        for (ClassModel.MethodModel method : classModel.methods)
+            writeMethod(out, method);
+
+        // SourceFile attribute
+        out.writeShort(1);
+        out.writeShort(utf8Constant("SourceFile"));
+        out.writeInt(2);
+        out.writeShort(utf8Constant(classModel.sourceFile));
+    }
+
+    private void writeMethod(DataOutputStream out,
+            ClassModel.MethodModel method) throws IOException {
+        out.writeShort(method.access);
+        out.writeShort(utf8Constant(method.name));
+        out.writeShort(utf8Constant(method.descriptor));
+        out.writeShort(method.exception == null ? 1 : 2);
+
+        // Code attribute
+        byte[] code = assemble(method);
+        out.writeShort(utf8Constant("Code"));
+        out.writeInt(12 + code.length);
+        out.writeShort(method.maxStack);
+        out.writeShort(method.maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // no exception handlers
+        out.writeShort(0); // no attributes
+
+        // Exceptions attribute
+        if (method.exception != null) {
+            out.writeShort(utf8Constant("Exceptions"));
+            out.writeInt(4);
+            out.writeShort(1);
+            out.writeShort(classConstant(method.exception));
+        }
+    }
+
+    /**
+     * Assemble the code of a method. The first pass finds the offset of
+     * each label (which needs the size of each instruction, and so the
+     * constant pool index of each ldc); the second writes the bytes.
+     *
+     * A branch whose target is too far for a two-byte offset is written
+     * with a goto_w instead (see write). Since that moves the code after
+     * it, the first pass is repeated until no more branches are widened,
+     * which is once unless the method is huge.
+     */
+    private byte[] assemble(ClassModel.MethodModel method) throws IOException {
+        HashSet<Integer> wide = new HashSet<Integer>();
+        HashMap<String, Integer> labels;
+        List<Integer> offsets;
+        int offset;
+        boolean widened;
+        do {
+            labels = new HashMap<String, Integer>();
+            offsets = new ArrayList<Integer>();
+            offset = 0;
+            for (int i = 0; i < method.code.size(); i++) {
+                Instruction instruction = method.code.get(i);
+                if (instruction.getKind() == Instruction.Kind.LABEL)
+                    labels.put(instruction.getOperand(), offset);
+                offsets.add(offset);
+                offset += wide.contains(i) ? wideSize(instruction)
+                    : size(instruction);
+            }
+            widened = false;
+            for (int i = 0; i < method.code.size(); i++) {
+                Instruction instruction = method.code.get(i);
+                if (instruction.getKind() != Instruction.Kind.BRANCH
+                        || wide.contains(i))
+                    continue;
+                Integer target = labels.get(instruction.getOperand());
+                if (target == null)
+                    continue;
+                int branch = target - offsets.get(i);
+                if (branch < Short.MIN_VALUE || branch > Short.MAX_VALUE) {
+                    wide.add(i);
+                    widened = true;
+                }
+            }
+        } while (widened);
+        if (offset > 0xffff)
+            throw new CodeTooLargeException(classModel, method, "code of "
+                    + "method " + method.name + " in class " + classModel.name
+                    + " is too large (" + offset + " bytes, at most 65535)");
+        if (!wideBranches && !wide.isEmpty())
+            throw new CodeTooLargeException(classModel, method, "method "
+                    + method.name + " in class " + classModel.name
+                    + " has a branch too far for Jasmin, which cannot write"
+                    + " a goto_w (use -assembler direct)");
+
+        ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+        DataOutputStream code = new DataOutputStream(codeBytes);
+        for (int i = 0; i < method.code.size(); i++)
+            write(code, method.code.get(i), offsets.get(i), labels,
+                    wide.contains(i));
+        return codeBytes.toByteArray();
+    }
+
+    /**
+     * @return The number of bytes of an instruction
+     */
+    private int size(Instruction instruction) {
+        switch (instruction.getKind()) {
+            case LABEL:
+            case COMMENT:
+                return 0;
+            case NONE:
+                return 1;
+            case LOCAL:
+                if (instruction.getNumber() < 4)
+                    return 1;
+                return instruction.getNumber() < 256 ? 2 : 4;
+            case INT_CONSTANT:
+                if (instruction.getOpcode().startsWith("iconst"))
+                    return 1;
+                if (instruction.getOpcode().equals("bipush"))
+                    return 2;
+                if (instruction.getOpcode().equals("sipush"))
+                    return 3;
+                return ldcSize(instruction);
+            case STRING_CONSTANT:
+                return ldcSize(instruction);
+            case ARRAY_TYPE:
+                return 2;
+            default:
+                return 3;
+        }
+    }
+
+    /**
+     * @return The number of bytes of a branch written with a goto_w: a
+     *         goto_w, or a conditional branch over one
+     */
+    private int wideSize(Instruction instruction) {
+        return instruction.getOpcode().equals("goto") ? 5 : 8;
+    }
+
+    private int ldcSize(Instruction instruction) {
+        return constant(instruction) < 256 ? 2 : 3;
+    }
+
+    private void write(DataOutputStream code, Instruction instruction,
+            int offset, HashMap<String, Integer> labels, boolean wide)
+            throws IOException {
+        String opcode = instruction.getOpcode();
+        switch (instruction.getKind()) {
+            case LABEL:
+            case COMMENT:
+                return;
+            case LOCAL:
+                if (instruction.getNumber() < 4)
+                    code.writeByte(getOpcode(opcode));
+                else if (instruction.getNumber() < 256) {
+                    code.writeByte(getOpcode(opcode));
+                    code.writeByte(instruction.getNumber());
+                } else {
+                    code.writeByte(WIDE);
+                    code.writeByte(getOpcode(opcode));
+                    code.writeShort(instruction.getNumber());
+                }
+                return;
+            case INT_CONSTANT:
+                if (opcode.equals("ldc")) {
+                    writeLdc(code, instruction);
+                    return;
+                }
+                code.writeByte(getOpcode(opcode));
+                if (opcode.equals("bipush"))
+                    code.writeByte(instruction.getNumber());
+                else if (opcode.equals("sipush"))
+                    code.writeShort(instruction.getNumber());
+                return;
+            case STRING_CONSTANT:
+                writeLdc(code, instruction);
+                return;
+            case BRANCH:
+                Integer target = labels.get(instruction.getOperand());
+                if (target == null)
+                    throw new RuntimeException("Error: undefined label "
+                            + instruction.getOperand());
+                int branch = target - offset;
+                if (!wide) {
+                    code.writeByte(getOpcode(opcode));
+                    code.writeShort(branch);
+                } else if (opcode.equals("goto")) {
+                    code.writeByte(GOTO_W);
+                    code.writeInt(branch);
+                } else {
+                    // the opposite condition branches over the goto_w
+                    // (the conditional branches come in opposite pairs)
+                    code.writeByte(((getOpcode(opcode) - IFEQ) ^ 1) + IFEQ);
+                    code.writeShort(8);
+                    code.writeByte(GOTO_W);
+                    code.writeInt(branch - 3);
+                }
+                return;
+            case CLASS:
+                code.writeByte(getOpcode(opcode));
+                code.writeShort(classConstant(instruction.getOperand()));
+                return;
+            case FIELD:
+                code.writeByte(getOpcode(opcode));
+                code.writeShort(memberConstant(CONSTANT_FIELDREF,
+                        instruction));
+                return;
+            case METHOD:
+                code.writeByte(getOpcode(opcode));
+                code.writeShort(memberConstant(CONSTANT_METHODREF,
+                        instruction));
+                return;
+            case ARRAY_TYPE:
+                code.writeByte(getOpcode(opcode));
+                code.writeByte(instruction.getOperand().equals("boolean")
+                        ? T_BOOLEAN : T_INT);
+                return;
+            default:
+                code.writeByte(getOpcode(opcode));
+        }
+    }
+
+    // write an ldc, or an ldc_w if the constant's index needs two bytes
+    private void writeLdc(DataOutputStream code, Instruction instruction)
+            throws IOException {
+        int index = constant(instruction);
+        if (index < 256) {
+            code.writeByte(getOpcode("ldc"));
+            code.writeByte(index);
+        } else {
+            code.writeByte(LDC_W);
+            code.writeShort(index);
+        }
+    }
+
+    private static int getOpcode(String opcode) {
+        Integer value = OPCODES.get(opcode);
+        if (value == null)
+            throw new RuntimeException("Error: unknown instruction " + opcode);
+        return value;
+    }
+
+    /*
+     *
+     * Constant pool
+     *
+     */
+
+    private int constant(Instruction instruction) {
+        if (instruction.getKind() == Instruction.Kind.STRING_CONSTANT)
+            return stringConstant(instruction.getOperand());
+        return intConstant(instruction.getNumber());
+    }
+
+    private int utf8Constant(String value) {
+        String key = "Utf8 " + value;
+        Integer index = constantIndexes.get(key);
+        if (index == null) {
+            index = newConstant(key);
+            try {
+                constants.writeByte(CONSTANT_UTF8);
+                // writeUTF uses the modified UTF-8 of the class file format
+                constants.writeUTF(value);
+            } catch (IOException e) {
+                throw new RuntimeException("Error: constant is too long", e);
+            }
+        }
+        return index;
+    }
+
+    private int intConstant(int value) {
+        String key = "Integer " + value;
+        Integer index = constantIndexes.get(key);
+        if (index == null) {
+            index = newConstant(key);
+            writeConstant(CONSTANT_INTEGER, value >>> 16, value & 0xffff);
+        }
+        return index;
+    }
+
+    private int stringConstant(String value) {
+        String key = "String " + value;
+        Integer index = constantIndexes.get(key);
+        if (index == null) {
+            int utf8 = utf8Constant(value);
+            index = newConstant(key);
+            writeConstant(CONSTANT_STRING, utf8);
+        }
+        return index;
+    }
+
+    private int classConstant(String name) {
+        String key = "Class " + name;
+        Integer index = constantIndexes.get(key);
+        if (index == null) {
+            int utf8 = utf8Constant(name);
+            index = newConstant(key);
+            writeConstant(CONSTANT_CLASS, utf8);
+        }
+        return index;
+    }
+
+    private int nameAndTypeConstant(String name, String descriptor) {
+        String key = "NameAndType " + name + " " + descriptor;
+        Integer index = constantIndexes.get(key);
+        if (index == null) {
+            int nameIndex = utf8Constant(name);
+            int descriptorIndex = utf8Constant(descriptor);
+            index = newConstant(key);
+            writeConstant(CONSTANT_NAME_AND_TYPE, nameIndex, descriptorIndex);
+        }
+        return index;
+    }
+
+    private int memberConstant(int tag, Instruction instruction) {
+        String key = tag + " " + instruction.getOwner() + " "
+                + instruction.getName() + " " + instruction.getDescriptor();
+        Integer index = constantIndexes.get(key);
+        if (index == null) {
+            int owner = classConstant(instruction.getOwner());
+            int nameAndType = nameAndTypeConstant(instruction.getName(),
+                    instruction.getDescriptor());
+            index = newConstant(key);
+            writeConstant(tag, owner, nameAndType);
+        }
+        return index;
+    }
+
+    private int newConstant(String key) {
+        int index = constantCount++;
+        constantIndexes.put(key, index);
+        return index;
+    }
+
+    // write a constant whose contents are one or two u2 values
+    private void writeConstant(int tag, int... values) {
+        try {
+            constants.writeByte(tag);
+            for (int value : values)
+                constants.writeShort(value);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
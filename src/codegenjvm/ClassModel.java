@@ -0,0 +1,260 @@
+package codegenjvm;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A generated class: its fields and the code of its methods. A
+ * CodeGenVisitor builds a ClassModel, which can then be written as a
+ * class file (toClassFile()) or as Jasmin assembly (writeJasmin()).
+ */
+public class ClassModel {
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_PROTECTED = 0x0004;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_SUPER = 0x0020;
+
+    /**
+     * A field of a generated class
+     */
+    public static class FieldModel {
+        int access;
+        String name;
+        String descriptor;
+
+        FieldModel(int access, String name, String descriptor) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+    }
+
+    /**
+     * A method of a generated class
+     */
+    public static class MethodModel {
+        int access;
+        String name;
+        String descriptor;
+        // internal name of the exception the method throws (null for none)
+        String exception;
+        int maxStack;
+        int maxLocals;
+        List<Instruction> code;
+        // line number of the method (of the class for the constructor)
+        int lineNum;
+
+        MethodModel(int access, String name, String descriptor,
+                String exception, int maxStack, int maxLocals,
+                List<Instruction> code, int lineNum) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.exception = exception;
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+            this.code = code;
+            this.lineNum = lineNum;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getLineNum() {
+            return lineNum;
+        }
+
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        /**
+         * @return The maximum height of the operand stack (.limit stack)
+         */
+        public int getMaxStack() {
+            return maxStack;
+        }
+
+        /**
+         * @return The number of local variables (.limit locals)
+         */
+        public int getMaxLocals() {
+            return maxLocals;
+        }
+
+        /**
+         * @return The instructions of the method, including label
+         *         definitions and comments
+         */
+        public List<Instruction> getCode() {
+            return code;
+        }
+    }
+
+    String sourceFile;
+    String name;
+    // internal name of the superclass (null for none)
+    String superName;
+    ArrayList<String> interfaces = new ArrayList<String>();
+    ArrayList<FieldModel> fields = new ArrayList<FieldModel>();
+    ArrayList<MethodModel> methods = new ArrayList<MethodModel>();
+    // number of labels created while generating the class
+    int numLabels;
+
+    /**
+     * @param sourceFile
+     *        The name of the source file the class is defined in
+     * @param name
+     *        The name of the class
+     * @param superName
+     *        The internal name of the superclass (null for none)
+     */
+    public ClassModel(String sourceFile, String name, String superName) {
+        this.sourceFile = sourceFile;
+        this.name = name;
+        this.superName = superName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSourceFile() {
+        return sourceFile;
+    }
+
+    /**
+     * @return The methods of the class, the constructor first
+     */
+    public List<MethodModel> getMethods() {
+        return methods;
+    }
+
+    /**
+     * @return The number of labels created while generating the class
+     */
+    public int getNumLabels() {
+        return numLabels;
+    }
+
+    /**
+     * @param numLabels
+     *        The number of labels created while generating the class
+     */
+    public void setNumLabels(int numLabels) {
+        this.numLabels = numLabels;
+    }
+
+    /**
+     * @param name
+     *        The internal name of an interface the class implements
+     */
+    public void addInterface(String name) {
+        interfaces.add(name);
+    }
+
+    /**
+     * @param access
+     *        The access flags of the field
+     * @param name
+     *        The name of the field
+     * @param descriptor
+     *        The descriptor of the field's type
+     */
+    public void addField(int access, String name, String descriptor) {
+        fields.add(new FieldModel(access, name, descriptor));
+    }
+
+    /**
+     * @param access
+     *        The access flags of the method
+     * @param name
+     *        The name of the method
+     * @param descriptor
+     *        The descriptor of the method
+     * @param exception
+     *        The internal name of the exception the method throws (null for
+     *        none)
+     * @param maxStack
+     *        The maximum height of the operand stack
+     * @param maxLocals
+     *        The number of local variables
+     * @param code
+     *        The instructions of the method
+     * @param lineNum
+     *        The line number of the method (of the class for the
+     *        constructor)
+     */
+    public void addMethod(int access, String name, String descriptor,
+            String exception, int maxStack, int maxLocals,
+            List<Instruction> code, int lineNum) {
+        methods.add(new MethodModel(access, name, descriptor, exception,
+                maxStack, maxLocals, code, lineNum));
+    }
+
+    /**
+     * @return The class in the class file format
+     */
+    public byte[] toClassFile() {
+        return new ClassFileWriter(this).toByteArray();
+    }
+
+    /**
+     * Write the class as Jasmin assembly
+     *
+     * @param out
+     *        The writer the assembly is written to
+     */
+    public void writeJasmin(PrintWriter out) {
+        out.println(".source " + sourceFile);
+        out.println(".class " + getAccess(ACC_PUBLIC) + " " + name);
+        if (superName != null)
+            out.println(".super " + superName);
+        for (String name : interfaces)
+            out.println(".implements " + name);
+        out.println();
+
+        for (FieldModel field : fields)
+            out.println(".field " + getAccess(field.access) + " " + field.name
+                    + " " + field.descriptor);
+        out.println();
+
+        for (MethodModel method : methods) {
+            out.println(".method " + getAccess(method.access) + " "
+                    + method.name + method.descriptor);
+            if (method.exception != null)
+                out.println(".throws " + method.exception);
+            out.println("    .limit stack " + method.maxStack);
+            out.println("    .limit locals " + method.maxLocals);
+            for (Instruction instruction : method.code) {
+                if (instruction.getKind() == Instruction.Kind.LABEL)
+                    out.println("  " + instruction);
+                else
+                    out.println("    " + instruction);
+            }
+            out.println(".end method");
+            // the constructor is set apart from the methods
+            if (method.name.equals("<init>"))
+                out.println();
+        }
+        out.println();
+    }
+
+    /**
+     * @param access
+     *        Access flags
+     * @return The Jasmin keywords for the flags
+     */
+    private String getAccess(int access) {
+        String keywords = "";
+        if ((access & ACC_PUBLIC) != 0)
+            keywords += " public";
+        if ((access & ACC_PROTECTED) != 0)
+            keywords += " protected";
+        if ((access & ACC_STATIC) != 0)
+            keywords += " static";
+        return keywords.substring(1);
+    }
+}
@@ -0,0 +1,200 @@
+package codegenjvm;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.function.Consumer;
+import java.util.jar.Manifest;
+
+/**
+ * Where generated classes go: class files in an output directory, or
+ * entries of a runnable jar. A class is written as soon as it is handed
+ * over, so a jar is streamed class by class and nothing is staged on disk.
+ * A jar gets a manifest whose Main-Class is Main, and the runtime classes
+ * (lib/TextIO.class and lib/Sys.class) are bundled with the program.
+ *
+ * Classes may be written from several threads at once.
+ */
+public class ClassOutput {
+    // runtime classes bundled into a jar
+    private static final String[] RUNTIME_CLASSES = { "TextIO", "Sys" };
+
+    // directory class files (and .j files) are written to (null for the
+    // current directory)
+    private File outDir;
+    // the jar written to instead of outDir (null to write class files)
+    private File jarFile;
+    private JarOutputStream jar;
+    // whether to also write Jasmin assembly (.j files, always to outDir)
+    private boolean jasmin;
+    // assembler class files are built with (null to write them directly)
+    private JasminAssembler assembler;
+    // told about each class written (null for none)
+    private Consumer<ClassModel> listener;
+
+    /**
+     * @param outDir
+     *        The directory class files are written to (null for the current
+     *        directory)
+     */
+    public ClassOutput(File outDir) {
+        this.outDir = outDir;
+    }
+
+    /**
+     * @param jarFile
+     *        The runnable jar the classes are written to instead of class
+     *        files (null to write class files)
+     */
+    public void setJar(File jarFile) {
+        this.jarFile = jarFile;
+    }
+
+    /**
+     * @param jasmin
+     *        Whether to also write each class as Jasmin assembly (a .j file)
+     */
+    public void setJasmin(boolean jasmin) {
+        this.jasmin = jasmin;
+    }
+
+    /**
+     * @param assembler
+     *        The assembler class files are built with (null to write them
+     *        directly)
+     */
+    public void setAssembler(JasminAssembler assembler) {
+        this.assembler = assembler;
+    }
+
+    /**
+     * @param listener
+     *        Told about each class as it is written (null for none); it may
+     *        be called from several threads at once
+     */
+    public void setListener(Consumer<ClassModel> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Write a generated class: its class file and, if requested, its Jasmin
+     * assembly
+     *
+     * @param classModel
+     *        The class
+     * @throws IOException
+     *         if the class cannot be written
+     * @throws CodeTooLargeException
+     *         if the code of a method does not fit in a class file
+     */
+    public void write(ClassModel classModel) throws IOException {
+        byte[] bytes = assembler == null ? classModel.toClassFile()
+                : assembler.assemble(classModel);
+        if (jarFile != null)
+            addEntry(classModel.getName() + ".class", bytes);
+        else {
+            File classFile = new File(outDir, classModel.getName() + ".class");
+            try (FileOutputStream out = new FileOutputStream(classFile)) {
+                out.write(bytes);
+            }
+        }
+        if (jasmin) {
+            File jasminFile = new File(outDir, classModel.getName() + ".j");
+            try (PrintWriter out = new PrintWriter(jasminFile)) {
+                classModel.writeJasmin(out);
+            }
+        }
+        if (listener != null)
+            listener.accept(classModel);
+    }
+
+    /**
+     * Finish the output: for a jar, write the central directory
+     *
+     * @throws IOException
+     *         if the jar cannot be written
+     */
+    public synchronized void close() throws IOException {
+        if (jarFile == null)
+            return;
+        openJar();
+        jar.close();
+        jar = null;
+    }
+
+    /**
+     * Give up on the output after compilation failed: a partly written jar
+     * is deleted, so a broken jar is never left behind
+     */
+    public synchronized void discard() {
+        if (jar == null)
+            return;
+        try {
+            jar.close();
+        } catch (IOException e) {
+            // it is deleted anyway
+        }
+        jar = null;
+        jarFile.delete();
+    }
+
+    /**
+     * Add an entry to the jar, opening it first if needed
+     */
+    private synchronized void addEntry(String name, byte[] bytes)
+            throws IOException {
+        openJar();
+        jar.putNextEntry(new JarEntry(name));
+        jar.write(bytes);
+        jar.closeEntry();
+    }
+
+    /**
+     * Open the jar, writing its manifest and the runtime classes. This is
+     * done when the first class is written, so the jar is not touched if
+     * compilation stops before code generation.
+     */
+    private void openJar() throws IOException {
+        if (jar != null)
+            return;
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.put(Attributes.Name.MAIN_CLASS, "Main");
+        if (jarFile.getParentFile() != null)
+            jarFile.getParentFile().mkdirs();
+        jar = new JarOutputStream(new FileOutputStream(jarFile), manifest);
+        for (String name : RUNTIME_CLASSES) {
+            File runtimeClass = getLibFile(name + ".class");
+            jar.putNextEntry(new JarEntry(name + ".class"));
+            jar.write(Files.readAllBytes(runtimeClass.toPath()));
+            jar.closeEntry();
+        }
+    }
+
+    /**
+     * @param name
+     *        The name of a file of the runtime system
+     * @return The file, in the lib directory next to the compiler's classes
+     * @throws IOException
+     *         if it cannot be found
+     */
+    static File getLibFile(String name) throws IOException {
+        File file;
+        try {
+            File classes = new File(ClassOutput.class.getProtectionDomain()
+                    .getCodeSource().getLocation().toURI());
+            file = new File(classes.getParentFile(), "lib/" + name);
+        } catch (Exception e) {
+            throw new IOException("cannot find lib/" + name, e);
+        }
+        if (!file.exists())
+            throw new IOException("cannot find " + file);
+        return file;
+    }
+}
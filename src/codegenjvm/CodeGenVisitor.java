@@ -2,24 +2,37 @@ package codegenjvm;
 
 import visitor.Visitor;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.Stack;
 import java.util.function.Consumer;
 
 import ast.*;
 import semant.SemantVisitor;
 import util.ClassTreeNode;
+import util.SymbolTable;
+import util.Trace;
+import util.Type;
 
 public class CodeGenVisitor extends Visitor {
 
-    PrintWriter out;
+    // the class being generated
+    private ClassModel classModel;
+    // where debugging output is traced, and whether code generation is
+    // traced (every trace point is guarded by it, so that no strings are
+    // built when it is not)
+    private Trace trace;
+    private boolean tracing;
     private ClassTreeNode classTreeNode;
-    LinkedList<String> bytecodeBuffer = new LinkedList<String>();
+    // local variables of the current method (mapped to their slots), on top
+    // of the class's variables; kept here so the class tree is never modified
+    // and classes can be generated independently of each other
+    private SymbolTable localVarTable;
+    // instructions of the current method
+    private ArrayList<Instruction> code = new ArrayList<Instruction>();
+    // descriptor of the current method, built while visiting its formals
+    private StringBuilder methodDescriptor;
 
     // might need these to keep track of limits
     private int currStackSize = 0;
@@ -51,6 +64,26 @@ public class CodeGenVisitor extends Visitor {
         new Stack<ControlFlowEntry>();
     private int labelNumber = 0;
 
+    public CodeGenVisitor() {
+        this(Trace.NONE);
+    }
+
+    /**
+     * @param trace
+     *        Where debugging output is traced (category CODEGEN)
+     */
+    public CodeGenVisitor(Trace trace) {
+        this.trace = trace;
+        this.tracing = trace.isEnabled(Trace.Category.CODEGEN);
+    }
+
+    /**
+     * @return The class generated by the last visit of a class
+     */
+    public ClassModel getClassModel() {
+        return classModel;
+    }
+
     /*
      * 
      * Helper Methods
@@ -70,24 +103,21 @@ public class CodeGenVisitor extends Visitor {
         returnStmt();
     }
 
+    // callers check tracing first, so that the message is not even built
     private void print(String string) {
-        System.out.print(string);
+        trace.print(Trace.Category.CODEGEN, string);
     }
 
     private void println(String string) {
-        System.out.println(string);
+        trace.println(Trace.Category.CODEGEN, string);
     }
 
-    // Helper method to that indents the input by 4 spaces and puts a \n at
-    // the end
-    private void printBytecode(String bytecode) {
-        bytecode = bytecode.replace("\\", "\\\\");
-        bytecode = bytecode.replace("\n", "\\n");
-        bytecode = bytecode.replace("\t", "\\t");
-        bytecode = bytecode.replace("\f", "\\f");
-
-        println(bytecode);
-        bytecodeBuffer.add("    " + bytecode);
+    // Helper method that adds an instruction to the current method and
+    // traces it (as Jasmin assembly)
+    private void emit(Instruction instruction) {
+        if (tracing)
+            println(instruction.toString());
+        code.add(instruction);
     }
 
     private void checkLimits() {
@@ -96,23 +126,26 @@ public class CodeGenVisitor extends Visitor {
         currLimits[1] = Math.max(currLimits[1],
                 currLocalSize);
 
-        println("CurrStackSize: " + currStackSize + " currLocalSize: "
-                + currLocalSize);
+        if (tracing) {
+            println("CurrStackSize: " + currStackSize + " currLocalSize: "
+                    + currLocalSize);
 
-        println("CurrLimits[0]: " + currLimits[0] + " currLimits[1]: "
-                + currLimits[1]);
-    }
-
-    private void emptyQueue() {
-        while (!bytecodeBuffer.isEmpty()) {
-            out.println(bytecodeBuffer.remove());
+            println("CurrLimits[0]: " + currLimits[0] + " currLimits[1]: "
+                    + currLimits[1]);
         }
     }
 
-    private void printComment(String comment, ASTNode node) {
-        printBytecode(" ; " + comment);
-        println("    ; " + comment + " - line " + node.getLineNum());
+    // Helper method that adds the current method to the class, with the
+    // limits found while generating it, and starts a new method
+    private void endMethod(int access, String name, String descriptor,
+            String exception, int lineNum) {
+        classModel.addMethod(access, name, descriptor, exception,
+                currLimits[0], currLimits[1], code, lineNum);
+        code = new ArrayList<Instruction>();
+    }
 
+    private void printComment(String comment) {
+        emit(Instruction.comment(comment));
     }
 
     private String createLabel() {
@@ -130,13 +163,13 @@ public class CodeGenVisitor extends Visitor {
     // 1 arg <label>
     // net stack size unchanged
     private void goto_label(String label) {
-        printBytecode("goto " + label);
+        emit(Instruction.branch("goto", label));
     }
 
     // 1 arg <label>
     // net stack size - 1
     private void ifeq(String label) {
-        printBytecode("ifeq " + label);
+        emit(Instruction.branch("ifeq", label));
         currStackSize--;
         checkLimits();
     }
@@ -144,7 +177,7 @@ public class CodeGenVisitor extends Visitor {
     // 1 arg <label>
     // net stack size - 1
     private void ifne(String label) {
-        printBytecode("ifne " + label);
+        emit(Instruction.branch("ifne", label));
         currStackSize--;
         checkLimits();
     }
@@ -152,7 +185,7 @@ public class CodeGenVisitor extends Visitor {
     // 1 arg <label>
     // net stack size - 2
     private void if_icmpeq(String label) {
-        printBytecode("if_icmpeq " + label);
+        emit(Instruction.branch("if_icmpeq", label));
         currStackSize -= 2;
         checkLimits();
     }
@@ -160,7 +193,7 @@ public class CodeGenVisitor extends Visitor {
     // 1 arg <label>
     // net stack size - 2
     private void if_icmpne(String label) {
-        printBytecode("if_icmpne " + label);
+        emit(Instruction.branch("if_icmpne", label));
         currStackSize -= 2;
         checkLimits();
     }
@@ -168,7 +201,7 @@ public class CodeGenVisitor extends Visitor {
     // 1 arg <label>
     // net stack size - 2
     private void if_icmpge(String label) {
-        printBytecode("if_icmpge " + label);
+        emit(Instruction.branch("if_icmpge", label));
         currStackSize -= 2;
         checkLimits();
     }
@@ -176,7 +209,7 @@ public class CodeGenVisitor extends Visitor {
     // 1 arg <label>
     // net stack size - 2
     private void if_icmpgt(String label) {
-        printBytecode("if_icmpgt " + label);
+        emit(Instruction.branch("if_icmpgt", label));
         currStackSize -= 2;
         checkLimits();
     }
@@ -184,7 +217,7 @@ public class CodeGenVisitor extends Visitor {
     // 1 arg <label>
     // net stack size - 2
     private void if_icmple(String label) {
-        printBytecode("if_icmple " + label);
+        emit(Instruction.branch("if_icmple", label));
         currStackSize -= 2;
         checkLimits();
     }
@@ -192,7 +225,7 @@ public class CodeGenVisitor extends Visitor {
     // 1 arg <label>
     // net stack size - 2
     private void if_icmplt(String label) {
-        printBytecode("if_icmplt " + label);
+        emit(Instruction.branch("if_icmplt", label));
         currStackSize -= 2;
         checkLimits();
     }
@@ -200,7 +233,7 @@ public class CodeGenVisitor extends Visitor {
     // 1 arg <label>
     // net stack size - 2
     private void if_acmpeq(String label) {
-        printBytecode("if_acmpeq " + label);
+        emit(Instruction.branch("if_acmpeq", label));
         currStackSize -= 2;
         checkLimits();
     }
@@ -208,15 +241,16 @@ public class CodeGenVisitor extends Visitor {
     // 1 arg <label>
     // net stack size - 2
     private void if_acmpne(String label) {
-        printBytecode("if_acmpne " + label);
+        emit(Instruction.branch("if_acmpne", label));
         currStackSize -= 2;
         checkLimits();
     }
 
     // no args
     // net stack size + 1
+    // pushes a String constant (given unquoted and unescaped)
     private void ldc(String constant) {
-        printBytecode("ldc " + constant);
+        emit(Instruction.stringConstant(constant));
         currStackSize++;
         checkLimits();
     }
@@ -224,22 +258,7 @@ public class CodeGenVisitor extends Visitor {
     // no args
     // net stack size + 1
     private void iconst(int number) {
-        if (number < -(2 << 16))
-            printBytecode("ldc " + number);
-        else if (number < -(2 << 8))
-            printBytecode("sipush " + number);
-        else if (number < -1)
-            printBytecode("bipush " + number);
-        else if (number == -1)
-            printBytecode("iconst_m1");
-        else if (number < 6)
-            printBytecode("iconst_" + number);
-        else if (number < (2 << 8))
-            printBytecode("bipush " + number);
-        else if (number < (2 << 16))
-            printBytecode("sipush " + number);
-        else
-            printBytecode("ldc " + number);
+        emit(Instruction.intConstant(number));
         currStackSize++;
         checkLimits();
 
@@ -248,7 +267,7 @@ public class CodeGenVisitor extends Visitor {
     // no args
     // adds a ref to the stack
     private void aconstNull() {
-        printBytecode("aconst_null");
+        emit(Instruction.plain("aconst_null"));
         currStackSize++;
         checkLimits();
     }
@@ -256,28 +275,21 @@ public class CodeGenVisitor extends Visitor {
     // 1 arg <reference>
     // returns new type, net = stack
     private void checkCast(String type) {
-        if (type.endsWith("[]"))
-            printBytecode("checkcast " + getDescriptor(type));
-        else
-            printBytecode("checkcast " + getDescriptorShort(type));
+        emit(Instruction.classRef("checkcast",
+                classTreeNode.lookupType(type).getInternalName()));
     }
 
     // 1 arg <reference>
     // returns new type, net = stack
     private void instanceOf(String type) {
-        if (type.endsWith("[]"))
-            printBytecode("instanceof " + getDescriptor(type));
-        else
-            printBytecode("instanceof " + getDescriptorShort(type));
+        emit(Instruction.classRef("instanceof",
+                classTreeNode.lookupType(type).getInternalName()));
     }
 
     // no args
     // net stack size + 1
     private void iload(int index) {
-        if (index < 4)
-            printBytecode("iload_" + index);
-        else
-            printBytecode("iload " + index);
+        emit(Instruction.local("iload", index));
         currStackSize++;
         checkLimits();
         // net stack size + 1
@@ -288,10 +300,7 @@ public class CodeGenVisitor extends Visitor {
     private void istore(int index) {
         if (currStackSize <= 0)
             throw new RuntimeException("Error: popped from an empty stack");
-        else if (index < 4)
-            printBytecode("istore_" + index);
-        else
-            printBytecode("istore " + index);
+        emit(Instruction.local("istore", index));
         currStackSize--;
         currLocalSize = Math.max(index + 1, currLocalSize);
         checkLimits();
@@ -300,12 +309,7 @@ public class CodeGenVisitor extends Visitor {
     // no args
     // adds 1 to stack
     private void aload(int index) {
-        if (index == 0)
-            printBytecode("aload_" + index);
-        else if (index < 4)
-            printBytecode("aload_" + index);
-        else
-            printBytecode("aload " + index);
+        emit(Instruction.local("aload", index));
         currStackSize++;
         checkLimits();
     }
@@ -313,7 +317,7 @@ public class CodeGenVisitor extends Visitor {
     // 2 args <reference> <index>
     // removes 2 from stack pushes a reference net -1
     private void aaload() {
-        printBytecode("aaload");
+        emit(Instruction.plain("aaload"));
         currStackSize--;
         checkLimits();
     }
@@ -321,7 +325,7 @@ public class CodeGenVisitor extends Visitor {
     // 2 args <reference> <index>
     // removes 2 from stack pushes an int. net -1
     private void iaload() {
-        printBytecode("iaload");
+        emit(Instruction.plain("iaload"));
         currStackSize--;
         checkLimits();
     }
@@ -329,7 +333,7 @@ public class CodeGenVisitor extends Visitor {
     // 2 args <reference> <index>
     // removes 2 from stack pushes an int. net -1
     private void baload() {
-        printBytecode("baload");
+        emit(Instruction.plain("baload"));
         currStackSize--;
         checkLimits();
     }
@@ -339,10 +343,7 @@ public class CodeGenVisitor extends Visitor {
     private void astore(int index) {
         if (currStackSize <= 0)
             throw new RuntimeException("Error: popped from an empty stack");
-        else if (index < 4)
-            printBytecode("astore_" + index);
-        else
-            printBytecode("astore " + index);
+        emit(Instruction.local("astore", index));
         currStackSize--;
         currLocalSize = Math.max(index + 1, currLocalSize);
         checkLimits();
@@ -351,7 +352,7 @@ public class CodeGenVisitor extends Visitor {
     // 3 args <reference> <index> <value>
     // removes 3 from stack
     private void aastore() {
-        printBytecode("aastore ");
+        emit(Instruction.plain("aastore"));
         currStackSize -= 3;
         checkLimits();
     }
@@ -359,7 +360,7 @@ public class CodeGenVisitor extends Visitor {
     // 3 args <reference> <index> <value>
     // removes 3 from stack
     private void iastore() {
-        printBytecode("iastore");
+        emit(Instruction.plain("iastore"));
         currStackSize -= 3;
         checkLimits();
     }
@@ -367,7 +368,7 @@ public class CodeGenVisitor extends Visitor {
     // 3 args <reference> <index> <value>
     // removes 3 from stack
     private void bastore() {
-        printBytecode("bastore");
+        emit(Instruction.plain("bastore"));
         currStackSize -= 3;
         checkLimits();
     }
@@ -377,7 +378,7 @@ public class CodeGenVisitor extends Visitor {
     private void pop() {
         if (currStackSize <= 0)
             throw new RuntimeException("Error: popped from an empty stack");
-        printBytecode("pop");
+        emit(Instruction.plain("pop"));
         currStackSize--;
         checkLimits();
     }
@@ -387,7 +388,7 @@ public class CodeGenVisitor extends Visitor {
     private void dup() {
         if (currStackSize <= 0)
             throw new RuntimeException("Error: Nothing to dup");
-        printBytecode("dup");
+        emit(Instruction.plain("dup"));
         currStackSize++;
         checkLimits();
     }
@@ -397,7 +398,7 @@ public class CodeGenVisitor extends Visitor {
     private void dupx1() {
         if (currStackSize <= 0)
             throw new RuntimeException("Error: Nothing to dup");
-        printBytecode("dup_x1");
+        emit(Instruction.plain("dup_x1"));
         currStackSize++;
         checkLimits();
     }
@@ -407,18 +408,18 @@ public class CodeGenVisitor extends Visitor {
     private void dupx2() {
         if (currStackSize <= 1)
             throw new RuntimeException("Error: Nothing to dup");
-        printBytecode("dup_x2");
+        emit(Instruction.plain("dup_x2"));
         currStackSize++;
         checkLimits();
     }
 
     // 2 arg <reference> <value>
     // removes 2 from stack
-    private void putField(String className, String name, String type) {
+    private void putField(String className, String name, Type type) {
 
         className = getClass(className);
-        String descriptor = getDescriptor(type);
-        printBytecode("putfield " + className + "/" + name + " " + descriptor);
+        String descriptor = type.getDescriptor();
+        emit(Instruction.fieldRef("putfield", className, name, descriptor));
         currStackSize--;
         currStackSize--;
         checkLimits();
@@ -426,12 +427,12 @@ public class CodeGenVisitor extends Visitor {
 
     // 1 arg reference
     // net equal stack
-    private void getField(String className, String name, String type) {
+    private void getField(String className, String name, Type type) {
         className = getClass(className);
-        String descriptor = getDescriptor(type);
+        String descriptor = type.getDescriptor();
 
         // We only have int types
-        printBytecode("getfield " + className + "/" + name + " " + descriptor);
+        emit(Instruction.fieldRef("getfield", className, name, descriptor));
     }
 
     // new array:
@@ -441,11 +442,7 @@ public class CodeGenVisitor extends Visitor {
     // no arg
     // add 1 to stack
     private void newObject(String className) {
-        String type;
-
-        type = getDescriptor(className);
-        type = type.substring(1, type.length() - 1);
-        printBytecode("new " + type);
+        emit(Instruction.classRef("new", getClass(className)));
 
         currStackSize++;
         checkLimits();
@@ -459,8 +456,9 @@ public class CodeGenVisitor extends Visitor {
                         .lookupClass(className)
                         .getMethodSymbolTable()
                         .lookup("<init>");
-                println("DEBUG: return type of MethodSymbolTableLookup is: "
-                        + temp.getClass().getSimpleName());
+                if (tracing)
+                    println("DEBUG: return type of MethodSymbolTableLookup is: "
+                            + temp.getClass().getSimpleName());
 
                 if (temp instanceof Method) {
                     invokeSpecial(getFullMethodCall((Method) temp, className));
@@ -478,10 +476,10 @@ public class CodeGenVisitor extends Visitor {
     // removes 1 from the stack but adds reference so =
     private void newArray(String type) {
         if (SemantVisitor.isPrimitive(type)) {
-            printBytecode("newarray " + type);
+            emit(Instruction.newArray(type));
         } else {// if its a class, we need to call the constructor too
-            type = getDescriptorShort(type);
-            printBytecode("anewarray " + type);
+            emit(Instruction.classRef("anewarray",
+                    classTreeNode.lookupType(type).getInternalName()));
         }
 
         checkLimits();
@@ -490,7 +488,7 @@ public class CodeGenVisitor extends Visitor {
     // 1 arg <reference>
     // net = stack size
     private void arrayLength() {
-        printBytecode("arraylength");
+        emit(Instruction.plain("arraylength"));
     }
 
     // 1 arg <reference>
@@ -504,7 +502,7 @@ public class CodeGenVisitor extends Visitor {
     // n+1 for <reference> args for each <param>
     // remove n+1 - 1(if it returns something)
     private void invokeSpecial(String method) {
-        printBytecode("invokespecial " + method);
+        emit(Instruction.methodRef("invokespecial", method));
         int numOfParameters = 1;
         if (!method.endsWith("V"))
             numOfParameters--;
@@ -514,9 +512,10 @@ public class CodeGenVisitor extends Visitor {
         // ';' delimiter
                 .split(";").length - 1;
 
-        println(
-                "invokespecial removed " + numOfParameters
-                        + " items from stack");
+        if (tracing)
+            println(
+                    "invokespecial removed " + numOfParameters
+                            + " items from stack");
         currStackSize -= numOfParameters;// for the reference
         checkLimits();
     }
@@ -531,8 +530,18 @@ public class CodeGenVisitor extends Visitor {
     // n+1 for <reference> args for each <param>
     // remove n+1 - 1(if it returns something)
     private void invokeVirtual(Method method, String className) {
+        invoke("invokevirtual", method, className);
+    }
+
+    // same as invokeVirtual, but calls the method of the class given (or
+    // the one it inherits) whatever the class of the object, for super.m()
+    private void invokeSpecial(Method method, String className) {
+        invoke("invokespecial", method, className);
+    }
 
-        printBytecode("invokevirtual " + getFullMethodCall(method, className));
+    private void invoke(String instruction, Method method, String className) {
+        emit(Instruction.methodRef(instruction,
+                getFullMethodCall(method, className)));
         int numOfParameters = 1; // for reference
 
         if (!method.getReturnType().equals("void"))
@@ -546,130 +555,72 @@ public class CodeGenVisitor extends Visitor {
     // no args
     // remove 1 from stack
     private void iadd() {
-        printBytecode("iadd");
+        emit(Instruction.plain("iadd"));
         currStackSize -= 1;
     }
 
     // no args
     // remove 1 from stack
     private void isub() {
-        printBytecode("isub");
+        emit(Instruction.plain("isub"));
         currStackSize -= 1;
     }
 
     // no args
     // remove 1 from stack
     private void imul() {
-        printBytecode("imul");
+        emit(Instruction.plain("imul"));
         currStackSize -= 1;
     }
 
     // no args
     // remove 1 from stack
     private void idiv() {
-        printBytecode("idiv");
+        emit(Instruction.plain("idiv"));
         currStackSize -= 1;
     }
 
     // no args
     // remove 1 from stack
     private void irem() {
-        printBytecode("irem");
+        emit(Instruction.plain("irem"));
         currStackSize -= 1;
     }
 
     // no args
     // net =
     private void ineg() {
-        printBytecode("ineg");
+        emit(Instruction.plain("ineg"));
     }
 
     // no args
     // nothing
     private void returnStmt() {
-        printBytecode("return");
+        emit(Instruction.plain("return"));
     }
 
     // no args
     // adds a primitive to the caller's stack
     private void ireturnStmt() {
-        printBytecode("ireturn");
+        emit(Instruction.plain("ireturn"));
         currStackSize++;
     }
 
     // no args
     // adds a primitive to the caller's stack
     private void areturnStmt() {
-        printBytecode("areturn");
+        emit(Instruction.plain("areturn"));
         currStackSize++;
     }
 
     private void label(String label) {
-        bytecodeBuffer.add("  " + label + ":");
+        code.add(Instruction.label(label));
     }
 
+    // the descriptor of a type is worked out once, when the type is first
+    // looked up
     private String getDescriptor(String type) {
-        if (type == null) {
-            println("Null type");
-        }
-        String descriptor = "";
-        if (SemantVisitor.isArray(type)) {
-            descriptor += "[";
-            type = type.substring(0, type.length() - 2);
-        }
-
-        switch (type) {
-            case "int":
-                descriptor += "I";
-                break;
-            case "boolean":
-                descriptor += "Z";
-                break;
-            case "void":
-                descriptor += "V";
-                break;
-            case "String":
-                descriptor += "Ljava/lang/String;";
-                break;
-            case "Object":
-                descriptor += "Ljava/lang/Object;";
-                break;
-            default:
-                descriptor += "L" + type + ";";
-        }
-        return descriptor;
-    }
-
-    private String getDescriptorShort(String type) {
-        if (type == null) {
-            println("Null type");
-        }
-        String descriptor = "";
-        if (SemantVisitor.isArray(type)) {
-            descriptor += "[";
-            type = type.substring(0, type.length() - 2);
-        }
-
-        switch (type) {
-            case "int":
-                descriptor += "I";
-                break;
-            case "boolean":
-                descriptor += "Z";
-                break;
-            case "void":
-                descriptor += "V";
-                break;
-            case "String":
-                descriptor += "java/lang/String";
-                break;
-            case "Object":
-                descriptor += "java/lang/Object";
-                break;
-            default:
-                descriptor += type;
-        }
-        return descriptor;
+        return classTreeNode.lookupType(type).getDescriptor();
     }
 
     private String getMethodSignature(Method node) {
@@ -681,13 +632,16 @@ public class CodeGenVisitor extends Visitor {
         }
         signature += ")";
         signature += getDescriptor(node.getReturnType());
-        classTreeNode.getMethodSymbolTable().add(node.getName(), node);
 
         return signature;
     }
 
-    private boolean varIsField(String varName, ClassTreeNode classNode) {
-        return SemantVisitor.existsInClass("this." + varName, classNode);
+    // whether a name (without a reference) is a local variable or formal of
+    // the current method, which hides any field of the same name; any
+    // other name is a field, declared in this class or inherited
+    private boolean isLocal(String name) {
+        return localVarTable.getScopeLevel(name) > classTreeNode
+                .getVarSymbolTable().getCurrScopeLevel();
     }
 
     /// All the fields in a class get initalized here 
@@ -714,7 +668,7 @@ public class CodeGenVisitor extends Visitor {
                     }
                 }
                 putField(classTreeNode.getName(), field.getName(),
-                        field.getType());
+                        classTreeNode.lookupType(field.getType()));
             }
         }
     }
@@ -776,89 +730,75 @@ public class CodeGenVisitor extends Visitor {
      */
     public Object visit(ClassTreeNode node) {
         // start
-        println("ClassTree object start: " + node.getName());
+        if (tracing)
+            println("ClassTree object start: " + node.getName());
         classTreeNode = node;
         classTreeNode.getASTNode().accept(this);
         return null;
     }
 
     private String getClass(String className) {
-        String descriptor = getDescriptor(className);
-        return descriptor.substring(1, descriptor.length() - 1);
+        return classTreeNode.lookupType(className).getInternalName();
     }
 
     public Object visit(Class_ node) {
-        try {
-            out = new PrintWriter(new File(node.getName() + ".j"));
-
-            // print top of file info
-            out.println(".source " + node.getFilename());
-            out.println(".class " + "public " + node.getName());
-            if (classTreeNode.getParent() != null) {
-                out.println(".super "
-                        + getClass(classTreeNode.getParent().getName()));
-            }
-            out.println(".implements " + "java/lang/" + "Cloneable");
-            out.println();
-
-            // declare all fields, then constructor, then do all methods
-            ArrayList<Field> fields = new ArrayList<>();
-            ArrayList<Method> methods = new ArrayList<>();
-            Iterator<ASTNode> members = node.getMemberList().getIterator();
-            classTreeNode.getVarSymbolTable().enterScope();
-            classTreeNode.getMethodSymbolTable().enterScope();
-
-            while (members.hasNext()) {
-                Member member = (Member) members.next();
-                if (member instanceof Field)
-                    fields.add((Field) member);
-                else
-                    methods.add((Method) member);
-            }
+        String superName = null;
+        if (classTreeNode.getParent() != null)
+            superName = getClass(classTreeNode.getParent().getName());
+        classModel = new ClassModel(node.getFilename(), node.getName(),
+                superName);
+        classModel.addInterface("java/lang/" + "Cloneable");
+
+        // declare all fields, then constructor, then do all methods
+        ArrayList<Field> fields = new ArrayList<>();
+        ArrayList<Method> methods = new ArrayList<>();
+        Iterator<ASTNode> members = node.getMemberList().getIterator();
+        localVarTable = new SymbolTable();
+        localVarTable.setParent(classTreeNode.getVarSymbolTable());
+        localVarTable.enterScope();
+
+        while (members.hasNext()) {
+            Member member = (Member) members.next();
+            if (member instanceof Field)
+                fields.add((Field) member);
+            else
+                methods.add((Method) member);
+        }
 
-            // fields
-            for (int i = 0; i < fields.size(); i++) {
-                // DEBUG
-                String line = ".field " + "protected " + fields.get(i).getName()
-                        + " " + getDescriptor(fields.get(i).getType());
-                println(line);
-                out.println(line);
-            }
+        // fields
+        for (int i = 0; i < fields.size(); i++) {
+            String descriptor = getDescriptor(fields.get(i).getType());
+            // DEBUG
+            if (tracing)
+                println(".field " + "protected " + fields.get(i).getName() + " "
+                        + descriptor);
+            classModel.addField(ClassModel.ACC_PROTECTED,
+                    fields.get(i).getName(), descriptor);
+        }
 
-            out.println();
-
-            // write constructor
-            String methodName = "<init>";
-            Method initMethod = new Method(node.getLineNum(), "void",
-                    methodName, new FormalList(node.getLineNum()),
-                    new StmtList(node.getLineNum()));
-            String signature = getMethodSignature(initMethod);
-            out.println(".method " + "public " + "<init>" + signature);
-            classTreeNode.getMethodSymbolTable().add(methodName, initMethod);
-            if (classTreeNode.getParent() != null)
-                callSuper();
-            initializeFields(fields); // calls accept on each field and
-                                      // assigns default values
-
-            printBytecode("return");
-            out.println("    .limit " + "stack " + currLimits[0]);
+        // write constructor
+        String methodName = "<init>";
+        Method initMethod = new Method(node.getLineNum(), "void",
+                methodName, new FormalList(node.getLineNum()),
+                new StmtList(node.getLineNum()));
+        String signature = getMethodSignature(initMethod);
+        if (classTreeNode.getParent() != null)
+            callSuper();
+        initializeFields(fields); // calls accept on each field and
+                                  // assigns default values
+
+        emit(Instruction.plain("return"));
+        if (tracing) {
             println("    .limit " + "stack " + currLimits[0]);
-            out.println("    .limit " + "locals " + currLimits[1]);
             println("    .limit " + "locals " + currLimits[1]);
-            emptyQueue();
-
-            out.println(".end method");
-            out.println();
-
-            // methods
-            while (!methods.isEmpty())
-                methods.remove(0).accept(this);
-            out.println();
-
-            out.close();
-        } catch (FileNotFoundException fnfe) {
-            System.out.println(fnfe.getMessage());
         }
+        endMethod(ClassModel.ACC_PUBLIC, methodName, signature, null,
+                node.getLineNum());
+
+        // methods
+        while (!methods.isEmpty())
+            methods.remove(0).accept(this);
+        classModel.setNumLabels(labelNumber);
         return null;
     }
 
@@ -914,37 +854,32 @@ public class CodeGenVisitor extends Visitor {
         currLimits = sizesAtStart.clone();
 
         String signature = getMethodSignature(node);
-        classTreeNode.getMethodSymbolTable().add(node.getName(), node);
-        println(signature);
+        if (tracing)
+            println(signature);
 
-        classTreeNode.getVarSymbolTable().enterScope();
-        classTreeNode.getMethodSymbolTable().enterScope();
+        localVarTable.enterScope();
 
-        // print the method signature
-        if (node.getName().equals("main")) {
-            println("main method");
-            out.println(".method public static main([Ljava/lang/String;)V");
-
-            // newClass("String[]");
-            out.println(".throws java/lang/CloneNotSupportedException");
+        // build the method signature
+        boolean isMain = node.getName().equals("main");
+        if (isMain) {
+            if (tracing)
+                println("main method");
+            methodDescriptor = new StringBuilder("([Ljava/lang/String;)V");
 
             newObject("Main");
             astore(0);
         } else {
-            // print method signature
-            out.print(".method " + "public " + node.getName() + "(");
+            methodDescriptor = new StringBuilder("(");
 
-            // print formals and
+            // add formals and
             node.getFormalList().accept(this);
 
-            // print return type
-            out.print(")" + getDescriptor(node.getReturnType()));
-            out.println();
-            out.println(".throws java/lang/CloneNotSupportedException");
+            // add return type
+            methodDescriptor.append(")" + getDescriptor(node.getReturnType()));
         }
 
         printComment("Stack size at start = " + currStackSize
-                + ". Local size = " + currLocalSize, node);
+                + ". Local size = " + currLocalSize);
 
         // deal with statements
         // for each bytecode that adds something to the stack, increment
@@ -962,15 +897,13 @@ public class CodeGenVisitor extends Visitor {
         if (!(stmt instanceof ReturnStmt))
             returnStmt();
 
-        // print max sizes
-        out.println("    .limit stack " + currLimits[0]);
-        out.println("    .limit locals " + currLimits[1]);
-
-        // printbytecodes
-        emptyQueue();
-        out.println(".end method");
-        classTreeNode.getVarSymbolTable().exitScope();
-        classTreeNode.getMethodSymbolTable().exitScope();
+        // add the method with its max sizes
+        int access = ClassModel.ACC_PUBLIC;
+        if (isMain)
+            access |= ClassModel.ACC_STATIC;
+        endMethod(access, node.getName(), methodDescriptor.toString(),
+                "java/lang/CloneNotSupportedException", node.getLineNum());
+        localVarTable.exitScope();
 
         // bring stack and local size down to where it should be
         currStackSize = sizesAtStart[0];
@@ -1003,15 +936,15 @@ public class CodeGenVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(Formal node) {
-        // printComment("local var: " + node.getName() + "/" + node.getType(),
-        // node);
-        classTreeNode.getVarSymbolTable().add(node.getName(), currLocalSize++);
-        classTreeNode.getVarSymbolTable().print();
+        // printComment("local var: " + node.getName() + "/" + node.getType());
+        localVarTable.add(node.getName(), currLocalSize++);
+        if (tracing)
+            localVarTable.print(trace.getStream(Trace.Category.CODEGEN));
 
-        // output descriptor
+        // add descriptor
         String type = getDescriptor(node.getType());
 
-        out.print(type);
+        methodDescriptor.append(type);
         return null;
     }
 
@@ -1023,7 +956,8 @@ public class CodeGenVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(StmtList node) {
-        println("StmtList");
+        if (tracing)
+            println("StmtList");
         for (Iterator it = node.getIterator(); it.hasNext();)
             ((Stmt) it.next()).accept(this);
         return null;
@@ -1050,8 +984,8 @@ public class CodeGenVisitor extends Visitor {
      */
     public Object visit(DeclStmt node) {
         printComment(
-                "Declaration " + node.getName() + " : " + node.getType(), node);
-        classTreeNode.getVarSymbolTable().add(node.getName(), currLocalSize);
+                "Declaration " + node.getName() + " : " + node.getType());
+        localVarTable.add(node.getName(), currLocalSize);
 
         // should push a value onto the stack
         node.getInit().accept(this);
@@ -1072,9 +1006,10 @@ public class CodeGenVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(ExprStmt node) {
-        println("ExprStmt");
+        if (tracing)
+            println("ExprStmt");
         node.getExpr().accept(this);
-        if (!node.getExpr().getExprType().equals("void"))
+        if (!node.getExpr().getExprType().isVoid())
             pop(); // Need this because expressions add to the stack for non
                    // void return types
         return null;
@@ -1088,22 +1023,23 @@ public class CodeGenVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(IfStmt node) {
-        println("if: " + node.getLineNum());
+        if (tracing)
+            println("if: " + node.getLineNum());
         String elseLabel = createLabel();
         String exitLabel = createLabel();
         controlFlowStack
                 .add(new ControlFlowEntry(exitLabel, currStackSize, false));
 
-        printComment("if statement predicate", node);
+        printComment("if statement predicate");
         node.getPredExpr().accept(this);
         ifeq(elseLabel);
 
-        printComment("if statement then block", node);
+        printComment("if statement then block");
         node.getThenStmt().accept(this);
         goto_label(exitLabel);
 
         label(elseLabel);
-        printComment("if statement else block", node);
+        printComment("if statement else block");
         node.getElseStmt().accept(this);
 
         label(exitLabel);
@@ -1120,18 +1056,19 @@ public class CodeGenVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(WhileStmt node) {
-        print("while: " + node.getLineNum());
+        if (tracing)
+            print("while: " + node.getLineNum());
         String condLabel = createLabel();
         String exitLabel = createLabel();
         controlFlowStack
                 .add(new ControlFlowEntry(exitLabel, currStackSize, true));
 
         label(condLabel);
-        printComment("while statement predicate", node);
+        printComment("while statement predicate");
         node.getPredExpr().accept(this);
         ifeq(exitLabel);
 
-        printComment("while statement body", node);
+        printComment("while statement body");
         node.getBodyStmt().accept(this);
         goto_label(condLabel);
         label(exitLabel);
@@ -1148,29 +1085,34 @@ public class CodeGenVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(ForStmt node) {
-        print("for: " + node.getLineNum());
+        if (tracing)
+            print("for: " + node.getLineNum());
         String condLabel = createLabel();
         String exitLabel = createLabel();
         controlFlowStack
                 .add(new ControlFlowEntry(exitLabel, currStackSize, true));
 
         if (node.getInitExpr() != null) {
-            printComment("for statement initialization", node);
+            printComment("for statement initialization");
             node.getInitExpr().accept(this);
+            // like an expression statement, the value is not used (left on
+            // the stack, it would pile up when the loop is nested in another)
+            if (!node.getInitExpr().getExprType().isVoid())
+                pop();
         }
 
         label(condLabel);
         if (node.getPredExpr() != null) {
-            printComment("for statement predicate", node);
+            printComment("for statement predicate");
             node.getPredExpr().accept(this);
             ifeq(exitLabel);
         }
 
-        printComment("for statement body", node);
+        printComment("for statement body");
         node.getBodyStmt().accept(this);
 
         if (node.getUpdateExpr() != null) {
-            printComment("for statement update", node);
+            printComment("for statement update");
             node.getUpdateExpr().accept(this);
             pop();
         }
@@ -1246,7 +1188,7 @@ public class CodeGenVisitor extends Visitor {
     public Object visit(ExprList node) {
         for (Iterator it = node.getIterator(); it.hasNext();) {
             Expr arg = (Expr) it.next();
-            printComment("argt type: " + arg.getExprType(), node);
+            printComment("argt type: " + arg.getExprType());
             arg.accept(this);
         }
         return null;
@@ -1274,9 +1216,9 @@ public class CodeGenVisitor extends Visitor {
     public Object visit(DispatchExpr node) {
 
         // find the type of object the method is being called on
-        String recieverType;
+        Type recieverType;
         if (node.getRefExpr() == null) {
-            recieverType = classTreeNode.getName();
+            recieverType = classTreeNode.lookupType(classTreeNode.getName());
         } else {
             recieverType = node.getRefExpr().getExprType();
         }
@@ -1285,22 +1227,23 @@ public class CodeGenVisitor extends Visitor {
         ClassTreeNode refClass;
 
         // see if the method is being called on an array or not
-        if (recieverType.endsWith("[]")) {
+        if (recieverType.isArray()) {
             if (!node.getMethodName().equals("clone")) {
                 throw new RuntimeException("Error: the only supported method" +
                     " for arrays is clone. Tried: " + node.getMethodName());
             }
             refClass = classTreeNode.lookupClass("Object");
         } else {
-            refClass = classTreeNode.lookupClass(recieverType);
+            refClass = recieverType.getClassTreeNode();
         }
 
         printComment("dispatch " + "(" + node.getMethodName() + ", "
-                + refClass.getName() + ")", node);
+                + refClass.getName() + ")");
 
         // push reference to stack
         node.getRefExpr().accept(this);
-        println(node.getRefExpr().getExprType());
+        if (tracing)
+            println(node.getRefExpr().getExprType().getName());
 
         // push parameters to stack
         // cast null into correct reference type
@@ -1313,7 +1256,7 @@ public class CodeGenVisitor extends Visitor {
             Formal param = (Formal) paramIt.next();
 
             arg.accept(this);
-            if (arg.getExprType().equals("null")) {
+            if (arg.getExprType().isNull()) {
                 checkCast(param.getType());
             }
         }
@@ -1321,16 +1264,22 @@ public class CodeGenVisitor extends Visitor {
         // and to locals
         Object temp = refClass.getMethodSymbolTable()
                 .lookup(node.getMethodName());
-        println("Return type of MethodSymbolTable.lookup() was: "
-                + temp.getClass().getSimpleName());
+        if (tracing)
+            println("Return type of MethodSymbolTable.lookup() was: "
+                    + temp.getClass().getSimpleName());
 
-        if (temp instanceof Method) {
-            invokeVirtual((Method) temp, refClass.getName());
-        } else {
+        if (!(temp instanceof Method)) {
             throw new RuntimeException(
                 "Error: Return type of MethodSymbolTable lookup was invalid: "
                 + temp.getClass().getSimpleName());
         }
+        Expr refExpr = node.getRefExpr();
+        if (refExpr instanceof VarExpr
+                && ((VarExpr) refExpr).getName().equals("super")) {
+            invokeSpecial((Method) temp, refClass.getName());
+        } else {
+            invokeVirtual((Method) temp, refClass.getName());
+        }
 
         return null;
     }
@@ -1343,7 +1292,7 @@ public class CodeGenVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(NewExpr node) {
-        printComment("new (" + node.getExprType() + ")", node);
+        printComment("new (" + node.getExprType() + ")");
         newObject(node.getType());
         return null;
     }
@@ -1356,14 +1305,14 @@ public class CodeGenVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(NewArrayExpr node) {
-        printComment("new (" + node.getExprType() + ")", node);
+        printComment("new (" + node.getExprType() + ")");
         node.getSize().accept(this);
         dup();
         iconst(1500);
 
         String continueLabel = "L" + labelNumber++;
         if_icmple(continueLabel);
-        runtimeException("\"Max array size exceeded (1500)\"", node);
+        runtimeException("Max array size exceeded (1500)", node);
         label(continueLabel);
         newArray(node.getType());
 
@@ -1405,25 +1354,14 @@ public class CodeGenVisitor extends Visitor {
      */
     public Object visit(AssignExpr node) {
         printComment("Variable Assignment  " + node.getName() + "/"
-                + node.getExprType(), node);
+                + node.getExprType());
 
         String refClass = classTreeNode.getName();
         if (node.getRefName() != null) {
             switch (node.getRefName()) {
                 case "this":
-                    // is local var
-                    if (!varIsField(node.getName(), classTreeNode)) {
-                        int indexOfVar = (int)classTreeNode.getVarSymbolTable()
-                                .lookup(node.getName());
-                        node.getExpr().accept(this);
-                        dup();
-                        if (SemantVisitor.isPrimitive(node.getExprType())) {
-                            istore(indexOfVar);
-                        } else {
-                            astore(indexOfVar);
-                        }
-                    }
-                    return null;
+                    // always a field, declared in this class or inherited
+                    break;
                 case "super":
                     refClass = classTreeNode.getParent().getName();
                     break;
@@ -1432,13 +1370,13 @@ public class CodeGenVisitor extends Visitor {
             }
         }
 
-        if (varIsField(node.getName(), classTreeNode)) {
+        if (node.getRefName() != null || !isLocal(node.getName())) {
             aload(0);
             node.getExpr().accept(this);
             dupx1();
             putField(getClass(refClass), node.getName(), node.getExprType());
         } else {
-            int indexOfVar = (int) classTreeNode.getVarSymbolTable()
+            int indexOfVar = (int) localVarTable
                     .lookup(node.getName());
             node.getExpr().accept(this);
             dup();
@@ -1463,8 +1401,7 @@ public class CodeGenVisitor extends Visitor {
     public Object visit(ArrayAssignExpr node) {
         // load reference
         printComment(
-                "array assign " + node.getName() + "/" + node.getExprType(),
-                node);
+                "array assign " + node.getName() + "/" + node.getExprType());
         ClassTreeNode refClass = classTreeNode;
 
         if (node.getRefName() == null) {
@@ -1479,22 +1416,27 @@ public class CodeGenVisitor extends Visitor {
             }
         }
 
-        if (varIsField(node.getName(), refClass)) {
+        if (node.getRefName() != null || !isLocal(node.getName())) {
             aload(0);
-            getField(refClass.getName(), node.getName(), node.getExprType() + "[]");
+            getField(refClass.getName(), node.getName(),
+                    node.getExprType().getArrayType());
         } else {
-            aload((int) refClass.getVarSymbolTable().lookup(node.getName()));
+            aload((int) localVarTable.lookup(node.getName()));
         }
 
         node.getIndex().accept(this);
         node.getExpr().accept(this);
         dupx2();
-        if (node.getExprType().equals("int"))
-            iastore();
-        else if (node.getExprType().equals("boolean"))
-            bastore();
-        else
-            aastore();
+        switch (node.getExprType().getDescriptor()) {
+            case "I":
+                iastore();
+                break;
+            case "Z":
+                bastore();
+                break;
+            default:
+                aastore();
+        }
         return null;
 
     }
@@ -1547,9 +1489,9 @@ public class CodeGenVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(BinaryCompEqExpr node) {
-        String type = node.getLeftExpr().getExprType();
-        printComment("type " + type, node);
-        if (type.equals("int") || type.equals("boolean"))
+        Type type = node.getLeftExpr().getExprType();
+        printComment("type " + type);
+        if (type.isPrimitive())
             visitBinaryComp(node, this::if_icmpeq);
         else
             visitBinaryComp(node, this::if_acmpeq);
@@ -1564,8 +1506,8 @@ public class CodeGenVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(BinaryCompNeExpr node) {
-        String type = node.getLeftExpr().getExprType();
-        if (type.equals("int") || type.equals("boolean"))
+        Type type = node.getLeftExpr().getExprType();
+        if (type.isPrimitive())
             visitBinaryComp(node, this::if_icmpne);
         else
             visitBinaryComp(node, this::if_acmpne);
@@ -1632,6 +1574,39 @@ public class CodeGenVisitor extends Visitor {
                 "This visitor method should not be called (node is abstract)");
     }
 
+    /**
+     * Generate a binary arithmetic expression. The left operands of a chain
+     * of arithmetic operators, such as a + b - c + d, are generated in a
+     * loop rather than by recursion, so that a long chain does not overflow
+     * the stack.
+     * 
+     * @param node
+     *        the binary arithmetic expression node
+     */
+    private void visitBinaryArith(BinaryArithExpr node) {
+        ArrayList<BinaryArithExpr> chain = new ArrayList<BinaryArithExpr>();
+        Expr operand = node;
+        while (operand instanceof BinaryArithExpr) {
+            chain.add((BinaryArithExpr) operand);
+            operand = ((BinaryArithExpr) operand).getLeftExpr();
+        }
+        operand.accept(this);
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            BinaryArithExpr link = chain.get(i);
+            link.getRightExpr().accept(this);
+            if (link instanceof BinaryArithPlusExpr)
+                iadd();
+            else if (link instanceof BinaryArithMinusExpr)
+                isub();
+            else if (link instanceof BinaryArithTimesExpr)
+                imul();
+            else if (link instanceof BinaryArithDivideExpr)
+                idiv();
+            else
+                irem();
+        }
+    }
+
     /**
      * Visit a binary arithmetic plus expression node
      * 
@@ -1640,9 +1615,7 @@ public class CodeGenVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(BinaryArithPlusExpr node) {
-        node.getLeftExpr().accept(this);
-        node.getRightExpr().accept(this);
-        iadd();
+        visitBinaryArith(node);
         return null;
     }
 
@@ -1654,9 +1627,7 @@ public class CodeGenVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(BinaryArithMinusExpr node) {
-        node.getLeftExpr().accept(this);
-        node.getRightExpr().accept(this);
-        isub();
+        visitBinaryArith(node);
         return null;
     }
 
@@ -1668,9 +1639,7 @@ public class CodeGenVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(BinaryArithTimesExpr node) {
-        node.getLeftExpr().accept(this);
-        node.getRightExpr().accept(this);
-        imul();
+        visitBinaryArith(node);
         return null;
     }
 
@@ -1682,9 +1651,7 @@ public class CodeGenVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(BinaryArithDivideExpr node) {
-        node.getLeftExpr().accept(this);
-        node.getRightExpr().accept(this);
-        idiv();
+        visitBinaryArith(node);
         return null;
     }
 
@@ -1696,9 +1663,7 @@ public class CodeGenVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(BinaryArithModulusExpr node) {
-        node.getLeftExpr().accept(this);
-        node.getRightExpr().accept(this);
-        irem();
+        visitBinaryArith(node);
         return null;
     }
 
@@ -1725,8 +1690,11 @@ public class CodeGenVisitor extends Visitor {
         String shortCircuitLabel = createLabel();
         String exitLabel = createLabel();
 
-        node.getLeftExpr().accept(this);
-        ifeq(shortCircuitLabel);          // if left expr is false, short
+        // if any operand but the last is false, short
+        for (Expr operand : logicOperands(node)) {
+            operand.accept(this);
+            ifeq(shortCircuitLabel);
+        }
         node.getRightExpr().accept(this); // otherwise eval right expr
         goto_label(exitLabel);
         label(shortCircuitLabel);
@@ -1747,8 +1715,11 @@ public class CodeGenVisitor extends Visitor {
         String shortCircuitLabel = createLabel();
         String exitLabel = createLabel();
 
-        node.getLeftExpr().accept(this);
-        ifne(shortCircuitLabel);          // if left expr is true, short
+        // if any operand but the last is true, short
+        for (Expr operand : logicOperands(node)) {
+            operand.accept(this);
+            ifne(shortCircuitLabel);
+        }
         node.getRightExpr().accept(this); // otherwise eval right expr
         goto_label(exitLabel);
         label(shortCircuitLabel);
@@ -1758,6 +1729,28 @@ public class CodeGenVisitor extends Visitor {
         return null;
     }
 
+    /**
+     * Get the operands of a chain of one logical operator, such as
+     * a && b && c, but the last. The chain is generated as a whole, with
+     * every operand jumping to the same label, so a long chain neither
+     * recurses deeply nor takes more code than needed.
+     * 
+     * @param node
+     *        the last operator of the chain
+     * @return the operands but the last, from left to right
+     */
+    private ArrayList<Expr> logicOperands(BinaryLogicExpr node) {
+        ArrayList<Expr> operands = new ArrayList<Expr>();
+        Expr operand = node.getLeftExpr();
+        while (operand.getClass() == node.getClass()) {
+            operands.add(((BinaryLogicExpr) operand).getRightExpr());
+            operand = ((BinaryLogicExpr) operand).getLeftExpr();
+        }
+        operands.add(operand);
+        Collections.reverse(operands);
+        return operands;
+    }
+
     /**
      * Visit a unary expression node
      * 
@@ -1812,14 +1805,14 @@ public class CodeGenVisitor extends Visitor {
         BinaryArithPlusExpr increment = new BinaryArithPlusExpr(
                 node.getLineNum(), node.getExpr(),
                 new ConstIntExpr(node.getLineNum(), "1"));
-        printComment("Increment " + ((node.isPostfix()) ? "post" : "pre"),
-                node);
+        printComment("Increment " + ((node.isPostfix()) ? "post" : "pre"));
         if (node.getExpr() instanceof VarExpr) {
             VarExpr expr = (VarExpr) node.getExpr();
             String refName = null;
             if (expr.getRef() != null) {
                 if (expr.getRef() instanceof VarExpr) {
-                    refName = ((VarExpr) expr.getRef()).getExprType();
+                    refName = ((VarExpr) expr.getRef()).getExprType()
+                            .getName();
                 }
             }
 
@@ -1830,7 +1823,8 @@ public class CodeGenVisitor extends Visitor {
             String refName = null;
             if (expr.getRef() != null) {
                 if (expr.getRef() instanceof VarExpr) {
-                    refName = ((VarExpr) expr.getRef()).getExprType();
+                    refName = ((VarExpr) expr.getRef()).getExprType()
+                            .getName();
                 }
             }
             assign = new ArrayAssignExpr(node.getLineNum(), refName,
@@ -1866,14 +1860,14 @@ public class CodeGenVisitor extends Visitor {
         BinaryArithPlusExpr increment = new BinaryArithPlusExpr(
                 node.getLineNum(), node.getExpr(),
                 new ConstIntExpr(node.getLineNum(), "-1"));
-        printComment("Decrement " + ((node.isPostfix()) ? "post" : "pre"),
-                node);
+        printComment("Decrement " + ((node.isPostfix()) ? "post" : "pre"));
         if (node.getExpr() instanceof VarExpr) {
             VarExpr expr = (VarExpr) node.getExpr();
             String refName = null;
             if (expr.getRef() != null) {
                 if (expr.getRef() instanceof VarExpr) {
-                    refName = ((VarExpr) expr.getRef()).getExprType();
+                    refName = ((VarExpr) expr.getRef()).getExprType()
+                            .getName();
                 }
             }
 
@@ -1884,7 +1878,8 @@ public class CodeGenVisitor extends Visitor {
             String refName = null;
             if (expr.getRef() != null) {
                 if (expr.getRef() instanceof VarExpr) {
-                    refName = ((VarExpr) expr.getRef()).getExprType();
+                    refName = ((VarExpr) expr.getRef()).getExprType()
+                            .getName();
                 }
             }
 
@@ -1917,7 +1912,8 @@ public class CodeGenVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(VarExpr node) {
-        println("VarExpr " + node.getName());
+        if (tracing)
+            println("VarExpr " + node.getName());
 
         // keywords
         if (node.getName().equals("null")) {
@@ -1926,7 +1922,8 @@ public class CodeGenVisitor extends Visitor {
             iconst(1);
         } else if (node.getName().equals("false")) {
             iconst(0);
-        } else if (node.getName().equals("this")) {
+        } else if (node.getName().equals("this")
+                || node.getName().equals("super")) {
             aload(0);
         } else if (node.getName().equals("length")) {
             node.getRef().accept(this);
@@ -1939,13 +1936,13 @@ public class CodeGenVisitor extends Visitor {
                 String refName = ((VarExpr) refExpr).getName();
                 switch (refName) {
                     case "this":
+                        refClass = classTreeNode.getName();
                         break;
                     case "super":
-                        refClass = classTreeNode.getParent().getName() + "/";
+                        refClass = classTreeNode.getParent().getName();
                         break;
                     default:
-                        refClass = classTreeNode.lookupClass(refName).getName()
-                                + "/";
+                        refClass = classTreeNode.lookupClass(refName).getName();
                 }
 
             } else if (refExpr instanceof ArrayExpr) {// must be length
@@ -1961,12 +1958,12 @@ public class CodeGenVisitor extends Visitor {
             getField(refClass, node.getName(), node.getExprType());
         } else {// exists in locals or field of this
 
-            println(node.getName());
+            if (tracing)
+                println(node.getName());
 
-            if (SemantVisitor.existsInClass(node.getName(), classTreeNode)
-                    && !varIsField(node.getName(), classTreeNode)) {
+            if (isLocal(node.getName())) {
 
-                int localIndex = (int) classTreeNode.getVarSymbolTable()
+                int localIndex = (int) localVarTable
                         .lookup(node.getName());
                 if (SemantVisitor.isPrimitive(node.getExprType()))
                     iload(localIndex);
@@ -1998,12 +1995,13 @@ public class CodeGenVisitor extends Visitor {
                     case "this":
                         aload(0);
                         getField(classTreeNode.getName(), node.getName(),
-                                node.getExprType() + "[]");
+                                node.getExprType().getArrayType());
                         break;
                     case "super":
                         aload(0);
                         getField(classTreeNode.getParent().getName(),
-                                node.getName(), node.getExprType() + "[]");
+                                node.getName(),
+                                node.getExprType().getArrayType());
                         break;
                     default:
                         throw new RuntimeException(
@@ -2015,33 +2013,36 @@ public class CodeGenVisitor extends Visitor {
                         node.getName() + " is not a varexpr");
             }
         } else {
-            if (SemantVisitor.existsInClass(node.getName(), classTreeNode)
-                    && !varIsField(node.getName(), classTreeNode)) {
-                int indexOfVar = (int) classTreeNode.getVarSymbolTable()
+            if (isLocal(node.getName())) {
+                int indexOfVar = (int) localVarTable
                         .lookup(node.getName());
                 aload(indexOfVar);
 
             } else {
                 aload(0);
                 getField(classTreeNode.getName(), node.getName(),
-                        node.getExprType() + "[]");
+                        node.getExprType().getArrayType());
             }
 
-            classTreeNode.getVarSymbolTable().print();
+            if (tracing)
+                localVarTable.print(trace.getStream(Trace.Category.CODEGEN));
             node.getIndex().accept(this);
 
-            if (node.getExprType().equals("int"))
-                iaload();
-            else if (node.getExprType().equals("boolean"))
-                baload();
-            else
-                aaload();
+            switch (node.getExprType().getDescriptor()) {
+                case "I":
+                    iaload();
+                    break;
+                case "Z":
+                    baload();
+                    break;
+                default:
+                    aaload();
+            }
         }
 
         // make sure we update the type of element for the expression
-        String arrayElementType = node.getExprType().replaceFirst("\\[\\]$",
-                "");
-        node.setExprType(arrayElementType);
+        if (node.getExprType().isArray())
+            node.setExprType(node.getExprType().getElementType());
 
         return null;
     }
@@ -2092,7 +2093,7 @@ public class CodeGenVisitor extends Visitor {
      * @return result of the visit
      */
     public Object visit(ConstStringExpr node) {
-        ldc("\"" + node.getConstant() + "\"");
+        ldc(node.getConstant());
 
         return null;
     }
@@ -0,0 +1,43 @@
+package codegenjvm;
+
+/**
+ * Thrown when the code of a method does not fit in a class file: it is
+ * over 65535 bytes, or (for Jasmin, which cannot write a goto_w) it has a
+ * branch too far for a two-byte offset. The compiler reports it as an
+ * error of the method.
+ */
+public class CodeTooLargeException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private String filename;
+    private int lineNum;
+
+    /**
+     * @param classModel
+     *        The class of the method
+     * @param method
+     *        The method
+     * @param message
+     *        What does not fit
+     */
+    public CodeTooLargeException(ClassModel classModel,
+            ClassModel.MethodModel method, String message) {
+        super(message);
+        this.filename = classModel.getSourceFile();
+        this.lineNum = method.getLineNum();
+    }
+
+    /**
+     * @return The name of the source file of the method
+     */
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * @return The line number of the method
+     */
+    public int getLineNum() {
+        return lineNum;
+    }
+}
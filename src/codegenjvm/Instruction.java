@@ -0,0 +1,301 @@
+package codegenjvm;
+
+/**
+ * An instruction of a generated method. Besides real JVM instructions, a
+ * method's code also holds label definitions and comments, which take no
+ * space in the class file.
+ *
+ * An instruction knows the kind of its operand, so that it can be written
+ * both as a line of Jasmin assembly (toString()) and as bytes of a class
+ * file (see ClassFileWriter).
+ */
+public class Instruction {
+
+    /**
+     * The kinds of instructions, by operand
+     */
+    public enum Kind {
+        // no operand (iadd, dup, return, ...)
+        NONE,
+        // a local variable index (iload, astore, ...)
+        LOCAL,
+        // an int constant (iconst_<n>, bipush, sipush or ldc)
+        INT_CONSTANT,
+        // a String constant (ldc)
+        STRING_CONSTANT,
+        // a branch target (goto, ifeq, if_icmplt, ...)
+        BRANCH,
+        // a class (new, checkcast, instanceof, anewarray)
+        CLASS,
+        // a field reference (getfield, putfield)
+        FIELD,
+        // a method reference (invokevirtual, invokespecial)
+        METHOD,
+        // a primitive array element type (newarray)
+        ARRAY_TYPE,
+        // definition of a label (not a JVM instruction)
+        LABEL,
+        // a comment (not a JVM instruction)
+        COMMENT
+    }
+
+    private Kind kind;
+    private String opcode;
+    private int number;
+    // label, class name, String constant, array type or comment
+    private String operand;
+    // class, name and descriptor of a field or method reference
+    private String owner;
+    private String name;
+    private String descriptor;
+
+    private Instruction(Kind kind, String opcode) {
+        this.kind = kind;
+        this.opcode = opcode;
+    }
+
+    /**
+     * @param opcode
+     *        The opcode (e.g. "iadd")
+     * @return An instruction without operands
+     */
+    public static Instruction plain(String opcode) {
+        return new Instruction(Kind.NONE, opcode);
+    }
+
+    /**
+     * @param opcode
+     *        The opcode without a _<n> suffix (iload, istore, aload or
+     *        astore)
+     * @param index
+     *        The index of the local variable
+     * @return An instruction that loads or stores a local variable
+     */
+    public static Instruction local(String opcode, int index) {
+        Instruction instruction = new Instruction(Kind.LOCAL, opcode);
+        instruction.number = index;
+        return instruction;
+    }
+
+    /**
+     * @param value
+     *        The constant
+     * @return The shortest instruction that pushes an int constant
+     */
+    public static Instruction intConstant(int value) {
+        String opcode;
+        if (value >= -1 && value <= 5)
+            opcode = value == -1 ? "iconst_m1" : "iconst_" + value;
+        else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+            opcode = "bipush";
+        else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+            opcode = "sipush";
+        else
+            opcode = "ldc";
+        Instruction instruction = new Instruction(Kind.INT_CONSTANT, opcode);
+        instruction.number = value;
+        return instruction;
+    }
+
+    /**
+     * @param value
+     *        The constant (unescaped)
+     * @return An ldc instruction that pushes a String constant
+     */
+    public static Instruction stringConstant(String value) {
+        Instruction instruction = new Instruction(Kind.STRING_CONSTANT, "ldc");
+        instruction.operand = value;
+        return instruction;
+    }
+
+    /**
+     * @param opcode
+     *        The opcode (goto or a conditional branch)
+     * @param label
+     *        The label branched to
+     * @return A branch instruction
+     */
+    public static Instruction branch(String opcode, String label) {
+        Instruction instruction = new Instruction(Kind.BRANCH, opcode);
+        instruction.operand = label;
+        return instruction;
+    }
+
+    /**
+     * @param opcode
+     *        The opcode (new, checkcast, instanceof or anewarray)
+     * @param className
+     *        The internal name of the class (e.g. "java/lang/String" or
+     *        "[I")
+     * @return An instruction with a class operand
+     */
+    public static Instruction classRef(String opcode, String className) {
+        Instruction instruction = new Instruction(Kind.CLASS, opcode);
+        instruction.operand = className;
+        return instruction;
+    }
+
+    /**
+     * @param opcode
+     *        The opcode (getfield or putfield)
+     * @param owner
+     *        The internal name of the class of the field
+     * @param name
+     *        The name of the field
+     * @param descriptor
+     *        The descriptor of the field's type
+     * @return An instruction with a field operand
+     */
+    public static Instruction fieldRef(String opcode, String owner,
+            String name, String descriptor) {
+        Instruction instruction = new Instruction(Kind.FIELD, opcode);
+        instruction.owner = owner;
+        instruction.name = name;
+        instruction.descriptor = descriptor;
+        return instruction;
+    }
+
+    /**
+     * @param opcode
+     *        The opcode (invokevirtual or invokespecial)
+     * @param method
+     *        The method in Jasmin form: class/name(descriptor)
+     * @return An instruction with a method operand
+     */
+    public static Instruction methodRef(String opcode, String method) {
+        Instruction instruction = new Instruction(Kind.METHOD, opcode);
+        int paren = method.indexOf('(');
+        int slash = method.lastIndexOf('/', paren);
+        instruction.owner = method.substring(0, slash);
+        instruction.name = method.substring(slash + 1, paren);
+        instruction.descriptor = method.substring(paren);
+        return instruction;
+    }
+
+    /**
+     * @param type
+     *        The element type ("int" or "boolean")
+     * @return A newarray instruction
+     */
+    public static Instruction newArray(String type) {
+        Instruction instruction = new Instruction(Kind.ARRAY_TYPE,
+                "newarray");
+        instruction.operand = type;
+        return instruction;
+    }
+
+    /**
+     * @param label
+     *        The name of the label
+     * @return The definition of a label, at the position of the next
+     *         instruction
+     */
+    public static Instruction label(String label) {
+        Instruction instruction = new Instruction(Kind.LABEL, null);
+        instruction.operand = label;
+        return instruction;
+    }
+
+    /**
+     * @param comment
+     *        The text of the comment
+     * @return A comment
+     */
+    public static Instruction comment(String comment) {
+        Instruction instruction = new Instruction(Kind.COMMENT, null);
+        instruction.operand = comment;
+        return instruction;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return The opcode; for a local variable instruction, the short form
+     *         (e.g. "iload_1") if there is one
+     */
+    public String getOpcode() {
+        if (kind == Kind.LOCAL && number < 4)
+            return opcode + "_" + number;
+        return opcode;
+    }
+
+    /**
+     * @return The local variable index or int constant
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    /**
+     * @return The label, class name, String constant, array type or comment
+     */
+    public String getOperand() {
+        return operand;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * @return The instruction as Jasmin assembly, without indentation
+     */
+    public String toString() {
+        String text;
+        switch (kind) {
+            case LOCAL:
+                text = number < 4 ? getOpcode() : opcode + " " + number;
+                break;
+            case INT_CONSTANT:
+                text = opcode.startsWith("iconst") ? opcode
+                        : opcode + " " + number;
+                break;
+            case STRING_CONSTANT:
+                // quotes inside the constant must be escaped as well
+                return opcode + " \""
+                        + escape(operand).replace("\"", "\\\"") + "\"";
+            case FIELD:
+                text = opcode + " " + owner + "/" + name + " " + descriptor;
+                break;
+            case METHOD:
+                text = opcode + " " + owner + "/" + name + descriptor;
+                break;
+            case LABEL:
+                return operand + ":";
+            case COMMENT:
+                text = " ; " + operand;
+                break;
+            case NONE:
+                text = opcode;
+                break;
+            default:
+                text = opcode + " " + operand;
+        }
+
+        return escape(text);
+    }
+
+    /**
+     * @param text
+     *        Some text
+     * @return The text with the characters that Jasmin reads as escape
+     *         sequences escaped
+     */
+    private static String escape(String text) {
+        text = text.replace("\\", "\\\\");
+        text = text.replace("\n", "\\n");
+        text = text.replace("\t", "\\t");
+        text = text.replace("\f", "\\f");
+        return text;
+    }
+}
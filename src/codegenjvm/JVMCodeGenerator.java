@@ -1,29 +1,234 @@
 package codegenjvm;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import util.ClassTreeNode;
+import util.ErrorHandler;
+import util.PhaseTimer;
+import util.Trace;
 
 public class JVMCodeGenerator {
     ClassTreeNode root;
     boolean debug;
+    PrintStream log;
+    ExecutorService pool;
+    ClassOutput output;
+    PhaseTimer timer = PhaseTimer.NONE;
+    Trace trace = Trace.NONE;
+    ErrorHandler errorHandler = new ErrorHandler();
 
     public JVMCodeGenerator(ClassTreeNode root, boolean debug) {
+        this(root, debug, null, System.out);
+    }
+
+    /**
+     * @param root
+     *        The root of the class hierarchy tree
+     * @param debug
+     *        Whether debugging is enabled
+     * @param outDir
+     *        The directory the class files are written to (null for the
+     *        current directory)
+     * @param log
+     *        The stream errors writing class files are printed to
+     */
+    public JVMCodeGenerator(ClassTreeNode root, boolean debug, File outDir,
+            PrintStream log) {
+        this(root, debug, outDir, log, null);
+    }
+
+    /**
+     * @param root
+     *        The root of the class hierarchy tree
+     * @param debug
+     *        Whether debugging is enabled
+     * @param outDir
+     *        The directory the class files are written to (null for the
+     *        current directory)
+     * @param log
+     *        The stream errors writing class files are printed to
+     * @param pool
+     *        The pool classes are generated on in parallel (null to generate
+     *        them one after another)
+     */
+    public JVMCodeGenerator(ClassTreeNode root, boolean debug, File outDir,
+            PrintStream log, ExecutorService pool) {
         this.root = root;
         this.debug = debug;
+        this.output = new ClassOutput(outDir);
+        this.log = log;
+        this.pool = pool;
+    }
+
+    /**
+     * @param output
+     *        Where the classes are written (instead of class files in
+     *        outDir)
+     */
+    public void setOutput(ClassOutput output) {
+        this.output = output;
+    }
+
+    /**
+     * @param timer
+     *        The timer generating each class is measured with
+     */
+    public void setTimer(PhaseTimer timer) {
+        this.timer = timer;
+    }
+
+    /**
+     * @param trace
+     *        Where debugging output is traced
+     */
+    public void setTrace(Trace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * @param errorHandler
+     *        The error handler a method too large for a class file is
+     *        reported with
+     */
+    public void setErrorHandler(ErrorHandler errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Generate the code of one class, measuring it as a span of the codegen
+     * phase
+     * 
+     * @param classNode
+     *        The class
+     * @param trace
+     *        Where debugging output is traced
+     * @param timer
+     *        The timer the span is measured with
+     * @return The generated class
+     */
+    public static ClassModel generateClass(ClassTreeNode classNode,
+            Trace trace, PhaseTimer timer) {
+        PhaseTimer.Span span = timer.start("codegen", classNode.getName());
+        try {
+            CodeGenVisitor codeGenVisitor = new CodeGenVisitor(trace);
+            codeGenVisitor.visit(classNode);
+            return codeGenVisitor.getClassModel();
+        } finally {
+            span.end();
+        }
     }
 
+    /**
+     * Generate a class file for each user class. Every class gets its own
+     * CodeGenVisitor, and a visitor only reads the class tree, so the classes
+     * can be generated in any order. With a pool they are generated in
+     * parallel, and the debugging output of each class is buffered and
+     * traced in class tree order, so it is the same as without a pool.
+     * 
+     * @throws util.CompilationException
+     *         if the code of a method does not fit in a class file (the
+     *         first such method in class tree order is reported)
+     */
     public void generate() {
-        CodeGenVisitor codeGenVisitor = new CodeGenVisitor();
-        Iterator<ClassTreeNode> children = root.getChildrenList();
+        PhaseTimer.Span span = timer.start("codegen", null);
+        try {
+            generateAll();
+        } catch (CodeTooLargeException e) {
+            errorHandler.register(errorHandler.CODEGEN_ERROR,
+                    e.getFilename(), e.getLineNum(), e.getMessage());
+            errorHandler.checkErrors();
+        } finally {
+            span.end();
+        }
+    }
 
-        System.out.printf("Begin generate %s\n", root.getName());
-        if (!root.isBuiltIn())
-            codeGenVisitor.visit(root);
+    // generate(), without the span for the whole phase
+    private void generateAll() {
+        ArrayList<ClassTreeNode> classes = new ArrayList<ClassTreeNode>();
+        addClasses(root, classes);
 
-        while (children.hasNext()) {
-            root = children.next();
-            generate();
+        if (pool == null) {
+            for (ClassTreeNode classNode : classes) {
+                if (trace.isEnabled(Trace.Category.CODEGEN))
+                    trace.println(Trace.Category.CODEGEN,
+                            "Begin generate " + classNode.getName());
+                if (!classNode.isBuiltIn())
+                    generate(classNode, trace);
+            }
+            return;
         }
+
+        ArrayList<Trace> traces = new ArrayList<Trace>();
+        ArrayList<Future<?>> results = new ArrayList<Future<?>>();
+        for (ClassTreeNode classNode : classes) {
+            Trace classTrace = trace.buffer();
+            if (classTrace.isEnabled(Trace.Category.CODEGEN))
+                classTrace.println(Trace.Category.CODEGEN,
+                        "Begin generate " + classNode.getName());
+            traces.add(classTrace);
+            if (classNode.isBuiltIn())
+                results.add(null);
+            else
+                results.add(pool.submit(() -> generate(classNode, classTrace)));
+        }
+
+        for (int i = 0; i < classes.size(); i++) {
+            try {
+                if (results.get(i) != null)
+                    results.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                // trace what the class traced before it failed
+                trace.append(traces.get(i));
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                if (e.getCause() instanceof Error)
+                    throw (Error) e.getCause();
+                throw new RuntimeException(e.getCause());
+            }
+            trace.append(traces.get(i));
+        }
+    }
+
+    /**
+     * Generate and write one class
+     * 
+     * @param classNode
+     *        The class
+     * @param classTrace
+     *        Where debugging output is traced
+     */
+    private void generate(ClassTreeNode classNode, Trace classTrace) {
+        ClassModel classModel = generateClass(classNode, classTrace, timer);
+        try {
+            output.write(classModel);
+        } catch (IOException e) {
+            log.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Add a class and its descendants to a list, parents before children
+     * 
+     * @param classNode
+     *        The class
+     * @param classes
+     *        The list
+     */
+    private void addClasses(ClassTreeNode classNode,
+            ArrayList<ClassTreeNode> classes) {
+        classes.add(classNode);
+        Iterator<ClassTreeNode> children = classNode.getChildrenList();
+        while (children.hasNext())
+            addClasses(children.next(), classes);
     }
 }
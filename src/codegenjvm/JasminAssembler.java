@@ -0,0 +1,118 @@
+package codegenjvm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Assembles generated classes with Jasmin, in the compiler's JVM. The
+ * Jasmin assembly of a class is built in memory and handed to the
+ * assembler classes of lib/jasmin.jar, so no .j files or second JVM are
+ * needed. This is an alternative to ClassFileWriter (selected with
+ * -assembler jasmin), useful for checking the direct backend against
+ * Jasmin.
+ *
+ * jasmin.jar is not needed to build the compiler: it is loaded when a
+ * JasminAssembler is created, from the classpath if it is there and
+ * otherwise from the lib directory next to the compiler's classes.
+ */
+public class JasminAssembler {
+    private static final String CLASS_FILE = "jasmin.ClassFile";
+
+    private Constructor<?> newClassFile;
+    private Method readJasmin;
+    private Method errorCount;
+    private Method write;
+
+    /**
+     * @throws IOException
+     *         if jasmin.jar cannot be found or is not a Jasmin assembler
+     */
+    public JasminAssembler() throws IOException {
+        Class<?> classFile = loadClassFile();
+        try {
+            newClassFile = classFile.getConstructor();
+            readJasmin = classFile.getMethod("readJasmin",
+                    java.io.Reader.class, String.class, boolean.class);
+            errorCount = classFile.getMethod("errorCount");
+            write = classFile.getMethod("write", java.io.OutputStream.class);
+        } catch (NoSuchMethodException e) {
+            throw new IOException("jasmin.jar is not a supported version of "
+                    + "Jasmin", e);
+        }
+    }
+
+    /**
+     * @return The Jasmin class file class
+     * @throws IOException
+     *         if it cannot be found
+     */
+    private static Class<?> loadClassFile() throws IOException {
+        try {
+            return Class.forName(CLASS_FILE);
+        } catch (ClassNotFoundException e) {
+            // not on the classpath, look in ../lib
+        }
+
+        File jar = ClassOutput.getLibFile("jasmin.jar");
+        try {
+            URLClassLoader loader = new URLClassLoader(
+                    new URL[] { jar.toURI().toURL() },
+                    JasminAssembler.class.getClassLoader());
+            return Class.forName(CLASS_FILE, true, loader);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(jar + " is not a Jasmin assembler", e);
+        }
+    }
+
+    /**
+     * Assemble a class. Jasmin's parser is not known to be thread safe, so
+     * classes are assembled one at a time.
+     *
+     * Jasmin cannot write a goto_w, and fails on a branch too far for a
+     * two-byte offset, so the class is first laid out as a ClassFileWriter
+     * without goto_w would lay it out, to report a method that does not
+     * fit as an error of the method.
+     *
+     * @param classModel
+     *        The class
+     * @return The class in the class file format
+     * @throws CodeTooLargeException
+     *         if the code of a method does not fit in a class file
+     */
+    public synchronized byte[] assemble(ClassModel classModel) {
+        new ClassFileWriter(classModel, false).toByteArray();
+
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        classModel.writeJasmin(out);
+        out.flush();
+
+        String fileName = classModel.getName() + ".j";
+        try {
+            Object classFile = newClassFile.newInstance();
+            readJasmin.invoke(classFile, new StringReader(text.toString()),
+                    fileName, false);
+            int errors = (Integer) errorCount.invoke(classFile);
+            if (errors > 0)
+                throw new RuntimeException("Error: Jasmin found " + errors
+                        + " errors in " + fileName);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            write.invoke(classFile, bytes);
+            return bytes.toByteArray();
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException("Error: Jasmin failed to assemble "
+                    + fileName + ": " + e.getCause(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Error: cannot run Jasmin", e);
+        }
+    }
+}
@@ -0,0 +1,671 @@
+/* Bantam Java Compiler and Language Toolset.
+
+   Copyright (C) 2007 by Marc Corliss (corliss@hws.edu) and
+                         E Christopher Lewis (lewis@vmware.com).
+   ALL RIGHTS RESERVED.
+
+   The Bantam Java toolset is distributed under the following
+   conditions:
+
+     You may make copies of the toolset for your own use and
+     modify those copies.
+
+     All copies of the toolset must retain the author names and
+     copyright notice.
+
+     You may not sell the toolset or distribute it in
+     conjunction with a commerical product or service without
+     the expressed written consent of the authors.
+
+   THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS
+   OR IMPLIED WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE
+   IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+   PARTICULAR PURPOSE.
+*/
+
+package parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/** A lexer that scans a source file mapped into memory
+  * The file is scanned byte by byte, in one pass, into a compact token
+  * stream: the kind, offset, length, line and column of each token in
+  * int arrays.  Token objects (and the strings of identifiers and
+  * literals) are only made as the parser asks for tokens, and lexical
+  * errors are registered then too, so the parser sees exactly the tokens,
+  * lines and errors that the lexer generated from parser.jj gives it.
+  *
+  * The generated lexer reads Java unicode escapes (backslash u) and
+  * decodes the file into characters; a file that has an escape or a byte
+  * that is not ASCII is handed to the generated lexer instead.
+  *
+  * The tokens of a method body can be skipped without making them (see
+  * skipBody); they are given again later by a lexer over the same token
+  * stream, when the body is parsed.
+  * */
+public class MappedTokenManager extends ParserTokenManager {
+    /** Classes of the bytes the scanner switches on */
+    private static final byte OTHER = 0, LETTER = 1, DIGIT = 2, SPACE = 3,
+	UNDERSCORE = 4, SINGLE = 5, DOUBLE = 6, PERIOD_CHAR = 7, SLASH = 8,
+	QUOTE = 9;
+    /** Class of each ASCII byte */
+    private static final byte[] BYTE_CLASS = new byte[128];
+    /** Kind of the token of a byte on its own (SINGLE and DOUBLE bytes) */
+    private static final int[] SINGLE_KIND = new int[128];
+    /** Second byte of the two byte token a DOUBLE byte starts */
+    private static final byte[] DOUBLE_SECOND = new byte[128];
+    /** Kind of the two byte token a DOUBLE byte starts */
+    private static final int[] DOUBLE_KIND = new int[128];
+    /** Keywords (and boolean constants), and their kinds */
+    private static final byte[][] KEYWORDS = new byte[12][];
+    private static final int[] KEYWORD_KINDS = {
+	CLASS, EXTENDS, FOR, WHILE, IF, ELSE, RETURN, BREAK, NEW,
+	INSTANCEOF, BOOLEAN_CONST, BOOLEAN_CONST
+    };
+    /** Number of columns a tab advances to (as in JavaCharStream) */
+    private static final int TAB_SIZE = 8;
+
+    static {
+	for (int c = 'a'; c <= 'z'; c++)
+	    BYTE_CLASS[c] = BYTE_CLASS[c - 'a' + 'A'] = LETTER;
+	for (int c = '0'; c <= '9'; c++)
+	    BYTE_CLASS[c] = DIGIT;
+	for (char c : new char[] { ' ', '\n', '\t', '\f', '\r' })
+	    BYTE_CLASS[c] = SPACE;
+	BYTE_CLASS['_'] = UNDERSCORE;
+	BYTE_CLASS['.'] = PERIOD_CHAR;
+	BYTE_CLASS['/'] = SLASH;
+	BYTE_CLASS['"'] = QUOTE;
+	single('{', LBRACE);
+	single('}', RBRACE);
+	single('[', LBRACK);
+	single(']', RBRACK);
+	single('(', LPARAN);
+	single(')', RPARAN);
+	single(',', COMMA);
+	single(';', SEMICOLON);
+	single('*', TIMES);
+	single('%', MODULO);
+	single('^', XOR);
+	pair('=', ASSIGN, '=', EQUALS);
+	pair('!', NOT, '=', NOT_EQUALS);
+	pair('<', LESS_THAN, '=', LESS_EQUAL);
+	pair('>', GREATER_THAN, '=', GREATER_EQUAL);
+	pair('+', PLUS, '+', INCREMENT);
+	pair('-', MINUS, '-', DECREMENT);
+	pair('&', UNSUPPORTED, '&', AND);
+	pair('|', UNSUPPORTED, '|', OR);
+	String[] keywords = { "class", "extends", "for", "while", "if", "else",
+			      "return", "break", "new", "instanceof", "true",
+			      "false" };
+	for (int i = 0; i < keywords.length; i++)
+	    KEYWORDS[i] = keywords[i].getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void single(char c, int kind) {
+	BYTE_CLASS[c] = SINGLE;
+	SINGLE_KIND[c] = kind;
+    }
+
+    private static void pair(char c, int kind, char second, int pairKind) {
+	BYTE_CLASS[c] = DOUBLE;
+	SINGLE_KIND[c] = kind;
+	DOUBLE_SECOND[c] = (byte)second;
+	DOUBLE_KIND[c] = pairKind;
+    }
+
+    /** The source */
+    private ByteBuffer source;
+    /** Size of the source in bytes */
+    private int size;
+
+    /** The token stream (null until the source is scanned) */
+    private int[] kinds;
+    private int[] offsets;
+    private int[] lengths;
+    private int[] lines;
+    private int[] columns;
+    /** Number of tokens scanned, not counting the end of the file */
+    private int numTokens;
+    /** Index of the next token to give the parser */
+    private int next;
+    /** Index of the first token to give the parser */
+    private int first;
+    /** Line and column of the last byte (where the end of the file is) */
+    private int eofLine = 1, eofColumn = 0;
+    /** Line of the token given to the parser last (0 before any) */
+    private int beginLine = 0;
+    /** Whether the generated lexer scans the source */
+    private boolean generated;
+    /** Whether this lexer gives tokens skipped by another lexer of the
+      * source (whose lexical errors have been registered) */
+    private boolean skipped;
+
+    /** State of the line and column count (as kept by JavaCharStream) */
+    private int pos = 0, line = 1, column = 0;
+    private boolean prevCR, prevLF;
+
+    /** Positions a line comment end or a multi-line comment end is known
+      * not to follow (so that unterminated comments are searched once) */
+    private int noNewlineFrom = Integer.MAX_VALUE;
+    private int noCommentEndFrom = Integer.MAX_VALUE;
+
+    /** Buffer identifiers and literals are copied out through */
+    private byte[] image = new byte[64];
+
+    /** MappedTokenManager constructor
+      * @param source the source (scanned from its position 0 to its limit)
+      * */
+    public MappedTokenManager(ByteBuffer source) {
+	super(null);
+	this.source = source;
+	this.size = source.limit();
+    }
+
+    /** MappedTokenManager constructor for tokens skipped by another lexer
+      * @param file lexer of the source, which has scanned it
+      * @param start index of the first token
+      * @param end index after the last token
+      * */
+    private MappedTokenManager(MappedTokenManager file, int start, int end) {
+	super(null);
+	this.source = file.source;
+	this.size = file.size;
+	this.kinds = file.kinds;
+	this.offsets = file.offsets;
+	this.lengths = file.lengths;
+	this.lines = file.lines;
+	this.columns = file.columns;
+	this.eofLine = file.eofLine;
+	this.eofColumn = file.eofColumn;
+	this.first = this.next = start;
+	this.numTokens = end;
+	this.skipped = true;
+    }
+
+    /** Map a source file into memory
+      * @param file the file
+      * @return a lexer for the file
+      * @throws IOException if the file cannot be read (or is too big to
+      *                     map)
+      * */
+    public static MappedTokenManager open(File file) throws IOException {
+	if (!file.isFile())
+	    throw new IOException(file + " is not a file");
+	try (FileChannel channel = FileChannel.open(file.toPath(),
+						    StandardOpenOption.READ)) {
+	    long size = channel.size();
+	    if (size > Integer.MAX_VALUE)
+		throw new IOException(file + " is too big");
+	    // the mapping stays valid once the channel is closed
+	    return new MappedTokenManager(channel.map(
+		FileChannel.MapMode.READ_ONLY, 0, size));
+	}
+    }
+
+    /** Get the line of the token given to the parser last (the line of the
+      * last byte once the end of the file is given)
+      * @return the line (0 if no token has been given yet)
+      * */
+    public int getBeginLine() {
+	return generated ? super.getBeginLine() : beginLine;
+    }
+
+    /** Get the next token, registering a lexical error if it is one
+      * @return the token
+      * */
+    public Token getNextToken() {
+	if (kinds == null)
+	    scan();
+	if (generated)
+	    return super.getNextToken();
+
+	if (next == numTokens) {
+	    // the end of the file, which ends the errors of the file (the
+	    // tokens after skipped tokens are given by another lexer)
+	    beginLine = eofLine;
+	    Token token = Token.newToken(EOF, jjstrLiteralImages[EOF]);
+	    token.beginLine = token.endLine = eofLine;
+	    token.beginColumn = token.endColumn = eofColumn;
+	    if (!skipped) {
+		eofReached = true;
+		errorHandler.checkErrors();
+	    }
+	    return token;
+	}
+
+	int i = next++;
+	int kind = kinds[i];
+	String literal = jjstrLiteralImages[kind];
+	Token token = Token.newToken(kind, literal != null ? literal :
+				     getImage(offsets[i], lengths[i]));
+	token.beginLine = lines[i];
+	token.beginColumn = columns[i];
+	setEnd(token, offsets[i], lengths[i]);
+	beginLine = lines[i];
+	if (!skipped)
+	    registerError(i, token.image);
+	return token;
+    }
+
+    /** Register the lexical error of a token, if it is one
+      * @param i index of the token
+      * @param image image of the token
+      * */
+    private void registerError(int i, String image) {
+	switch (kinds[i]) {
+	case UNTERMINATED_MULTI_LINE_COMMENT:
+	    errorHandler.register(errorHandler.LEX_ERROR, filename, lines[i],
+			  "Unterminated multi-line comment starting with /*");
+	    break;
+	case UNTERMINATED_STRING_CONSTANT:
+	    errorHandler.register(errorHandler.LEX_ERROR, filename, lines[i],
+				  "Unterminated string starting with \"");
+	    break;
+	case INT_CONST:
+	    if (Double.parseDouble(image) > Integer.MAX_VALUE)
+		errorHandler.register(errorHandler.LEX_ERROR, filename,
+				      lines[i],
+				      "Integer exceeds maximum value allowed: " +
+				      image);
+	    break;
+	case UNSUPPORTED:
+	    errorHandler.register(errorHandler.LEX_ERROR, filename, lines[i],
+				  "Unsupported character: " + image);
+	    break;
+	default:
+	    break;
+	}
+    }
+
+    /** Check whether the tokens of a method body can be skipped (see
+      * skipBody): they can unless the generated lexer scans the source
+      * @return true if they can
+      * */
+    public boolean canSkip() {
+	if (kinds == null)
+	    scan();
+	if (!generated && kinds.length > numTokens) {
+	    // skipped tokens keep the token stream, so it is made no bigger
+	    // than it needs to be
+	    kinds = java.util.Arrays.copyOf(kinds, numTokens);
+	    offsets = java.util.Arrays.copyOf(offsets, numTokens);
+	    lengths = java.util.Arrays.copyOf(lengths, numTokens);
+	    lines = java.util.Arrays.copyOf(lines, numTokens);
+	    columns = java.util.Arrays.copyOf(columns, numTokens);
+	}
+	return !generated;
+    }
+
+    /** Skip the tokens of a method body whose left brace was given last,
+      * up to the right brace that matches it (which is given next), 
+      * registering their lexical errors as if they were given
+      * @return a lexer that gives the skipped tokens and the right brace 
+      *         (then the end of the file), without registering errors
+      * */
+    public MappedTokenManager skipBody() {
+	int start = next;
+	int depth = 0;
+	for (; next < numTokens; next++) {
+	    int kind = kinds[next];
+	    if (kind == RBRACE && depth-- == 0)
+		break;
+	    if (kind == LBRACE)
+		depth++;
+	    else if (kind == INT_CONST || kind == UNSUPPORTED)
+		registerError(next, getImage(offsets[next], lengths[next]));
+	    else
+		registerError(next, null);
+	}
+	if (next > start)
+	    beginLine = lines[next - 1];
+	return new MappedTokenManager(this, start, Math.min(next + 1, 
+							    numTokens));
+    }
+
+    /** Get a lexer that gives the tokens this lexer gives, from the first
+      * @return the lexer
+      * */
+    public MappedTokenManager reopen() {
+	if (!skipped)
+	    throw new IllegalStateException("only skipped tokens are given again");
+	return new MappedTokenManager(this, first, numTokens);
+    }
+
+    /** Get the source text of the tokens this lexer gives, from the first
+      * to the last (see skipBody)
+      * @return the text, preceded by the line of the first token
+      * */
+    public String getSource() {
+	if (first == numTokens)
+	    return eofLine + "\n";
+	int end = offsets[numTokens - 1] + lengths[numTokens - 1];
+	return lines[first] + "\n" + getImage(offsets[first], end - 
+					      offsets[first]);
+    }
+
+    /** Copy the bytes of a token out of the source
+      * @param offset offset of the token
+      * @param length length of the token
+      * @return the image of the token
+      * */
+    private String getImage(int offset, int length) {
+	if (image.length < length)
+	    image = new byte[Math.max(length, 2 * image.length)];
+	for (int i = 0; i < length; i++)
+	    image[i] = source.get(offset + i);
+	return new String(image, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /** Set the end line and column of a token, counting from its first
+      * byte (which is never a line terminator)
+      * @param token the token, whose begin line and column are set
+      * @param offset offset of the token
+      * @param length length of the token
+      * */
+    private void setEnd(Token token, int offset, int length) {
+	int endLine = token.beginLine, endColumn = token.beginColumn;
+	boolean cr = false, lf = false;
+	for (int i = offset + 1; i < offset + length; i++) {
+	    byte c = source.get(i);
+	    endColumn++;
+	    if (lf) {
+		lf = false;
+		endLine++;
+		endColumn = 1;
+	    }
+	    else if (cr) {
+		cr = false;
+		if (c == '\n')
+		    lf = true;
+		else {
+		    endLine++;
+		    endColumn = 1;
+		}
+	    }
+	    if (c == '\r')
+		cr = true;
+	    else if (c == '\n')
+		lf = true;
+	    else if (c == '\t')
+		endColumn = endColumn - 1 + TAB_SIZE - (endColumn - 1) % TAB_SIZE;
+	}
+	token.endLine = endLine;
+	token.endColumn = endColumn;
+    }
+
+    /** Scan the whole source into the token stream, unless it must be
+      * scanned by the generated lexer
+      * */
+    private void scan() {
+	kinds = new int[0];
+	for (int i = 0; i < size; i++) {
+	    byte c = source.get(i);
+	    if (c < 0 || (c == '\\' && i + 1 < size && source.get(i + 1) == 'u')) {
+		scanGenerated();
+		return;
+	    }
+	}
+
+	int capacity = Math.max(16, size / 4);
+	kinds = new int[capacity];
+	offsets = new int[capacity];
+	lengths = new int[capacity];
+	lines = new int[capacity];
+	columns = new int[capacity];
+
+	int start = 0;
+	while (start < size) {
+	    byte c = source.get(start);
+	    int kind;
+	    int end = start + 1;
+	    switch (BYTE_CLASS[c]) {
+	    case LETTER:
+		while (end < size && isIdChar(source.get(end)))
+		    end++;
+		kind = getKeywordKind(start, end - start);
+		break;
+	    case DIGIT:
+		while (end < size && BYTE_CLASS[source.get(end)] == DIGIT)
+		    end++;
+		kind = INT_CONST;
+		break;
+	    case SPACE:
+		start = end;
+		continue;
+	    case SINGLE:
+		kind = SINGLE_KIND[c];
+		break;
+	    case DOUBLE:
+		kind = SINGLE_KIND[c];
+		if (end < size && source.get(end) == DOUBLE_SECOND[c]) {
+		    kind = DOUBLE_KIND[c];
+		    end++;
+		}
+		break;
+	    case PERIOD_CHAR:
+		kind = PERIOD;
+		if (matches(end, "length")) {
+		    kind = LENGTH;
+		    end += 6;
+		}
+		break;
+	    case SLASH:
+		kind = DIVIDE;
+		if (end < size && source.get(end) == '/') {
+		    int newline = find(end + 1, "\n");
+		    if (newline >= 0) {
+			// a line comment (a comment that the end of the file
+			// ends is no comment, but two slashes)
+			start = newline + 1;
+			continue;
+		    }
+		}
+		else if (end < size && source.get(end) == '*') {
+		    int commentEnd = find(end + 1, "*/");
+		    if (commentEnd >= 0) {
+			start = commentEnd + 2;
+			continue;
+		    }
+		    kind = UNTERMINATED_MULTI_LINE_COMMENT;
+		    end++;
+		}
+		break;
+	    case QUOTE:
+		int stringEnd = getStringEnd(start);
+		int unterminatedEnd = getUnterminatedStringEnd(start);
+		if (stringEnd > unterminatedEnd) {
+		    kind = STRING_CONST;
+		    end = stringEnd;
+		}
+		else {
+		    kind = UNTERMINATED_STRING_CONSTANT;
+		    end = unterminatedEnd;
+		}
+		break;
+	    default:
+		kind = UNSUPPORTED;
+		break;
+	    }
+	    add(kind, start, end - start);
+	    start = end;
+	}
+
+	// the end of the file is where the last byte is
+	countTo(size);
+	eofLine = line;
+	eofColumn = column;
+    }
+
+    /** Hand the source to the generated lexer */
+    private void scanGenerated() {
+	generated = true;
+	byte[] bytes = new byte[size];
+	for (int i = 0; i < size; i++)
+	    bytes[i] = source.get(i);
+	ReInit(new JavaCharStream(new InputStreamReader(
+				      new ByteArrayInputStream(bytes)), 1, 1));
+    }
+
+    /** Add a token to the token stream
+      * @param kind kind of the token
+      * @param offset offset of the token
+      * @param length length of the token
+      * */
+    private void add(int kind, int offset, int length) {
+	if (numTokens == kinds.length) {
+	    int capacity = 2 * kinds.length;
+	    kinds = java.util.Arrays.copyOf(kinds, capacity);
+	    offsets = java.util.Arrays.copyOf(offsets, capacity);
+	    lengths = java.util.Arrays.copyOf(lengths, capacity);
+	    lines = java.util.Arrays.copyOf(lines, capacity);
+	    columns = java.util.Arrays.copyOf(columns, capacity);
+	}
+	countTo(offset + 1);
+	kinds[numTokens] = kind;
+	offsets[numTokens] = offset;
+	lengths[numTokens] = length;
+	lines[numTokens] = line;
+	columns[numTokens] = column;
+	numTokens++;
+    }
+
+    /** Count lines and columns up to (not including) a position, as
+      * JavaCharStream does: a line ends at \n, \r or \r\n, and a tab
+      * advances to the next multiple of TAB_SIZE
+      * @param end the position
+      * */
+    private void countTo(int end) {
+	for (; pos < end; pos++) {
+	    byte c = source.get(pos);
+	    column++;
+	    if (prevLF) {
+		prevLF = false;
+		line++;
+		column = 1;
+	    }
+	    else if (prevCR) {
+		prevCR = false;
+		if (c == '\n')
+		    prevLF = true;
+		else {
+		    line++;
+		    column = 1;
+		}
+	    }
+	    if (c == '\r')
+		prevCR = true;
+	    else if (c == '\n')
+		prevLF = true;
+	    else if (c == '\t')
+		column = column - 1 + TAB_SIZE - (column - 1) % TAB_SIZE;
+	}
+    }
+
+    /** Get whether a byte can be part of an identifier after its first */
+    private static boolean isIdChar(byte c) {
+	byte cls = c >= 0 ? BYTE_CLASS[c] : OTHER;
+	return cls == LETTER || cls == DIGIT || cls == UNDERSCORE;
+    }
+
+    /** Get the kind of an identifier: the keyword's (or boolean
+      * constant's) it spells, or ID
+      * @param offset offset of the identifier
+      * @param length length of the identifier
+      * @return the kind
+      * */
+    private int getKeywordKind(int offset, int length) {
+	for (int k = 0; k < KEYWORDS.length; k++) {
+	    byte[] keyword = KEYWORDS[k];
+	    if (keyword.length != length || keyword[0] != source.get(offset))
+		continue;
+	    int i = 1;
+	    while (i < length && keyword[i] == source.get(offset + i))
+		i++;
+	    if (i == length)
+		return KEYWORD_KINDS[k];
+	}
+	return ID;
+    }
+
+    /** Get whether text is at a position of the source */
+    private boolean matches(int offset, String text) {
+	if (offset + text.length() > size)
+	    return false;
+	for (int i = 0; i < text.length(); i++)
+	    if (source.get(offset + i) != text.charAt(i))
+		return false;
+	return true;
+    }
+
+    /** Find the first position, from a position on, where a newline ("\n")
+      * or the end of a multi-line comment ("* /") is
+      * @param from the position
+      * @param text "\n" or "* /"
+      * @return the position, or -1 if there is none
+      * */
+    private int find(int from, String text) {
+	boolean newline = text.equals("\n");
+	if (from >= (newline ? noNewlineFrom : noCommentEndFrom))
+	    return -1;
+	for (int i = from; i < size; i++)
+	    if (matches(i, text))
+		return i;
+	if (newline)
+	    noNewlineFrom = from;
+	else
+	    noCommentEndFrom = from;
+	return -1;
+    }
+
+    /** Get the end of the longest string constant at a position: the
+      * longest match of "\"" (~["\\"] "\\\"" | ~["\r","\f","\""])* "\""
+      * (the two alternatives can overlap, so each position that a prefix
+      * of the loop can reach is tracked, in a mask of the next four)
+      * @param start position of the opening quote
+      * @return the end of the constant, or -1 if there is none
+      * */
+    private int getStringEnd(int start) {
+	int end = -1;
+	// bit k is set if the loop can reach position q + k
+	int reachable = 1;
+	for (int q = start + 1; reachable != 0 && q < size; q++) {
+	    if ((reachable & 1) != 0) {
+		byte c = source.get(q);
+		if (c == '"')
+		    end = q + 1;
+		else if (c != '\r' && c != '\f')
+		    reachable |= 2;
+		if (c != '\\' && q + 2 < size && source.get(q + 1) == '\\' &&
+		    source.get(q + 2) == '"')
+		    reachable |= 8;
+	    }
+	    reachable >>>= 1;
+	}
+	return end;
+    }
+
+    /** Get the end of the unterminated string constant at a position: the
+      * longest match of "\"" (~["\n","\r","\f","\""] "\n")*
+      * @param start position of the opening quote
+      * @return the end of the constant
+      * */
+    private int getUnterminatedStringEnd(int start) {
+	int end = start + 1;
+	while (end + 1 < size) {
+	    byte c = source.get(end);
+	    if (c == '\n' || c == '\r' || c == '\f' || c == '"' ||
+		source.get(end + 1) != '\n')
+		break;
+	    end += 2;
+	}
+	return end;
+    }
+}
@@ -9,10 +9,14 @@ import ast.Method;
 import ast.Program;
 import util.ClassTreeNode;
 import util.ErrorHandler;
+import util.PhaseTimer;
 import util.SymbolTable;
 
 public class ClassEnvVisitor extends SemantVisitor {
 
+    // timer that building each class's environment is measured with
+    private PhaseTimer timer = PhaseTimer.NONE;
+
     protected boolean methodArgsMatch(Method method1, Method method2) {
         boolean isValid = true;
         if (method1.getFormalList().getSize() != method2.getFormalList()
@@ -76,6 +80,21 @@ public class ClassEnvVisitor extends SemantVisitor {
         super.errorHandler = errorHandler;
     }
 
+    /**
+     * @param classTreeNode
+     *            the root of the class tree
+     * @param errorHandler
+     *            error handler for reporting semantic errors
+     * @param timer
+     *            timer that building each class's environment is measured
+     *            with
+     */
+    public ClassEnvVisitor(ClassTreeNode classTreeNode,
+        ErrorHandler errorHandler, PhaseTimer timer) {
+        this(classTreeNode, errorHandler);
+        this.timer = timer;
+    }
+
     public Object visit(Program program) {
         Iterator<ASTNode> iterator = program.getClassList().getIterator();
 
@@ -89,8 +108,14 @@ public class ClassEnvVisitor extends SemantVisitor {
     public Object visit(ClassTreeNode classTreeNode) {
         super.classTreeNode = classTreeNode;
         Iterator<ClassTreeNode> children = classTreeNode.getChildrenList();
-        enterScope();
-        classTreeNode.getASTNode().accept(this);
+        // the span covers this class only, not its subclasses
+        PhaseTimer.Span span = timer.start("classenv", classTreeNode.getName());
+        try {
+            enterScope();
+            classTreeNode.getASTNode().accept(this);
+        } finally {
+            span.end();
+        }
         while (children.hasNext()) {
             ClassTreeNode child = children.next();
             // check after each child
@@ -127,8 +152,8 @@ public class ClassEnvVisitor extends SemantVisitor {
                 "field '" + name + "' is already defined in class '"
                     + classTreeNode.getName() + "'");
         } else {
-            table.add(name, node.getType());
-            table.add("this." + name, node.getType());
+            table.add(name, lookupType(node.getType()));
+            table.add("this." + name, lookupType(node.getType()));
         }
         return null;
     }
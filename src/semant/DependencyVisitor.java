@@ -0,0 +1,147 @@
+package semant;
+
+import java.util.TreeSet;
+
+import ast.ArrayAssignExpr;
+import ast.ArrayExpr;
+import ast.AssignExpr;
+import ast.CastExpr;
+import ast.DeclStmt;
+import ast.DispatchExpr;
+import ast.Field;
+import ast.Formal;
+import ast.InstanceofExpr;
+import ast.Method;
+import ast.NewArrayExpr;
+import ast.NewExpr;
+import ast.VarExpr;
+import util.ClassTreeNode;
+import util.Type;
+import visitor.Visitor;
+
+/**
+ * Collects the names of the classes that a type checked class depends on:
+ * the class itself and its parent, every declared type, and the type of
+ * every expression that may be a reference (so the static type of every
+ * dispatch and field access is included). If none of these classes
+ * changes its members or its parent chain, type checking and generating
+ * code for the class give the same result.
+ */
+public class DependencyVisitor extends Visitor {
+
+    // names of the classes depended on, sorted so they are recorded in a
+    // stable order
+    private TreeSet<String> dependencies = new TreeSet<String>();
+
+    // the class whose dependencies are collected, which declared types are
+    // looked up in
+    private ClassTreeNode classTreeNode;
+
+    /**
+     * Get the classes a type checked class depends on
+     *
+     * @param classTreeNode
+     *            the class (must have been type checked)
+     * @return the names of the classes, sorted
+     */
+    public TreeSet<String> getDependencies(ClassTreeNode classTreeNode) {
+        this.classTreeNode = classTreeNode;
+        add(classTreeNode.getName());
+        if (classTreeNode.getParent() != null)
+            add(classTreeNode.getParent().getName());
+        classTreeNode.getASTNode().accept(this);
+        return dependencies;
+    }
+
+    /**
+     * Add the class of a declared type, if it is a class type
+     *
+     * @param type
+     *            the name of the type (may be an array type or null)
+     */
+    private void add(String type) {
+        if (type != null)
+            add(classTreeNode.lookupType(type));
+    }
+
+    /**
+     * Add the class of the type of an expression, if it is a class type
+     *
+     * @param type
+     *            the type (may be an array type, or null if the expression
+     *            has none)
+     */
+    private void add(Type type) {
+        if (type == null)
+            return;
+        if (type.isArray())
+            type = type.getElementType();
+        if (!type.isPrimitive() && !type.isVoid() && !type.isNull())
+            dependencies.add(type.getName());
+    }
+
+    public Object visit(Field node) {
+        add(node.getType());
+        return super.visit(node);
+    }
+
+    public Object visit(Method node) {
+        add(node.getReturnType());
+        return super.visit(node);
+    }
+
+    public Object visit(Formal node) {
+        add(node.getType());
+        return super.visit(node);
+    }
+
+    public Object visit(DeclStmt node) {
+        add(node.getType());
+        return super.visit(node);
+    }
+
+    public Object visit(DispatchExpr node) {
+        add(node.getExprType());
+        return super.visit(node);
+    }
+
+    public Object visit(NewExpr node) {
+        add(node.getType());
+        return super.visit(node);
+    }
+
+    public Object visit(NewArrayExpr node) {
+        add(node.getType());
+        return super.visit(node);
+    }
+
+    public Object visit(InstanceofExpr node) {
+        add(node.getType());
+        return super.visit(node);
+    }
+
+    public Object visit(CastExpr node) {
+        add(node.getType());
+        return super.visit(node);
+    }
+
+    public Object visit(AssignExpr node) {
+        add(node.getExprType());
+        return super.visit(node);
+    }
+
+    public Object visit(ArrayAssignExpr node) {
+        add(node.getExprType());
+        return super.visit(node);
+    }
+
+    public Object visit(VarExpr node) {
+        add(node.getExprType());
+        return super.visit(node);
+    }
+
+    public Object visit(ArrayExpr node) {
+        add(node.getExprType());
+        return super.visit(node);
+    }
+}
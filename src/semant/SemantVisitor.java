@@ -3,6 +3,8 @@ package semant;
 import ast.ASTNode;
 import util.ClassTreeNode;
 import util.ErrorHandler;
+import util.SymbolTable;
+import util.Type;
 import visitor.Visitor;
 
 abstract public class SemantVisitor extends Visitor {
@@ -20,18 +22,6 @@ abstract public class SemantVisitor extends Visitor {
     protected static String NULL = "null";
     static private String[] reservedWordsArray = { "this", "super", "null" };
 
-    /**
-     * Gets if 'type' is an array or array of primitives.
-     * 
-     * @param type
-     */
-    public static boolean isPrimitiveOrArray(String type) {
-        if (isArray(type)) {
-            type = type.substring(0, type.length() - 2);
-        }
-        return isPrimitive(type);
-    }
-
     public static boolean isPrimitive(String type) {
         return type != null && (type.equals(BOOL) || type.equals(INT));
     }
@@ -40,9 +30,12 @@ abstract public class SemantVisitor extends Visitor {
         return type != null && (isPrimitive(type) || type.equals(VOID));
     }
 
-    public static boolean isArray(String type) {
-        return type.length() > 2
-            && type.substring(type.length() - 2).equals("[]");
+    public static boolean isPrimitive(Type type) {
+        return type != null && type.isPrimitive();
+    }
+
+    public static boolean isPrimitiveOrVoid(Type type) {
+        return type != null && (type.isPrimitive() || type.isVoid());
     }
 
     protected void registerSemanticError(ASTNode node, String message) {
@@ -65,55 +58,52 @@ abstract public class SemantVisitor extends Visitor {
      * @param type2
      * @return true if no errors are found
      */
-    public boolean conformsTo(String type1, String type2) {
+    public boolean conformsTo(Type type1, Type type2) {
         if (type1 == null || type2 == null)
             return false;
-        boolean isArray1 = type1.endsWith("[]");
-        boolean isArray2 = type2.endsWith("[]");
-        if (isArray1 ^ isArray2) {
-            return type1.equals(NULL) || type2.equals(OBJECT);
+        // the error has already been reported
+        if (type1.isError() || type2.isError())
+            return true;
+
+        // an array conforms to Object, and null to an array; otherwise
+        // the element types must conform
+        while (type1.isArray() && type2.isArray()) {
+            type1 = type1.getElementType();
+            type2 = type2.getElementType();
         }
-        if (isArray1) {
-            return conformsTo(type1.substring(0, type1.length() - 2),
-                type2.substring(0, type2.length() - 2));
+        if (type1.isArray() || type2.isArray()) {
+            return type1.isNull() || type2.getName().equals(OBJECT);
         }
-        ClassTreeNode node1;
-        ClassTreeNode node2;
 
-        if (type1.equals(VOID) && type2.equals(VOID)) {
+        if (type1.isVoid() && type2.isVoid()) {
             return true;
-        } else if (isPrimitive(type1) ^ isPrimitive(type2)) {
+        } else if (type1.isPrimitive() ^ type2.isPrimitive()) {
             return false;
-        } else if (isPrimitive(type1) && isPrimitive(type2)) {
-            return type1.equals(type2);
-        } else if (type1.equals(NULL) || type2.equals(NULL)) {
+        } else if (type1.isPrimitive()) {
+            return type1 == type2;
+        } else if (type1.isNull() || type2.isNull()) {
             return true;
-        } else if (!typeExists(type1) || !typeExists(type2)) {
+        } else if (!type1.exists() || !type2.exists()) {
             return false;
         } else {
-            node1 = classTreeNode.lookupClass(type1);
-            node2 = classTreeNode.lookupClass(type2);
-
-            while (node1 != null) {
-                if (node1.getName().equals(node2.getName()))
-                    return true;
-                node1 = node1.getParent();
-            }
-            return false;
+            return type1.getClassTreeNode()
+                .isSubclassOf(type2.getClassTreeNode());
         }
     }
 
-    protected boolean typeExists(String type) {
-        String trimmedType = removeArray(type);
-        return classTreeNode.lookupClass(trimmedType) != null
-            || isPrimitive(trimmedType);
+    /**
+     * Gets the type of a name
+     * 
+     * @param type
+     *            the name of the type (e.g. a declared type)
+     * @return the type (interned, so types can be compared with ==)
+     */
+    protected Type lookupType(String type) {
+        return classTreeNode.lookupType(type);
     }
 
-    protected String removeArray(String type) {
-        if (type.endsWith("[]")) {
-            return type.substring(0, type.length() - 2);
-        }
-        return type;
+    protected boolean typeExists(String type) {
+        return lookupType(type).exists();
     }
 
     protected boolean isReserved(String name) {
@@ -127,13 +117,22 @@ abstract public class SemantVisitor extends Visitor {
         return typeExists(type) || type.equals(VOID);
     }
 
-    protected void addVar(String name, String type) {
-        classTreeNode.getVarSymbolTable().add(name, type);
+    /**
+     * Gets the table that variables are added to and looked up in
+     * 
+     * @return the variable symbol table of the current class
+     */
+    protected SymbolTable getVarTable() {
+        return classTreeNode.getVarSymbolTable();
+    }
+
+    protected void addVar(String name, Type type) {
+        getVarTable().add(name, type);
     }
 
     protected boolean existsInCurrentVarScope(String name) {
-        return classTreeNode.getVarSymbolTable().getScopeLevel(
-            name) == classTreeNode.getVarSymbolTable().getCurrScopeLevel();
+        return getVarTable().getScopeLevel(
+            name) == getVarTable().getCurrScopeLevel();
     }
 
     static public boolean existsInClass(String name, ClassTreeNode classTreeNode) {
@@ -152,15 +151,15 @@ abstract public class SemantVisitor extends Visitor {
 
     protected boolean existsInMethodVarScope(String name) {
         if (classTreeNode.getParent() != null)
-            return classTreeNode.getVarSymbolTable().getScopeLevel(name)
+            return getVarTable().getScopeLevel(name)
                 - classTreeNode.getParent().getVarSymbolTable()
                     .getCurrScopeLevel() > 1;
         else
-            return classTreeNode.getVarSymbolTable().getScopeLevel(name) > 1;
+            return getVarTable().getScopeLevel(name) > 1;
     }
 
     protected Object lookupVar(String name) {
-        return classTreeNode.getVarSymbolTable().lookup(name);
+        return getVarTable().lookup(name);
     }
 
     protected Object thisLookupVar(String name) {
@@ -171,12 +170,12 @@ abstract public class SemantVisitor extends Visitor {
         return classTreeNode.getParent().getVarSymbolTable().lookup(name);
     }
 
-    protected Object lookupMethodInClass(String className, String name) {
+    protected Object lookupMethodInClass(Type type, String name) {
         ClassTreeNode classTreeNode;
-        if (className.endsWith("[]")) {
+        if (type.isArray()) {
             classTreeNode = this.classTreeNode.lookupClass(OBJECT);
         } else {
-            classTreeNode = this.classTreeNode.lookupClass(className);
+            classTreeNode = type.getClassTreeNode();
         }
 
         if (classTreeNode == null) {
@@ -191,7 +190,7 @@ abstract public class SemantVisitor extends Visitor {
     }
 
     protected Object peekVar(String name) {
-        return classTreeNode.getVarSymbolTable().peek(name);
+        return getVarTable().peek(name);
     }
 
     protected void enterScope() {
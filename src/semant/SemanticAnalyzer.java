@@ -28,6 +28,9 @@ package semant;
 import ast.*;
 import util.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * The <tt>SemanticAnalyzer</tt> class performs semantic analysis.
@@ -49,15 +52,27 @@ public class SemanticAnalyzer {
     /** Maps class names to ClassTreeNode objects describing the class */
     private Hashtable<String, ClassTreeNode> classMap = new Hashtable<String, ClassTreeNode>();
 
+    /** Interns the types of the program, for the class tree nodes */
+    private TypeTable typeTable = new TypeTable(classMap);
+
     /** Ordered list of ClassTreeNode objects (breadth first) */
     private Vector<ClassTreeNode> orderedClassList = new Vector<ClassTreeNode>();
 
     /** Object for error handling */
-    private ErrorHandler errorHandler = new ErrorHandler();
+    private ErrorHandler errorHandler;
 
     /** Boolean indicating whether debugging is enabled */
     private boolean debug = true;
 
+    /** Pool used to type check classes (null to check them one at a time) */
+    private ExecutorService pool;
+
+    /** Timer the phases of the analysis are measured with */
+    private PhaseTimer timer = PhaseTimer.NONE;
+
+    /** Where debugging output is traced */
+    private Trace trace = Trace.NONE;
+
     /**
      * Maximum number of inherited and non-inherited fields that can
      * be defined for any one class
@@ -73,8 +88,64 @@ public class SemanticAnalyzer {
      *            boolean indicating whether debugging is enabled
      */
     public SemanticAnalyzer(Program program, boolean debug) {
+        this(program, debug, new ErrorHandler());
+    }
+
+    /**
+     * SemanticAnalyzer constructor
+     * 
+     * @param program
+     *            root of the AST
+     * @param debug
+     *            boolean indicating whether debugging is enabled
+     * @param errorHandler
+     *            error handler for reporting semantic errors
+     */
+    public SemanticAnalyzer(Program program, boolean debug,
+            ErrorHandler errorHandler) {
+        this(program, debug, errorHandler, null);
+    }
+
+    /**
+     * SemanticAnalyzer constructor
+     * 
+     * @param program
+     *            root of the AST
+     * @param debug
+     *            boolean indicating whether debugging is enabled
+     * @param errorHandler
+     *            error handler for reporting semantic errors
+     * @param pool
+     *            pool used to type check classes concurrently, or null to
+     *            check them one at a time
+     */
+    public SemanticAnalyzer(Program program, boolean debug,
+            ErrorHandler errorHandler, ExecutorService pool) {
         this.program = program;
         this.debug = debug;
+        this.errorHandler = errorHandler;
+        this.pool = pool;
+    }
+
+    /**
+     * Measure the phases of the analysis (for each class, building its
+     * environment and type checking it)
+     * 
+     * @param timer
+     *            the timer
+     */
+    public void setTimer(PhaseTimer timer) {
+        this.timer = timer;
+    }
+
+    /**
+     * Trace the class environments once they are built
+     * 
+     * @param trace
+     *            where debugging output is traced (category SEMANT)
+     */
+    public void setTrace(Trace trace) {
+        this.trace = trace;
     }
 
     /**
@@ -98,31 +169,111 @@ public class SemanticAnalyzer {
      */
     public ClassTreeNode analyze() {
 
-        // list of class declarations
-        ClassList classList = program.getClassList();
+        buildEnvironment();
+
+        // PART 4: type checking
+        // type check each member (fields and methods) of each user-defined
+        // class
+        PhaseTimer.Span span = timer.start("typecheck", null);
+        try {
+            typeCheck();
+        } finally {
+            span.end();
+        }
+
+        errorHandler.checkErrors();
+        return root;
+
+    }
+
+    /**
+     * Build and check the class hierarchy tree and the class environments,
+     * and check the Main class (parts 1 to 3 of analyze()). Errors are
+     * registered but not checked, so that type checking can still report
+     * its errors. Once this returns, each class can be type checked on its
+     * own with typeCheck(ClassTreeNode, ErrorHandler).
+     * 
+     * @return root of the class hierarchy tree
+     */
+    public ClassTreeNode buildEnvironment() {
 
         // PART 1: class tree
         // build and check class hierarchy tree
-        buildClassTree(classList);
+        buildClassTree();
 
         // PART 2: class symbol table
         // build class symbol table for members and check that members are
         // declared properly
-        buildSymbolTable();
+        PhaseTimer.Span span = timer.start("classenv", null);
+        try {
+            buildSymbolTable();
+        } finally {
+            span.end();
+        }
+        if (trace.isEnabled(Trace.Category.SEMANT))
+            traceEnvironment();
 
         // PART 3: Main class/main method
         // check that there is a Main class and main method
 
         checkMain();
 
-        // PART 4: type checking
-        // type check each member (fields and methods) of each user-defined
-        // class
-        typeCheck();
+        return root;
+    }
 
-        errorHandler.checkErrors();
+    /**
+     * Build and check the class hierarchy tree (part 1 of analyze()), but
+     * not the class environments. The tree can be handed to a
+     * ClassEnvVisitor on its own, e.g. to measure the phases separately.
+     * 
+     * @return root of the class hierarchy tree
+     */
+    public ClassTreeNode buildClassTree() {
+        PhaseTimer.Span span = timer.start("classtree", null);
+        try {
+            buildClassTree(program.getClassList());
+        } finally {
+            span.end();
+        }
         return root;
+    }
 
+    /**
+     * Type check the members of a single class (not its subclasses)
+     * Only reads the class tree, so different classes may be checked at
+     * the same time.
+     * 
+     * @param classNode
+     *            the class to type check
+     * @param errorHandler
+     *            error handler the class's errors are registered with
+     */
+    public void typeCheck(ClassTreeNode classNode, ErrorHandler errorHandler) {
+        PhaseTimer.Span span = timer.start("typecheck", classNode.getName());
+        try {
+            new TypeCheckVisitor(classNode, errorHandler).visit(classNode);
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Get the class hierarchy tree built by buildEnvironment()
+     * 
+     * @return root of the class hierarchy tree (null if it has not been
+     *         built yet)
+     */
+    public ClassTreeNode getClassTree() {
+        return root;
+    }
+
+    /**
+     * Get the error handler that semantic errors are reported to
+     * 
+     * @return the error handler
+     */
+    public ErrorHandler getErrorHandler() {
+        return errorHandler;
     }
 
     /**
@@ -140,7 +291,7 @@ public class SemanticAnalyzer {
                     new StmtList(-1))));
         // create a class tree node for object, save in variable root
         root = new ClassTreeNode(astNode, /* built-in? */true,
-            /* extendable? */true, classMap);
+            /* extendable? */true, classMap, typeTable);
         // add object class tree node to the mapping
         classMap.put("Object", root);
 
@@ -177,7 +328,7 @@ public class SemanticAnalyzer {
                     new StmtList(-1))));
         // create class tree node for String, add it to the mapping
         classMap.put("String", new ClassTreeNode(astNode, /* built-in? */true,
-            /* extendable? */false, classMap));
+            /* extendable? */false, classMap, typeTable));
 
         // create AST node for TextIO
         astNode = new Class_(-1, "<built-in class>", "TextIO", "Object",
@@ -227,7 +378,7 @@ public class SemanticAnalyzer {
                     new StmtList(-1))));
         // create class tree node for TextIO, add it to the mapping
         classMap.put("TextIO", new ClassTreeNode(astNode, /* built-in? */true,
-            /* extendable? */false, classMap));
+            /* extendable? */false, classMap, typeTable));
 
         // create AST node for Sys
         astNode = new Class_(-1, "<built-in class>", "Sys", "Object",
@@ -242,7 +393,7 @@ public class SemanticAnalyzer {
                     new StmtList(-1))));
         // create class tree node for Sys, add it to the mapping
         classMap.put("Sys", new ClassTreeNode(astNode, /* built-in? */true,
-            /* extendable? */false, classMap));
+            /* extendable? */false, classMap, typeTable));
     }
 
     /*************************************************************************
@@ -256,6 +407,17 @@ public class SemanticAnalyzer {
      * of the nodes, and check if parent exists; (3) check that there are
      * no cycles in the graph (i.e., that it's a tree)
      * 
+     * A class is added to the tree once its parent is, so the classes are
+     * added in topological order. They are added in sweeps over the class
+     * list: a class is added in the first sweep that reaches it after its
+     * parent was added, and the classes a sweep adds are in list order
+     * (which fixes the order of the children and of the errors). Rather
+     * than retrying every class in every sweep, a class is only looked at
+     * again when its parent or a class of the same name is added, found
+     * through indexes by name and by parent name. So each class is looked
+     * at a bounded number of times, where retrying took quadratic time when
+     * the subclasses come before their parents.
+     * 
      * @param classList
      *            list of AST class nodes
      */
@@ -274,101 +436,108 @@ public class SemanticAnalyzer {
         while (iterator.hasNext()) {
             classNodes.add((Class_) iterator.next());
         }
-        boolean classesChanged = true;
-
-        // cycle through classNodes and add it to the map if its parent exists
-        while (!classNodes.isEmpty() && classesChanged) {
-            // track the number of nodes prior removing any
-            int beforeLoopSize = classNodes.size();
-
-            for (int i = 0; i < classNodes.size();) {
-                // make class tree node
-                Class_ classNode = classNodes.get(i);
-                ClassTreeNode classTreeNode = new ClassTreeNode(classNode,
-                    false, // never built in
-                    true, // always extendable
-                    classMap);
-
-                // check if name already exists
-                if (classMap.containsKey((classNode.getName()))) {
-                    ClassTreeNode old = classMap.get(classNode.getName());
-                    if (old.isBuiltIn()) {
-                        errorHandler.register(errorHandler.SEMANT_ERROR,
-                            classNode.getFilename(), classNode.getLineNum(),
-                            "built-in class '" + old.getName()
-                                + "' cannot be redefined");
-
-                    } else {
-                        errorHandler.register(errorHandler.SEMANT_ERROR,
-                            classNode.getFilename(), classNode.getLineNum(),
-                            "duplicate class '" + old.getName()
-                                + "' (originally defined at line "
-                                + old.getASTNode().getLineNum() + ")");
-
-                    }
-
-                    // disregard
-                    classNodes.remove(i);
+
+        // index the classes by name and by parent name (default Object)
+        Map<String, List<Integer>> byName = new HashMap<>();
+        Map<String, List<Integer>> byParent = new HashMap<>();
+        for (int i = 0; i < classNodes.size(); i++) {
+            index(byName, classNodes.get(i).getName(), i);
+            index(byParent, parentName(classNodes.get(i)), i);
+        }
+
+        // the first sweep looks at every class; a class that is added
+        // reschedules the classes waiting on it, in this sweep if they come
+        // after it in the list and in the next sweep otherwise
+        boolean[] done = new boolean[classNodes.size()];
+        PriorityQueue<Integer> sweep = new PriorityQueue<>();
+        PriorityQueue<Integer> nextSweep = new PriorityQueue<>();
+        for (int i = 0; i < classNodes.size(); i++) {
+            sweep.add(i);
+        }
+
+        while (!sweep.isEmpty() || !nextSweep.isEmpty()) {
+            if (sweep.isEmpty()) {
+                PriorityQueue<Integer> empty = sweep;
+                sweep = nextSweep;
+                nextSweep = empty;
+            }
+            int i = sweep.poll();
+            if (done[i]) {
+                continue;
+            }
+            Class_ classNode = classNodes.get(i);
+
+            // check if name already exists
+            if (classMap.containsKey((classNode.getName()))) {
+                ClassTreeNode old = classMap.get(classNode.getName());
+                if (old.isBuiltIn()) {
+                    errorHandler.register(errorHandler.SEMANT_ERROR,
+                        classNode.getFilename(), classNode.getLineNum(),
+                        "built-in class '" + old.getName()
+                            + "' cannot be redefined");
+
                 } else {
+                    errorHandler.register(errorHandler.SEMANT_ERROR,
+                        classNode.getFilename(), classNode.getLineNum(),
+                        "duplicate class '" + old.getName()
+                            + "' (originally defined at line "
+                            + old.getASTNode().getLineNum() + ")");
 
-                    // ensure classes have default parent object if nothing
-                    // else
-                    String parentName = classNode.getParent();
-                    if (parentName == null || parentName.isEmpty()) {
-                        parentName = "Object";
-                    }
-
-                    // check if parent exists
-                    if (!classMap.keySet().contains(parentName)) {
-                        // No parent class found
-                        // either hasn't gotten there yet or is in loop
-                        i++;
-                    } else if (!classMap.get(parentName).isExtendable()) {
-                        errorHandler.register(errorHandler.SEMANT_ERROR,
-                            classNode.getFilename(), classNode.getLineNum(),
-                            "class '" + classNode.getName()
-                                + "' extends non-extendable class '"
-                                + parentName + "'");
-                        classNodes.remove(i);
-                    } else {
-                        // update parent link
-                        ClassTreeNode parent = classMap.get(parentName);
-                        classTreeNode.setParent(parent); // updates the parent
-                                                         // as well
-
-                        // add to classMap
-                        classMap.put(classNode.getName(), classTreeNode);
-
-                        // add to ordered list
-                        classNodes.remove(i);
-                        orderedClassList.add(classTreeNode);
-                    }
+                }
+
+                // disregard
+                done[i] = true;
+            } else {
+                String parentName = parentName(classNode);
+
+                // check if parent exists
+                if (!classMap.containsKey(parentName)) {
+                    // No parent class found
+                    // either hasn't gotten there yet or is in loop;
+                    // it is rescheduled if the parent is added
+                } else if (!classMap.get(parentName).isExtendable()) {
+                    errorHandler.register(errorHandler.SEMANT_ERROR,
+                        classNode.getFilename(), classNode.getLineNum(),
+                        "class '" + classNode.getName()
+                            + "' extends non-extendable class '"
+                            + parentName + "'");
+                    done[i] = true;
+                } else {
+                    ClassTreeNode classTreeNode = new ClassTreeNode(
+                        classNode, false, // never built in
+                        true, // always extendable
+                        classMap, typeTable);
+
+                    // update parent link
+                    classTreeNode.setParent(classMap.get(parentName));
+
+                    // add to classMap and to ordered list
+                    classMap.put(classNode.getName(), classTreeNode);
+                    orderedClassList.add(classTreeNode);
+                    done[i] = true;
+
+                    // its subclasses can now be added, and the other classes
+                    // of the same name are duplicates
+                    reschedule(byName.get(classNode.getName()), i, done,
+                        sweep, nextSweep);
+                    reschedule(byParent.get(classNode.getName()), i, done,
+                        sweep, nextSweep);
                 }
             }
-            classesChanged = beforeLoopSize != classNodes.size();
         }
+        root.numberTree();
 
         Map<String, Class_> remainingNodes = new HashMap<>();
-        for (Class_ node : classNodes) {
-            remainingNodes.put(node.getName(), node);
+        for (int i = 0; i < classNodes.size(); i++) {
+            if (!done[i]) {
+                remainingNodes.put(classNodes.get(i).getName(),
+                    classNodes.get(i));
+            }
         }
         // The remaining nodes do not have a parent class or are in a cycle
+        Set<Class_> inCycle = findCycles(remainingNodes);
         for (Class_ node : remainingNodes.values()) {
-            Class_ tortise = node;
-            Class_ hare = node;
-            boolean inLoop = false;
-            while (tortise != null && hare != null) {
-                tortise = remainingNodes.get(tortise.getParent());
-                hare = remainingNodes.get(hare.getParent());
-                if (hare != null) {
-                    hare = remainingNodes.get(hare.getParent());
-                }
-                if (tortise == hare && tortise != null) {
-                    inLoop = tortise == node;
-                    break;
-                }
-            }
-            if (inLoop)
+            if (inCycle.contains(node))
                 errorHandler.register(errorHandler.SEMANT_ERROR,
                     node.getFilename(), node.getLineNum(),
                     "inheritance cycle found involving class '"
@@ -382,6 +551,104 @@ public class SemanticAnalyzer {
         }
     }
 
+    /**
+     * Get the name of the parent of a class, which is Object if it extends
+     * nothing
+     * 
+     * @param classNode
+     *            the AST class node
+     * @return the name of its parent
+     */
+    private static String parentName(Class_ classNode) {
+        String parentName = classNode.getParent();
+        if (parentName == null || parentName.isEmpty()) {
+            return "Object";
+        }
+        return parentName;
+    }
+
+    /**
+     * Add a class to an index of the classes
+     * 
+     * @param index
+     *            the index, from a name to the positions of the classes in
+     *            the class list
+     * @param name
+     *            the name the class is indexed by
+     * @param i
+     *            the position of the class in the class list
+     */
+    private static void index(Map<String, List<Integer>> index, String name,
+        int i) {
+        List<Integer> positions = index.get(name);
+        if (positions == null) {
+            positions = new ArrayList<>();
+            index.put(name, positions);
+        }
+        positions.add(i);
+    }
+
+    /**
+     * Schedule the classes waiting on the class just added to the tree to be
+     * looked at again
+     * 
+     * @param positions
+     *            the positions in the class list of the classes waiting on
+     *            it (may be null)
+     * @param added
+     *            the position of the class just added
+     * @param done
+     *            which classes have been added or rejected
+     * @param sweep
+     *            the classes still to be looked at in this sweep
+     * @param nextSweep
+     *            the classes to be looked at in the next sweep
+     */
+    private static void reschedule(List<Integer> positions, int added,
+        boolean[] done, PriorityQueue<Integer> sweep,
+        PriorityQueue<Integer> nextSweep) {
+        if (positions == null) {
+            return;
+        }
+        for (int i : positions) {
+            if (!done[i]) {
+                (i > added ? sweep : nextSweep).add(i);
+            }
+        }
+    }
+
+    /**
+     * Find the classes that are in an inheritance cycle, in time linear in
+     * the number of classes: following the parent links from each class
+     * that has not been seen yet either reaches a class seen before, or
+     * comes back around to the path being followed, in which case the
+     * classes from there on are a cycle
+     * 
+     * @param classes
+     *            the classes not in the tree, by name
+     * @return the classes on a cycle
+     */
+    private static Set<Class_> findCycles(Map<String, Class_> classes) {
+        Set<Class_> inCycle = new HashSet<>();
+        Set<Class_> seen = new HashSet<>();
+        for (Class_ start : classes.values()) {
+            // the classes on the path, and their position on it
+            Map<Class_, Integer> path = new LinkedHashMap<>();
+            List<Class_> order = new ArrayList<>();
+            Class_ node = start;
+            while (node != null && !seen.contains(node)) {
+                seen.add(node);
+                path.put(node, order.size());
+                order.add(node);
+                node = classes.get(node.getParent());
+            }
+            if (node != null && path.containsKey(node)) {
+                inCycle.addAll(order.subList(path.get(node), order.size()));
+            }
+        }
+        return inCycle;
+    }
+
     /**
      * Build symbol table for each class
      * Note: builds symbol table only for class members not for locals
@@ -393,11 +660,30 @@ public class SemanticAnalyzer {
     private void buildSymbolTable() {
 
         ClassEnvVisitor classEnvVisitor = new ClassEnvVisitor(root,
-            errorHandler);
+            errorHandler, timer);
         classEnvVisitor.visit(root);
 
     }
 
+    /**
+     * Trace the parent and the symbol tables of each class, in class tree
+     * order
+     */
+    private void traceEnvironment() {
+        ArrayList<ClassTreeNode> classes = new ArrayList<ClassTreeNode>();
+        addClasses(root, classes);
+        java.io.PrintStream out = trace.getStream(Trace.Category.SEMANT);
+        for (ClassTreeNode classNode : classes) {
+            out.println("class " + classNode.getName()
+                + (classNode.getParent() == null ? ""
+                    : " extends " + classNode.getParent().getName()));
+            out.println(" fields:");
+            classNode.getVarSymbolTable().print(out);
+            out.println(" methods:");
+            classNode.getMethodSymbolTable().print(out);
+        }
+    }
+
     /**
      * Check that Main class and main() method are defined correctly
      */
@@ -448,13 +734,60 @@ public class SemanticAnalyzer {
 
     /**
      * Type check each class member
+     * The class tree is only read while type checking, so each class is
+     * checked by its own visitor, concurrently when there is a pool.
+     * Errors are reported in the same order either way: a class's errors
+     * are collected and then registered in class tree order.
      */
     private void typeCheck() {
+        ArrayList<ClassTreeNode> classes = new ArrayList<ClassTreeNode>();
+        addClasses(root, classes);
 
-        TypeCheckVisitor typeCheckVisitor = new TypeCheckVisitor(root,
-            errorHandler);
-        typeCheckVisitor.visit(root);
+        if (pool == null) {
+            for (ClassTreeNode classNode : classes)
+                typeCheck(classNode, errorHandler);
+            return;
+        }
 
+        ArrayList<ErrorHandler> collectors = new ArrayList<ErrorHandler>();
+        ArrayList<Future<?>> results = new ArrayList<Future<?>>();
+        for (ClassTreeNode classNode : classes) {
+            ErrorHandler collector = ErrorHandler.collector();
+            collectors.add(collector);
+            results.add(pool.submit(() -> typeCheck(classNode, collector)));
+        }
+
+        for (int i = 0; i < classes.size(); i++) {
+            try {
+                results.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                if (e.getCause() instanceof Error)
+                    throw (Error) e.getCause();
+                throw new RuntimeException(e.getCause());
+            }
+            errorHandler.registerAll(collectors.get(i));
+        }
+    }
+
+    /**
+     * Add a class and its subclasses to a list, parents before children
+     * 
+     * @param classNode
+     *            the class to add
+     * @param classes
+     *            the list to add to
+     */
+    private void addClasses(ClassTreeNode classNode,
+            ArrayList<ClassTreeNode> classes) {
+        classes.add(classNode);
+        Iterator<ClassTreeNode> children = classNode.getChildrenList();
+        while (children.hasNext())
+            addClasses(children.next(), classes);
     }
 
 }
@@ -1,5 +1,6 @@
 package semant;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
@@ -55,6 +56,8 @@ import ast.VarExpr;
 import ast.WhileStmt;
 import util.ClassTreeNode;
 import util.ErrorHandler;
+import util.SymbolTable;
+import util.Type;
 
 public class TypeCheckVisitor extends SemantVisitor {
 
@@ -64,10 +67,44 @@ public class TypeCheckVisitor extends SemantVisitor {
     // used for detail in error messages
     private Method currMethod;
 
+    // scopes of the method being checked, on top of the class's variables;
+    // kept here so the class tree is only read, and classes can be checked
+    // independently of each other
+    private SymbolTable localVarTable;
+
+    // the types compared with most often
+    private Type intType;
+    private Type booleanType;
+    private Type voidType;
+    private Type nullType;
+    private Type objectType;
+    private Type errorType;
+
     public TypeCheckVisitor(ClassTreeNode classTreeNode,
         ErrorHandler errorHandler) {
         super.classTreeNode = classTreeNode;
         super.errorHandler = errorHandler;
+        intType = classTreeNode.getTypeTable().getIntType();
+        booleanType = classTreeNode.getTypeTable().getBooleanType();
+        voidType = classTreeNode.getTypeTable().getVoidType();
+        nullType = classTreeNode.getTypeTable().getNullType();
+        objectType = classTreeNode.lookupType(OBJECT);
+        errorType = classTreeNode.getTypeTable().getErrorType();
+    }
+
+    @Override
+    protected SymbolTable getVarTable() {
+        return localVarTable;
+    }
+
+    @Override
+    protected void enterScope() {
+        localVarTable.enterScope();
+    }
+
+    @Override
+    protected void exitScope() {
+        localVarTable.exitScope();
     }
 
     public Object visit(Field node) {
@@ -84,11 +121,12 @@ public class TypeCheckVisitor extends SemantVisitor {
             Expr initExpr = node.getInit();
             initExpr.accept(this);
 
-            if (VOID.equals(initExpr.getExprType())) {
+            if (voidType.equals(initExpr.getExprType())) {
                 registerSemanticError(node,
                     "expression type '" + initExpr.getExprType()
                         + "' of field 's' cannot be " + VOID);
-            } else if (!conformsTo(initExpr.getExprType(), node.getType())) {
+            } else if (!conformsTo(initExpr.getExprType(),
+                lookupType(node.getType()))) {
                 // Two errors in one
                 // checks if primitives match
                 // checks if references types conform
@@ -153,18 +191,19 @@ public class TypeCheckVisitor extends SemantVisitor {
             Stmt stmt = (Stmt) bodyStmts.next();
             if (stmt instanceof ReturnStmt && returnTypeValid) {
                 ReturnStmt returnStmt = (ReturnStmt) stmt;
-                String actualReturnType = (String) returnStmt.accept(this);
+                Type actualReturnType = (Type) returnStmt.accept(this);
 
                 if (returnStmt.getExpr() != null
-                    && actualReturnType.equals(VOID)) {
+                    && actualReturnType.equals(voidType)) {
                     registerSemanticError(returnStmt,
                         "cannot return an expression of type 'void' from a "
                             + "method");
-                    actualReturnType = OBJECT;
+                    actualReturnType = objectType;
                 }
 
                 // verify expected and actual return types
-                if (!conformsTo(actualReturnType, expectedReturnType))
+                if (!conformsTo(actualReturnType,
+                    lookupType(expectedReturnType)))
                     // match
                     registerSemanticError(returnStmt, "return type '"
                         + actualReturnType + "' "
@@ -199,10 +238,9 @@ public class TypeCheckVisitor extends SemantVisitor {
         while (formals.hasNext()) {
             Formal formal = (Formal) formals.next();
             String name = formal.getName();
-            String type = formal.getType();
 
             // checks if type of formal exists, if not assign as "Object"
-            type = (String) formal.accept(this);
+            Type type = (Type) formal.accept(this);
             addVar(name, type);
 
         }
@@ -220,22 +258,21 @@ public class TypeCheckVisitor extends SemantVisitor {
         String type = node.getType();
         String name = node.getName();
 
-        type = checkFormal(name, type, node, "formal");
-
-        return type;
+        return checkFormal(name, type, node, "formal");
     }
 
-    protected String checkFormal(String name, String type, ASTNode node,
+    protected Type checkFormal(String name, String type, ASTNode node,
         String nodeType) {
         return checkFormal(name, type, node, nodeType, nodeType);
     }
 
-    protected String checkFormal(String name, String type, ASTNode node,
+    protected Type checkFormal(String name, String type, ASTNode node,
         String nodeType, String altNodeType) {
-        if (!typeExists(type)) {
+        Type checkedType = lookupType(type);
+        if (!checkedType.exists()) {
             registerSemanticError(node, "type '" + type + "' of " + nodeType
                 + " '" + name + "' is undefined");
-            type = "Object";
+            checkedType = objectType;
         }
 
         if (isReserved(name)) {
@@ -243,7 +280,7 @@ public class TypeCheckVisitor extends SemantVisitor {
                 altNodeType + "s cannot be named '" + name + "'");
         }
 
-        return type;
+        return checkedType;
     }
 
     /**
@@ -270,14 +307,13 @@ public class TypeCheckVisitor extends SemantVisitor {
      */
     public Object visit(DeclStmt node) {
         // same as formal
-        String declaredType = node.getType();
         String name = node.getName();
-        declaredType = checkFormal(name, declaredType, node, "declaration",
-            "variable");
+        Type declaredType = checkFormal(name, node.getType(), node,
+            "declaration", "variable");
 
         // check that init type conforms to declared type
         node.getInit().accept(this);
-        String type = node.getInit().getExprType();
+        Type type = node.getInit().getExprType();
         if (!conformsTo(type, declaredType)) {
             registerSemanticError(node,
                 "expression type '" + type + "' of declaration '"
@@ -339,9 +375,9 @@ public class TypeCheckVisitor extends SemantVisitor {
 
         String name = node.getName();
         String ref = node.getRefName();
-        String declaredType = checkTypeOfAssignment(name, ref, node);
+        Type declaredType = checkTypeOfAssignment(name, ref, node);
         // check that expr type conforms to the type of the variable
-        String exprType = node.getExpr().getExprType();
+        Type exprType = node.getExpr().getExprType();
         if (declaredType != null && !conformsTo(exprType, declaredType)) {
             if (isPrimitive(declaredType) || isPrimitive(exprType)) {
                 registerSemanticError(node,
@@ -361,19 +397,19 @@ public class TypeCheckVisitor extends SemantVisitor {
         return null;
     }
 
-    protected String checkTypeOfAssignment(String name, String ref,
+    protected Type checkTypeOfAssignment(String name, String ref,
         ASTNode node) {
-        String declaredType = null;
+        Type declaredType = null;
 
         // check that ref is valid
         if (ref == null) { // lookup from current scope
-            declaredType = (String) lookupVar(name);
+            declaredType = (Type) lookupVar(name);
         } else if (ref.equals(THIS)) { // lookup from first scope of curr
                                        // class
-            declaredType = (String) thisLookupVar(name);
+            declaredType = (Type) thisLookupVar(name);
         } else if (ref.equals(SUPER)) { // lookup from first scope in super
                                         // class
-            declaredType = (String) superLookupVar(name);
+            declaredType = (Type) superLookupVar(name);
         } else {
             registerSemanticError(node, "bad reference '" + ref
                 + "': fields are 'protected' and can only be accessed within "
@@ -400,8 +436,8 @@ public class TypeCheckVisitor extends SemantVisitor {
     public Object visit(ArrayAssignExpr node) {
         // check that index returns an int
         node.getIndex().accept(this);
-        String indexType = node.getIndex().getExprType();
-        if (!indexType.equals(INT)) {
+        Type indexType = node.getIndex().getExprType();
+        if (!hasType(indexType, intType)) {
             registerSemanticError(node, "invalid index expression of type '"
                 + indexType + "' expression must be type 'int'");
         }
@@ -410,23 +446,22 @@ public class TypeCheckVisitor extends SemantVisitor {
         String name = node.getName();
 
         String ref = node.getRefName();
-        String declaredType = checkTypeOfAssignment(name, ref, node);
+        Type declaredType = checkTypeOfAssignment(name, ref, node);
 
-        // if var was undeclared, it has now been set to
-        // object so don't take off an imaginary []
-        if (declaredType == OBJECT || declaredType == null) {
+        // if var was undeclared, the error has been reported
+        if (declaredType == null) {
             return null;
         }
 
-        declaredType = declaredType.substring(0, declaredType.length() - 2);
+        Type elementType = elementType(declaredType, name, node);
 
         // check that return type of expr conforms to type of array
         node.getExpr().accept(this);
-        String exprType = node.getExpr().getExprType();
+        Type exprType = node.getExpr().getExprType();
 
-        if (!conformsTo(exprType, declaredType.substring(0))) {
+        if (!conformsTo(exprType, elementType)) {
             registerSemanticError(node,
-                "the lefthand type '" + declaredType
+                "the lefthand type '" + elementType
                     + "' and righthand type '" + exprType
                     + "' are not compatible in assignment");
         }
@@ -449,15 +484,15 @@ public class TypeCheckVisitor extends SemantVisitor {
         if (!typeExists(type)) {
             registerSemanticError(node,
                 "type '" + type + "' of new construction is undefined");
-            node.setExprType(OBJECT);
+            node.setExprType(objectType);
         } else if (isPrimitive(type)) {
             registerSemanticError(node,
                 "type '" + type
                     + "' of new construction is primitive and cannot be "
                     + "constructed");
-            node.setExprType(OBJECT);
+            node.setExprType(objectType);
         } else {
-            node.setExprType(type);
+            node.setExprType(lookupType(type));
         }
         return null;
     }
@@ -474,8 +509,13 @@ public class TypeCheckVisitor extends SemantVisitor {
         node.getRefExpr().accept(this);
         Expr refExpr = node.getRefExpr();
 
+        if (refExpr.getExprType().isError()) {
+            // the error has been reported
+            node.setExprType(errorType);
+            return null;
+        }
         if (isPrimitiveOrVoid(refExpr.getExprType())) {
-            node.setExprType(OBJECT);
+            node.setExprType(objectType);
             registerSemanticError(node,
                 "can't dispatch on a primitive or void type");
             return null;
@@ -488,6 +528,7 @@ public class TypeCheckVisitor extends SemantVisitor {
         if (method == null) {
             registerSemanticError(node,
                 "dispatch to unknown method '" + node.getMethodName() + "'");
+            node.setExprType(errorType);
             return null;
         }
 
@@ -510,12 +551,13 @@ public class TypeCheckVisitor extends SemantVisitor {
         while (arguments.hasNext() && formals.hasNext()) {
             Expr arg = (Expr) arguments.next();
             Formal formal = (Formal) formals.next();
-            if (VOID.equals(arg.getExprType())) {
+            if (voidType.equals(arg.getExprType())) {
                 registerSemanticError(node,
                     "actual parameter " + i + " in the call to method "
                         + method.getName()
                         + " is void and cannot be used within an expression");
-            } else if (!conformsTo(arg.getExprType(), formal.getType())) {
+            } else if (!conformsTo(arg.getExprType(),
+                lookupType(formal.getType()))) {
                 registerSemanticError(node,
                     "actual parameter " + i + " with type '"
                         + arg.getExprType() + "' does not "
@@ -528,7 +570,7 @@ public class TypeCheckVisitor extends SemantVisitor {
             i++;
         }
 
-        node.setExprType(method.getReturnType());
+        node.setExprType(lookupType(method.getReturnType()));
         return null;
     }
 
@@ -561,22 +603,22 @@ public class TypeCheckVisitor extends SemantVisitor {
      * @return result of the visit
      */
 
-    protected Object typeCheckUnary(UnaryExpr unaryExpr, String type) {
+    protected Object typeCheckUnary(UnaryExpr unaryExpr, Type type) {
 
-        if (!type.equals(unaryExpr.getOperandType())) {
+        if (!hasType(type, lookupType(unaryExpr.getOperandType()))) {
             registerSemanticError(unaryExpr,
                 "the expression type '" + type + "' in the unary operation ('"
                     + unaryExpr.getOpName()
                     + "') is incorrect; should have been: "
                     + unaryExpr.getOperandType());
         }
-        unaryExpr.setExprType(unaryExpr.getOpType());
+        unaryExpr.setExprType(lookupType(unaryExpr.getOpType()));
         return null;
     }
 
     public Object visit(UnaryIncrExpr node) {
         node.getExpr().accept(this);
-        String type = node.getExpr().getExprType();
+        Type type = node.getExpr().getExprType();
         typeCheckUnary(node, type);
 
         return null;
@@ -591,7 +633,7 @@ public class TypeCheckVisitor extends SemantVisitor {
      */
     public Object visit(UnaryDecrExpr node) {
         node.getExpr().accept(this);
-        String type = node.getExpr().getExprType();
+        Type type = node.getExpr().getExprType();
         typeCheckUnary(node, type);
 
         return null;
@@ -606,7 +648,7 @@ public class TypeCheckVisitor extends SemantVisitor {
      */
     public Object visit(UnaryNegExpr node) {
         node.getExpr().accept(this);
-        String type = node.getExpr().getExprType();
+        Type type = node.getExpr().getExprType();
         typeCheckUnary(node, type);
 
         return null;
@@ -621,7 +663,7 @@ public class TypeCheckVisitor extends SemantVisitor {
      */
     public Object visit(UnaryNotExpr node) {
         node.getExpr().accept(this);
-        String type = node.getExpr().getExprType();
+        Type type = node.getExpr().getExprType();
         typeCheckUnary(node, type);
 
         return null;
@@ -636,8 +678,8 @@ public class TypeCheckVisitor extends SemantVisitor {
      */
     public Object visit(IfStmt node) {
         node.getPredExpr().accept(this);
-        String predType = node.getPredExpr().getExprType();
-        if (!predType.equals(BOOL)) {
+        Type predType = node.getPredExpr().getExprType();
+        if (!hasType(predType, booleanType)) {
             registerSemanticError(node,
                 "predicate in if-statement does not have type boolean");
         }
@@ -663,7 +705,7 @@ public class TypeCheckVisitor extends SemantVisitor {
     public Object visit(WhileStmt node) {
         Expr predExpr = node.getPredExpr();
         predExpr.accept(this);
-        if (!(BOOL).equals(predExpr.getExprType())) {
+        if (!hasType(predExpr.getExprType(), booleanType)) {
             registerSemanticError(node,
                 "predicate in while-statement does not have type boolean");
         }
@@ -689,7 +731,7 @@ public class TypeCheckVisitor extends SemantVisitor {
             node.getInitExpr().accept(this);
         if (node.getPredExpr() != null) {
             node.getPredExpr().accept(this);
-            if (!(BOOL).equals(node.getPredExpr().getExprType())) {
+            if (!hasType(node.getPredExpr().getExprType(), booleanType)) {
                 registerSemanticError(node,
                     "predicate in for-statement does not have type boolean");
             }
@@ -734,25 +776,24 @@ public class TypeCheckVisitor extends SemantVisitor {
             return node.getExpr().getExprType();
         }
 
-        return VOID;
+        return voidType;
     }
 
+    /**
+     * Type check a single class (not its subclasses)
+     * 
+     * @param classTreeNode
+     *            the class
+     * @return result of the visit
+     */
     public Object visit(ClassTreeNode classTreeNode) {
+        super.classTreeNode = classTreeNode;
+        localVarTable = new SymbolTable();
+        localVarTable.setParent(classTreeNode.getVarSymbolTable());
+        localVarTable.enterScope();
 
-        Iterator<ClassTreeNode> children = classTreeNode.getChildrenList();
         if (!classTreeNode.isBuiltIn())
             classTreeNode.getASTNode().accept(this);
-
-        while (children.hasNext()) {
-
-            ClassTreeNode child = children.next();
-            child.getVarSymbolTable()
-                .setParent(classTreeNode.getVarSymbolTable());
-            child.getMethodSymbolTable()
-                .setParent(classTreeNode.getMethodSymbolTable());
-            super.classTreeNode = child;
-            visit(child);
-        }
         return null;
     }
 
@@ -769,31 +810,53 @@ public class TypeCheckVisitor extends SemantVisitor {
     }
 
     /**
-     * Visit a binary comparison expression node (should never be called)
+     * Check a binary expression. The left operands of a chain of binary
+     * operators, such as a + b - c + d, are checked in a loop rather than by
+     * recursion, so that a long chain does not overflow the stack; errors
+     * are registered in the same order either way.
      * 
      * @param node
-     *            the binary comparison expression node
+     *            the binary expression node
      * @return result of the visit
      */
     public Object binaryExpr(BinaryExpr node) {
+        ArrayList<BinaryExpr> chain = new ArrayList<BinaryExpr>();
+        Expr operand = node;
+        while (operand instanceof BinaryExpr) {
+            chain.add((BinaryExpr) operand);
+            operand = ((BinaryExpr) operand).getLeftExpr();
+        }
+        operand.accept(this);
+        for (int i = chain.size() - 1; i >= 0; i--)
+            checkBinaryExpr(chain.get(i));
+        return null;
+    }
+
+    /**
+     * Check a binary expression whose left operand has been checked
+     * 
+     * @param node
+     *            the binary expression node
+     */
+    private void checkBinaryExpr(BinaryExpr node) {
         // check that both operands conform to each other
 
-        node.getLeftExpr().accept(this);
         node.getRightExpr().accept(this);
-        String leftType = node.getLeftExpr().getExprType();
-        String rightType = node.getRightExpr().getExprType();
+        Type leftType = node.getLeftExpr().getExprType();
+        Type rightType = node.getRightExpr().getExprType();
         // System.out.println(node.getLineNum() + ": " + leftType + ", " +
         // rightType);
 
         if (node.getOperandType() != null) {
-            if (!leftType.equals(node.getOperandType())) {
+            Type operandType = lookupType(node.getOperandType());
+            if (!hasType(leftType, operandType)) {
                 registerSemanticError(node,
                     "the lefthand type '" + leftType
                         + "' in the binary operation ('" + node.getOpName()
                         + "') is incorrect; should have been: "
                         + node.getOperandType());
             }
-            if (!rightType.equals(node.getOperandType())) {
+            if (!hasType(rightType, operandType)) {
                 registerSemanticError(node,
                     "the righthand type '" + rightType
                         + "' in the binary operation ('" + node.getOpName()
@@ -811,8 +874,7 @@ public class TypeCheckVisitor extends SemantVisitor {
             }
         }
 
-        node.setExprType(node.getOpType());
-        return null;
+        node.setExprType(lookupType(node.getOpType()));
     }
 
     /**
@@ -981,9 +1043,9 @@ public class TypeCheckVisitor extends SemantVisitor {
     public Object visit(NewArrayExpr node) {
         // type check size expr
         node.getSize().accept(this);
-        String sizeType = node.getSize().getExprType();
+        Type sizeType = node.getSize().getExprType();
         String type = node.getType();
-        if (!sizeType.equals(INT)) {
+        if (!hasType(sizeType, intType)) {
             registerSemanticError(node,
                 "size in the array construction has type '" + sizeType
                     + "' rather than " + INT);
@@ -992,11 +1054,11 @@ public class TypeCheckVisitor extends SemantVisitor {
         if (!typeExists(type)) {
             registerSemanticError(node,
                 "type '" + type + "' of new construction is undefined");
-            node.setExprType(OBJECT);
+            node.setExprType(objectType);
             return null;
         }
 
-        node.setExprType(node.getType() + "[]");
+        node.setExprType(lookupType(type).getArrayType());
         return null;
     }
 
@@ -1012,7 +1074,7 @@ public class TypeCheckVisitor extends SemantVisitor {
         node.getExpr().accept(this);
 
         String type = node.getType();
-        String exprType = node.getExpr().getExprType();
+        Type exprType = node.getExpr().getExprType();
 
         if (isPrimitive(exprType)) {
             registerSemanticError(node,
@@ -1039,14 +1101,14 @@ public class TypeCheckVisitor extends SemantVisitor {
                 + type + "' is primitive and not an object type");
         }
 
-        if (exprType.equals(VOID)) {
+        if (exprType.equals(voidType)) {
             registerSemanticError(node,
                 "the instanceof righthand type cannot be type '" + VOID
                     + "'");
         }
 
-        node.setExprType(BOOL);
-        return BOOL;
+        node.setExprType(booleanType);
+        return booleanType;
     }
 
     /**
@@ -1083,11 +1145,12 @@ public class TypeCheckVisitor extends SemantVisitor {
 
         // type check expression
         node.getExpr().accept(this);
-        String currType = node.getExpr().getExprType();
+        Type currType = node.getExpr().getExprType();
+        Type type = lookupType(castType);
 
-        if (conformsTo(currType, castType)) { // upcast
+        if (conformsTo(currType, type)) { // upcast
             node.setUpCast(true);
-        } else if (conformsTo(castType, currType)) { // downcast
+        } else if (conformsTo(type, currType)) { // downcast
             node.setUpCast(false);
         } else if (isPrimitive(currType)) {
             registerSemanticError(node, "expression in cast has type '"
@@ -1096,54 +1159,57 @@ public class TypeCheckVisitor extends SemantVisitor {
             registerSemanticError(node, "inconvertible types ('" + currType
                 + "'=>'" + castType + "')");
         }
-        node.setExprType(castType);
+        node.setExprType(type);
 
-        return castType;
+        return type;
     }
 
-    public String getTypeOfVarExp(Expr refExpr, String name, ASTNode node) {
-        String type = null;
+    public Type getTypeOfVarExp(Expr refExpr, String name, ASTNode node) {
+        Type type = null;
 
         if (refExpr != null) {
-            String refType = refExpr.getExprType();
-            if (refType.endsWith("[]")) {
+            Type refType = refExpr.getExprType();
+            if (refType.isError()) {
+                // the error has been reported
+                type = errorType;
+            } else if (refType.isArray()) {
                 if (!name.equals("length")) {
                     registerSemanticError(node, "bad reference to '" + name
                         + "': arrays do not have this field (they only have a "
                         + "'length' field)");
-                    type = OBJECT;
+                    type = objectType;
                 } else {
-                    type = INT;
+                    type = intType;
                 }
             } else if (refExpr instanceof VarExpr) { // check if refExpr is
                                                      // 'this' or 'super'
                 String refName = ((VarExpr) refExpr).getName();
                 if (refName.equals(THIS)) {
-                    type = (String) thisLookupVar(name);
+                    type = (Type) thisLookupVar(name);
                 } else if (refName.equals(SUPER)) {
-                    type = (String) superLookupVar(name);
+                    type = (Type) superLookupVar(name);
                 }
             }
             if (type == null) {
                 registerSemanticError(node, "bad reference '" + name
                     + "': fields are 'protected' and can only be accessed "
                     + "within the class or subclass via 'this' or 'super'");
-                type = OBJECT;
+                type = objectType;
 
             }
         } else {// ref is null
             if (name.equals(THIS)) {
-                type = classTreeNode.getName();
+                type = lookupType(classTreeNode.getName());
             } else if (name.equals(SUPER)) {
-                type = classTreeNode.getParent().getName();
+                type = lookupType(classTreeNode.getParent().getName());
             } else if (name.equals(NULL)) {
-                type = NULL;
+                type = nullType;
             } else {
-                type = (String) lookupVar(name);
+                type = (Type) lookupVar(name);
             }
         }
         if (type == null) {
-            type = OBJECT;
+            type = objectType;
         }
 
         return type;
@@ -1171,7 +1237,7 @@ public class TypeCheckVisitor extends SemantVisitor {
     }
 
     public Object visit(ConstIntExpr node) {
-        node.setExprType(INT);
+        node.setExprType(intType);
         return null;
     }
 
@@ -1185,18 +1251,18 @@ public class TypeCheckVisitor extends SemantVisitor {
     public Object visit(ArrayExpr node) {
         Expr refExpr = node.getRef();
         String name = node.getName();
-        String indexType;
+        Type indexType;
         if (refExpr != null)
             refExpr.accept(this);
 
-        String baseType = getTypeOfVarExp(refExpr, name, node);
-        baseType = baseType.substring(0, baseType.length() - 2);
+        Type baseType = elementType(getTypeOfVarExp(refExpr, name, node),
+            name, node);
 
         node.setExprType(baseType);
 
         node.getIndex().accept(this);
         indexType = node.getIndex().getExprType();
-        if (!indexType.equals(INT)) {
+        if (!hasType(indexType, intType)) {
             registerSemanticError(node, "invalid index expression of type '"
                 + indexType + "' expression must be type 'int'");
         }
@@ -1211,7 +1277,7 @@ public class TypeCheckVisitor extends SemantVisitor {
      * @return result of the visit
      */
     public Object visit(ConstBooleanExpr node) {
-        node.setExprType(BOOL);
+        node.setExprType(booleanType);
         return null;
     }
 
@@ -1223,10 +1289,46 @@ public class TypeCheckVisitor extends SemantVisitor {
      * @return result of the visit
      */
     public Object visit(ConstStringExpr node) {
-        node.setExprType(STRING);
+        node.setExprType(lookupType(STRING));
         return null;
     }
 
+    /**
+     * Checks the type of an expression against the type it must have. The
+     * error type is accepted as any type, as its error has been reported.
+     * 
+     * @param type
+     *            the type of the expression (may be null)
+     * @param required
+     *            the type it must have
+     * @return whether the type is the one required
+     */
+    private boolean hasType(Type type, Type required) {
+        return type != null && (type.isError() || type.equals(required));
+    }
+
+    /**
+     * Gets the type of the elements of an array, reporting an error if the
+     * indexed variable is not an array
+     * 
+     * @param type
+     *            the type of the indexed variable
+     * @param name
+     *            the name of the indexed variable
+     * @param node
+     *            the node the error is reported at
+     * @return the type of its elements (the error type if it is not an
+     *         array)
+     */
+    private Type elementType(Type type, String name, ASTNode node) {
+        if (type.isArray()) {
+            return type.getElementType();
+        }
+        registerSemanticError(node, "indexed variable '" + name
+            + "' has type '" + type + "', which is not an array type");
+        return errorType;
+    }
+
     /**
      * Visit a break statement node
      * 
@@ -50,6 +50,9 @@ public class ClassTreeNode {
     /** Maps class names to ClassTreeNode objects describing the class */
     private Hashtable<String,ClassTreeNode> classMap;
 
+    /** The types of the compilation */
+    private TypeTable typeTable;
+
     /** The ClassTreeNode of the parent class */
     private ClassTreeNode parent;
 
@@ -59,6 +62,13 @@ public class ClassTreeNode {
     /** Total number of descendants (strict subclasses) */
     private int numDescendants;
 
+    /** Position of this class in a preorder walk of the tree (see numberTree()):
+      * its descendants are numbered entry + 1 to exit */
+    private int entry;
+
+    /** Number of the last descendant of this class in a preorder walk of the tree */
+    private int exit;
+
     /** The (scoped) variable symbol table for this class used for type checking this class */
     private SymbolTable varSymbolTable = new SymbolTable();
 
@@ -70,13 +80,16 @@ public class ClassTreeNode {
       * @param builtin boolean indicating whether this class was built-in
       * @param extendable boolean indicating whether this class is extendable
       * @param classMap class map for accessing class tree nodes
+      * @param typeTable the types of the compilation
       * */
     public ClassTreeNode(Class_ astNode, boolean builtin, boolean extendable,
-			 Hashtable<String,ClassTreeNode> classMap) {
+			 Hashtable<String,ClassTreeNode> classMap,
+			 TypeTable typeTable) {
 	this.astNode = astNode;
 	this.builtin = builtin;
 	this.extendable = extendable;
 	this.classMap = classMap;
+	this.typeTable = typeTable;
 	numDescendants = 0;
     }
 
@@ -106,8 +119,9 @@ public class ClassTreeNode {
     public ClassTreeNode getParent() {return parent; }
 
     /** Set the parent class tree node of this class
-      * Also adds this class to list of parent's children (if not already there)
+      * Also adds this class to list of parent's children
       * In addition, sets variable and method symbol tables to the parent's symbol tables
+      * The number of descendants is not updated (see numberTree())
       * @param parent the class tree node of the parent class
       * */
     public void setParent(ClassTreeNode parent) {
@@ -122,23 +136,9 @@ public class ClassTreeNode {
 	    varSymbolTable.setParent(parent.getVarSymbolTable());
 	    methodSymbolTable.setParent(parent.getMethodSymbolTable());
 
-	    // also add this as a child of parent (if not already done)
-	    parent.addChild(this);
-
-	    // must also update numDescendants for all ancestors of this parent
-	    // WARNING: must be careful -- class hierarcy tree may not be well formed
-	    // must avoid cycles
-	    Vector<ClassTreeNode> v = new Vector<ClassTreeNode>();
-	    for (ClassTreeNode ctn = parent; ctn != null; ctn = ctn.getParent()) {
-		// check for a cycle -- break if we find one (program is wrong and
-		// error should be detected by semantic analyzer)
-		if (v.contains(ctn)) break;
-		// if not cycle then update num descendants by num descendants of
-		// this new child node + 1 (new child)
-		ctn.numDescendants += numDescendants + 1;
-		// add to vector to potentially detect a cycle
-		v.add(ctn);
-	    }
+	    // also add this as a child of parent -- it cannot be there
+	    // already, since this was not its parent
+	    parent.children.add(this);
 	}
     }
 
@@ -150,16 +150,49 @@ public class ClassTreeNode {
 	if (child == null)
 	    throw new RuntimeException("Internal error: null child in ClassTreeNode.addChild");
 
-	if (!children.contains(child)) {
-	    // add child to list of children
-	    children.add(child);
+	// setting the parent adds the child to the list of children
+	if (child.getParent() != this)
+	    child.setParent(this);
+    }
 
-	    // if this class is not the parent of the child then set it to be
-	    if (child.getParent() != this)
-		child.setParent(this);
+    /** Number the classes of the tree under this class in preorder, and
+      * count the descendants of each, in one pass over the tree.  The
+      * descendants of a class are then the classes numbered from its entry
+      * number to its exit number, so isSubclassOf() is a range check, and
+      * getNumDescendants() is correct for the whole subtree.  Must be
+      * called again after the subtree changes.
+      * */
+    public void numberTree() {
+	// preorder with an explicit stack (the tree may be deep); walking it
+	// backwards visits each class after all of its subclasses
+	ArrayList<ClassTreeNode> preorder = new ArrayList<ClassTreeNode>();
+	ArrayDeque<ClassTreeNode> stack = new ArrayDeque<ClassTreeNode>();
+	stack.push(this);
+	while (!stack.isEmpty()) {
+	    ClassTreeNode ctn = stack.pop();
+	    ctn.entry = preorder.size();
+	    ctn.numDescendants = 0;
+	    preorder.add(ctn);
+	    for (ClassTreeNode child : ctn.children)
+		stack.push(child);
+	}
+	for (int i = preorder.size() - 1; i >= 0; i--) {
+	    ClassTreeNode ctn = preorder.get(i);
+	    ctn.exit = ctn.entry + ctn.numDescendants;
+	    if (i > 0)
+		ctn.parent.numDescendants += ctn.numDescendants + 1;
 	}
     }
 
+    /** Is this class the given class or one of its subclasses?
+      * The tree must have been numbered (see numberTree())
+      * @param ancestor the class tree node of the possible ancestor
+      * @return boolean indicating whether this class conforms to ancestor
+      * */
+    public boolean isSubclassOf(ClassTreeNode ancestor) {
+	return ancestor.entry <= entry && entry <= ancestor.exit;
+    }
+
     /** Get an iterator of class tree nodes representing the immediate subclasses of this class 
       * @return list of children 
       * */
@@ -198,4 +231,17 @@ public class ClassTreeNode {
     public ClassTreeNode lookupClass(String className) {
 	return classMap.get(className);
     }
+
+    /** Lookup a type
+      * @param typeName the name of the type to lookup (e.g., int, Foo or Foo[])
+      * @return the corresponding type (interned, so types can be compared with ==)
+      * */
+    public Type lookupType(String typeName) {
+	return typeTable.lookup(typeName);
+    }
+
+    /** Get the types of the compilation
+      * @return the type table
+      * */
+    public TypeTable getTypeTable() { return typeTable; }
 }
@@ -0,0 +1,42 @@
+/* Bantam Java Compiler and Language Toolset.
+
+   Copyright (C) 2007 by Marc Corliss (corliss@hws.edu) and
+                         E Christopher Lewis (lewis@vmware.com).
+   ALL RIGHTS RESERVED.
+
+   The Bantam Java toolset is distributed under the following
+   conditions:
+
+     You may make copies of the toolset for your own use and
+     modify those copies.
+
+     All copies of the toolset must retain the author names and
+     copyright notice.
+
+     You may not sell the toolset or distribute it in
+     conjunction with a commerical product or service without
+     the expressed written consent of the authors.
+
+   THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS
+   OR IMPLIED WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE
+   IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+   PARTICULAR PURPOSE.
+*/
+
+package util;
+
+/** The <tt>CompilationException</tt> class is thrown when compilation
+  * must stop, e.g., because errors were reported or because of a
+  * usage error.  Any diagnostics have already been printed by the
+  * time it is thrown, so the driver only needs to report failure.
+  * */
+public class CompilationException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /** CompilationException constructor
+      * @param message a short description of why compilation stopped
+      * */
+    public CompilationException(String message) {
+	super(message);
+    }
+}
@@ -25,6 +25,7 @@
 
 package util;
 
+import java.io.PrintStream;
 import java.util.*;
 
 /** The <tt>ErrorHandler</tt> class performs error handling.
@@ -36,11 +37,65 @@ public class ErrorHandler {
     public final int PARSE_ERROR = 1;
     /** Semantic error constant - use to indicate the type of error */
     public final int SEMANT_ERROR = 2;
+    /** Code generation error constant - use to indicate the type of error */
+    public final int CODEGEN_ERROR = 3;
 
     /** The number of errors registered */
     private int numErrors;
     /** The list of errors */
     private Vector<Error> errorList = new Vector<Error>();
+    /** The list of errors in the order they were registered */
+    private Vector<Error> registeredList = new Vector<Error>();
+    /** The stream that errors are printed to */
+    private PrintStream err;
+    /** Does this handler only collect errors (see collector()) */
+    private boolean collecting = false;
+
+    /** ErrorHandler constructor - errors are printed to standard error
+      * */
+    public ErrorHandler() {
+	this(System.err);
+    }
+
+    /** ErrorHandler constructor
+      * @param err the stream that errors are printed to
+      * */
+    public ErrorHandler(PrintStream err) {
+	this.err = err;
+    }
+
+    /** Create an error handler that only collects errors
+      * A collector never prints errors or halts; its errors are later
+      * passed on to a regular handler with registerAll.  This lets work
+      * done in parallel report errors as if it had been done serially.
+      * @return the new error handler
+      * */
+    public static ErrorHandler collector() {
+	ErrorHandler collector = new ErrorHandler(null);
+	collector.collecting = true;
+	return collector;
+    }
+
+    /** Does this handler only collect errors
+      * @return true if this handler was created by collector()
+      * */
+    public boolean isCollecting() {
+	return collecting;
+    }
+
+    /** Get the number of errors registered so far
+      * @return the number of errors
+      * */
+    public int getNumErrors() {
+	return numErrors;
+    }
+
+    /** Get the stream that errors are printed to
+      * @return the error stream
+      * */
+    public PrintStream getErrorStream() {
+	return err;
+    }
 
     /** Register an error - auxiliarly method used by the other (public) register methods
       * @param error the error object
@@ -48,11 +103,40 @@ public class ErrorHandler {
     private void register(Error error) {
 	// insert a new error into the error list
 	insert(error);
+	registeredList.add(error);
 	// update numErrors, if 200 then call checkErrors (which will halt)
 	if (++numErrors > 199)
 	    checkErrors();
     }
 
+    /** Register all of the errors of another handler, in the order that
+      * they were registered with that handler
+      * @param other the other error handler (usually a collector)
+      * */
+    public void registerAll(ErrorHandler other) {
+	for (int i = 0; i < other.registeredList.size(); i++)
+	    register(other.registeredList.elementAt(i));
+    }
+
+    /** Register the errors of another handler that are on or before a
+      * line, in the order that they were registered with that handler
+      * @param other the other error handler (usually a collector)
+      * @param lineNum the last line whose errors are registered
+      * */
+    public void registerAll(ErrorHandler other, int lineNum) {
+	for (int i = 0; i < other.registeredList.size(); i++)
+	    if (other.registeredList.elementAt(i).getLineNum() <= lineNum)
+		register(other.registeredList.elementAt(i));
+    }
+
+    /** Get the line number of the first error registered
+      * @return the line number (0 if no errors have been registered)
+      * */
+    public int getFirstLineNum() {
+	return registeredList.isEmpty() ? 0 : 
+	    registeredList.elementAt(0).getLineNum();
+    }
+
     /** Register an error
       * @param type the type (lex, parse, semantic) of error
       * @param filename the name of the filename where the error occurred
@@ -76,14 +160,16 @@ public class ErrorHandler {
     }
 
     /** Check the errors - halts if there are any registered errors
+      * (collectors never halt)
+      * @throws CompilationException if any errors have been registered
       * */
     public void checkErrors() {
-	// if errors have been registered then print them and exit
-	if (numErrors > 0) {
+	// if errors have been registered then print them and stop compilation
+	if (numErrors > 0 && !collecting) {
 	    printErrors();
-	    System.err.println("Stopping compilation due to errors");
-	    System.err.println(numErrors + " error(s)");
-	    System.exit(1);
+	    err.println("Stopping compilation due to errors");
+	    err.println(numErrors + " error(s)");
+	    throw new CompilationException(numErrors + " error(s)");
 	}
     }
 
@@ -130,15 +216,15 @@ public class ErrorHandler {
 
 	    // print error message
 	    if (e.getFilename() == null)
-		System.err.println("Error: " + getTypeString(e.getType()) + e.getMessage());
+		err.println("Error: " + getTypeString(e.getType()) + e.getMessage());
 	    else
-		System.err.println(e.getFilename() + ":" + e.getLineNum() + ":" + 
-				   getTypeString(e.getType()) + e.getMessage());
-	    System.err.println();
+		err.println(e.getFilename() + ":" + e.getLineNum() + ":" + 
+			    getTypeString(e.getType()) + e.getMessage());
+	    err.println();
 	}
     }
 
-    /** Get the type string (lex, parse, semantic, none)
+    /** Get the type string (lex, parse, semantic, code generation, none)
       * @return string representing the type of error
       * */
     private String getTypeString(int type) {
@@ -148,6 +234,8 @@ public class ErrorHandler {
 	    return "syntactic error: ";
 	else if (type == SEMANT_ERROR)
 	    return "semantic error: ";
+	else if (type == CODEGEN_ERROR)
+	    return "code generation error: ";
 	else
 	    return "";
     }
@@ -0,0 +1,53 @@
+/* Bantam Java Compiler and Language Toolset.
+
+   Copyright (C) 2007 by Marc Corliss (corliss@hws.edu) and 
+                         E Christopher Lewis (lewis@vmware.com).
+   ALL RIGHTS RESERVED.
+
+   The Bantam Java toolset is distributed under the following 
+   conditions:
+
+     You may make copies of the toolset for your own use and 
+     modify those copies.
+
+     All copies of the toolset must retain the author names and 
+     copyright notice.
+
+     You may not sell the toolset or distribute it in 
+     conjunction with a commerical product or service without 
+     the expressed written consent of the authors.
+
+   THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS 
+   OR IMPLIED WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE 
+   IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A 
+   PARTICULAR PURPOSE. 
+*/
+
+package util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** JFR event for a span of compiler work (see PhaseTimer)
+  * Events are recorded only while a flight recording with the event
+  * enabled is running (it is enabled in the default settings), so they
+  * can be lined up with GC and allocation events of the same recording.
+  * */
+@Name("bantamc.Phase")
+@Label("Compiler Phase")
+@Category("Bantam Compiler")
+@Description("A phase of compilation, for the whole program or one class or file")
+@StackTrace(false)
+public class PhaseEvent extends Event {
+    /** The phase (parse, classtree, classenv, typecheck, codegen or total) */
+    @Label("Phase")
+    public String phase;
+
+    /** The class or source file the work was for (null for the whole program) */
+    @Label("Name")
+    public String name;
+}
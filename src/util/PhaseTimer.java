@@ -0,0 +1,215 @@
+/* Bantam Java Compiler and Language Toolset.
+
+   Copyright (C) 2007 by Marc Corliss (corliss@hws.edu) and 
+                         E Christopher Lewis (lewis@vmware.com).
+   ALL RIGHTS RESERVED.
+
+   The Bantam Java toolset is distributed under the following 
+   conditions:
+
+     You may make copies of the toolset for your own use and 
+     modify those copies.
+
+     All copies of the toolset must retain the author names and 
+     copyright notice.
+
+     You may not sell the toolset or distribute it in 
+     conjunction with a commerical product or service without 
+     the expressed written consent of the authors.
+
+   THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS 
+   OR IMPLIED WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE 
+   IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A 
+   PARTICULAR PURPOSE. 
+*/
+
+package util;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+
+/** The <tt>PhaseTimer</tt> class measures the work done by the phases of
+  * the compiler (set with -Xtime).
+  *
+  * The work is measured in spans: a span is started and ended on the same
+  * thread, and covers one phase for the whole program or for one class
+  * (or source file).  For each span the timer records the wall time, the
+  * CPU time and the bytes allocated by the thread in between.  Since
+  * spans are per thread, spans run on a pool are measured correctly, and
+  * the sum of the per-class spans of a phase is the work done in that
+  * phase even when classes are compiled in parallel.
+  *
+  * Every span is also a JFR event (see PhaseEvent), whether or not the
+  * timer measures anything.
+  * */
+public class PhaseTimer {
+    /** The phases, in the order they are reported */
+    public static final String[] PHASES = { "parse", "classtree", "classenv",
+					    "typecheck", "codegen", "total" };
+
+    /** A timer that only emits JFR events */
+    public static final PhaseTimer NONE = new PhaseTimer(false);
+
+    /** Whether spans are measured (otherwise only JFR events are emitted) */
+    private boolean measure;
+
+    /** Thread CPU time and allocation counters */
+    private ThreadMXBean threads;
+
+    /** Spans that ended, in the order they ended */
+    private ArrayList<Span> spans = new ArrayList<Span>();
+
+    /** PhaseTimer constructor
+      * @param measure whether to measure the spans (false to only emit JFR
+      * events)
+      * */
+    public PhaseTimer(boolean measure) {
+	this.measure = measure;
+	if (measure)
+	    threads = ManagementFactory.getThreadMXBean();
+    }
+
+    /** Start a span on the current thread
+      * End it with end() on the same thread, in a finally block so the span
+      * ends even if the phase fails.
+      * @param phase the phase
+      * @param name the class or source file (null for the whole program)
+      * @return the span
+      * */
+    public Span start(String phase, String name) {
+	return new Span(phase, name);
+    }
+
+    /** Print the measured spans: for each phase, the span for the whole
+      * program (if there is one) and the sum of the per-class spans, then
+      * each per-class span
+      * @param out the stream to print to
+      * */
+    public void report(PrintStream out) {
+	ArrayList<Span> ended;
+	synchronized (spans) {
+	    ended = new ArrayList<Span>(spans);
+	}
+
+	out.printf("%-10s %-28s %10s %10s %12s%n", "phase", "span",
+		   "wall ms", "cpu ms", "alloc KB");
+	for (String phase : PHASES) {
+	    long[] sum = { 0, 0, 0 };
+	    int count = 0;
+	    for (Span span : ended) {
+		if (!span.phase.equals(phase))
+		    continue;
+		if (span.name == null)
+		    print(out, phase, "(whole program)", span.wallNanos,
+			  span.cpuNanos, span.allocatedBytes);
+		else {
+		    sum[0] += span.wallNanos;
+		    sum[1] = sum[1] < 0 || span.cpuNanos < 0 ? -1 :
+			sum[1] + span.cpuNanos;
+		    sum[2] = sum[2] < 0 || span.allocatedBytes < 0 ? -1 :
+			sum[2] + span.allocatedBytes;
+		    count++;
+		}
+	    }
+	    if (count > 0)
+		print(out, phase, "(sum of " + count + ")", sum[0], sum[1], sum[2]);
+	}
+	for (String phase : PHASES) {
+	    for (Span span : ended) {
+		if (span.phase.equals(phase) && span.name != null)
+		    print(out, phase, span.name, span.wallNanos,
+			  span.cpuNanos, span.allocatedBytes);
+	    }
+	}
+    }
+
+    /** Print one line of the report
+      * @param out the stream to print to
+      * @param phase the phase
+      * @param label what the line covers
+      * @param wallNanos wall time
+      * @param cpuNanos CPU time (-1 if not measured)
+      * @param allocatedBytes bytes allocated (-1 if not measured)
+      * */
+    private void print(PrintStream out, String phase, String label,
+		       long wallNanos, long cpuNanos, long allocatedBytes) {
+	out.printf("%-10s %-28s %10.2f %10s %12s%n", phase, label,
+		   wallNanos / 1e6,
+		   cpuNanos < 0 ? "n/a" : String.format("%.2f", cpuNanos / 1e6),
+		   allocatedBytes < 0 ? "n/a" : "" + allocatedBytes / 1024);
+    }
+
+    /** CPU time of the current thread
+      * @return the time in nanoseconds, or -1 if it cannot be measured
+      * */
+    private long cpuTime() {
+	if (!threads.isCurrentThreadCpuTimeSupported())
+	    return -1;
+	return threads.getCurrentThreadCpuTime();
+    }
+
+    /** Bytes allocated by the current thread so far
+      * @return the number of bytes, or -1 if it cannot be measured
+      * */
+    private long allocatedBytes() {
+	if (!(threads instanceof com.sun.management.ThreadMXBean))
+	    return -1;
+	com.sun.management.ThreadMXBean counters =
+	    (com.sun.management.ThreadMXBean) threads;
+	if (!counters.isThreadAllocatedMemorySupported() ||
+	    !counters.isThreadAllocatedMemoryEnabled())
+	    return -1;
+	return counters.getThreadAllocatedBytes(Thread.currentThread().threadId());
+    }
+
+    /** A span of work done by one thread
+      * */
+    public class Span {
+	/** The phase */
+	private String phase;
+	/** The class or source file (null for the whole program) */
+	private String name;
+	/** The JFR event of the span */
+	private PhaseEvent event;
+	/** Measurements: at the start while running, then the differences */
+	private long wallNanos, cpuNanos, allocatedBytes;
+
+	/** Span constructor - starts the span
+	  * @param phase the phase
+	  * @param name the class or source file (null for the whole program)
+	  * */
+	private Span(String phase, String name) {
+	    this.phase = phase;
+	    this.name = name;
+	    event = new PhaseEvent();
+	    event.begin();
+	    if (measure) {
+		wallNanos = System.nanoTime();
+		cpuNanos = cpuTime();
+		allocatedBytes = allocatedBytes();
+	    }
+	}
+
+	/** End the span, recording it
+	  * */
+	public void end() {
+	    if (measure) {
+		wallNanos = System.nanoTime() - wallNanos;
+		cpuNanos = cpuNanos < 0 ? -1 : cpuTime() - cpuNanos;
+		allocatedBytes = allocatedBytes < 0 ? -1 : 
+		    allocatedBytes() - allocatedBytes;
+		synchronized (spans) {
+		    spans.add(this);
+		}
+	    }
+	    event.end();
+	    if (event.shouldCommit()) {
+		event.phase = phase;
+		event.name = name;
+		event.commit();
+	    }
+	}
+    }
+}
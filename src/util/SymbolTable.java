@@ -32,7 +32,7 @@ import ast.Method;
 /** Class for representing a class symbol table */
 public class SymbolTable {
     /** Hash table that maps strings to Objects.  The object value corresponds to
-      * the type of the variable or method.  For variables it will be a String and
+      * the type of the variable or method.  For variables it will be a Type and
       * for methods it will be an AST node.
       * */
     private Hashtable<String,Object> hash;
@@ -173,14 +173,18 @@ public class SymbolTable {
     }
 
     public void print() {
+      print(System.out);
+    }
+
+    public void print(java.io.PrintStream out) {
       if (parent != null)
-        parent.print();
+        parent.print(out);
       
-        System.out.println("SymbolTable:");
+        out.println("SymbolTable:");
       for(Hashtable hash : scopes) {
-        System.out.println("  Scope Level 1");
+        out.println("  Scope Level 1");
         for (Object key : hash.keySet()) {
-          System.out.println("    " + key.toString()+ ", " + ((hash.get(key) instanceof Method) ? ((Method) hash.get(key)).getName() : hash.get(key).toString()));
+          out.println("    " + key.toString()+ ", " + ((hash.get(key) instanceof Method) ? ((Method) hash.get(key)).getName() : hash.get(key).toString()));
         }
       }
     }
@@ -0,0 +1,170 @@
+/* Bantam Java Compiler and Language Toolset.
+
+   Copyright (C) 2007 by Marc Corliss (corliss@hws.edu) and 
+                         E Christopher Lewis (lewis@vmware.com).
+   ALL RIGHTS RESERVED.
+
+   The Bantam Java toolset is distributed under the following 
+   conditions:
+
+     You may make copies of the toolset for your own use and 
+     modify those copies.
+
+     All copies of the toolset must retain the author names and 
+     copyright notice.
+
+     You may not sell the toolset or distribute it in 
+     conjunction with a commerical product or service without 
+     the expressed written consent of the authors.
+
+   THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS 
+   OR IMPLIED WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE 
+   IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A 
+   PARTICULAR PURPOSE. 
+*/
+
+package util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.EnumSet;
+import java.util.Set;
+
+/** The <tt>Trace</tt> class is where the phases of the compiler write
+  * their debugging output (enabled with -dp, -ds and -dc).
+  *
+  * Each trace point belongs to a category (a phase), and a trace only
+  * prints the categories that are enabled.  Trace points are guarded
+  * by isEnabled(), e.g.
+  *
+  *     if (trace.isEnabled(Trace.Category.CODEGEN))
+  *         trace.println(Trace.Category.CODEGEN, "while: " + lineNum);
+  *
+  * (or by a boolean set from it), so that a disabled trace point builds
+  * no strings.  A trace is written to a file, not to the console.
+  *
+  * A class compiled on a pool traces into its own buffer (see buffer()),
+  * which is appended to the trace once the classes before it are done,
+  * so the trace is the same however many threads are used.
+  * */
+public class Trace {
+    /** The categories of trace points */
+    public enum Category {
+	/** Parsing (-dp) */
+	PARSER,
+	/** Semantic analysis (-ds) */
+	SEMANT,
+	/** Code generation (-dc) */
+	CODEGEN
+    }
+
+    /** A trace with every category disabled */
+    public static final Trace NONE =
+	new Trace(null, EnumSet.noneOf(Category.class));
+
+    /** Stream the trace is written to (null if nothing is traced) */
+    private PrintStream sink;
+
+    /** Bytes traced so far, for a buffered trace (null otherwise) */
+    private ByteArrayOutputStream buffer;
+
+    /** The enabled categories */
+    private EnumSet<Category> categories;
+
+    /** Trace constructor
+      * @param sink stream the trace is written to
+      * @param categories the enabled categories
+      * */
+    public Trace(PrintStream sink, Set<Category> categories) {
+	this.categories = categories.isEmpty() ? 
+	    EnumSet.noneOf(Category.class) : EnumSet.copyOf(categories);
+	this.sink = this.categories.isEmpty() ? null : sink;
+    }
+
+    /** Open a trace written to a file
+      * @param file the file (overwritten)
+      * @param categories the enabled categories
+      * @return the trace (NONE, without creating the file, if no category
+      * is enabled)
+      * @throws IOException if the file cannot be created
+      * */
+    public static Trace open(File file, Set<Category> categories)
+	throws IOException {
+	if (categories.isEmpty())
+	    return NONE;
+	if (file.getParentFile() != null)
+	    file.getParentFile().mkdirs();
+	return new Trace(new PrintStream(new FileOutputStream(file), false, "UTF-8"),
+			 categories);
+    }
+
+    /** Is a category traced
+      * @param category the category
+      * @return true if its trace points are printed
+      * */
+    public boolean isEnabled(Category category) {
+	return sink != null && categories.contains(category);
+    }
+
+    /** Print a trace point (without a line break)
+      * @param category its category
+      * @param message the message
+      * */
+    public void print(Category category, String message) {
+	if (isEnabled(category))
+	    sink.print(message);
+    }
+
+    /** Print a trace point as a line
+      * @param category its category
+      * @param message the message
+      * */
+    public void println(Category category, String message) {
+	if (isEnabled(category))
+	    sink.println(message);
+    }
+
+    /** Get the stream of a category, for code that prints to a stream
+      * (e.g. SymbolTable.print())
+      * @param category the category
+      * @return the stream the trace is written to (null if the category
+      * is not traced)
+      * */
+    public PrintStream getStream(Category category) {
+	return isEnabled(category) ? sink : null;
+    }
+
+    /** Create a trace that buffers what is traced, with the same enabled
+      * categories; append() it to this trace when it is done
+      * @return the buffered trace (this trace, if nothing is traced)
+      * */
+    public Trace buffer() {
+	if (sink == null)
+	    return this;
+	Trace trace = new Trace(null, categories);
+	trace.buffer = new ByteArrayOutputStream();
+	trace.sink = new PrintStream(trace.buffer);
+	return trace;
+    }
+
+    /** Append what a buffered trace traced
+      * @param trace a trace created by buffer()
+      * */
+    public void append(Trace trace) {
+	if (sink == null || trace.buffer == null)
+	    return;
+	trace.sink.flush();
+	synchronized (sink) {
+	    sink.write(trace.buffer.toByteArray(), 0, trace.buffer.size());
+	}
+    }
+
+    /** Flush the trace and close its file */
+    public void close() {
+	if (sink != null)
+	    sink.close();
+    }
+}
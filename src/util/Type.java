@@ -0,0 +1,259 @@
+/* Bantam Java Compiler and Language Toolset.
+
+   Copyright (C) 2007 by Marc Corliss (corliss@hws.edu) and 
+                         E Christopher Lewis (lewis@vmware.com).
+   ALL RIGHTS RESERVED.
+
+   The Bantam Java toolset is distributed under the following 
+   conditions:
+
+     You may make copies of the toolset for your own use and 
+     modify those copies.
+
+     All copies of the toolset must retain the author names and 
+     copyright notice.
+
+     You may not sell the toolset or distribute it in 
+     conjunction with a commerical product or service without 
+     the expressed written consent of the authors.
+
+   THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS 
+   OR IMPLIED WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE 
+   IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A 
+   PARTICULAR PURPOSE. 
+*/
+
+package util;
+
+import java.util.Hashtable;
+
+/** The <tt>Type</tt> class represents a type of the language: a primitive
+  * type (int or boolean), a class, an array, the type of null, void, or
+  * the error type of an expression that could not be type checked.
+  * Types are interned by a <tt>TypeTable</tt>, one per compilation, so
+  * there is one <tt>Type</tt> object per type name, and types can be
+  * compared with ==.  A type works out what the code generator needs
+  * (its JVM descriptor, its element type, the type of arrays of it) once,
+  * when it is first asked for, and keeps it.
+  * @see TypeTable
+  * */
+public abstract class Type {
+    /** The name of the type, as it is written in a program */
+    private String name;
+
+    /** The table the type is interned in */
+    private TypeTable table;
+
+    /** The type of arrays of this type (null until it is asked for) */
+    private Type arrayType;
+
+    /** Type constructor
+      * @param table the table the type is interned in
+      * @param name the name of the type
+      * */
+    Type(TypeTable table, String name) {
+	this.table = table;
+	this.name = name;
+    }
+
+    /** Get the name of the type
+      * @return the name of the type, as it is written in a program
+      * */
+    public String getName() { return name; }
+
+    /** Get the name of the type (for messages)
+      * @return the name of the type
+      * */
+    public String toString() { return name; }
+
+    /** Get the JVM descriptor of the type (e.g., I, Ljava/lang/String; or [LFoo;)
+      * @return the descriptor
+      * */
+    public abstract String getDescriptor();
+
+    /** Get the name of the type in JVM class references (e.g., java/lang/String,
+      * Foo or [LFoo;), which is the descriptor for types other than classes
+      * @return the internal name
+      * */
+    public String getInternalName() { return getDescriptor(); }
+
+    /** Is this a primitive type (int or boolean)?
+      * @return boolean indicating whether this type is primitive
+      * */
+    public boolean isPrimitive() { return false; }
+
+    /** Is this an array type?
+      * @return boolean indicating whether this type is an array type
+      * */
+    public boolean isArray() { return false; }
+
+    /** Is this void?
+      * @return boolean indicating whether this type is void
+      * */
+    public boolean isVoid() { return false; }
+
+    /** Is this the type of null?
+      * @return boolean indicating whether this type is the type of null
+      * */
+    public boolean isNull() { return false; }
+
+    /** Is this the error type, the type of an expression whose type could
+      * not be worked out because of an error that has been reported?
+      * @return boolean indicating whether this type is the error type
+      * */
+    public boolean isError() { return false; }
+
+    /** Does the type exist, i.e., is it a primitive type, a class in the
+      * class hierarchy tree, or an array of one of these?
+      * @return boolean indicating whether this type exists
+      * */
+    public boolean exists() { return false; }
+
+    /** Get the class tree node of the class
+      * @return the class tree node (null if this is not a class or the
+      * class does not exist)
+      * */
+    public ClassTreeNode getClassTreeNode() { return null; }
+
+    /** Get the element type of an array type
+      * @return the element type (null if this is not an array type)
+      * */
+    public Type getElementType() { return null; }
+
+    /** Get the type of arrays of this type
+      * @return the array type
+      * */
+    public Type getArrayType() {
+	// interned, so a race only looks it up twice
+	if (arrayType == null)
+	    arrayType = table.lookup(name + "[]");
+	return arrayType;
+    }
+
+    /** A primitive type: int or boolean */
+    public static class PrimitiveType extends Type {
+	/** The descriptor (I or Z) */
+	private String descriptor;
+
+	PrimitiveType(TypeTable table, String name, String descriptor) {
+	    super(table, name);
+	    this.descriptor = descriptor;
+	}
+
+	public String getDescriptor() { return descriptor; }
+
+	public boolean isPrimitive() { return true; }
+
+	public boolean exists() { return true; }
+    }
+
+    /** The return type of methods that return nothing */
+    public static class VoidType extends Type {
+	VoidType(TypeTable table) {
+	    super(table, "void");
+	}
+
+	public String getDescriptor() { return "V"; }
+
+	public boolean isVoid() { return true; }
+    }
+
+    /** The type of null, which conforms to every class and array type */
+    public static class NullType extends Type {
+	NullType(TypeTable table) {
+	    super(table, "null");
+	}
+
+	// never a type in generated code, but descriptors must be well formed
+	public String getDescriptor() { return "Lnull;"; }
+
+	public String getInternalName() { return "null"; }
+
+	public boolean isNull() { return true; }
+    }
+
+    /** The error type, which conforms to every type and every type
+      * conforms to, so an error is reported once and not again wherever
+      * the erroneous expression is used */
+    public static class ErrorType extends Type {
+	ErrorType(TypeTable table) {
+	    // not a name that can be written in a program
+	    super(table, "<error>");
+	}
+
+	// never a type in generated code, but descriptors must be well formed
+	public String getDescriptor() { return "Lerror;"; }
+
+	public String getInternalName() { return "error"; }
+
+	public boolean isError() { return true; }
+    }
+
+    /** A class type (the class may not exist) */
+    public static class ClassType extends Type {
+	/** The name of the class in JVM class references */
+	private String internalName;
+
+	/** The descriptor (L followed by the internal name and ;) */
+	private String descriptor;
+
+	/** Maps class names to ClassTreeNode objects describing the class */
+	private Hashtable<String,ClassTreeNode> classMap;
+
+	/** The class tree node of the class (null until it is found) */
+	private ClassTreeNode classTreeNode;
+
+	ClassType(TypeTable table, String name,
+		  Hashtable<String,ClassTreeNode> classMap) {
+	    super(table, name);
+	    this.classMap = classMap;
+	    // the built-in classes String and Object are the Java ones
+	    if (name.equals("String") || name.equals("Object"))
+		internalName = "java/lang/" + name;
+	    else
+		internalName = name;
+	    descriptor = "L" + internalName + ";";
+	}
+
+	public String getDescriptor() { return descriptor; }
+
+	public String getInternalName() { return internalName; }
+
+	public boolean exists() { return getClassTreeNode() != null; }
+
+	public ClassTreeNode getClassTreeNode() {
+	    // looked up when first asked for, so a type can be interned
+	    // before the class tree is complete
+	    if (classTreeNode == null)
+		classTreeNode = classMap.get(getName());
+	    return classTreeNode;
+	}
+    }
+
+    /** An array type */
+    public static class ArrayType extends Type {
+	/** The type of the elements */
+	private Type elementType;
+
+	/** The descriptor ([ followed by the element type's), which is also
+	  * the internal name */
+	private String descriptor;
+
+	ArrayType(TypeTable table, String name, Type elementType) {
+	    super(table, name);
+	    this.elementType = elementType;
+	    descriptor = "[" + elementType.getDescriptor();
+	}
+
+	public String getDescriptor() { return descriptor; }
+
+	public boolean isArray() { return true; }
+
+	// arrays of arrays are not part of the language
+	public boolean exists() {
+	    return !elementType.isArray() && elementType.exists();
+	}
+
+	public Type getElementType() { return elementType; }
+    }
+}
@@ -0,0 +1,111 @@
+/* Bantam Java Compiler and Language Toolset.
+
+   Copyright (C) 2007 by Marc Corliss (corliss@hws.edu) and 
+                         E Christopher Lewis (lewis@vmware.com).
+   ALL RIGHTS RESERVED.
+
+   The Bantam Java toolset is distributed under the following 
+   conditions:
+
+     You may make copies of the toolset for your own use and 
+     modify those copies.
+
+     All copies of the toolset must retain the author names and 
+     copyright notice.
+
+     You may not sell the toolset or distribute it in 
+     conjunction with a commerical product or service without 
+     the expressed written consent of the authors.
+
+   THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS 
+   OR IMPLIED WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE 
+   IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A 
+   PARTICULAR PURPOSE. 
+*/
+
+package util;
+
+import java.util.Hashtable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** The <tt>TypeTable</tt> class interns the types of a compilation: it
+  * maps each type name to the one <tt>Type</tt> object for it, creating
+  * the type the first time the name is looked up.  Classes of the same
+  * compilation may be type checked and generated at the same time, so
+  * the table may be used from several threads.  The class is final, as
+  * its constructor interns the primitive types, which refer to it.
+  * @see Type
+  * */
+public final class TypeTable {
+    /** Maps type names to types */
+    private ConcurrentHashMap<String,Type> types = new ConcurrentHashMap<String,Type>();
+
+    /** Maps class names to ClassTreeNode objects describing the class */
+    private Hashtable<String,ClassTreeNode> classMap;
+
+    /** The types looked up most often */
+    private Type intType, booleanType, voidType, nullType, errorType;
+
+    /** TypeTable constructor
+      * @param classMap class map for finding the class of a class type
+      * */
+    public TypeTable(Hashtable<String,ClassTreeNode> classMap) {
+	this.classMap = classMap;
+	intType = intern(new Type.PrimitiveType(this, "int", "I"));
+	booleanType = intern(new Type.PrimitiveType(this, "boolean", "Z"));
+	voidType = intern(new Type.VoidType(this));
+	nullType = intern(new Type.NullType(this));
+	errorType = intern(new Type.ErrorType(this));
+    }
+
+    /** Lookup a type, creating it if it is the first time
+      * @param name the name of the type (e.g., int, Foo or Foo[])
+      * @return the type
+      * */
+    public Type lookup(String name) {
+	Type type = types.get(name);
+	if (type != null)
+	    return type;
+	// not computeIfAbsent: an array type looks up its element type
+	if (name.length() > 2 && name.endsWith("[]"))
+	    type = new Type.ArrayType(this, name,
+		lookup(name.substring(0, name.length() - 2)));
+	else
+	    type = new Type.ClassType(this, name, classMap);
+	return intern(type);
+    }
+
+    /** Add a type, unless another thread added one of the same name first
+      * @param type the type
+      * @return the type in the table
+      * */
+    private Type intern(Type type) {
+	Type old = types.putIfAbsent(type.getName(), type);
+	return old == null ? type : old;
+    }
+
+    /** Get the int type
+      * @return the int type
+      * */
+    public Type getIntType() { return intType; }
+
+    /** Get the boolean type
+      * @return the boolean type
+      * */
+    public Type getBooleanType() { return booleanType; }
+
+    /** Get the void type
+      * @return the void type
+      * */
+    public Type getVoidType() { return voidType; }
+
+    /** Get the type of null
+      * @return the type of null
+      * */
+    public Type getNullType() { return nullType; }
+
+    /** Get the error type (see Type.ErrorType)
+      * @return the error type
+      * */
+    public Type getErrorType() { return errorType; }
+}
@@ -0,0 +1,301 @@
+/* Bantam Java Compiler and Language Toolset.
+
+   Copyright (C) 2007 by Marc Corliss (corliss@hws.edu) and 
+                         E Christopher Lewis (lewis@vmware.com).
+   ALL RIGHTS RESERVED.
+
+   The Bantam Java toolset is distributed under the following 
+   conditions:
+
+     You may make copies of the toolset for your own use and 
+     modify those copies.
+
+     All copies of the toolset must retain the author names and 
+     copyright notice.
+
+     You may not sell the toolset or distribute it in 
+     conjunction with a commerical product or service without 
+     the expressed written consent of the authors.
+
+   THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS 
+   OR IMPLIED WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE 
+   IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A 
+   PARTICULAR PURPOSE. 
+*/
+
+package visitor;
+
+import ast.*;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Visitor that counts the nodes of an AST by node type (the simple
+  * name of the node's class), e.g. for compilation metrics.
+  * A visitor keeps counting across visits, so it can count several trees.
+  * */
+public class NodeCountVisitor extends Visitor {
+    /** Number of nodes of each type, sorted by type */
+    private Map<String, Integer> counts = new TreeMap<String, Integer>();
+
+    /** Total number of nodes */
+    private int total;
+
+    /** Get the number of nodes of each type
+      * @return the counts, sorted by node type
+      * */
+    public Map<String, Integer> getCounts() {
+	return counts;
+    }
+
+    /** Get the total number of nodes
+      * @return the number of nodes
+      * */
+    public int getTotal() {
+	return total;
+    }
+
+    /** Count a node
+      * @param node the node
+      * */
+    private void count(ASTNode node) {
+	String type = node.getClass().getSimpleName();
+	Integer count = counts.get(type);
+	counts.put(type, count == null ? 1 : count + 1);
+	total++;
+    }
+
+    public Object visit(Program node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(ClassList node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(Class_ node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(MemberList node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(Field node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(Method node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(FormalList node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(Formal node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(StmtList node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(DeclStmt node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(ExprStmt node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(IfStmt node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(WhileStmt node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(ForStmt node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(BreakStmt node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(BlockStmt node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(ReturnStmt node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(ExprList node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(DispatchExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(NewExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(NewArrayExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(InstanceofExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(CastExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(AssignExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(ArrayAssignExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(BinaryCompEqExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(BinaryCompNeExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(BinaryCompLtExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(BinaryCompLeqExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(BinaryCompGtExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(BinaryCompGeqExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(BinaryArithPlusExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(BinaryArithMinusExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(BinaryArithTimesExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(BinaryArithDivideExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(BinaryArithModulusExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(BinaryLogicAndExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(BinaryLogicOrExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(UnaryNegExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(UnaryNotExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(UnaryIncrExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(UnaryDecrExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(VarExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(ArrayExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(ConstIntExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(ConstBooleanExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+
+    public Object visit(ConstStringExpr node) {
+	count(node);
+	return super.visit(node);
+    }
+}
@@ -27,6 +27,7 @@ package visitor;
 
 import ast.*;
 import java.util.Iterator;
+import java.io.PrintStream;
 
 /** Visitor class for printing the AST */
 public class PrintVisitor extends Visitor {
@@ -34,20 +35,32 @@ public class PrintVisitor extends Visitor {
     private int indent;
     /** Indentation size */
     private int indentSize;
+    /** Stream that the AST is printed to */
+    private PrintStream out;
 
     /** PrintVisitor constructor
       * @param indent starting indentation
       * @param indentSize indentation size
       * */
     public PrintVisitor(int indent, int indentSize) {
+	this(indent, indentSize, System.out);
+    }
+
+    /** PrintVisitor constructor
+      * @param indent starting indentation
+      * @param indentSize indentation size
+      * @param out stream that the AST is printed to
+      * */
+    public PrintVisitor(int indent, int indentSize, PrintStream out) {
 	this.indent = indent;
 	this.indentSize = indentSize;
+	this.out = out;
     }
 
     /** Print indentation
       * */
     private void indent() {
-	for (int i = 0; i < indent; i++) System.out.print(" ");
+	for (int i = 0; i < indent; i++) out.print(" ");
     }
 
     /** Print AST node
@@ -56,17 +69,17 @@ public class PrintVisitor extends Visitor {
       * */
     public Object visit(Class_ node) {
 	indent();
-	System.out.println("// Source file: " + node.getFilename());
+	out.println("// Source file: " + node.getFilename());
 	indent();
-	System.out.println("// Source line: " + node.getLineNum());
+	out.println("// Source line: " + node.getLineNum());
 	indent();
-	System.out.println("class " + node.getName() + " extends " + 
+	out.println("class " + node.getName() + " extends " + 
 			   node.getParent() + " {");	
 	indent += indentSize;
 	node.getMemberList().accept(this);
 	indent -= indentSize;
 	indent();
-	System.out.println("}");
+	out.println("}");
 	return null;
     }
 
@@ -76,14 +89,14 @@ public class PrintVisitor extends Visitor {
       * */
     public Object visit(Field node) {
 	indent();
-	System.out.println("// Source line: " + node.getLineNum());
+	out.println("// Source line: " + node.getLineNum());
 	indent();
 	if (node.getInit() == null)
-	    System.out.println(node.getType() + " " + node.getName() + ";");
+	    out.println(node.getType() + " " + node.getName() + ";");
 	else {
-	    System.out.println(node.getType() + " " + node.getName() + " = ");
+	    out.println(node.getType() + " " + node.getName() + " = ");
 	    node.getInit().accept(this);
-	    System.out.println(";");
+	    out.println(";");
 	}
 	return null;
     }
@@ -94,16 +107,16 @@ public class PrintVisitor extends Visitor {
       * */
     public Object visit(Method node) {
 	indent();
-	System.out.println("// Source line: " + node.getLineNum());
+	out.println("// Source line: " + node.getLineNum());
 	indent();
-	System.out.print(node.getReturnType() + " " + node.getName() + "(");
+	out.print(node.getReturnType() + " " + node.getName() + "(");
 	node.getFormalList().accept(this);
-	System.out.println(") {");
+	out.println(") {");
 	indent += indentSize;
 	node.getStmtList().accept(this);
 	indent -= indentSize;
 	indent();
-	System.out.println("}");
+	out.println("}");
 	return null;
     }
 
@@ -116,7 +129,7 @@ public class PrintVisitor extends Visitor {
 	for (int i = 0; iter.hasNext(); i++) {
 	    ((Formal)iter.next()).accept(this);
 	    if (i < node.getSize() - 1)
-		System.out.print(", ");
+		out.print(", ");
 	}
 	return null;
     }
@@ -126,7 +139,7 @@ public class PrintVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(Formal node) {
-	System.out.print("/*line:" + node.getLineNum() + "*/" + node.getType() + " " + node.getName());
+	out.print("/*line:" + node.getLineNum() + "*/" + node.getType() + " " + node.getName());
 	return null;
     }
     
@@ -135,7 +148,7 @@ public class PrintVisitor extends Visitor {
       * */
     private void printStmtMeta(Stmt node) {
 	indent();
-	System.out.println("// Source line: " + node.getLineNum());
+	out.println("// Source line: " + node.getLineNum());
     }
 
     /** Print AST node
@@ -146,9 +159,9 @@ public class PrintVisitor extends Visitor {
 	printStmtMeta(node);
 	indent();
 	// note: init can't be null as it can with fields
-	System.out.print(node.getType() + " " + node.getName() + " = ");
+	out.print(node.getType() + " " + node.getName() + " = ");
 	node.getInit().accept(this);
-	System.out.println(";");
+	out.println(";");
 	return null;
     }
 
@@ -160,7 +173,7 @@ public class PrintVisitor extends Visitor {
 	printStmtMeta(node);
 	indent();
 	node.getExpr().accept(this);
-	System.out.println(";");
+	out.println(";");
 	return null;
     }
 
@@ -171,14 +184,14 @@ public class PrintVisitor extends Visitor {
     public Object visit(IfStmt node) {
 	printStmtMeta(node);
 	indent();
-	System.out.print("if (");
+	out.print("if (");
 	node.getPredExpr().accept(this);
-	System.out.println(")");
+	out.println(")");
 	indent += indentSize;
 	node.getThenStmt().accept(this);
 	indent -= indentSize;
 	indent();
-	System.out.println("else");
+	out.println("else");
 	indent += indentSize;
 	node.getElseStmt().accept(this);
 	indent -= indentSize;
@@ -192,9 +205,9 @@ public class PrintVisitor extends Visitor {
     public Object visit(WhileStmt node) {
 	printStmtMeta(node);
 	indent();
-	System.out.print("while (");
+	out.print("while (");
 	node.getPredExpr().accept(this);
-	System.out.println(")");
+	out.println(")");
 	indent += indentSize;
 	node.getBodyStmt().accept(this);
 	indent -= indentSize;
@@ -208,16 +221,16 @@ public class PrintVisitor extends Visitor {
     public Object visit(ForStmt node) {
 	printStmtMeta(node);
 	indent();
-	System.out.print("for (");
+	out.print("for (");
 	if (node.getInitExpr() != null)
 	    node.getInitExpr().accept(this);
-	System.out.print("; ");
+	out.print("; ");
 	if (node.getPredExpr() != null)
 	    node.getPredExpr().accept(this);
-	System.out.print("; ");
+	out.print("; ");
 	if (node.getUpdateExpr() != null)
 	    node.getUpdateExpr().accept(this);
-	System.out.println(")");
+	out.println(")");
 	indent += indentSize;
 	node.getBodyStmt().accept(this);
 	indent -= indentSize;
@@ -231,7 +244,7 @@ public class PrintVisitor extends Visitor {
     public Object visit(BreakStmt node) {
 	printStmtMeta(node);
 	indent();
-	System.out.println("break;");
+	out.println("break;");
 	return null;
     }
 
@@ -242,12 +255,12 @@ public class PrintVisitor extends Visitor {
     public Object visit(BlockStmt node) {
 	printStmtMeta(node);
 	indent();
-	System.out.println("{");
+	out.println("{");
 	indent += indentSize;
 	node.getStmtList().accept(this);
 	indent -= indentSize;
 	indent();
-	System.out.println("}");
+	out.println("}");
 	return null;
     }
 
@@ -257,14 +270,14 @@ public class PrintVisitor extends Visitor {
       * */
     public Object visit(ReturnStmt node) {
 	indent();
-	System.out.println("// Source line: " + node.getLineNum());
+	out.println("// Source line: " + node.getLineNum());
 	indent();
 	if (node.getExpr() == null)
-	    System.out.println("return;");
+	    out.println("return;");
 	else {
-	    System.out.print("return ");
+	    out.print("return ");
 	    node.getExpr().accept(this);
-	    System.out.println(";");
+	    out.println(";");
 	}
 	return null;
     }
@@ -278,7 +291,7 @@ public class PrintVisitor extends Visitor {
 	for (int i = 0; iter.hasNext(); i++) {
 	    ((ASTNode)iter.next()).accept(this);
 	    if (i < node.getSize() - 1)
-		System.out.print(", ");
+		out.print(", ");
 	}
 	return null;
     }
@@ -288,9 +301,9 @@ public class PrintVisitor extends Visitor {
       * */
     private void printExprMeta(Expr node) {
 	if (node.getExprType() == null)
-	    System.out.print("/*L" + node.getLineNum() + "*/");
+	    out.print("/*L" + node.getLineNum() + "*/");
 	else
-	    System.out.print("/*L" + node.getLineNum() + ",type:" + node.getExprType() + "*/");
+	    out.print("/*L" + node.getLineNum() + ",type:" + node.getExprType() + "*/");
     }
     
     /** Print AST node
@@ -298,12 +311,12 @@ public class PrintVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(DispatchExpr node) {
-	System.out.print("(");
+	out.print("(");
 	printExprMeta(node);
 	node.getRefExpr().accept(this);  // never null
-	System.out.print("." + node.getMethodName() + "(");
+	out.print("." + node.getMethodName() + "(");
 	node.getActualList().accept(this);
-	System.out.print("))");
+	out.print("))");
 	return null;
     }
 
@@ -312,9 +325,9 @@ public class PrintVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(NewExpr node) {
-	System.out.print("(");
+	out.print("(");
 	printExprMeta(node);
-	System.out.print("new " + node.getType() + "())");
+	out.print("new " + node.getType() + "())");
 	return null;
     }
 
@@ -323,11 +336,11 @@ public class PrintVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(NewArrayExpr node) {
-	System.out.print("(");
+	out.print("(");
 	printExprMeta(node);
-	System.out.print("new " + node.getType() + "[");
+	out.print("new " + node.getType() + "[");
 	node.getSize().accept(this);
-	System.out.print("])");
+	out.print("])");
 	return null;
     }
 
@@ -336,10 +349,10 @@ public class PrintVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(InstanceofExpr node) {
-	System.out.print("(");
+	out.print("(");
 	printExprMeta(node);
 	node.getExpr().accept(this);
-	System.out.print(" instanceof " + node.getType() + ")");
+	out.print(" instanceof " + node.getType() + ")");
 	return null;
     }
 
@@ -348,11 +361,11 @@ public class PrintVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(CastExpr node) {
-	System.out.print("(");
+	out.print("(");
 	printExprMeta(node);
-	System.out.print("(" + node.getType() + ")(");
+	out.print("(" + node.getType() + ")(");
 	node.getExpr().accept(this);
-	System.out.print("))");
+	out.print("))");
 	return null;
     }
 
@@ -361,13 +374,13 @@ public class PrintVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(AssignExpr node) {
-	System.out.print("(");
+	out.print("(");
 	printExprMeta(node);
 	if (node.getRefName() != null)
-	    System.out.print(node.getRefName() + ".");
-	System.out.print(node.getName() + " = ");
+	    out.print(node.getRefName() + ".");
+	out.print(node.getName() + " = ");
 	node.getExpr().accept(this);
-	System.out.print(")");
+	out.print(")");
 	return null;
     }
 
@@ -376,15 +389,15 @@ public class PrintVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(ArrayAssignExpr node) {
-	System.out.print("(");
+	out.print("(");
 	printExprMeta(node);
 	if (node.getRefName() != null)
-	    System.out.print(node.getRefName() + ".");
-	System.out.print(node.getName() + "[");
+	    out.print(node.getRefName() + ".");
+	out.print(node.getName() + "[");
 	node.getIndex().accept(this);
-	System.out.print("] = ");
+	out.print("] = ");
 	node.getExpr().accept(this);
-	System.out.print(")");
+	out.print(")");
 	return null;
     }
 
@@ -392,12 +405,12 @@ public class PrintVisitor extends Visitor {
       * @param node binary expression node
       * */
     public void printBinaryExpr(BinaryExpr node) {
-	System.out.print("(");
+	out.print("(");
 	printExprMeta(node);
 	node.getLeftExpr().accept(this);
-	System.out.print(" " + node.getOpName() + " ");
+	out.print(" " + node.getOpName() + " ");
 	node.getRightExpr().accept(this);
-	System.out.print(")");
+	out.print(")");
     }
 
     /** Print AST node
@@ -521,16 +534,16 @@ public class PrintVisitor extends Visitor {
       * @param node unary expression node
       * */
     public void printUnaryExpr(UnaryExpr node) {
-	System.out.print("(");
+	out.print("(");
 	printExprMeta(node);
 	if (!node.isPostfix())
-	    System.out.print(node.getOpName());
-	System.out.print("(");
+	    out.print(node.getOpName());
+	out.print("(");
 	node.getExpr().accept(this);
-	System.out.print(")");
+	out.print(")");
 	if (node.isPostfix())
-	    System.out.print(node.getOpName());
-	System.out.print(")");
+	    out.print(node.getOpName());
+	out.print(")");
     }
 
     /** Print AST node
@@ -575,20 +588,20 @@ public class PrintVisitor extends Visitor {
       * */
     public Object visit(VarExpr node) {
 	/*
-	System.out.print("(");
+	out.print("(");
 	printExprMeta(node);
 	if (node.getRef() != null)
 	    node.getRef().accept(this);
-	System.out.print("." + node.getName() + ")");
+	out.print("." + node.getName() + ")");
 	return null;
 	*/
-	System.out.print("(");
+	out.print("(");
 	printExprMeta(node);
 	if (node.getRef() != null) {
 	    node.getRef().accept(this);
-	    System.out.print(".");
+	    out.print(".");
 	}
-	System.out.print(node.getName() + ")");
+	out.print(node.getName() + ")");
 	return null;
     }
 
@@ -597,15 +610,15 @@ public class PrintVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(ArrayExpr node) {
-	System.out.print("(");
+	out.print("(");
 	printExprMeta(node);
 	if (node.getRef() != null) {
 	    node.getRef().accept(this);
-	    System.out.print(".");
+	    out.print(".");
 	}
-	System.out.print(node.getName() + "[");
+	out.print(node.getName() + "[");
 	node.getIndex().accept(this);
-	System.out.print("])");
+	out.print("])");
 	return null;
     }
 
@@ -614,27 +627,27 @@ public class PrintVisitor extends Visitor {
       * */
     public void printConstExpr(ConstExpr node) {
 	String constant = node.getConstant();
-	System.out.print("(");
+	out.print("(");
 	printExprMeta(node);
 	if (node instanceof ConstStringExpr) {
-	    System.out.print("\"");
+	    out.print("\"");
 	    for (int i = 0; i < constant.length(); i++) {
 		if (constant.charAt(i) == '\n')
-		    System.out.print("\\n");
+		    out.print("\\n");
 		else if (constant.charAt(i) == '\t')
-		    System.out.print("\\t");
+		    out.print("\\t");
 		else if (constant.charAt(i) == '\r')
-		    System.out.print("\\r");
+		    out.print("\\r");
 		else if (constant.charAt(i) == '\f')
-		    System.out.print("\\f");
+		    out.print("\\f");
 		else
-		    System.out.print(constant.charAt(i));
+		    out.print(constant.charAt(i));
 	    }
-	    System.out.print("\"");
+	    out.print("\"");
 	}
 	else
-	    System.out.print(constant);
-	System.out.print(")");
+	    out.print(constant);
+	out.print(")");
     }
 
     /** Print AST node
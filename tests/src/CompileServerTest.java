@@ -0,0 +1,210 @@
+/* Bantam Java Compiler and Language Toolset.
+
+   Copyright (C) 2007 by Marc Corliss (corliss@hws.edu) and
+                         E Christopher Lewis (lewis@vmware.com).
+   ALL RIGHTS RESERVED.
+
+   The Bantam Java toolset is distributed under the following
+   conditions:
+
+     You may make copies of the toolset for your own use and
+     modify those copies.
+
+     All copies of the toolset must retain the author names and
+     copyright notice.
+
+     You may not sell the toolset or distribute it in
+     conjunction with a commerical product or service without
+     the expressed written consent of the authors.
+
+   THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS
+   OR IMPLIED WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE
+   IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+   PARTICULAR PURPOSE.
+*/
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/** Checks that the compile server (bantamc --daemon) survives a request
+  * that crashes the compiler
+  * The server is started in a new JVM with a small heap, and is sent a
+  * request to compile a program too large for the heap, and then a
+  * request to compile HelloWorld.btm.  The first must fail with exit
+  * status 1 and an internal error, and the second must succeed.
+  *
+  * Usage: java -cp classes CompileServerTest [-tests dir] [-compiler dir]
+  * */
+public class CompileServerTest {
+    /** Longest the server may take to start or to answer, in seconds */
+    private static final int TIMEOUT = 60;
+
+    /** Heap of the server, too small for the large program */
+    private static final String HEAP = "-Xmx64m";
+
+    /** Number of terms of the expression of the large program */
+    private static final int TERMS = 4000000;
+
+    /** Directory of the test programs */
+    private File testsDir = new File(".");
+
+    /** Directory of the compiler's classes */
+    private File compilerDir = new File("../src");
+
+    /** Run the test
+      * @return whether it passed (what failed is reported)
+      * */
+    private boolean run() throws IOException, InterruptedException {
+	Path dir = Files.createTempDirectory("bantam-daemon");
+	Path socket = dir.resolve("bantamc.sock");
+	Process server = null;
+	try {
+	    writeLargeProgram(dir.resolve("Large.btm"));
+	    Files.copy(new File(testsDir, "HelloWorld.btm").toPath(),
+		       dir.resolve("HelloWorld.btm"),
+		       StandardCopyOption.REPLACE_EXISTING);
+
+	    File java = new File(System.getProperty("java.home"), "bin/java");
+	    ProcessBuilder builder = new ProcessBuilder(java.getPath(), HEAP,
+		"-cp", compilerDir.getAbsolutePath(), "Main", "--daemon",
+		socket.toString());
+	    builder.redirectErrorStream(true);
+	    builder.redirectOutput(dir.resolve("server.log").toFile());
+	    server = builder.start();
+	    long deadline = System.nanoTime() + TIMEOUT * 1000000000L;
+	    while (!Files.exists(socket)) {
+		if (!server.isAlive() || System.nanoTime() > deadline) {
+		    System.out.println("FAIL the server did not start");
+		    return false;
+		}
+		Thread.sleep(50);
+	    }
+
+	    // with one thread, the compiler runs out of memory on the
+	    // thread that compiles the request
+	    List<String> crashed = request(socket, dir, "-j", "1",
+					   "Large.btm");
+	    boolean passed = check("a request that crashes the compiler",
+		crashed, "exit 1", "err Internal error within compiler: " +
+		"stopping compilation");
+	    List<String> compiled = request(socket, dir, "HelloWorld.btm");
+	    passed &= check("a request after it", compiled, "exit 0", null);
+	    return passed;
+	}
+	finally {
+	    if (server != null)
+		server.destroyForcibly();
+	    delete(dir);
+	}
+    }
+
+    /** Write a program with one expression of TERMS terms */
+    private static void writeLargeProgram(Path file) throws IOException {
+	StringBuilder program = new StringBuilder(2 * TERMS + 100);
+	program.append("class Main {\n    void main() {\n\tint x = 1");
+	for (int i = 1; i < TERMS; i++)
+	    program.append("+1");
+	program.append(";\n\treturn;\n    }\n}\n");
+	Files.write(file, program.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Send a compile request to the server
+      * @param socket the server's socket
+      * @param dir the working directory of the request
+      * @param args the commandline arguments of the request
+      * @return the lines of the response
+      * */
+    private static List<String> request(Path socket, Path dir,
+					String... args) throws IOException {
+	List<String> lines = new ArrayList<String>();
+	try (SocketChannel client =
+	     SocketChannel.open(StandardProtocolFamily.UNIX)) {
+	    client.connect(UnixDomainSocketAddress.of(socket));
+	    PrintWriter request = new PrintWriter(new OutputStreamWriter(
+		Channels.newOutputStream(client), StandardCharsets.UTF_8));
+	    request.println(dir.toAbsolutePath());
+	    for (String arg : args)
+		request.println(arg);
+	    request.println();
+	    request.flush();
+
+	    BufferedReader response = new BufferedReader(new InputStreamReader(
+		Channels.newInputStream(client), StandardCharsets.UTF_8));
+	    for (String line = response.readLine(); line != null;
+		 line = response.readLine())
+		lines.add(line);
+	}
+	catch (IOException e) {
+	    // a server that has stopped gives no response
+	    lines.add("(" + e.getMessage() + ")");
+	}
+	return lines;
+    }
+
+    /** Check and report the response to a request
+      * @param what what the request is, for the report
+      * @param response the lines of the response
+      * @param status the last line it must have
+      * @param error a line it must have (null if none)
+      * @return whether the response is as expected
+      * */
+    private static boolean check(String what, List<String> response,
+				 String status, String error) {
+	boolean passed = !response.isEmpty() &&
+	    response.get(response.size() - 1).equals(status) &&
+	    (error == null || response.contains(error));
+	System.out.println((passed ? "ok   " : "FAIL ") + "daemon: " + what);
+	if (!passed)
+	    System.out.println("     expected " + status + ", got: " +
+			       (response.isEmpty() ? "(nothing)" :
+				response.get(response.size() - 1)));
+	return passed;
+    }
+
+    /** Delete a directory and everything in it */
+    private static void delete(Path dir) {
+	try (Stream<Path> paths = Files.walk(dir)) {
+	    paths.sorted(Comparator.reverseOrder())
+		.forEach(path -> path.toFile().delete());
+	}
+	catch (IOException e) {
+	    // a temporary directory is left behind
+	}
+    }
+
+    /** Main method: run the test
+      * @param args list of commandline arguments (see the class comment)
+      * */
+    public static void main(String[] args) throws Exception {
+	CompileServerTest test = new CompileServerTest();
+	for (int i = 0; i < args.length; i++) {
+	    if (args[i].equals("-tests") && i + 1 < args.length)
+		test.testsDir = new File(args[++i]);
+	    else if (args[i].equals("-compiler") && i + 1 < args.length)
+		test.compilerDir = new File(args[++i]);
+	    else {
+		System.err.println("Usage: java CompileServerTest " +
+				   "[-tests dir] [-compiler dir]");
+		System.exit(1);
+	    }
+	}
+	if (!test.run())
+	    System.exit(1);
+    }
+}
@@ -0,0 +1,375 @@
+/* Bantam Java Compiler and Language Toolset.
+
+   Copyright (C) 2007 by Marc Corliss (corliss@hws.edu) and
+                         E Christopher Lewis (lewis@vmware.com).
+   ALL RIGHTS RESERVED.
+
+   The Bantam Java toolset is distributed under the following
+   conditions:
+
+     You may make copies of the toolset for your own use and
+     modify those copies.
+
+     All copies of the toolset must retain the author names and
+     copyright notice.
+
+     You may not sell the toolset or distribute it in
+     conjunction with a commerical product or service without
+     the expressed written consent of the authors.
+
+   THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS
+   OR IMPLIED WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE
+   IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+   PARTICULAR PURPOSE.
+*/
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/** Runs the test programs and compares what they write with golden files
+  * Each test is a program of the tests directory (a .btm file that declares
+  * a Main class).  The tests run in parallel, each in a temporary directory
+  * of its own: the test's sources and data files (files named
+  * <tt>Test-*</tt>, such as FileIO-input.txt) are copied there, the
+  * program is compiled in this JVM (by a Main object of its own), and the
+  * compiled program is run in a new JVM with the runtime classes, reading
+  * its input from <tt>expected/Test.in</tt> (if there is one).
+  *
+  * The standard output of the compiler and of the program together must
+  * be the same as <tt>expected/Test.out</tt>, and their error output,
+  * followed by "exit status N" if the program fails, the same as
+  * <tt>expected/Test.err</tt>.  If compilation fails, the program is not
+  * run.  Since the messages of the JDK's exceptions and the JDK frames of
+  * a stack trace differ between JDK builds, the error output is compared
+  * (and written) with only the class of an uncaught exception and the
+  * frames of the program and the runtime classes.
+  *
+  * tests.properties gives the extra sources of a test
+  * (<tt>Test.sources</tt>, e.g. the library classes it uses), extra
+  * options of the compiler (<tt>Test.options</tt>) and the tests that
+  * are only compiled (<tt>Test.run=false</tt>).
+  *
+  * Usage: java -cp classes:../src TestRunner [-tests dir] [-runtime dir]
+  *                  [-j threads] [-update] [test...]
+  *
+  * With -update the golden files are written instead of checked.
+  * */
+public class TestRunner {
+    /** Longest a test program may run, in seconds */
+    private static final int TIMEOUT = 30;
+
+    /** Directory of the test programs */
+    private File testsDir = new File(".");
+    /** Directory of the runtime classes (TextIO, Sys) */
+    private File runtimeDir = new File("../lib");
+    /** Whether to write the golden files instead of checking them */
+    private boolean update;
+    /** Extra sources and options of tests and tests that are not run */
+    private Properties config = new Properties();
+
+    /** The first line of an uncaught exception (or of its cause): the
+      * exception class is group 1 */
+    private static final Pattern EXCEPTION =
+	Pattern.compile("((?:Exception in thread \"[^\"]*\"|Caused by:) " +
+			"[\\w.$]+)(?::.*)?");
+    /** A stack frame of a JDK class, possibly qualified by its module */
+    private static final Pattern JDK_FRAME =
+	Pattern.compile("\\s+at (?:[\\w.]*/)*(?:java|javax|jdk|sun)\\..*");
+
+    /** The outcome of one test */
+    private static class Result {
+	String name;
+	boolean passed;
+	// why the test failed (null if it passed)
+	String message;
+	long compileMillis;
+	long runMillis;
+    }
+
+    /** Get the names of all the tests: the programs that declare a
+      * Main class
+      * @return the names, sorted
+      * @throws IOException if the tests directory cannot be read
+      * */
+    private List<String> findTests() throws IOException {
+	List<String> names = new ArrayList<String>();
+	File[] files = testsDir.listFiles((dir, name) -> name.endsWith(".btm"));
+	if (files == null)
+	    throw new IOException("cannot read " + testsDir);
+	for (File file : files) {
+	    String text = new String(Files.readAllBytes(file.toPath()),
+				     StandardCharsets.UTF_8);
+	    if (text.matches("(?s).*\\bclass\\s+Main\\b.*")) {
+		String name = file.getName();
+		names.add(name.substring(0, name.length() - 4));
+	    }
+	}
+	names.sort(null);
+	return names;
+    }
+
+    /** Compile and run one test in a temporary directory of its own
+      * @param name the name of the test
+      * @return the outcome
+      * */
+    private Result runTest(String name) {
+	Result result = new Result();
+	result.name = name;
+	Path dir = null;
+	try {
+	    dir = Files.createTempDirectory("bantam-test-" + name);
+
+	    // copy the sources and the data files
+	    List<String> sources = new ArrayList<String>();
+	    sources.add(name + ".btm");
+	    sources.addAll(getList(name + ".sources"));
+	    for (String source : sources)
+		copy(new File(testsDir, source), dir);
+	    File[] dataFiles = testsDir.listFiles((d, file) ->
+		file.startsWith(name + "-"));
+	    for (File file : dataFiles)
+		copy(file, dir);
+
+	    // compile in this JVM; the tests run in parallel, so each test
+	    // compiles with a single thread
+	    List<String> args = new ArrayList<String>();
+	    args.add("-j");
+	    args.add("1");
+	    args.addAll(getList(name + ".options"));
+	    args.addAll(sources);
+	    ByteArrayOutputStream out = new ByteArrayOutputStream();
+	    ByteArrayOutputStream err = new ByteArrayOutputStream();
+	    PrintStream outStream = new PrintStream(out, true, StandardCharsets.UTF_8);
+	    PrintStream errStream = new PrintStream(err, true, StandardCharsets.UTF_8);
+	    long start = System.nanoTime();
+	    int status = new Main(dir.toFile(), outStream, errStream)
+		.compile(args.toArray(new String[args.size()]));
+	    result.compileMillis = (System.nanoTime() - start) / 1000000;
+
+	    // run the program in a new JVM
+	    if (status == 0 &&
+		!config.getProperty(name + ".run", "true").equals("false")) {
+		start = System.nanoTime();
+		run(name, dir, out, err);
+		result.runMillis = (System.nanoTime() - start) / 1000000;
+	    }
+
+	    check(result, ".out", out.toByteArray());
+	    if (result.message == null)
+		check(result, ".err", normalizeErrors(err.toByteArray()));
+	    result.passed = result.message == null;
+	}
+	catch (Exception e) {
+	    result.message = e.toString();
+	}
+	finally {
+	    if (dir != null)
+		delete(dir);
+	}
+	return result;
+    }
+
+    /** Run a compiled test program, adding what it writes to out and err
+      * @param name the name of the test
+      * @param dir the directory it was compiled in
+      * @throws IOException if the program cannot be run or times out
+      * */
+    private void run(String name, Path dir, ByteArrayOutputStream out,
+		     ByteArrayOutputStream err)
+	throws IOException, InterruptedException {
+	File java = new File(System.getProperty("java.home"), "bin/java");
+	ProcessBuilder builder = new ProcessBuilder(java.getPath(), "-cp",
+	    "." + File.pathSeparator + runtimeDir.getAbsolutePath(), "Main");
+	builder.directory(dir.toFile());
+	File input = new File(testsDir, "expected/" + name + ".in");
+	if (input.exists())
+	    builder.redirectInput(input);
+	File outFile = dir.resolve("run.out").toFile();
+	File errFile = dir.resolve("run.err").toFile();
+	builder.redirectOutput(outFile);
+	builder.redirectError(errFile);
+
+	Process process = builder.start();
+	// a program without input sees the end of its input at once
+	if (!input.exists())
+	    process.getOutputStream().close();
+	if (!process.waitFor(TIMEOUT, TimeUnit.SECONDS)) {
+	    process.destroyForcibly();
+	    throw new IOException("timed out after " + TIMEOUT + " seconds");
+	}
+	out.write(Files.readAllBytes(outFile.toPath()));
+	err.write(Files.readAllBytes(errFile.toPath()));
+	if (process.exitValue() != 0)
+	    err.write(("exit status " + process.exitValue() + "\n")
+		      .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Check what a test wrote against a golden file, or write the golden
+      * file if updating
+      * @param result the outcome of the test, whose message is set if
+      *               the check fails
+      * @param suffix .out or .err
+      * @param actual what the test wrote
+      * */
+    private void check(Result result, String suffix, byte[] actual)
+	throws IOException {
+	File golden = new File(testsDir, "expected/" + result.name + suffix);
+	if (update) {
+	    golden.getParentFile().mkdirs();
+	    Files.write(golden.toPath(), actual);
+	    return;
+	}
+	if (!golden.exists()) {
+	    result.message = "no golden file " + golden;
+	    return;
+	}
+	String expected = new String(Files.readAllBytes(golden.toPath()),
+				     StandardCharsets.UTF_8);
+	String got = new String(actual, StandardCharsets.UTF_8);
+	if (expected.equals(got))
+	    return;
+
+	// report the first line that differs
+	String[] expectedLines = expected.split("\n", -1);
+	String[] gotLines = got.split("\n", -1);
+	int line = 0;
+	while (line < expectedLines.length && line < gotLines.length &&
+	       expectedLines[line].equals(gotLines[line]))
+	    line++;
+	result.message = suffix.substring(1) + " differs at line " + (line + 1) +
+	    ":\n    expected: " +
+	    (line < expectedLines.length ? expectedLines[line] : "(end)") +
+	    "\n    got:      " +
+	    (line < gotLines.length ? gotLines[line] : "(end)");
+    }
+
+    /** Remove what depends on the JDK build from the error output of a
+      * test: the message of an uncaught exception and the JDK frames of
+      * its stack trace
+      * @param err the error output
+      * @return the error output with only the exception class and the
+      *         frames of the program and the runtime classes
+      * */
+    private static byte[] normalizeErrors(byte[] err) {
+	List<String> lines = new ArrayList<String>();
+	for (String line : new String(err, StandardCharsets.UTF_8)
+		 .split("\n", -1)) {
+	    Matcher exception = EXCEPTION.matcher(line);
+	    if (exception.matches())
+		lines.add(exception.group(1));
+	    else if (!JDK_FRAME.matcher(line).matches())
+		lines.add(line);
+	}
+	return String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Get a list of words of the configuration
+      * @param key the key of the list
+      * @return the words (none if the key is not given)
+      * */
+    private List<String> getList(String key) {
+	String words = config.getProperty(key, "").trim();
+	if (words.isEmpty())
+	    return new ArrayList<String>();
+	return Arrays.asList(words.split("\\s+"));
+    }
+
+    /** Copy a file into a directory */
+    private static void copy(File file, Path dir) throws IOException {
+	Files.copy(file.toPath(), dir.resolve(file.getName()),
+		   StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Delete a directory and everything in it */
+    private static void delete(Path dir) {
+	try (Stream<Path> paths = Files.walk(dir)) {
+	    paths.sorted(Comparator.reverseOrder())
+		.forEach(path -> path.toFile().delete());
+	}
+	catch (IOException e) {
+	    // a temporary directory is left behind
+	}
+    }
+
+    /** Main method: run the tests named on the commandline (all tests by
+      * default) and report the outcome of each
+      * @param args list of commandline arguments (see the class comment)
+      * */
+    public static void main(String[] args) throws Exception {
+	TestRunner runner = new TestRunner();
+	int numThreads = Runtime.getRuntime().availableProcessors();
+	List<String> names = new ArrayList<String>();
+	for (int i = 0; i < args.length; i++) {
+	    if (args[i].equals("-tests") && i + 1 < args.length)
+		runner.testsDir = new File(args[++i]);
+	    else if (args[i].equals("-runtime") && i + 1 < args.length)
+		runner.runtimeDir = new File(args[++i]);
+	    else if (args[i].equals("-j") && i + 1 < args.length)
+		numThreads = Integer.parseInt(args[++i]);
+	    else if (args[i].equals("-update"))
+		runner.update = true;
+	    else if (args[i].startsWith("-")) {
+		System.err.println("Usage: java TestRunner [-tests dir] " +
+				   "[-runtime dir] [-j threads] [-update] " +
+				   "[test...]");
+		System.exit(1);
+	    }
+	    else
+		names.add(args[i]);
+	}
+
+	File configFile = new File(runner.testsDir, "tests.properties");
+	if (configFile.exists()) {
+	    try (InputStream in = new FileInputStream(configFile)) {
+		runner.config.load(in);
+	    }
+	}
+	if (names.isEmpty())
+	    names = runner.findTests();
+
+	long start = System.nanoTime();
+	ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+	List<Future<Result>> futures = new ArrayList<Future<Result>>();
+	for (String name : names)
+	    futures.add(pool.submit(() -> runner.runTest(name)));
+
+	// report in the order of the names, as each test finishes
+	int failures = 0;
+	for (Future<Result> future : futures) {
+	    Result result = future.get();
+	    System.out.printf("%-4s %-24s compile %5d ms   run %5d ms%n",
+			      result.passed ? "ok" : "FAIL", result.name,
+			      result.compileMillis, result.runMillis);
+	    if (!result.passed) {
+		System.out.println("     " + result.message);
+		failures++;
+	    }
+	}
+	pool.shutdown();
+
+	System.out.printf("%d tests, %d failed (%.1f s)%n", names.size(),
+			  failures, (System.nanoTime() - start) / 1e9);
+	if (failures > 0)
+	    System.exit(1);
+    }
+}